@@ -1,5 +1,6 @@
 package com.example.socialmedia.config;
 
+import com.example.socialmedia.dto.CursorPage;
 import com.example.socialmedia.payload.ApiResponse;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -40,6 +41,11 @@ public class ResponseAdvice implements ResponseBodyAdvice<Object> {
             return body;
         }
         
+        // Keyset pages: items become the data, the cursor goes to the page metadata
+        if (body instanceof CursorPage<?> page) {
+            return ApiResponse.page(page, "Success");
+        }
+        
         // If body is String, manually serialize because Spring treats String differently
         if (body instanceof String) {
             try {
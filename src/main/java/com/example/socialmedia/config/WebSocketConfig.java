@@ -1,19 +1,46 @@
 package com.example.socialmedia.config;
 
+import com.example.socialmedia.security.StompAuthChannelInterceptor;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
 
+import java.util.regex.Pattern;
+
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    // Per-user notification queue; clients subscribe to /user/queue/notifications
+    public static final String USER_NOTIFICATIONS_DESTINATION = "/queue/notifications";
+
+    // Deprecated alias: the per-user topic notifications went to before the user queue. Every
+    // notification sent to a user's queue is also sent here; only the user may subscribe
+    public static final Pattern LEGACY_NOTIFICATIONS_TOPIC = Pattern.compile("/topic/user/(\\d+)/notifications");
+
+    public static String legacyNotificationsTopic(Long userId) {
+        return "/topic/user/" + userId + "/notifications";
+    }
+
+    private final StompAuthChannelInterceptor authInterceptor;
+
+    @Autowired
+    public WebSocketConfig(StompAuthChannelInterceptor authInterceptor) {
+        this.authInterceptor = authInterceptor;
+    }
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
         // Enable a simple memory-based message broker to carry messages back to the client on destinations prefixed with "/topic"
-        config.enableSimpleBroker("/topic");
+        config.enableSimpleBroker("/topic", "/queue");
+        
+        // Destinations under /user are resolved to the sessions of the authenticated user
+        config.setUserDestinationPrefix("/user");
+
         
         // Designate prefixes for messages that are bound for methods annotated with @MessageMapping
         config.setApplicationDestinationPrefixes("/app");
@@ -24,4 +51,12 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         // Register the "/ws" endpoint, enabling the SockJS protocol options
         registry.addEndpoint("/ws").setAllowedOriginPatterns("*").withSockJS();
     }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        // Authenticate each session from the JWT in its CONNECT frame. The principal set here is what
+        // UserPresenceRegistry tracks and what /user destinations resolve to; without it no user push
+        // reaches the session
+        registration.interceptors(authInterceptor);
+    }
 }
@@ -2,6 +2,8 @@ package com.example.socialmedia.controller;
 
 import com.example.socialmedia.dto.ChatMessage;
 import com.example.socialmedia.model.Message;
+import com.example.socialmedia.security.StompAuthChannelInterceptor;
+import com.example.socialmedia.security.UserDetailsImpl;
 import com.example.socialmedia.service.MessageService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.handler.annotation.DestinationVariable;
@@ -10,6 +12,8 @@ import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.messaging.handler.annotation.SendTo;
 import org.springframework.stereotype.Controller;
 
+import java.security.Principal;
+
 @Controller
 public class ChatController {
 
@@ -23,13 +27,17 @@ public class ChatController {
     // Map messages sent to "/app/chat/{shopId}/sendMessage"
     @MessageMapping("/chat/{shopId}/sendMessage")
     @SendTo("/topic/shop/{shopId}") // Broadcast to subscribers of "/topic/shop/{shopId}"
-    public Message sendMessage(@DestinationVariable Long shopId, @Payload ChatMessage chatMessage) {
-        
+    public Message sendMessage(@DestinationVariable Long shopId, @Payload ChatMessage chatMessage, Principal principal) {
+        // The sender is the user the session authenticated as at CONNECT, not the userId in the payload
+        UserDetailsImpl sender = StompAuthChannelInterceptor.getUser(principal);
+        if (sender == null) {
+            throw new IllegalStateException("Sending requires an authenticated session");
+        }
+
         // Create a new message entity to save to database
         Message message = new Message();
         message.setContent(chatMessage.getContent());
         
-        // Save to database (this handles finding the user and shop)
-        return messageService.sendMessage(chatMessage.getUserId(), shopId, message);
+        return messageService.sendMessage(sender.getId(), sender.getUsername(), shopId, message);
     }
 }
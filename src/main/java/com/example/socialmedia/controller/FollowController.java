@@ -0,0 +1,73 @@
+package com.example.socialmedia.controller;
+
+import com.example.socialmedia.annotation.RequireUserRole;
+import com.example.socialmedia.exception.ResourceNotFoundException;
+import com.example.socialmedia.security.AuthorizationHelper;
+import com.example.socialmedia.service.FollowService;
+import com.example.socialmedia.util.ResponseUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/follows")
+public class FollowController {
+
+    private final FollowService followService;
+    private final AuthorizationHelper authorizationHelper;
+
+    @Autowired
+    public FollowController(FollowService followService, AuthorizationHelper authorizationHelper) {
+        this.followService = followService;
+        this.authorizationHelper = authorizationHelper;
+    }
+
+    @PostMapping("/shops/{shopId}")
+    @RequireUserRole
+    public ResponseEntity<?> followShop(@PathVariable Long shopId) {
+        try {
+            Long userId = authorizationHelper.getCurrentUserId()
+                    .orElseThrow(() -> new IllegalStateException("Current user not found"));
+            boolean followed = followService.follow(userId, shopId);
+            return ResponseEntity.ok(ResponseUtil.buildSuccessResponse(
+                    followed ? "Shop followed successfully" : "Already following this shop"));
+        } catch (ResourceNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(ResponseUtil.buildErrorResponse(e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest()
+                    .body(ResponseUtil.buildErrorResponse(e.getMessage()));
+        }
+    }
+
+    @DeleteMapping("/shops/{shopId}")
+    @RequireUserRole
+    public ResponseEntity<?> unfollowShop(@PathVariable Long shopId) {
+        try {
+            Long userId = authorizationHelper.getCurrentUserId()
+                    .orElseThrow(() -> new IllegalStateException("Current user not found"));
+            boolean unfollowed = followService.unfollow(userId, shopId);
+            return ResponseEntity.ok(ResponseUtil.buildSuccessResponse(
+                    unfollowed ? "Shop unfollowed successfully" : "Not following this shop"));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest()
+                    .body(ResponseUtil.buildErrorResponse(e.getMessage()));
+        }
+    }
+
+    @GetMapping("/shops/{shopId}/count")
+    public ResponseEntity<?> getFollowerCount(@PathVariable Long shopId) {
+        return ResponseEntity.ok(followService.getFollowerCount(shopId));
+    }
+
+    @GetMapping("/user/{userId}")
+    @RequireUserRole
+    public ResponseEntity<?> getFollowedShops(@PathVariable Long userId) {
+        if (!authorizationHelper.canModifyResource(userId)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(ResponseUtil.buildErrorResponse("You can only view your own follows"));
+        }
+        return ResponseEntity.ok(followService.getFollowedShopIds(userId));
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.socialmedia.controller;
+
+import com.example.socialmedia.annotation.RequireAdminRole;
+import com.example.socialmedia.dto.JobDto;
+import com.example.socialmedia.service.JobQueue;
+import com.example.socialmedia.util.ResponseUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/jobs")
+public class JobController {
+
+    private final JobQueue jobQueue;
+
+    @Autowired
+    public JobController(JobQueue jobQueue) {
+        this.jobQueue = jobQueue;
+    }
+
+    @GetMapping("/{id}")
+    @RequireAdminRole
+    public ResponseEntity<?> getJob(@PathVariable Long id) {
+        return jobQueue.getJob(id)
+                .<ResponseEntity<?>>map(job -> ResponseEntity.ok(JobDto.from(job)))
+                .orElse(ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(ResponseUtil.buildErrorResponse("Job not found: " + id)));
+    }
+}
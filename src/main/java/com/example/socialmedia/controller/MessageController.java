@@ -1,9 +1,12 @@
 package com.example.socialmedia.controller;
 
 import com.example.socialmedia.annotation.RequireUserRole;
+import com.example.socialmedia.dto.CursorPage;
+import com.example.socialmedia.exception.ResourceNotFoundException;
 import com.example.socialmedia.model.Message;
 import com.example.socialmedia.security.AuthorizationHelper;
 import com.example.socialmedia.service.MessageService;
+import com.example.socialmedia.util.KeysetPagination;
 import com.example.socialmedia.util.ResponseUtil;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -11,8 +14,6 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
-
 @RestController
 @RequestMapping("/api/messages")
 public class MessageController {
@@ -26,23 +27,44 @@ public class MessageController {
         this.authorizationHelper = authorizationHelper;
     }
 
+    // Newest first; hidden messages are left out
     @GetMapping("/shop/{shopId}")
     @RequireUserRole
-    public List<Message> getShopMessages(@PathVariable Long shopId) {
-        return messageService.getMessagesByShop(shopId);
+    public CursorPage<Message> getShopMessages(@PathVariable Long shopId,
+                                               @RequestParam(required = false) String cursor,
+                                               @RequestParam(defaultValue = "" + KeysetPagination.DEFAULT_PAGE_SIZE) int size) {
+        return messageService.getMessagesByShop(shopId, cursor, size);
+    }
+
+    // Messages missed since the last one a reconnecting client saw, oldest first
+    @GetMapping("/shop/{shopId}/since/{messageId}")
+    @RequireUserRole
+    public ResponseEntity<?> getShopMessagesSince(@PathVariable Long shopId, @PathVariable String messageId,
+                                                  @RequestParam(defaultValue = "" + KeysetPagination.MAX_PAGE_SIZE) int size) {
+        try {
+            return ResponseEntity.ok(messageService.getMessagesSince(shopId, messageId, size));
+        } catch (ResourceNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(ResponseUtil.buildErrorResponse(e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest()
+                    .body(ResponseUtil.buildErrorResponse(e.getMessage()));
+        }
     }
 
     @PostMapping("/user/{userId}/shop/{shopId}")
     @RequireUserRole
     public ResponseEntity<?> sendMessage(@PathVariable Long userId, @PathVariable Long shopId, @Valid @RequestBody Message message) {
-        // User can only send messages for themselves
-        if (!authorizationHelper.canModifyResource(userId)) {
+        // User can only send messages for themselves; the sender comes from the token, not the database
+        Long senderId = authorizationHelper.getCurrentUserId().orElse(null);
+        String senderUsername = authorizationHelper.getCurrentUsername().orElse(null);
+        if (senderId == null || !senderId.equals(userId)) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN)
                     .body(ResponseUtil.buildErrorResponse("You can only send messages for your own account"));
         }
         
         try {
-            Message sentMessage = messageService.sendMessage(userId, shopId, message);
+            Message sentMessage = messageService.sendMessage(senderId, senderUsername, shopId, message);
             return ResponseEntity.ok(sentMessage);
         } catch (Exception e) {
             return ResponseEntity.badRequest()
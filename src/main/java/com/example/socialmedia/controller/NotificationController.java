@@ -2,55 +2,167 @@ package com.example.socialmedia.controller;
 
 import com.example.socialmedia.annotation.RequireAdminRole;
 import com.example.socialmedia.annotation.RequireUserRole;
+import com.example.socialmedia.dto.BroadcastProgress;
+import com.example.socialmedia.dto.CursorPage;
+import com.example.socialmedia.dto.MarkReadRequest;
+import com.example.socialmedia.dto.NotificationDto;
+import com.example.socialmedia.exception.ResourceNotFoundException;
 import com.example.socialmedia.model.Notification;
 import com.example.socialmedia.security.AuthorizationHelper;
+import com.example.socialmedia.service.NotificationReadCoalescer;
 import com.example.socialmedia.service.NotificationService;
+import com.example.socialmedia.util.KeysetPagination;
 import com.example.socialmedia.util.ResponseUtil;
+import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/api/notifications")
 public class NotificationController {
 
+    private static final long MARK_READ_TIMEOUT_SECONDS = 5;
+
     private final NotificationService notificationService;
+    private final NotificationReadCoalescer readCoalescer;
     private final AuthorizationHelper authorizationHelper;
 
     @Autowired
-    public NotificationController(NotificationService notificationService, AuthorizationHelper authorizationHelper) {
+    public NotificationController(NotificationService notificationService, NotificationReadCoalescer readCoalescer,
+                                  AuthorizationHelper authorizationHelper) {
         this.notificationService = notificationService;
+        this.readCoalescer = readCoalescer;
         this.authorizationHelper = authorizationHelper;
     }
 
+    /**
+     * @deprecated returns a plain list, as before the inbox was paged: only the newest
+     * {@link KeysetPagination#MAX_PAGE_SIZE} notifications. Use {@code /user/{userId}/inbox}.
+     */
+    @Deprecated
     @GetMapping("/user/{userId}")
     @RequireUserRole
     public ResponseEntity<?> getUserNotifications(@PathVariable Long userId) {
-        // Users can only view their own notifications
+        ResponseEntity<?> response = getInbox(userId, null, KeysetPagination.MAX_PAGE_SIZE);
+        if (!(response.getBody() instanceof CursorPage<?> page)) {
+            return response;
+        }
+        return ResponseEntity.ok()
+                .header("Deprecation", "true")
+                .header("Link", "</api/notifications/user/" + userId + "/inbox>; rel=\"successor-version\"")
+                .body(page.getItems());
+    }
+
+    @GetMapping("/user/{userId}/inbox")
+    @RequireUserRole
+    public ResponseEntity<?> getInbox(@PathVariable Long userId,
+                                      @RequestParam(required = false) String cursor,
+                                      @RequestParam(defaultValue = "" + KeysetPagination.DEFAULT_PAGE_SIZE) int size) {
         if (!authorizationHelper.canModifyResource(userId)) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN)
                     .body(ResponseUtil.buildErrorResponse("You can only view your own notifications"));
         }
-        
-        List<Notification> notifications = notificationService.getUserNotifications(userId);
-        return ResponseEntity.ok(notifications);
+
+        try {
+            CursorPage<NotificationDto> page = notificationService.getInbox(userId, cursor, size);
+            return ResponseEntity.ok(page);
+        } catch (ResourceNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(ResponseUtil.buildErrorResponse(e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest()
+                    .body(ResponseUtil.buildErrorResponse(e.getMessage()));
+        }
+    }
+
+    @GetMapping("/user/{userId}/unread-count")
+    @RequireUserRole
+    public ResponseEntity<?> getUnreadCount(@PathVariable Long userId) {
+        if (!authorizationHelper.canModifyResource(userId)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(ResponseUtil.buildErrorResponse("You can only view your own notifications"));
+        }
+
+        return ResponseEntity.ok(notificationService.getUnreadCount(userId));
     }
 
     @PutMapping("/{id}/read")
     @RequireUserRole
-    public ResponseEntity<?> markAsRead(@PathVariable Long id) {
+    public ResponseEntity<?> markAsRead(@PathVariable Long id, @RequestParam(defaultValue = "false") boolean broadcast) {
         try {
-            notificationService.markAsRead(id);
+            Long userId = authorizationHelper.getCurrentUserId()
+                    .orElseThrow(() -> new IllegalStateException("Current user not found"));
+            if (broadcast) {
+                notificationService.markBroadcastAsRead(userId, id);
+            } else {
+                awaitMarkRead(userId, List.of(id), null);
+            }
             return ResponseEntity.ok(ResponseUtil.buildSuccessResponse("Notification marked as read"));
         } catch (Exception e) {
             return ResponseEntity.badRequest()
                     .body(ResponseUtil.buildErrorResponse(e.getMessage()));
         }
     }
+
+    @PutMapping("/read")
+    @RequireUserRole
+    public ResponseEntity<?> markManyAsRead(@Valid @RequestBody MarkReadRequest request) {
+        try {
+            Long userId = authorizationHelper.getCurrentUserId()
+                    .orElseThrow(() -> new IllegalStateException("Current user not found"));
+            awaitMarkRead(userId, request.getIds(), null);
+            return ResponseEntity.ok(ResponseUtil.buildSuccessResponse("Notifications marked as read"));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest()
+                    .body(ResponseUtil.buildErrorResponse(e.getMessage()));
+        }
+    }
+
+    // Marks personal notifications and broadcasts created up to 'before' (default: now) as read
+    @PutMapping("/read-all")
+    @RequireUserRole
+    public ResponseEntity<?> markAllAsRead(@RequestParam(required = false) Instant before) {
+        try {
+            Long userId = authorizationHelper.getCurrentUserId()
+                    .orElseThrow(() -> new IllegalStateException("Current user not found"));
+            awaitMarkRead(userId, null, before != null ? before : Instant.now());
+            return ResponseEntity.ok(ResponseUtil.buildSuccessResponse("Notifications marked as read"));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest()
+                    .body(ResponseUtil.buildErrorResponse(e.getMessage()));
+        }
+    }
     
+    @PutMapping("/broadcasts/read-all")
+    @RequireUserRole
+    public ResponseEntity<?> markAllBroadcastsAsRead() {
+        try {
+            Long userId = authorizationHelper.getCurrentUserId()
+                    .orElseThrow(() -> new IllegalStateException("Current user not found"));
+            notificationService.markAllBroadcastsAsRead(userId);
+            return ResponseEntity.ok(ResponseUtil.buildSuccessResponse("Broadcast notifications marked as read"));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest()
+                    .body(ResponseUtil.buildErrorResponse(e.getMessage()));
+        }
+    }
+
+    private void awaitMarkRead(Long userId, Collection<Long> ids, Instant upTo) throws Exception {
+        try {
+            readCoalescer.markAsRead(userId, ids, upTo).get(MARK_READ_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
     // Admin endpoint to broadcast system updates
     @PostMapping("/broadcast")
     @RequireAdminRole
@@ -61,11 +173,20 @@ public class NotificationController {
         }
         
         try {
-            notificationService.broadcastNotification(message, Notification.NotificationType.SYSTEM_UPDATE);
-            return ResponseEntity.ok(ResponseUtil.buildSuccessResponse("Broadcast notification sent"));
+            BroadcastProgress progress = notificationService.broadcastNotification(message, Notification.NotificationType.SYSTEM_UPDATE);
+            return ResponseEntity.accepted().body(progress);
         } catch (Exception e) {
             return ResponseEntity.internalServerError()
                     .body(ResponseUtil.buildErrorResponse(e.getMessage()));
         }
     }
+
+    @GetMapping("/broadcast/{jobId}")
+    @RequireAdminRole
+    public ResponseEntity<?> getBroadcastProgress(@PathVariable String jobId) {
+        return notificationService.getBroadcastProgress(jobId)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElse(ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(ResponseUtil.buildErrorResponse("Broadcast not found: " + jobId)));
+    }
 }
@@ -1,9 +1,15 @@
 package com.example.socialmedia.controller;
 
 import com.example.socialmedia.annotation.RequireShopAdminRole;
+import com.example.socialmedia.annotation.RequireUserRole;
+import com.example.socialmedia.dto.CursorPage;
+import com.example.socialmedia.dto.PostDto;
 import com.example.socialmedia.model.Post;
 import com.example.socialmedia.security.AuthorizationHelper;
+import com.example.socialmedia.service.HomeTimelineService;
+import com.example.socialmedia.service.PostSearchIndex;
 import com.example.socialmedia.service.PostService;
+import com.example.socialmedia.util.KeysetPagination;
 import com.example.socialmedia.util.ResponseUtil;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -18,17 +24,56 @@ public class PostController {
 
     private final PostService postService;
     private final AuthorizationHelper authorizationHelper;
+    private final HomeTimelineService homeTimelineService;
 
     @Autowired
-    public PostController(PostService postService, AuthorizationHelper authorizationHelper) {
+    public PostController(PostService postService, AuthorizationHelper authorizationHelper,
+                          HomeTimelineService homeTimelineService) {
         this.postService = postService;
         this.authorizationHelper = authorizationHelper;
+        this.homeTimelineService = homeTimelineService;
     }
 
     @GetMapping
-    public ResponseEntity<?> getAllPosts() {
+    public ResponseEntity<?> getAllPosts(@RequestParam(required = false) String cursor,
+                                         @RequestParam(defaultValue = "" + KeysetPagination.DEFAULT_PAGE_SIZE) int size) {
         try {
-            List<Post> posts = postService.getAllPosts();
+            CursorPage<PostDto> posts = postService.getAllPosts(cursor, size);
+            return ResponseEntity.ok(posts);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest()
+                    .body(ResponseUtil.buildErrorResponse(e.getMessage()));
+        }
+    }
+
+    // Posts from the shops the current user follows, newest first
+    @GetMapping("/feed")
+    @RequireUserRole
+    public ResponseEntity<?> getHomeFeed(@RequestParam(required = false) String cursor,
+                                         @RequestParam(defaultValue = "" + KeysetPagination.DEFAULT_PAGE_SIZE) int size) {
+        try {
+            Long userId = authorizationHelper.getCurrentUserId()
+                    .orElseThrow(() -> new IllegalStateException("Current user not found"));
+            CursorPage<PostDto> feed = homeTimelineService.getHomeFeed(userId, cursor, size);
+            return ResponseEntity.ok(feed);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest()
+                    .body(ResponseUtil.buildErrorResponse(e.getMessage()));
+        }
+    }
+
+    @GetMapping("/search")
+    public ResponseEntity<?> searchPosts(@RequestParam String q,
+                                         @RequestParam(required = false) Post.PostType type,
+                                         @RequestParam(required = false) Long shopId,
+                                         @RequestParam(defaultValue = "" + PostSearchIndex.DEFAULT_LIMIT) int limit) {
+        if (q == null || q.trim().isEmpty()) {
+            return ResponseEntity.badRequest()
+                    .body(ResponseUtil.buildErrorResponse("Search term cannot be empty"));
+        }
+
+        try {
+            List<PostDto> posts = postService.searchPosts(q, type, shopId, limit);
             return ResponseEntity.ok(posts);
         } catch (Exception e) {
             return ResponseEntity.badRequest()
@@ -37,9 +82,11 @@ public class PostController {
     }
 
     @GetMapping("/shop/{shopId}")
-    public ResponseEntity<?> getPostsByShopId(@PathVariable Long shopId) {
+    public ResponseEntity<?> getPostsByShopId(@PathVariable Long shopId,
+                                              @RequestParam(required = false) String cursor,
+                                              @RequestParam(defaultValue = "" + KeysetPagination.DEFAULT_PAGE_SIZE) int size) {
         try {
-            List<Post> posts = postService.getPostsByShopId(shopId);
+            CursorPage<PostDto> posts = postService.getPostsByShopId(shopId, cursor, size);
             return ResponseEntity.ok(posts);
         } catch (Exception e) {
             return ResponseEntity.badRequest()
@@ -54,7 +101,7 @@ public class PostController {
             String username = authorizationHelper.getCurrentUsername()
                     .orElseThrow(() -> new IllegalStateException("Current user not found"));
             
-            Post created = postService.createPost(shopId, post, username);
+            PostDto created = postService.createPost(shopId, post, username);
             return ResponseEntity.ok(created);
         } catch (Exception e) {
             return ResponseEntity.badRequest()
@@ -3,15 +3,23 @@ package com.example.socialmedia.controller;
 import com.example.socialmedia.annotation.RequireShopAdminRole;
 import com.example.socialmedia.annotation.RequireUserRole;
 import com.example.socialmedia.annotation.RequireAdminRole;
+import com.example.socialmedia.dto.CursorPage;
+import com.example.socialmedia.dto.ReservationDto;
 import com.example.socialmedia.model.Reservation;
+import com.example.socialmedia.model.ShopSlotCapacity;
+import com.example.socialmedia.repository.ShopRepository;
 import com.example.socialmedia.security.AuthorizationHelper;
+import com.example.socialmedia.service.ReservationCapacityService;
 import com.example.socialmedia.service.ReservationService;
+import com.example.socialmedia.util.KeysetPagination;
 import com.example.socialmedia.util.ResponseUtil;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
 import java.util.List;
 
 @RestController
@@ -19,17 +27,24 @@ import java.util.List;
 public class ReservationController {
 
     private final ReservationService reservationService;
+    private final ReservationCapacityService capacityService;
+    private final ShopRepository shopRepository;
     private final AuthorizationHelper authorizationHelper;
 
     @Autowired
-    public ReservationController(ReservationService reservationService, AuthorizationHelper authorizationHelper) {
+    public ReservationController(ReservationService reservationService, ReservationCapacityService capacityService,
+                                 ShopRepository shopRepository, AuthorizationHelper authorizationHelper) {
         this.reservationService = reservationService;
+        this.capacityService = capacityService;
+        this.shopRepository = shopRepository;
         this.authorizationHelper = authorizationHelper;
     }
 
     @GetMapping("/user/{userId}")
     @RequireUserRole
-    public ResponseEntity<?> getUserReservations(@PathVariable Long userId) {
+    public ResponseEntity<?> getUserReservations(@PathVariable Long userId,
+                                                 @RequestParam(required = false) String cursor,
+                                                 @RequestParam(defaultValue = "" + KeysetPagination.DEFAULT_PAGE_SIZE) int size) {
         // Users can only view their own reservations
         if (!authorizationHelper.canModifyResource(userId)) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN)
@@ -37,7 +52,7 @@ public class ReservationController {
         }
         
         try {
-            List<Reservation> reservations = reservationService.getReservationsByUser(userId);
+            CursorPage<ReservationDto> reservations = reservationService.getReservationsByUser(userId, cursor, size);
             return ResponseEntity.ok(reservations);
         } catch (Exception e) {
             return ResponseEntity.badRequest()
@@ -47,9 +62,11 @@ public class ReservationController {
     
     @GetMapping("/shop/{shopId}")
     @RequireShopAdminRole
-    public ResponseEntity<?> getShopReservations(@PathVariable Long shopId) {
+    public ResponseEntity<?> getShopReservations(@PathVariable Long shopId,
+                                                 @RequestParam(required = false) String cursor,
+                                                 @RequestParam(defaultValue = "" + KeysetPagination.DEFAULT_PAGE_SIZE) int size) {
         try {
-            List<Reservation> reservations = reservationService.getReservationsByShop(shopId);
+            CursorPage<ReservationDto> reservations = reservationService.getReservationsByShop(shopId, cursor, size);
             return ResponseEntity.ok(reservations);
         } catch (Exception e) {
             return ResponseEntity.badRequest()
@@ -57,6 +74,50 @@ public class ReservationController {
         }
     }
 
+    @GetMapping("/shop/{shopId}/capacity")
+    @RequireUserRole
+    public ResponseEntity<?> getCapacity(@PathVariable Long shopId) {
+        try {
+            return ResponseEntity.ok(capacityService.getCapacity(shopId));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest()
+                    .body(ResponseUtil.buildErrorResponse(e.getMessage()));
+        }
+    }
+
+    @GetMapping("/shop/{shopId}/availability")
+    @RequireUserRole
+    public ResponseEntity<?> getAvailability(@PathVariable Long shopId,
+                                             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        try {
+            return ResponseEntity.ok(capacityService.getAvailability(shopId, from, to));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest()
+                    .body(ResponseUtil.buildErrorResponse(e.getMessage()));
+        }
+    }
+
+    @PutMapping("/shop/{shopId}/capacity")
+    @RequireShopAdminRole
+    public ResponseEntity<?> setCapacity(@PathVariable Long shopId, @RequestBody List<ShopSlotCapacity> rules) {
+        try {
+            return shopRepository.findWithOwnerById(shopId)
+                    .map(shop -> {
+                        if (!authorizationHelper.isAdmin() &&
+                            (shop.getOwner() == null || !authorizationHelper.canModifyResource(shop.getOwner().getId()))) {
+                            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                                    .<Object>body(ResponseUtil.buildErrorResponse("You can only manage capacity of your own shops"));
+                        }
+                        return ResponseEntity.<Object>ok(capacityService.setCapacity(shopId, rules));
+                    })
+                    .orElse(ResponseEntity.notFound().build());
+        } catch (Exception e) {
+            return ResponseEntity.badRequest()
+                    .body(ResponseUtil.buildErrorResponse(e.getMessage()));
+        }
+    }
+
     @PostMapping("/user/{userId}/shop/{shopId}")
     @RequireUserRole
     public ResponseEntity<?> createReservation(@PathVariable Long userId, @PathVariable Long shopId, @RequestBody Reservation reservation) {
@@ -67,7 +128,7 @@ public class ReservationController {
         }
         
         try {
-            Reservation created = reservationService.createReservation(userId, shopId, reservation);
+            ReservationDto created = reservationService.createReservation(userId, shopId, reservation);
             return ResponseEntity.ok(created);
         } catch (Exception e) {
             return ResponseEntity.badRequest()
@@ -79,7 +140,7 @@ public class ReservationController {
     @RequireShopAdminRole
     public ResponseEntity<?> updateStatus(@PathVariable Long id, @RequestParam Reservation.ReservationStatus status) {
         try {
-            Reservation updated = reservationService.updateStatus(id, status);
+            ReservationDto updated = reservationService.updateStatus(id, status);
             return ResponseEntity.ok(updated);
         } catch (Exception e) {
             return ResponseEntity.badRequest()
@@ -91,7 +152,7 @@ public class ReservationController {
     @RequireUserRole
     public ResponseEntity<?> processPayment(@PathVariable Long id, @RequestBody com.example.socialmedia.dto.PaymentRequest paymentRequest) {
         try {
-            Reservation updated = reservationService.processPayment(id, paymentRequest);
+            ReservationDto updated = reservationService.processPayment(id, paymentRequest);
             return ResponseEntity.ok(updated);
         } catch (Exception e) {
             return ResponseEntity.badRequest()
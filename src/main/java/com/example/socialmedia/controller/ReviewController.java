@@ -1,9 +1,14 @@
 package com.example.socialmedia.controller;
 
+import com.example.socialmedia.annotation.RequireAdminRole;
 import com.example.socialmedia.annotation.RequireUserRole;
+import com.example.socialmedia.dto.CursorPage;
+import com.example.socialmedia.dto.JobDto;
+import com.example.socialmedia.dto.ReviewDto;
 import com.example.socialmedia.model.Review;
 import com.example.socialmedia.security.AuthorizationHelper;
 import com.example.socialmedia.service.ReviewService;
+import com.example.socialmedia.util.KeysetPagination;
 import com.example.socialmedia.util.ResponseUtil;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -11,7 +16,6 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
 
 @RestController
 @RequestMapping("/api/reviews")
@@ -27,9 +31,11 @@ public class ReviewController {
     }
 
     @GetMapping("/shop/{shopId}")
-    public ResponseEntity<?> getShopReviews(@PathVariable Long shopId) {
+    public ResponseEntity<?> getShopReviews(@PathVariable Long shopId,
+                                            @RequestParam(required = false) String cursor,
+                                            @RequestParam(defaultValue = "" + KeysetPagination.DEFAULT_PAGE_SIZE) int size) {
         try {
-            List<Review> reviews = reviewService.getReviewsByShop(shopId);
+            CursorPage<ReviewDto> reviews = reviewService.getReviewsByShop(shopId, cursor, size);
             return ResponseEntity.ok(reviews);
         } catch (Exception e) {
             return ResponseEntity.badRequest()
@@ -37,6 +43,18 @@ public class ReviewController {
         }
     }
 
+    // Rebuild every shop's rating sum, count and histogram from its reviews, as a background job
+    @PostMapping("/ratings/repair")
+    @RequireAdminRole
+    public ResponseEntity<?> repairRatingAggregates() {
+        try {
+            return ResponseEntity.accepted().body(JobDto.from(reviewService.queueRatingRepair()));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest()
+                    .body(ResponseUtil.buildErrorResponse(e.getMessage()));
+        }
+    }
+
     @PostMapping("/user/{userId}/shop/{shopId}")
     @RequireUserRole
     public ResponseEntity<?> addReview(@PathVariable Long userId, @PathVariable Long shopId, @Valid @RequestBody Review review) {
@@ -47,7 +65,7 @@ public class ReviewController {
         }
         
         try {
-            Review addedReview = reviewService.addReview(userId, shopId, review);
+            ReviewDto addedReview = reviewService.addReview(userId, shopId, review);
             return ResponseEntity.ok(addedReview);
         } catch (Exception e) {
             return ResponseEntity.badRequest()
@@ -3,20 +3,37 @@ package com.example.socialmedia.controller;
 import com.example.socialmedia.annotation.RequireShopAdminRole;
 import com.example.socialmedia.annotation.RequireUserRole;
 import com.example.socialmedia.annotation.RequireAdminRole;
+import com.example.socialmedia.dto.NearbyShopDto;
+import com.example.socialmedia.dto.ShopClusterDto;
+import com.example.socialmedia.dto.ShopDto;
 import com.example.socialmedia.exception.ResourceNotFoundException;
 import com.example.socialmedia.model.Shop;
 import com.example.socialmedia.model.User;
 import com.example.socialmedia.repository.ShopRepository;
 import com.example.socialmedia.repository.UserRepository;
 import com.example.socialmedia.security.AuthorizationHelper;
+import com.example.socialmedia.service.FollowService;
+import com.example.socialmedia.service.IndexSyncService;
+import com.example.socialmedia.service.MessageService;
+import com.example.socialmedia.service.ReservationCapacityService;
+import com.example.socialmedia.service.ShopClusterService;
+import com.example.socialmedia.service.ShopGeoIndex;
+import com.example.socialmedia.service.ShopSearchIndex;
+import com.example.socialmedia.util.KeysetCursor;
+import com.example.socialmedia.util.KeysetPagination;
 import com.example.socialmedia.util.ResponseUtil;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/shops")
@@ -25,19 +42,49 @@ public class ShopController {
     private final ShopRepository shopRepository;
     private final UserRepository userRepository;
     private final AuthorizationHelper authorizationHelper;
+    private final FollowService followService;
+    private final ShopGeoIndex geoIndex;
+    private final IndexSyncService indexSync;
+    private final ShopClusterService clusterService;
+    private final ShopSearchIndex searchIndex;
+    private final ReservationCapacityService capacityService;
+    private final MessageService messageService;
+    private final TransactionTemplate transactionTemplate;
 
     @Autowired
-    public ShopController(ShopRepository shopRepository, UserRepository userRepository, AuthorizationHelper authorizationHelper) {
+    public ShopController(ShopRepository shopRepository, UserRepository userRepository, AuthorizationHelper authorizationHelper,
+                          FollowService followService, ShopGeoIndex geoIndex, IndexSyncService indexSync,
+                          ShopClusterService clusterService,
+                          ShopSearchIndex searchIndex,
+                          ReservationCapacityService capacityService, MessageService messageService,
+                          TransactionTemplate transactionTemplate) {
         this.shopRepository = shopRepository;
         this.userRepository = userRepository;
         this.authorizationHelper = authorizationHelper;
+        this.followService = followService;
+        this.geoIndex = geoIndex;
+        this.indexSync = indexSync;
+        this.clusterService = clusterService;
+        this.searchIndex = searchIndex;
+        this.capacityService = capacityService;
+        this.messageService = messageService;
+        this.transactionTemplate = transactionTemplate;
     }
 
     @GetMapping
-    public ResponseEntity<?> getAllShops() {
+    public ResponseEntity<?> getAllShops(@RequestParam(required = false) String cursor,
+                                         @RequestParam(defaultValue = "" + KeysetPagination.DEFAULT_PAGE_SIZE) int size) {
         try {
-            List<Shop> shops = shopRepository.findAll();
-            return ResponseEntity.ok(shops);
+            int pageSize = KeysetPagination.clamp(size);
+            List<ShopDto> shops;
+            if (KeysetPagination.isFirstPage(cursor)) {
+                shops = shopRepository.findPage(KeysetPagination.limit(pageSize));
+            } else {
+                KeysetCursor after = KeysetCursor.decode(cursor);
+                shops = shopRepository.findPageAfter(after.getKey(), after.getId(), KeysetPagination.limit(pageSize));
+            }
+            return ResponseEntity.ok(KeysetPagination.toPage(shops, pageSize,
+                    shop -> KeysetCursor.encode(shop.getName(), shop.getId())));
         } catch (Exception e) {
             return ResponseEntity.badRequest()
                     .body(ResponseUtil.buildErrorResponse(e.getMessage()));
@@ -47,7 +94,7 @@ public class ShopController {
     @GetMapping("/{id}")
     public ResponseEntity<?> getShopById(@PathVariable Long id) {
         try {
-            return shopRepository.findById(id)
+            return shopRepository.findDtoById(id)
                     .map(ResponseEntity::ok)
                     .orElse(ResponseEntity.notFound().build());
         } catch (Exception e) {
@@ -57,14 +104,22 @@ public class ShopController {
     }
     
     @GetMapping("/search")
-    public ResponseEntity<?> searchShops(@RequestParam String name) {
+    public ResponseEntity<?> searchShops(@RequestParam String name,
+                                         @RequestParam(defaultValue = "" + ShopSearchIndex.DEFAULT_LIMIT) int limit) {
         if (name == null || name.trim().isEmpty()) {
             return ResponseEntity.badRequest()
                     .body(ResponseUtil.buildErrorResponse("Search term cannot be empty"));
         }
         
         try {
-            List<Shop> shops = shopRepository.findByNameContainingIgnoreCase(name);
+            // Ranked ids from the in-memory index, then one lookup by primary key
+            List<Long> ids = searchIndex.search(name, limit);
+            Map<Long, ShopDto> byId = ids.isEmpty() ? Map.of() : shopRepository.findDtosByIdIn(ids).stream()
+                    .collect(Collectors.toMap(ShopDto::getId, Function.identity()));
+            List<ShopDto> shops = ids.stream()
+                    .map(byId::get)
+                    .filter(Objects::nonNull)
+                    .toList();
             return ResponseEntity.ok(shops);
         } catch (Exception e) {
             return ResponseEntity.badRequest()
@@ -76,7 +131,8 @@ public class ShopController {
     public ResponseEntity<?> getNearbyShops(
             @RequestParam double lat,
             @RequestParam double lng,
-            @RequestParam(defaultValue = "10.0") double radius) {
+            @RequestParam(defaultValue = "10.0") double radius,
+            @RequestParam(defaultValue = "" + ShopGeoIndex.DEFAULT_LIMIT) int limit) {
         
         if (lat < -90 || lat > 90 || lng < -180 || lng > 180) {
             return ResponseEntity.badRequest()
@@ -89,7 +145,35 @@ public class ShopController {
         }
         
         try {
-            List<Shop> shops = shopRepository.findShopsNearby(lat, lng, radius);
+            // Nearest first, served from the in-memory index
+            List<ShopDto> shops = geoIndex.findNearby(lat, lng, radius, limit);
+            return ResponseEntity.ok(shops);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest()
+                    .body(ResponseUtil.buildErrorResponse(e.getMessage()));
+        }
+    }
+
+    // The k closest shops with their distances, optionally rated at least minRating
+    @GetMapping("/nearest")
+    public ResponseEntity<?> getNearestShops(
+            @RequestParam double lat,
+            @RequestParam double lng,
+            @RequestParam(defaultValue = "10") int k,
+            @RequestParam(required = false) Double minRating) {
+
+        if (lat < -90 || lat > 90 || lng < -180 || lng > 180) {
+            return ResponseEntity.badRequest()
+                    .body(ResponseUtil.buildErrorResponse("Invalid latitude or longitude"));
+        }
+
+        if (k <= 0 || k > ShopGeoIndex.MAX_LIMIT) {
+            return ResponseEntity.badRequest()
+                    .body(ResponseUtil.buildErrorResponse("k must be between 1 and " + ShopGeoIndex.MAX_LIMIT));
+        }
+
+        try {
+            List<NearbyShopDto> shops = geoIndex.findNearest(lat, lng, k, minRating);
             return ResponseEntity.ok(shops);
         } catch (Exception e) {
             return ResponseEntity.badRequest()
@@ -97,6 +181,35 @@ public class ShopController {
         }
     }
 
+    // Map markers for a viewport: shops grouped per grid cell at the zoom level
+    @GetMapping("/clusters")
+    public ResponseEntity<?> getShopClusters(
+            @RequestParam double minLat,
+            @RequestParam double minLng,
+            @RequestParam double maxLat,
+            @RequestParam double maxLng,
+            @RequestParam int zoom) {
+
+        if (minLat < -90 || maxLat > 90 || minLat > maxLat || minLng < -180 || minLng > 180
+                || maxLng < -180 || maxLng > 180) {
+            return ResponseEntity.badRequest()
+                    .body(ResponseUtil.buildErrorResponse("Invalid bounding box"));
+        }
+
+        if (zoom < 0 || zoom > ShopClusterService.MAX_ZOOM) {
+            return ResponseEntity.badRequest()
+                    .body(ResponseUtil.buildErrorResponse("Zoom must be between 0 and " + ShopClusterService.MAX_ZOOM));
+        }
+
+        try {
+            List<ShopClusterDto> clusters = clusterService.getClusters(minLat, minLng, maxLat, maxLng, zoom);
+            return ResponseEntity.ok(clusters);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest()
+                    .body(ResponseUtil.buildErrorResponse(e.getMessage()));
+        }
+    }
+
     @PostMapping("/user/{userId}")
     @RequireShopAdminRole
     public ResponseEntity<?> createShop(@PathVariable Long userId, @Valid @RequestBody Shop shop) {
@@ -107,11 +220,15 @@ public class ShopController {
         }
         
         try {
-            User owner = userRepository.findById(userId)
-                    .orElseThrow(() -> new ResourceNotFoundException("User not found with id: " + userId));
-            
-            shop.setOwner(owner);
-            Shop created = shopRepository.save(shop);
+            ShopDto created = transactionTemplate.execute(status -> {
+                User owner = userRepository.findById(userId)
+                        .orElseThrow(() -> new ResourceNotFoundException("User not found with id: " + userId));
+
+                shop.setOwner(owner);
+                ShopDto saved = ShopDto.from(shopRepository.save(shop));
+                indexSync.shopSaved(saved);
+                return saved;
+            });
             return ResponseEntity.ok(created);
         } catch (ResourceNotFoundException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
@@ -126,7 +243,7 @@ public class ShopController {
     @RequireShopAdminRole
     public ResponseEntity<?> updateShop(@PathVariable Long id, @Valid @RequestBody Shop shopDetails) {
         try {
-            return shopRepository.findById(id)
+            return transactionTemplate.execute(status -> shopRepository.findWithOwnerById(id)
                     .map(shop -> {
                         // Check if user is the owner or admin
                         if (!authorizationHelper.isAdmin() && 
@@ -140,9 +257,11 @@ public class ShopController {
                         shop.setAddress(shopDetails.getAddress());
                         shop.setLatitude(shopDetails.getLatitude());
                         shop.setLongitude(shopDetails.getLongitude());
-                        return ResponseEntity.ok(shopRepository.save(shop));
+                        ShopDto updated = ShopDto.from(shopRepository.save(shop));
+                        indexSync.shopSaved(updated);
+                        return ResponseEntity.ok(updated);
                     })
-                    .orElse(ResponseEntity.notFound().build());
+                    .orElse(ResponseEntity.notFound().build()));
         } catch (Exception e) {
             return ResponseEntity.badRequest()
                     .body(ResponseUtil.buildErrorResponse(e.getMessage()));
@@ -153,7 +272,15 @@ public class ShopController {
     @RequireAdminRole
     public ResponseEntity<?> deleteShop(@PathVariable Long id) {
         try {
-            shopRepository.deleteById(id);
+            // One transaction: follows, capacity rows and posts go with the shop, and their
+            // in-memory indexes are cleared after commit
+            transactionTemplate.executeWithoutResult(status -> {
+                shopRepository.deleteById(id);
+                followService.removeShop(id);
+                capacityService.removeShop(id);
+                indexSync.shopDeleted(id);
+            });
+            messageService.removeShop(id);
             return ResponseEntity.ok(ResponseUtil.buildSuccessResponse("Shop deleted successfully"));
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
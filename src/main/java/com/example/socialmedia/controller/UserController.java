@@ -4,9 +4,12 @@ import com.example.socialmedia.annotation.RequireAdminRole;
 import com.example.socialmedia.annotation.RequireUserRole;
 import com.example.socialmedia.annotation.RequireResourceOwner;
 import com.example.socialmedia.dto.ChangePasswordRequest;
+import com.example.socialmedia.dto.CursorPage;
+import com.example.socialmedia.dto.JobDto;
 import com.example.socialmedia.model.User;
 import com.example.socialmedia.security.AuthorizationHelper;
 import com.example.socialmedia.service.UserService;
+import com.example.socialmedia.util.KeysetPagination;
 import com.example.socialmedia.util.ResponseUtil;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -14,8 +17,6 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
-
 @RestController
 @RequestMapping("/api/users")
 public class UserController {
@@ -31,8 +32,9 @@ public class UserController {
 
     @GetMapping
     @RequireAdminRole
-    public List<User> getAllUsers() {
-        return userService.getAllUsers();
+    public CursorPage<User> getAllUsers(@RequestParam(required = false) String cursor,
+                                        @RequestParam(defaultValue = "" + KeysetPagination.DEFAULT_PAGE_SIZE) int size) {
+        return userService.getAllUsers(cursor, size);
     }
 
     @GetMapping("/{id}")
@@ -85,8 +87,8 @@ public class UserController {
     @RequireAdminRole
     public ResponseEntity<?> deleteUser(@PathVariable Long id) {
         try {
-            userService.deleteUser(id);
-            return ResponseEntity.ok(ResponseUtil.buildSuccessResponse("User deleted successfully"));
+            // The user and everything referencing them are removed by a background job
+            return ResponseEntity.accepted().body(JobDto.from(userService.queueDeleteUser(id)));
         } catch (RuntimeException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
                     .body(ResponseUtil.buildErrorResponse(e.getMessage()));
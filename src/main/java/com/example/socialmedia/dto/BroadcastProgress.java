@@ -0,0 +1,27 @@
+package com.example.socialmedia.dto;
+
+import com.example.socialmedia.model.Notification;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Snapshot of a background broadcast fan-out job.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BroadcastProgress {
+    private String jobId;
+    private Notification.NotificationType type;
+    private String status; // QUEUED, RUNNING, COMPLETED, FAILED
+    private long recipients;
+    private double throughputPerSecond;
+    private Instant startedAt;
+    private Instant finishedAt;
+    private String error;
+}
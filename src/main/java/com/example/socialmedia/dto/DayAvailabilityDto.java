@@ -0,0 +1,19 @@
+package com.example.socialmedia.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * The reservation slots of a shop on one day, in start order.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DayAvailabilityDto {
+    private LocalDate date;
+    private List<SlotAvailabilityDto> slots;
+}
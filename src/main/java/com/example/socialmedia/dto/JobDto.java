@@ -0,0 +1,42 @@
+package com.example.socialmedia.dto;
+
+import com.example.socialmedia.model.BackgroundJob;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Status of a background job, without its payload and checkpoint.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class JobDto {
+    private Long id;
+    private String type;
+    private BackgroundJob.Status status;
+    private Integer attempts;
+    private Integer maxAttempts;
+    private Instant runAt;
+    private String lastError;
+    private Instant createdDate;
+    private Instant finishedDate;
+
+    public static JobDto from(BackgroundJob job) {
+        return JobDto.builder()
+                .id(job.getId())
+                .type(job.getType())
+                .status(job.getStatus())
+                .attempts(job.getAttempts())
+                .maxAttempts(job.getMaxAttempts())
+                .runAt(job.getRunAt())
+                .lastError(job.getLastError())
+                .createdDate(job.getCreatedDate())
+                .finishedDate(job.getFinishedDate())
+                .build();
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.socialmedia.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class MarkReadRequest {
+    @NotEmpty(message = "At least one notification id is required")
+    @Size(max = 1000, message = "At most 1000 notifications can be marked per request")
+    private List<Long> ids;
+}
@@ -0,0 +1,16 @@
+package com.example.socialmedia.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A shop together with its great-circle distance from the query point.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NearbyShopDto {
+    private ShopDto shop;
+    private double distanceKm;
+}
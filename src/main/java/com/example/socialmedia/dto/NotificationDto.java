@@ -0,0 +1,29 @@
+package com.example.socialmedia.dto;
+
+import com.example.socialmedia.model.Notification;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Lightweight notification frame pushed over WebSocket.
+ * Carries only what clients render, so no User graph is serialized per recipient.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class NotificationDto {
+    private Long id;
+    private Long userId;
+    private String message;
+    private Notification.NotificationType type;
+    private boolean read;
+    private boolean broadcast; // true when stored once in broadcast_notifications
+    private Long shopId;
+    private Integer digestCount; // > 1 when several notifications were merged into this entry
+    private Instant createdDate;
+}
@@ -0,0 +1,37 @@
+package com.example.socialmedia.dto;
+
+import com.example.socialmedia.model.Post;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Read model of a post with the name of its shop.
+ * Field order matches the JPQL constructor expressions in PostRepository.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PostDto {
+    private Long id;
+    private String content;
+    private Post.PostType type;
+    private Long shopId;
+    private String shopName;
+    private Instant createdDate;
+
+    public static PostDto from(Post post) {
+        return PostDto.builder()
+                .id(post.getId())
+                .content(post.getContent())
+                .type(post.getType())
+                .shopId(post.getShop().getId())
+                .shopName(post.getShop().getName())
+                .createdDate(post.getCreatedDate())
+                .build();
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.socialmedia.dto;
+
+import com.example.socialmedia.model.Reservation;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+
+/**
+ * Read model of a reservation with the guest's username and the shop name.
+ * Field order matches the JPQL constructor expressions in ReservationRepository.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReservationDto {
+    private Long id;
+    private Long userId;
+    private String username;
+    private Long shopId;
+    private String shopName;
+    private LocalDateTime reservationTime;
+    private Integer numberOfGuests;
+    private Reservation.ReservationStatus status;
+    private Reservation.PaymentStatus paymentStatus;
+    private Instant createdDate;
+
+    public static ReservationDto from(Reservation reservation) {
+        return ReservationDto.builder()
+                .id(reservation.getId())
+                .userId(reservation.getUser().getId())
+                .username(reservation.getUser().getUsername())
+                .shopId(reservation.getShop().getId())
+                .shopName(reservation.getShop().getName())
+                .reservationTime(reservation.getReservationTime())
+                .numberOfGuests(reservation.getNumberOfGuests())
+                .status(reservation.getStatus())
+                .paymentStatus(reservation.getPaymentStatus())
+                .createdDate(reservation.getCreatedDate())
+                .build();
+    }
+}
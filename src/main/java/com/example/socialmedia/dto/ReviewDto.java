@@ -0,0 +1,39 @@
+package com.example.socialmedia.dto;
+
+import com.example.socialmedia.model.Review;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Read model of a review with the reviewer's username.
+ * Field order matches the JPQL constructor expressions in ReviewRepository.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReviewDto {
+    private Long id;
+    private Integer rating;
+    private String comment;
+    private Long userId;
+    private String username;
+    private Long shopId;
+    private Instant createdDate;
+
+    public static ReviewDto from(Review review) {
+        return ReviewDto.builder()
+                .id(review.getId())
+                .rating(review.getRating())
+                .comment(review.getComment())
+                .userId(review.getUser().getId())
+                .username(review.getUser().getUsername())
+                .shopId(review.getShop().getId())
+                .createdDate(review.getCreatedDate())
+                .build();
+    }
+}
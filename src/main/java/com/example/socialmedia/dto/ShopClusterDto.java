@@ -0,0 +1,19 @@
+package com.example.socialmedia.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A group of nearby shops shown as one map marker: how many there are, their centroid and the
+ * best-rated of them.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ShopClusterDto {
+    private int count;
+    private double latitude;
+    private double longitude;
+    private ShopDto topShop;
+}
@@ -0,0 +1,43 @@
+package com.example.socialmedia.dto;
+
+import com.example.socialmedia.model.Shop;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Read model of a shop: its own columns plus the owner id, without the owner or post graph.
+ * Field order matches the JPQL constructor expressions in ShopRepository.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ShopDto {
+    private Long id;
+    private String name;
+    private String description;
+    private String address;
+    private Double latitude;
+    private Double longitude;
+    private Double rating;
+    private Long ownerId;
+    private Instant createdDate;
+
+    public static ShopDto from(Shop shop) {
+        return ShopDto.builder()
+                .id(shop.getId())
+                .name(shop.getName())
+                .description(shop.getDescription())
+                .address(shop.getAddress())
+                .latitude(shop.getLatitude())
+                .longitude(shop.getLongitude())
+                .rating(shop.getRating())
+                .ownerId(shop.getOwner() != null ? shop.getOwner().getId() : null)
+                .createdDate(shop.getCreatedDate())
+                .build();
+    }
+}
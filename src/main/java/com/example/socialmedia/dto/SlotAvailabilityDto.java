@@ -0,0 +1,20 @@
+package com.example.socialmedia.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Booked and free guest places of one reservation slot.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SlotAvailabilityDto {
+    private LocalDateTime start;
+    private int capacity;
+    private int booked;
+    private int available;
+}
@@ -0,0 +1,33 @@
+package com.example.socialmedia.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * A notification addressed to every user, stored once and merged into each inbox at read time.
+ */
+@Entity
+@Table(name = "broadcast_notifications", indexes = {
+        @Index(name = "idx_broadcast_created_date", columnList = "created_date")
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode(callSuper = true)
+public class BroadcastNotification extends BaseEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private String message;
+
+    @Enumerated(EnumType.STRING)
+    private Notification.NotificationType type;
+
+    private Long shopId;
+
+    @Builder.Default
+    private Integer digestCount = 1;
+}
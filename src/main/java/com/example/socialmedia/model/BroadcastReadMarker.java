@@ -0,0 +1,31 @@
+package com.example.socialmedia.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Records that a user has read a single broadcast above their read watermark.
+ */
+@Entity
+@Table(name = "broadcast_read_markers", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_broadcast_read_user_broadcast", columnNames = {"user_id", "broadcast_id"})
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BroadcastReadMarker {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "broadcast_id", nullable = false)
+    private Long broadcastId;
+}
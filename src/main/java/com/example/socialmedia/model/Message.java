@@ -6,11 +6,14 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
 
 @Document(collection = "messages")
+// Serves a room's visible history in sentAt order either way, with _id breaking ties for keyset paging
+@CompoundIndex(name = "idx_messages_shop_status_sent", def = "{'shopId': 1, 'status': 1, 'sentAt': 1, '_id': 1}")
 @Data
 @Builder
 @NoArgsConstructor
@@ -5,7 +5,9 @@ import jakarta.persistence.*;
 import lombok.*;
 
 @Entity
-@Table(name = "notifications")
+@Table(name = "notifications", indexes = {
+        @Index(name = "idx_notifications_user_created", columnList = "user_id, created_date, id")
+})
 @Data
 @Builder
 @NoArgsConstructor
@@ -17,7 +19,7 @@ public class Notification extends BaseEntity {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @ManyToOne(fetch = FetchType.EAGER)
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false)
     @JsonIgnoreProperties({"password", "posts", "shops"})
     private User user;
@@ -30,6 +32,13 @@ public class Notification extends BaseEntity {
     @Builder.Default
     private boolean isRead = false;
 
+    // Shop the notification is about, used as part of the digest key
+    private Long shopId;
+
+    // Number of notifications merged into this entry by the digest window
+    @Builder.Default
+    private Integer digestCount = 1;
+
 
 
     public enum NotificationType {
@@ -0,0 +1,53 @@
+package com.example.socialmedia.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * A WebSocket push recorded in the same transaction as the data it announces.
+ * Node rows are sent and deleted by the outbox dispatcher of the node that recorded them once the
+ * transaction commits. Fan-out rows have no node: every node sends them to its own sessions, and
+ * they are deleted by age.
+ */
+@Entity
+@Table(name = "websocket_outbox", indexes = {
+        @Index(name = "idx_websocket_outbox_node", columnList = "node_id, id")
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OutboxEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String destination;
+
+    // Node whose broker holds the sessions the frame is for; only that node sends it.
+    // Null for fan-out rows, which every node sends
+    @Column(name = "node_id")
+    private String nodeId;
+
+    // Set for user destinations: the frame goes to this user's sessions, if any are still open
+    @Column(name = "user_id")
+    private Long userId;
+
+    // Fan-out rows only: comma-separated ids of the users to reach, or null for every online user
+    @Column(columnDefinition = "TEXT")
+    private String recipients;
+
+    // JSON body of the frame, serialized when the push is recorded
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String payload;
+
+    @Column(name = "created_date", nullable = false)
+    private Instant createdDate;
+}
@@ -8,7 +8,9 @@ import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 
 @Entity
-@Table(name = "payment_logs")
+@Table(name = "payment_logs", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_payment_logs_transaction", columnNames = "transaction_id")
+})
 @Data
 @Builder
 @NoArgsConstructor
@@ -22,7 +24,8 @@ public class PaymentLog extends BaseEntity {
 
     private Long reservationId; // Reference to the reservation
 
-    private String transactionId; // External Transaction ID
+    @Column(name = "transaction_id", nullable = false)
+    private String transactionId; // External Transaction ID, at most one log per transaction
 
     @Column(columnDefinition = "TEXT")
     private String requestPayload;
@@ -35,4 +38,8 @@ public class PaymentLog extends BaseEntity {
     private String paymentMethod;
     
     private Double amount;
+
+    // JSON of the reservation as first returned for this transaction, returned again to repeats
+    @Column(columnDefinition = "TEXT")
+    private String resultPayload;
 }
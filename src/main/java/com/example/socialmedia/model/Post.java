@@ -6,7 +6,11 @@ import jakarta.validation.constraints.NotBlank;
 import lombok.*;
 
 @Entity
-@Table(name = "posts")
+@Table(name = "posts", indexes = {
+        @Index(name = "idx_posts_shop_id", columnList = "shop_id, id"),
+        @Index(name = "idx_posts_shop_created", columnList = "shop_id, created_date, id"),
+        @Index(name = "idx_posts_created", columnList = "created_date, id")
+})
 @Data
 @Builder
 @NoArgsConstructor
@@ -22,8 +26,10 @@ public class Post extends BaseEntity {
     @Column(columnDefinition = "TEXT")
     private String content;
 
-    @ManyToOne(fetch = FetchType.EAGER)
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "shop_id", nullable = false)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
     @JsonIgnoreProperties({"posts", "owner"})
     private Shop shop;
     
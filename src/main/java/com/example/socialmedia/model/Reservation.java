@@ -7,11 +7,17 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "reservations")
+@Table(name = "reservations", indexes = {
+        @Index(name = "idx_reservations_user_time", columnList = "user_id, reservation_time, id"),
+        @Index(name = "idx_reservations_shop_time", columnList = "shop_id, reservation_time, id"),
+        @Index(name = "idx_reservations_time", columnList = "reservation_time"),
+        @Index(name = "idx_reservations_hold", columnList = "status, payment_status, created_date")
+})
 @Data
 @Builder
 @NoArgsConstructor
@@ -23,19 +29,31 @@ public class Reservation extends BaseEntity {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @ManyToOne(fetch = FetchType.EAGER)
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
     @JsonIgnoreProperties({"password", "posts", "shops"})
     private User user;
 
-    @ManyToOne(fetch = FetchType.EAGER)
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "shop_id", nullable = false)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
     @JsonIgnoreProperties({"posts", "owner"})
     private Shop shop;
 
     private LocalDateTime reservationTime;
     
     private Integer numberOfGuests;
+
+    // Start of the capacity slot holding this reservation's guests; null when the shop had no capacity rules
+    @Column(name = "slot_start")
+    private LocalDateTime slotStart;
+
+    // Smallest reminder offset, in minutes before reservationTime, already sent; null before the first reminder
+    @Column(name = "reminder_offset_sent")
+    private Integer reminderOffsetSent;
     
     @Enumerated(EnumType.STRING)
     @Builder.Default
@@ -8,11 +8,15 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 import java.util.List;
 
 @Entity
-@Table(name = "shops")
+@Table(name = "shops", indexes = {
+        @Index(name = "idx_shops_name", columnList = "name, id"),
+        @Index(name = "idx_shops_updated", columnList = "updated_date")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -35,14 +39,44 @@ public class Shop extends BaseEntity {
     private Double latitude;
     private Double longitude;
 
+    // Rating aggregates are maintained only by single-statement updates in ShopRepository, so
+    // saving a loaded Shop never overwrites them
+    @Column(insertable = false, updatable = false)
     private Double rating; // Average rating
 
-    @OneToOne
+    @Column(insertable = false, updatable = false)
+    private Long ratingSum;
+
+    @Column(insertable = false, updatable = false)
+    private Long ratingCount;
+
+    // Histogram of review ratings, one to five stars
+    @Column(insertable = false, updatable = false)
+    private Long oneStarCount;
+
+    @Column(insertable = false, updatable = false)
+    private Long twoStarCount;
+
+    @Column(insertable = false, updatable = false)
+    private Long threeStarCount;
+
+    @Column(insertable = false, updatable = false)
+    private Long fourStarCount;
+
+    @Column(insertable = false, updatable = false)
+    private Long fiveStarCount;
+
+    // Lazy associations stay out of equals/hashCode/toString so they never trigger a load
+    @OneToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "owner_id")
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
     @JsonIgnoreProperties({"password", "posts", "shops"})
     private User owner;
     
     @OneToMany(mappedBy = "shop", cascade = CascadeType.ALL)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
     @JsonIgnoreProperties("shop")
     private List<Post> posts;
 
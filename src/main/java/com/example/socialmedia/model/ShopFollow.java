@@ -0,0 +1,38 @@
+package com.example.socialmedia.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * A user following a shop. Post notifications for the shop go to its followers only.
+ */
+@Entity
+@Table(name = "shop_follows", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_shop_follows_user_shop", columnNames = {"user_id", "shop_id"})
+}, indexes = {
+        @Index(name = "idx_shop_follows_shop", columnList = "shop_id")
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ShopFollow {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "shop_id", nullable = false)
+    private Long shopId;
+
+    @Column(name = "created_date", nullable = false)
+    private Instant createdDate;
+}
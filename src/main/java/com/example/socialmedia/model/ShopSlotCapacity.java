@@ -0,0 +1,49 @@
+package com.example.socialmedia.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+
+/**
+ * One bookable window of a shop: slots of slotMinutes starting at openTime, each taking up to
+ * capacity guests. A rule with a dayOfWeek applies to that day only and replaces the shop's
+ * every-day rules (dayOfWeek null) on it. Shops without rules take reservations without limit.
+ */
+@Entity
+@Table(name = "shop_slot_capacities", indexes = {
+        @Index(name = "idx_shop_slot_capacities_shop", columnList = "shop_id")
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ShopSlotCapacity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "shop_id", nullable = false)
+    private Long shopId;
+
+    @Enumerated(EnumType.STRING)
+    private DayOfWeek dayOfWeek;
+
+    @Column(nullable = false)
+    private LocalTime openTime;
+
+    @Column(nullable = false)
+    private LocalTime closeTime;
+
+    @Column(nullable = false)
+    private Integer slotMinutes;
+
+    // Guests per slot
+    @Column(nullable = false)
+    private Integer capacity;
+}
@@ -0,0 +1,46 @@
+package com.example.socialmedia.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Check;
+
+import java.time.LocalDateTime;
+
+/**
+ * Guests booked into one reservation slot of a shop. Only changed through the conditional
+ * updates in {@link com.example.socialmedia.repository.SlotOccupancyRepository}, which never take
+ * bookedGuests past the slot's capacity; revision grows with every change so in-memory copies
+ * can tell newer counts from older ones.
+ */
+@Entity
+@Table(name = "slot_occupancy", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_slot_occupancy_shop_slot", columnNames = {"shop_id", "slot_start"})
+})
+@Check(constraints = "booked_guests >= 0")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SlotOccupancy {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "shop_id", nullable = false)
+    private Long shopId;
+
+    @Column(name = "slot_start", nullable = false)
+    private LocalDateTime slotStart;
+
+    @Builder.Default
+    @Column(name = "booked_guests", nullable = false)
+    private Integer bookedGuests = 0;
+
+    @Builder.Default
+    @Column(nullable = false)
+    private Long revision = 0L;
+}
@@ -0,0 +1,33 @@
+package com.example.socialmedia.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Per-user notification bookkeeping. Every broadcast with an id at or below
+ * the watermark counts as read for this user; unreadCount tracks unread personal
+ * notifications so the badge never has to count rows.
+ */
+@Entity
+@Table(name = "user_notification_state")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserNotificationState {
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Builder.Default
+    @Column(nullable = false)
+    private Long broadcastReadWatermark = 0L;
+
+    @Builder.Default
+    @Column(nullable = false)
+    private Long unreadCount = 0L;
+}
@@ -1,11 +1,14 @@
 package com.example.socialmedia.payload;
 
+import com.example.socialmedia.dto.CursorPage;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.time.Instant;
+import java.util.List;
 
 @Data
 @Builder
@@ -15,6 +18,8 @@ public class ApiResponse<T> {
     private int status; // 1 for success, -1 for error
     private String message;
     private T data;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private PageMeta page; // only set on keyset-paginated listings
     private Instant timestamp;
 
     public static <T> ApiResponse<T> success(T data, String message) {
@@ -26,6 +31,20 @@ public class ApiResponse<T> {
                 .build();
     }
 
+    public static <T> ApiResponse<List<T>> page(CursorPage<T> page, String message) {
+        return ApiResponse.<List<T>>builder()
+                .status(1)
+                .message(message)
+                .data(page.getItems())
+                .page(PageMeta.builder()
+                        .size(page.getItems().size())
+                        .hasMore(page.getNextCursor() != null)
+                        .nextCursor(page.getNextCursor())
+                        .build())
+                .timestamp(Instant.now())
+                .build();
+    }
+
     public static <T> ApiResponse<T> error(String message) {
         return ApiResponse.<T>builder()
                 .status(-1)
@@ -0,0 +1,20 @@
+package com.example.socialmedia.payload;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Paging metadata of a keyset-paginated response. Pass nextCursor as the cursor parameter
+ * to fetch the following page.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PageMeta {
+    private int size;
+    private boolean hasMore;
+    private String nextCursor;
+}
@@ -0,0 +1,9 @@
+package com.example.socialmedia.repository;
+
+import com.example.socialmedia.model.BackgroundJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface BackgroundJobRepository extends JpaRepository<BackgroundJob, Long> {
+}
@@ -0,0 +1,36 @@
+package com.example.socialmedia.repository;
+
+import com.example.socialmedia.model.BroadcastNotification;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface BroadcastNotificationRepository extends JpaRepository<BroadcastNotification, Long> {
+    @Query("SELECT b FROM BroadcastNotification b WHERE b.createdDate >= :since " +
+            "ORDER BY b.createdDate DESC, b.id DESC")
+    List<BroadcastNotification> findPage(Instant since, Pageable pageable);
+
+    @Query("SELECT b FROM BroadcastNotification b WHERE b.createdDate >= :since AND " +
+            "(b.createdDate < :createdDate OR (b.createdDate = :createdDate AND b.id < :id)) " +
+            "ORDER BY b.createdDate DESC, b.id DESC")
+    List<BroadcastNotification> findPageBefore(Instant since, Instant createdDate, Long id, Pageable pageable);
+
+    // Broadcasts visible to the user (issued since they joined) that are neither under the watermark
+    // nor marked read; the badge reads at most one page of ids instead of counting them all
+    @Query("SELECT b.id FROM BroadcastNotification b WHERE b.id > :watermark " +
+            "AND b.createdDate >= (SELECT u.createdDate FROM User u WHERE u.id = :userId) " +
+            "AND NOT EXISTS (SELECT m.id FROM BroadcastReadMarker m WHERE m.userId = :userId AND m.broadcastId = b.id)")
+    List<Long> findUnreadIds(Long userId, Long watermark, Pageable pageable);
+
+    @Query("SELECT MAX(b.id) FROM BroadcastNotification b")
+    Optional<Long> findMaxId();
+
+    @Query("SELECT MAX(b.id) FROM BroadcastNotification b WHERE b.createdDate <= :upTo")
+    Optional<Long> findMaxIdUpTo(Instant upTo);
+}
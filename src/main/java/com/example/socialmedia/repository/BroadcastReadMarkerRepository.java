@@ -0,0 +1,22 @@
+package com.example.socialmedia.repository;
+
+import com.example.socialmedia.model.BroadcastReadMarker;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface BroadcastReadMarkerRepository extends JpaRepository<BroadcastReadMarker, Long> {
+    @Query("SELECT m.broadcastId FROM BroadcastReadMarker m WHERE m.userId = :userId AND m.broadcastId > :watermark")
+    List<Long> findBroadcastIdsAbove(Long userId, Long watermark);
+
+    boolean existsByUserIdAndBroadcastId(Long userId, Long broadcastId);
+
+    // Markers at or below the watermark carry no information once the watermark has moved past them
+    @Modifying
+    @Query("DELETE FROM BroadcastReadMarker m WHERE m.userId = :userId AND m.broadcastId <= :watermark")
+    int deleteCoveredByWatermark(Long userId, Long watermark);
+}
@@ -1,12 +1,29 @@
 package com.example.socialmedia.repository;
 
 import com.example.socialmedia.model.Message;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
 public interface MessageRepository extends MongoRepository<Message, String> {
-    List<Message> findByShopIdOrderBySentAtAsc(Long shopId);
+    // Keyset pages of a room's history, newest first on (sentAt, _id)
+    List<Message> findByShopIdAndStatusOrderBySentAtDescIdDesc(Long shopId, Message.MessageStatus status, Pageable pageable);
+
+    @Query(value = "{ 'shopId': ?0, 'status': ?1, '$or': [ { 'sentAt': { '$lt': ?2 } }, " +
+            "{ 'sentAt': ?2, '_id': { '$lt': ?3 } } ] }",
+            sort = "{ 'sentAt': -1, '_id': -1 }")
+    List<Message> findPageBefore(Long shopId, Message.MessageStatus status, LocalDateTime sentAt, String id,
+                                 Pageable pageable);
+
+    // Messages after a given one, oldest first, for clients catching up after a reconnect
+    @Query(value = "{ 'shopId': ?0, 'status': ?1, '$or': [ { 'sentAt': { '$gt': ?2 } }, " +
+            "{ 'sentAt': ?2, '_id': { '$gt': ?3 } } ] }",
+            sort = "{ 'sentAt': 1, '_id': 1 }")
+    List<Message> findPageAfter(Long shopId, Message.MessageStatus status, LocalDateTime sentAt, String id,
+                                Pageable pageable);
 }
@@ -1,12 +1,41 @@
 package com.example.socialmedia.repository;
 
+import com.example.socialmedia.dto.NotificationDto;
 import com.example.socialmedia.model.Notification;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface NotificationRepository extends JpaRepository<Notification, Long> {
-    List<Notification> findByUserIdOrderByCreatedDateDesc(Long userId);
+
+    String DTO_SELECT = "SELECT new com.example.socialmedia.dto.NotificationDto(" +
+            "n.id, n.user.id, n.message, n.type, n.isRead, false, n.shopId, n.digestCount, n.createdDate) " +
+            "FROM Notification n ";
+
+    @Query(DTO_SELECT + "WHERE n.user.id = :userId ORDER BY n.createdDate DESC, n.id DESC")
+    List<NotificationDto> findPage(Long userId, Pageable pageable);
+
+    // Keyset page: rows strictly after (createdDate, id) in (created_date DESC, id DESC) order
+    @Query(DTO_SELECT + "WHERE n.user.id = :userId AND " +
+            "(n.createdDate < :createdDate OR (n.createdDate = :createdDate AND n.id < :id)) " +
+            "ORDER BY n.createdDate DESC, n.id DESC")
+    List<NotificationDto> findPageBefore(Long userId, Instant createdDate, Long id, Pageable pageable);
+
+    // Bulk read updates are scoped to the owner and only touch unread rows, so the affected count is exact
+    @Modifying
+    @Query("UPDATE Notification n SET n.isRead = true " +
+            "WHERE n.user.id = :userId AND n.id IN :ids AND n.isRead = false")
+    int markReadByIds(Long userId, Collection<Long> ids);
+
+    @Modifying
+    @Query("UPDATE Notification n SET n.isRead = true " +
+            "WHERE n.user.id = :userId AND n.createdDate <= :upTo AND n.isRead = false")
+    int markReadUpTo(Long userId, Instant upTo);
 }
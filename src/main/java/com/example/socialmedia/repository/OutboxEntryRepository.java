@@ -0,0 +1,27 @@
+package com.example.socialmedia.repository;
+
+import com.example.socialmedia.model.OutboxEntry;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface OutboxEntryRepository extends JpaRepository<OutboxEntry, Long> {
+    @Query("SELECT m FROM OutboxEntry m WHERE m.nodeId = :nodeId ORDER BY m.id")
+    List<OutboxEntry> findBatch(String nodeId, Pageable pageable);
+
+    // Fan-out rows are read by every node and left in place; ids only, so rows a node has already
+    // sent are not loaded again on each poll
+    @Query("SELECT m.id FROM OutboxEntry m WHERE m.nodeId IS NULL AND m.createdDate >= :since ORDER BY m.id")
+    List<Long> findFanoutIdsSince(Instant since);
+
+    // Fan-out rows past the lookback, and rows of nodes that stopped before sending them
+    @Modifying
+    @Query("DELETE FROM OutboxEntry m WHERE m.createdDate < :cutoff")
+    int deleteCreatedBefore(Instant cutoff);
+}
@@ -4,6 +4,10 @@ import com.example.socialmedia.model.PaymentLog;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Optional;
+
 @Repository
 public interface PaymentLogRepository extends JpaRepository<PaymentLog, Long> {
+
+    Optional<PaymentLog> findByTransactionId(String transactionId);
 }
@@ -1,12 +1,55 @@
 package com.example.socialmedia.repository;
 
+import com.example.socialmedia.dto.PostDto;
 import com.example.socialmedia.model.Post;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface PostRepository extends JpaRepository<Post, Long> {
-    List<Post> findByShopId(Long shopId);
+    String DTO_SELECT = "SELECT new com.example.socialmedia.dto.PostDto(" +
+            "p.id, p.content, p.type, s.id, s.name, p.createdDate) FROM Post p JOIN p.shop s ";
+
+    // Keyset pages, newest first on (created_date, id)
+    @Query(DTO_SELECT + "ORDER BY p.createdDate DESC, p.id DESC")
+    List<PostDto> findPage(Pageable pageable);
+
+    @Query(DTO_SELECT + "WHERE p.createdDate < :createdDate " +
+            "OR (p.createdDate = :createdDate AND p.id < :id) ORDER BY p.createdDate DESC, p.id DESC")
+    List<PostDto> findPageBefore(Instant createdDate, Long id, Pageable pageable);
+
+    @Query(DTO_SELECT + "WHERE s.id = :shopId ORDER BY p.createdDate DESC, p.id DESC")
+    List<PostDto> findPageByShopId(Long shopId, Pageable pageable);
+
+    @Query(DTO_SELECT + "WHERE s.id = :shopId AND (p.createdDate < :createdDate " +
+            "OR (p.createdDate = :createdDate AND p.id < :id)) ORDER BY p.createdDate DESC, p.id DESC")
+    List<PostDto> findPageByShopIdBefore(Long shopId, Instant createdDate, Long id, Pageable pageable);
+
+    // Home timeline: newest post ids of the followed shops (post ids grow with creation time)
+    @Query("SELECT p.id FROM Post p WHERE p.shop.id IN :shopIds ORDER BY p.id DESC")
+    List<Long> findIdsByShopIds(Collection<Long> shopIds, Pageable pageable);
+
+    @Query("SELECT p.id FROM Post p WHERE p.shop.id IN :shopIds AND p.id < :beforeId ORDER BY p.id DESC")
+    List<Long> findIdsByShopIdsBefore(Collection<Long> shopIds, Long beforeId, Pageable pageable);
+
+    // All posts in id order, for loading the search index
+    @Query(DTO_SELECT + "WHERE p.id > :id ORDER BY p.id")
+    List<PostDto> findDtosAfterId(Long id, Pageable pageable);
+
+    @Query(DTO_SELECT + "WHERE p.id IN :ids")
+    List<PostDto> findDtosByIdIn(Collection<Long> ids);
+
+    // Posts created since the given time in id order, for catching up the search index with other nodes
+    @Query(DTO_SELECT + "WHERE p.createdDate >= :since AND p.id > :id ORDER BY p.id")
+    List<PostDto> findCreatedSince(Instant since, Long id, Pageable pageable);
+
+    // The given ids that still exist, for dropping posts deleted on other nodes from the search index
+    @Query("SELECT p.id FROM Post p WHERE p.id IN :ids")
+    List<Long> findExistingIds(Collection<Long> ids);
 }
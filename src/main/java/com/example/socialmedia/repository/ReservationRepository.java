@@ -1,13 +1,70 @@
 package com.example.socialmedia.repository;
 
+import com.example.socialmedia.dto.ReservationDto;
 import com.example.socialmedia.model.Reservation;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
 public interface ReservationRepository extends JpaRepository<Reservation, Long> {
+    String DTO_SELECT = "SELECT new com.example.socialmedia.dto.ReservationDto(" +
+            "r.id, u.id, u.username, s.id, s.name, r.reservationTime, r.numberOfGuests, r.status, r.paymentStatus, " +
+            "r.createdDate) FROM Reservation r JOIN r.user u JOIN r.shop s ";
+
     List<Reservation> findByUserId(Long userId);
-    List<Reservation> findByShopId(Long shopId);
+
+    // Keyset pages, latest reservation time first on (reservation_time, id)
+    @Query(DTO_SELECT + "WHERE u.id = :userId ORDER BY r.reservationTime DESC, r.id DESC")
+    List<ReservationDto> findPageByUserId(Long userId, Pageable pageable);
+
+    @Query(DTO_SELECT + "WHERE u.id = :userId AND (r.reservationTime < :reservationTime " +
+            "OR (r.reservationTime = :reservationTime AND r.id < :id)) ORDER BY r.reservationTime DESC, r.id DESC")
+    List<ReservationDto> findPageByUserIdBefore(Long userId, LocalDateTime reservationTime, Long id, Pageable pageable);
+
+    @Query(DTO_SELECT + "WHERE s.id = :shopId ORDER BY r.reservationTime DESC, r.id DESC")
+    List<ReservationDto> findPageByShopId(Long shopId, Pageable pageable);
+
+    @Query(DTO_SELECT + "WHERE s.id = :shopId AND (r.reservationTime < :reservationTime " +
+            "OR (r.reservationTime = :reservationTime AND r.id < :id)) ORDER BY r.reservationTime DESC, r.id DESC")
+    List<ReservationDto> findPageByShopIdBefore(Long shopId, LocalDateTime reservationTime, Long id, Pageable pageable);
+
+    interface Deadline {
+        Long getId();
+        LocalDateTime getReservationTime();
+        Instant getCreatedDate();
+        Integer getReminderOffsetSent();
+    }
+
+    String DEADLINE_SELECT = "SELECT r.id AS id, r.reservationTime AS reservationTime, r.createdDate AS createdDate, " +
+            "r.reminderOffsetSent AS reminderOffsetSent FROM Reservation r ";
+
+    @Query(DEADLINE_SELECT + "WHERE r.status = :status AND r.paymentStatus = :paymentStatus " +
+            "AND r.createdDate >= :createdFrom AND r.createdDate < :createdBefore")
+    List<Deadline> findDeadlinesCreatedBetween(Reservation.ReservationStatus status, Reservation.PaymentStatus paymentStatus,
+                                               Instant createdFrom, Instant createdBefore);
+
+    @Query(DEADLINE_SELECT + "WHERE r.status <> :excludedStatus " +
+            "AND r.reservationTime >= :from AND r.reservationTime < :to")
+    List<Deadline> findDeadlinesBetween(Reservation.ReservationStatus excludedStatus, LocalDateTime from, LocalDateTime to);
+
+    // Cancels only while the reservation is still pending and unpaid, so a late or repeated expiry is a no-op
+    @Modifying
+    @Query("UPDATE Reservation r SET r.status = :cancelled WHERE r.id = :id AND r.status = :pending " +
+            "AND r.paymentStatus = :unpaid AND r.createdDate <= :createdBefore")
+    int cancelIfUnpaid(Long id, Reservation.ReservationStatus pending, Reservation.PaymentStatus unpaid,
+                       Reservation.ReservationStatus cancelled, Instant createdBefore);
+
+    // Claims a reminder; fails if it or a later one was already sent, or the reservation is cancelled or past
+    @Modifying
+    @Query("UPDATE Reservation r SET r.reminderOffsetSent = :offsetMinutes WHERE r.id = :id " +
+            "AND r.status <> :cancelled AND r.reservationTime > :now " +
+            "AND (r.reminderOffsetSent IS NULL OR r.reminderOffsetSent > :offsetMinutes)")
+    int claimReminder(Long id, int offsetMinutes, Reservation.ReservationStatus cancelled, LocalDateTime now);
 }
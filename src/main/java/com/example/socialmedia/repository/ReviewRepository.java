@@ -1,12 +1,33 @@
 package com.example.socialmedia.repository;
 
+import com.example.socialmedia.dto.ReviewDto;
 import com.example.socialmedia.model.Review;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
 import java.util.List;
 
 @Repository
 public interface ReviewRepository extends JpaRepository<Review, Long> {
-    List<Review> findByShopId(Long shopId);
+    String DTO_SELECT = "SELECT new com.example.socialmedia.dto.ReviewDto(" +
+            "r.id, r.rating, r.comment, u.id, u.username, r.shop.id, r.createdDate) FROM Review r JOIN r.user u ";
+
+    // Keyset pages of a shop's reviews, newest first on (created_date, id)
+    @Query(DTO_SELECT + "WHERE r.shop.id = :shopId ORDER BY r.createdDate DESC, r.id DESC")
+    List<ReviewDto> findPageByShopId(Long shopId, Pageable pageable);
+
+    @Query(DTO_SELECT + "WHERE r.shop.id = :shopId AND (r.createdDate < :createdDate " +
+            "OR (r.createdDate = :createdDate AND r.id < :id)) ORDER BY r.createdDate DESC, r.id DESC")
+    List<ReviewDto> findPageByShopIdBefore(Long shopId, Instant createdDate, Long id, Pageable pageable);
+
+    @Query("SELECT DISTINCT r.shop.id FROM Review r WHERE r.user.id = :userId")
+    List<Long> findShopIdsByUserId(Long userId);
+
+    @Modifying
+    @Query("DELETE FROM Review r WHERE r.user.id = :userId")
+    int deleteAllByUserId(Long userId);
 }
@@ -0,0 +1,33 @@
+package com.example.socialmedia.repository;
+
+import com.example.socialmedia.model.ShopFollow;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ShopFollowRepository extends JpaRepository<ShopFollow, Long> {
+    boolean existsByUserIdAndShopId(Long userId, Long shopId);
+
+    @Query("SELECT f.shopId FROM ShopFollow f WHERE f.userId = :userId ORDER BY f.shopId")
+    List<Long> findShopIdsByUserId(Long userId);
+
+    // Served by idx_shop_follows_shop; ascending, as the follower index keeps them
+    @Query("SELECT f.userId FROM ShopFollow f WHERE f.shopId = :shopId ORDER BY f.userId")
+    List<Long> findUserIdsByShopId(Long shopId);
+
+    @Modifying
+    @Query("DELETE FROM ShopFollow f WHERE f.userId = :userId AND f.shopId = :shopId")
+    int deleteByUserIdAndShopId(Long userId, Long shopId);
+
+    @Modifying
+    @Query("DELETE FROM ShopFollow f WHERE f.userId = :userId")
+    int deleteAllByUserId(Long userId);
+
+    @Modifying
+    @Query("DELETE FROM ShopFollow f WHERE f.shopId = :shopId")
+    int deleteAllByShopId(Long shopId);
+}
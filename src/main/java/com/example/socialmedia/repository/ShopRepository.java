@@ -1,21 +1,105 @@
 package com.example.socialmedia.repository;
 
+import com.example.socialmedia.dto.ShopDto;
 import com.example.socialmedia.model.Shop;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface ShopRepository extends JpaRepository<Shop, Long> {
-    List<Shop> findByNameContainingIgnoreCase(String name);
-
-    // Haversine formula to find shops within a certain radius (in kilometers)
-    @Query(value = "SELECT * FROM shops s WHERE " +
-            "(6371 * acos(cos(radians(:userLat)) * cos(radians(s.latitude)) * " +
-            "cos(radians(s.longitude) - radians(:userLng)) + " +
-            "sin(radians(:userLat)) * sin(radians(s.latitude)))) < :radius", 
-            nativeQuery = true)
-    List<Shop> findShopsNearby(double userLat, double userLng, double radius);
+    // Left join so shops without an owner are kept
+    String DTO_SELECT = "SELECT new com.example.socialmedia.dto.ShopDto(" +
+            "s.id, s.name, s.description, s.address, s.latitude, s.longitude, s.rating, o.id, s.createdDate) " +
+            "FROM Shop s LEFT JOIN s.owner o ";
+
+    @Query("SELECT s FROM Shop s LEFT JOIN FETCH s.owner WHERE s.id = :id")
+    Optional<Shop> findWithOwnerById(Long id);
+
+    @Query(DTO_SELECT + "WHERE s.id = :id")
+    Optional<ShopDto> findDtoById(Long id);
+
+    @Query(DTO_SELECT + "WHERE s.id IN :ids")
+    List<ShopDto> findDtosByIdIn(Collection<Long> ids);
+
+    // Keyset pages in (name, id) order
+    @Query(DTO_SELECT + "ORDER BY s.name, s.id")
+    List<ShopDto> findPage(Pageable pageable);
+
+    @Query(DTO_SELECT + "WHERE s.name > :name OR (s.name = :name AND s.id > :id) ORDER BY s.name, s.id")
+    List<ShopDto> findPageAfter(String name, Long id, Pageable pageable);
+
+    // All shops in id order, for loading the search index
+    @Query(DTO_SELECT + "WHERE s.id > :id ORDER BY s.id")
+    List<ShopDto> findPageAfterId(Long id, Pageable pageable);
+
+    // Sets every rating aggregate of the matched shops from their reviews. Bulk updates skip
+    // auditing, so updatedDate is set here for other nodes' index catch-up to see the change
+    String RECOMPUTE_RATINGS = "UPDATE Shop s SET " +
+            "s.ratingSum = (SELECT COALESCE(SUM(r.rating), 0) FROM Review r WHERE r.shop.id = s.id), " +
+            "s.ratingCount = (SELECT COUNT(r) FROM Review r WHERE r.shop.id = s.id), " +
+            "s.oneStarCount = (SELECT COUNT(r) FROM Review r WHERE r.shop.id = s.id AND r.rating = 1), " +
+            "s.twoStarCount = (SELECT COUNT(r) FROM Review r WHERE r.shop.id = s.id AND r.rating = 2), " +
+            "s.threeStarCount = (SELECT COUNT(r) FROM Review r WHERE r.shop.id = s.id AND r.rating = 3), " +
+            "s.fourStarCount = (SELECT COUNT(r) FROM Review r WHERE r.shop.id = s.id AND r.rating = 4), " +
+            "s.fiveStarCount = (SELECT COUNT(r) FROM Review r WHERE r.shop.id = s.id AND r.rating = 5), " +
+            "s.rating = (SELECT AVG(r.rating) FROM Review r WHERE r.shop.id = s.id), " +
+            "s.updatedDate = INSTANT ";
+
+    // Fold one review into the rating aggregates, touching updatedDate as RECOMPUTE_RATINGS does.
+    // SET expressions read the pre-update row, so concurrent reviews each apply their increment and
+    // none is lost. Matches nothing while the aggregates are still NULL (new shops, and shops from
+    // before the columns existed): the caller then recomputes them from the reviews instead of
+    // starting the count at this review.
+    @Modifying
+    @Query("UPDATE Shop s SET " +
+            "s.ratingSum = s.ratingSum + :rating, " +
+            "s.ratingCount = s.ratingCount + 1, " +
+            "s.oneStarCount = s.oneStarCount + CASE WHEN :rating = 1 THEN 1 ELSE 0 END, " +
+            "s.twoStarCount = s.twoStarCount + CASE WHEN :rating = 2 THEN 1 ELSE 0 END, " +
+            "s.threeStarCount = s.threeStarCount + CASE WHEN :rating = 3 THEN 1 ELSE 0 END, " +
+            "s.fourStarCount = s.fourStarCount + CASE WHEN :rating = 4 THEN 1 ELSE 0 END, " +
+            "s.fiveStarCount = s.fiveStarCount + CASE WHEN :rating = 5 THEN 1 ELSE 0 END, " +
+            "s.rating = (s.ratingSum + :rating) * 1.0 / (s.ratingCount + 1), " +
+            "s.updatedDate = INSTANT " +
+            "WHERE s.id = :shopId AND s.ratingCount IS NOT NULL")
+    int addRating(Long shopId, int rating);
+
+    // Row lock serializing the first reviews of a shop whose aggregates are still NULL
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM Shop s WHERE s.id = :id")
+    Optional<Shop> lockById(Long id);
+
+    // Recompute the rating aggregates of a range of shops from their reviews
+    @Modifying
+    @Query(RECOMPUTE_RATINGS + "WHERE s.id > :fromId AND s.id <= :toId")
+    int recomputeRatings(Long fromId, Long toId);
+
+    @Modifying
+    @Query(RECOMPUTE_RATINGS + "WHERE s.id IN :shopIds")
+    int recomputeRatings(Collection<Long> shopIds);
+
+    @Query("SELECT MAX(s.id) FROM Shop s")
+    Long findMaxId();
+
+    // Shops with coordinates in id order, for loading the geospatial index
+    @Query(DTO_SELECT + "WHERE s.id > :id AND s.latitude IS NOT NULL AND s.longitude IS NOT NULL ORDER BY s.id")
+    List<ShopDto> findLocatedAfter(Long id, Pageable pageable);
+
+    // Shops changed since the given time in id order, for catching up the in-memory indexes with other nodes
+    @Query(DTO_SELECT + "WHERE s.updatedDate >= :since AND s.id > :id ORDER BY s.id")
+    List<ShopDto> findUpdatedSince(Instant since, Long id, Pageable pageable);
+
+    // The given ids that still exist, for dropping shops deleted on other nodes from the indexes
+    @Query("SELECT s.id FROM Shop s WHERE s.id IN :ids")
+    List<Long> findExistingIds(Collection<Long> ids);
 }
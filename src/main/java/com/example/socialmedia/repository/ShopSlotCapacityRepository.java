@@ -0,0 +1,19 @@
+package com.example.socialmedia.repository;
+
+import com.example.socialmedia.model.ShopSlotCapacity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ShopSlotCapacityRepository extends JpaRepository<ShopSlotCapacity, Long> {
+
+    List<ShopSlotCapacity> findByShopIdOrderByDayOfWeekAscOpenTimeAsc(Long shopId);
+
+    @Modifying
+    @Query("DELETE FROM ShopSlotCapacity c WHERE c.shopId = :shopId")
+    int deleteByShopId(Long shopId);
+}
@@ -0,0 +1,50 @@
+package com.example.socialmedia.repository;
+
+import com.example.socialmedia.model.SlotOccupancy;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface SlotOccupancyRepository extends JpaRepository<SlotOccupancy, Long> {
+
+    interface SlotState {
+        LocalDateTime getSlotStart();
+        Integer getBookedGuests();
+        Long getRevision();
+    }
+
+    @Modifying
+    @Query(value = "INSERT INTO slot_occupancy (shop_id, slot_start, booked_guests, revision) " +
+            "SELECT :shopId, :slotStart, 0, 0 WHERE NOT EXISTS " +
+            "(SELECT 1 FROM slot_occupancy WHERE shop_id = :shopId AND slot_start = :slotStart)", nativeQuery = true)
+    int insertIfMissing(Long shopId, LocalDateTime slotStart);
+
+    // Check and reserve in one statement: concurrent bookings of the slot queue on its row lock
+    // and each re-checks the count left by the one before it
+    @Modifying
+    @Query("UPDATE SlotOccupancy o SET o.bookedGuests = o.bookedGuests + :guests, o.revision = o.revision + 1 " +
+            "WHERE o.shopId = :shopId AND o.slotStart = :slotStart AND o.bookedGuests + :guests <= :capacity")
+    int reserve(Long shopId, LocalDateTime slotStart, int guests, int capacity);
+
+    @Modifying
+    @Query("UPDATE SlotOccupancy o SET o.bookedGuests = o.bookedGuests - :guests, o.revision = o.revision + 1 " +
+            "WHERE o.shopId = :shopId AND o.slotStart = :slotStart AND o.bookedGuests >= :guests")
+    int release(Long shopId, LocalDateTime slotStart, int guests);
+
+    @Query("SELECT o.slotStart AS slotStart, o.bookedGuests AS bookedGuests, o.revision AS revision " +
+            "FROM SlotOccupancy o WHERE o.shopId = :shopId AND o.slotStart = :slotStart")
+    SlotState findState(Long shopId, LocalDateTime slotStart);
+
+    @Query("SELECT o.slotStart AS slotStart, o.bookedGuests AS bookedGuests, o.revision AS revision " +
+            "FROM SlotOccupancy o WHERE o.shopId = :shopId AND o.slotStart >= :from AND o.slotStart < :to")
+    List<SlotState> findStates(Long shopId, LocalDateTime from, LocalDateTime to);
+
+    @Modifying
+    @Query("DELETE FROM SlotOccupancy o WHERE o.shopId = :shopId")
+    int deleteByShopId(Long shopId);
+}
@@ -0,0 +1,36 @@
+package com.example.socialmedia.repository;
+
+import com.example.socialmedia.model.UserNotificationState;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface UserNotificationStateRepository extends JpaRepository<UserNotificationState, Long> {
+
+    // Portable insert-if-absent (H2 and PostgreSQL) so counters can be bumped without a read first.
+    // The counter starts from the user's committed unread rows, which backfills users whose
+    // notifications predate the counter; later rows are counted by the caller's increment
+    @Modifying
+    @Query(value = "INSERT INTO user_notification_state (user_id, broadcast_read_watermark, unread_count) " +
+            "SELECT :userId, 0, (SELECT COUNT(*) FROM notifications n WHERE n.user_id = :userId AND n.is_read = false) " +
+            "WHERE NOT EXISTS " +
+            "(SELECT 1 FROM user_notification_state WHERE user_id = :userId)", nativeQuery = true)
+    int insertIfMissing(Long userId);
+
+    // Only ever moves forward, so concurrent read-all calls cannot roll the watermark back
+    @Modifying
+    @Query("UPDATE UserNotificationState s SET s.broadcastReadWatermark = :watermark " +
+            "WHERE s.userId = :userId AND s.broadcastReadWatermark < :watermark")
+    int advanceWatermark(Long userId, Long watermark);
+
+    @Modifying
+    @Query("UPDATE UserNotificationState s SET s.unreadCount = s.unreadCount + :delta WHERE s.userId = :userId")
+    int incrementUnread(Long userId, long delta);
+
+    @Modifying
+    @Query("UPDATE UserNotificationState s SET s.unreadCount = " +
+            "CASE WHEN s.unreadCount > :delta THEN s.unreadCount - :delta ELSE 0 END WHERE s.userId = :userId")
+    int decrementUnread(Long userId, long delta);
+}
@@ -1,13 +1,28 @@
 package com.example.socialmedia.repository;
 
 import com.example.socialmedia.model.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByUsername(String username);
     Optional<User> findByEmail(String email);
+
+    // Keyset page of user ids, used to stream recipients without loading entities
+    @Query("SELECT u.id FROM User u WHERE u.id > :afterId ORDER BY u.id")
+    List<Long> findIdsAfter(Long afterId, Pageable pageable);
+
+    // Keyset pages in (username, id) order
+    @Query("SELECT u FROM User u ORDER BY u.username, u.id")
+    List<User> findPage(Pageable pageable);
+
+    @Query("SELECT u FROM User u WHERE u.username > :username OR (u.username = :username AND u.id > :id) " +
+            "ORDER BY u.username, u.id")
+    List<User> findPageAfter(String username, Long id, Pageable pageable);
 }
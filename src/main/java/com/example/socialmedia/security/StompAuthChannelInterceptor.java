@@ -0,0 +1,101 @@
+package com.example.socialmedia.security;
+
+import com.example.socialmedia.config.WebSocketConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.security.Principal;
+import java.util.regex.Matcher;
+
+/**
+ * Authenticates STOMP sessions once, at CONNECT.
+ *
+ * The JWT comes in the CONNECT frame's Authorization header ("Bearer ..."), since browsers cannot
+ * set headers on the WebSocket handshake. The user it names is loaded once and attached to the
+ * session, so every later frame of the session carries the user's id and username without a
+ * database lookup. SEND frames from sessions without an authenticated user are refused, as are
+ * subscriptions to another user's notification topic.
+ */
+@Component
+public class StompAuthChannelInterceptor implements ChannelInterceptor {
+    private static final Logger logger = LoggerFactory.getLogger(StompAuthChannelInterceptor.class);
+
+    private final JwtUtils jwtUtils;
+    private final UserDetailsServiceImpl userDetailsService;
+
+    @Autowired
+    public StompAuthChannelInterceptor(JwtUtils jwtUtils, UserDetailsServiceImpl userDetailsService) {
+        this.jwtUtils = jwtUtils;
+        this.userDetailsService = userDetailsService;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null) {
+            return message;
+        }
+
+        if (StompCommand.CONNECT.equals(accessor.getCommand())) {
+            String jwt = parseJwt(accessor);
+            if (jwt != null) {
+                if (!jwtUtils.validateJwtToken(jwt)) {
+                    throw new MessageDeliveryException("Invalid or expired token");
+                }
+                UserDetails userDetails = userDetailsService.loadUserByUsername(jwtUtils.getUserNameFromJwtToken(jwt));
+                accessor.setUser(new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities()));
+                logger.debug("STOMP session {} authenticated as {}", accessor.getSessionId(), userDetails.getUsername());
+            }
+        } else if (StompCommand.SEND.equals(accessor.getCommand()) && getUser(accessor.getUser()) == null) {
+            throw new MessageDeliveryException("Sending requires an authenticated session");
+        } else if (StompCommand.SUBSCRIBE.equals(accessor.getCommand()) && !maySubscribe(accessor)) {
+            throw new MessageDeliveryException("Only the user may subscribe to their notifications");
+        }
+        return message;
+    }
+
+    // The deprecated per-user notification topic is readable by its user only
+    private boolean maySubscribe(StompHeaderAccessor accessor) {
+        String destination = accessor.getDestination();
+        Matcher matcher = destination != null ? WebSocketConfig.LEGACY_NOTIFICATIONS_TOPIC.matcher(destination) : null;
+        if (matcher == null || !matcher.matches()) {
+            return true;
+        }
+        UserDetailsImpl user = getUser(accessor.getUser());
+        return user != null && matcher.group(1).equals(String.valueOf(user.getId()));
+    }
+
+    /**
+     * The user a STOMP session was authenticated as, or null for an anonymous session.
+     */
+    public static UserDetailsImpl getUser(Principal principal) {
+        if (principal instanceof Authentication authentication
+                && authentication.getPrincipal() instanceof UserDetailsImpl details) {
+            return details;
+        }
+        return null;
+    }
+
+    private String parseJwt(StompHeaderAccessor accessor) {
+        String headerAuth = accessor.getFirstNativeHeader("Authorization");
+
+        if (StringUtils.hasText(headerAuth) && headerAuth.startsWith("Bearer ")) {
+            return headerAuth.substring(7);
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.socialmedia.service;
+
+import com.example.socialmedia.exception.ResourceNotFoundException;
+import com.example.socialmedia.model.ShopFollow;
+import com.example.socialmedia.repository.ShopFollowRepository;
+import com.example.socialmedia.repository.ShopRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.util.List;
+
+@Service
+public class FollowService {
+
+    private final ShopFollowRepository followRepository;
+    private final ShopRepository shopRepository;
+    private final ShopFollowerIndex followerIndex;
+    private final HomeTimelineService homeTimelineService;
+
+    @Autowired
+    public FollowService(ShopFollowRepository followRepository, ShopRepository shopRepository,
+                         ShopFollowerIndex followerIndex, HomeTimelineService homeTimelineService) {
+        this.followRepository = followRepository;
+        this.shopRepository = shopRepository;
+        this.followerIndex = followerIndex;
+        this.homeTimelineService = homeTimelineService;
+    }
+
+    /**
+     * Follow a shop. Returns false when the user already follows it.
+     *
+     * Not transactional: the insert commits on its own, so when a concurrent follow wins the race
+     * the unique key violation can be taken as "already following" without a rolled-back outer
+     * transaction.
+     */
+    public boolean follow(Long userId, Long shopId) {
+        if (!shopRepository.existsById(shopId)) {
+            throw new ResourceNotFoundException("Shop not found with id: " + shopId);
+        }
+        if (followRepository.existsByUserIdAndShopId(userId, shopId)) {
+            return false;
+        }
+        try {
+            followRepository.save(ShopFollow.builder()
+                    .userId(userId)
+                    .shopId(shopId)
+                    .createdDate(Instant.now())
+                    .build());
+        } catch (DataIntegrityViolationException e) {
+            return false;
+        }
+        afterCommit(() -> {
+            followerIndex.add(shopId, userId);
+            homeTimelineService.invalidate(userId);
+        });
+        return true;
+    }
+
+    /**
+     * Unfollow a shop. Returns false when the user was not following it.
+     */
+    @Transactional
+    public boolean unfollow(Long userId, Long shopId) {
+        if (followRepository.deleteByUserIdAndShopId(userId, shopId) == 0) {
+            return false;
+        }
+        afterCommit(() -> {
+            followerIndex.remove(shopId, userId);
+            homeTimelineService.invalidate(userId);
+        });
+        return true;
+    }
+
+    public int getFollowerCount(Long shopId) {
+        return followerIndex.getFollowerCount(shopId);
+    }
+
+    public List<Long> getFollowedShopIds(Long userId) {
+        return followRepository.findShopIdsByUserId(userId);
+    }
+
+    @Transactional
+    public void removeUser(Long userId) {
+        List<Long> shopIds = followRepository.findShopIdsByUserId(userId);
+        followRepository.deleteAllByUserId(userId);
+        afterCommit(() -> {
+            shopIds.forEach(shopId -> followerIndex.remove(shopId, userId));
+            homeTimelineService.invalidate(userId);
+        });
+    }
+
+    @Transactional
+    public void removeShop(Long shopId) {
+        followRepository.deleteAllByShopId(shopId);
+        afterCommit(() -> followerIndex.removeShop(shopId));
+    }
+
+    // The index only reflects committed follows
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,281 @@
+package com.example.socialmedia.service;
+
+import com.example.socialmedia.dto.CursorPage;
+import com.example.socialmedia.dto.PostDto;
+import com.example.socialmedia.repository.PostRepository;
+import com.example.socialmedia.repository.ShopFollowRepository;
+import com.example.socialmedia.util.KeysetCursor;
+import com.example.socialmedia.util.KeysetPagination;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Materialized home timelines: for each recently active user, a bounded ring buffer of the newest
+ * post ids from the shops they follow.
+ *
+ * New posts are pushed into the timelines of followers that have one; a user without a timeline
+ * (cold, evicted, or whose follows changed) gets it rebuilt from the database on their next read.
+ * Pushes only reach the timelines of the node where the post was created, and follows only
+ * invalidate those of the node that recorded them, so a timeline is rebuilt once older than the
+ * TTL. Past the user limit the timeline read least recently is evicted. Reading past the end of a ring
+ * falls back to a keyset query. Post ids are assumed to grow with creation time, so timelines are
+ * ordered by id; concurrent creates may push ids out of order, and pushes insert them in place.
+ */
+@Service
+public class HomeTimelineService {
+
+    private final PostRepository postRepository;
+    private final ShopFollowRepository followRepository;
+    private final ShopFollowerIndex followerIndex;
+    private final int capacity;
+    private final int maxUsers;
+    private final long ttlMillis;
+    private final ConcurrentHashMap<Long, Timeline> timelines = new ConcurrentHashMap<>();
+    // Users by last feed read, least recent first; pushes do not count as use. Guarded by itself
+    private final LinkedHashMap<Long, Boolean> recency = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Counter rebuilds;
+    private final Counter fallbacks;
+
+    @Autowired
+    public HomeTimelineService(PostRepository postRepository, ShopFollowRepository followRepository,
+                               ShopFollowerIndex followerIndex, MeterRegistry meterRegistry,
+                               @Value("${home-timeline.capacity:200}") int capacity,
+                               @Value("${home-timeline.max-users:10000}") int maxUsers,
+                               @Value("${home-timeline.ttl-ms:60000}") long ttlMillis) {
+        this.postRepository = postRepository;
+        this.followRepository = followRepository;
+        this.followerIndex = followerIndex;
+        this.capacity = capacity;
+        this.maxUsers = maxUsers;
+        this.ttlMillis = ttlMillis;
+
+        Gauge.builder("home.timeline.users", timelines, ConcurrentHashMap::size)
+                .description("Users with a materialized home timeline in memory")
+                .register(meterRegistry);
+        this.rebuilds = Counter.builder("home.timeline.rebuilds")
+                .description("Home timelines rebuilt from the database")
+                .register(meterRegistry);
+        this.fallbacks = Counter.builder("home.timeline.fallbacks")
+                .description("Feed reads that went past the in-memory timeline to the database")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Push a new post into the timelines of the shop's followers that have one in memory.
+     */
+    public void onPostCreated(Long shopId, Long postId) {
+        for (long followerId : followerIndex.getFollowers(shopId)) {
+            Timeline timeline = timelines.get(followerId);
+            if (timeline != null) {
+                timeline.push(postId);
+            }
+        }
+    }
+
+    /**
+     * Drop the user's timeline, e.g. after a follow change; it is rebuilt on the next read.
+     */
+    public void invalidate(Long userId) {
+        timelines.remove(userId);
+    }
+
+    /**
+     * Newest-first page of posts from the shops the user follows.
+     *
+     * @param cursor next cursor of the previous page, or null for the first page
+     */
+    public CursorPage<PostDto> getHomeFeed(Long userId, String cursor, int size) {
+        int pageSize = KeysetPagination.clamp(size);
+        long beforeId = parseCursor(cursor);
+        touch(userId);
+        Timeline timeline = timelines.get(userId);
+        if (timeline != null && timeline.isExpired(System.currentTimeMillis())) {
+            timelines.remove(userId, timeline);
+            timeline = null;
+        }
+        if (timeline == null) {
+            timeline = rebuild(userId);
+        }
+
+        // One extra id tells whether another page exists
+        List<Long> ids = timeline.idsBefore(beforeId, pageSize + 1);
+        if (ids.size() <= pageSize && !timeline.isComplete()) {
+            long after = ids.isEmpty() ? beforeId : ids.get(ids.size() - 1);
+            List<Long> shopIds = followRepository.findShopIdsByUserId(userId);
+            if (!shopIds.isEmpty()) {
+                fallbacks.increment();
+                ids.addAll(postRepository.findIdsByShopIdsBefore(shopIds, after,
+                        PageRequest.of(0, pageSize + 1 - ids.size())));
+            }
+        }
+
+        String nextCursor = null;
+        if (ids.size() > pageSize) {
+            ids = ids.subList(0, pageSize);
+            nextCursor = KeysetCursor.encode(ids.get(ids.size() - 1));
+        }
+        return new CursorPage<>(loadInOrder(ids), nextCursor);
+    }
+
+    // Record a read and evict the least recently read timeline past the limit; its owner gets a
+    // rebuild on their next read
+    private void touch(Long userId) {
+        Long evicted = null;
+        synchronized (recency) {
+            recency.put(userId, Boolean.TRUE);
+            if (recency.size() > maxUsers) {
+                Iterator<Long> it = recency.keySet().iterator();
+                evicted = it.next();
+                it.remove();
+            }
+        }
+        if (evicted != null) {
+            timelines.remove(evicted);
+        }
+    }
+
+    private Timeline rebuild(Long userId) {
+        // Register first so posts written while the database is read are not missed
+        Timeline fresh = new Timeline(capacity, System.currentTimeMillis() + ttlMillis);
+        Timeline existing = timelines.putIfAbsent(userId, fresh);
+        if (existing != null) {
+            return existing;
+        }
+        rebuilds.increment();
+        List<Long> shopIds = followRepository.findShopIdsByUserId(userId);
+        List<Long> ids = shopIds.isEmpty() ? List.of()
+                : postRepository.findIdsByShopIds(shopIds, PageRequest.of(0, capacity));
+        fresh.seed(ids, ids.size() < capacity);
+        return fresh;
+    }
+
+    private List<PostDto> loadInOrder(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, PostDto> byId = postRepository.findDtosByIdIn(ids).stream()
+                .collect(Collectors.toMap(PostDto::getId, Function.identity()));
+        List<PostDto> posts = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            PostDto post = byId.get(id);
+            if (post != null) { // deleted since it was added to the timeline
+                posts.add(post);
+            }
+        }
+        return posts;
+    }
+
+    private long parseCursor(String cursor) {
+        return KeysetPagination.isFirstPage(cursor) ? Long.MAX_VALUE : KeysetCursor.decode(cursor).getId();
+    }
+
+    /**
+     * Ring buffer of post ids, newest at head - 1. Complete when it holds every post of the
+     * followed shops, so reads that run off its end need no database fallback.
+     */
+    private static final class Timeline {
+        private final long[] ring;
+        private final long expiresAt;
+        private int head;
+        private int size;
+        private boolean complete; // false until seeded, so early readers fall back to the database
+
+        Timeline(int capacity, long expiresAt) {
+            this.ring = new long[capacity];
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+
+        // Posts committed concurrently can arrive out of id order, so insert in sorted position;
+        // the new id is almost always the newest and the scan stops at once
+        synchronized void push(long postId) {
+            int pos = size;
+            while (pos > 0 && at(pos - 1) > postId) {
+                pos--;
+            }
+            if (pos > 0 && at(pos - 1) == postId) {
+                return;
+            }
+            if (size == ring.length) {
+                complete = false;
+                if (pos == 0) {
+                    return; // older than every id kept
+                }
+                size--; // drop the oldest
+                pos--;
+            }
+            head = (head + 1) % ring.length;
+            size++;
+            for (int i = size - 1; i > pos; i--) {
+                set(i, at(i - 1));
+            }
+            set(pos, postId);
+        }
+
+        // Index 0 is the oldest id held, size - 1 the newest
+        private long at(int index) {
+            return ring[Math.floorMod(head - size + index, ring.length)];
+        }
+
+        private void set(int index, long postId) {
+            ring[Math.floorMod(head - size + index, ring.length)] = postId;
+        }
+
+        // Merge ids read from the database (newest first) with anything pushed meanwhile
+        synchronized void seed(List<Long> newestFirst, boolean loadedAll) {
+            long[] merged = new long[size + newestFirst.size()];
+            int n = 0;
+            for (int i = 0; i < size; i++) {
+                merged[n++] = ring[Math.floorMod(head - 1 - i, ring.length)];
+            }
+            for (Long id : newestFirst) {
+                merged[n++] = id;
+            }
+            merged = Arrays.stream(merged).distinct().sorted().toArray();
+
+            int keep = Math.min(merged.length, ring.length);
+            head = 0;
+            size = 0;
+            for (int i = merged.length - keep; i < merged.length; i++) {
+                ring[head] = merged[i];
+                head = (head + 1) % ring.length;
+                size++;
+            }
+            complete = loadedAll && keep == merged.length;
+        }
+
+        synchronized List<Long> idsBefore(long beforeId, int limit) {
+            List<Long> ids = new ArrayList<>(Math.min(limit, size));
+            for (int i = 0; i < size && ids.size() < limit; i++) {
+                long id = ring[Math.floorMod(head - 1 - i, ring.length)];
+                if (id < beforeId) {
+                    ids.add(id);
+                }
+            }
+            return ids;
+        }
+
+        synchronized boolean isComplete() {
+            return complete;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.socialmedia.service;
+
+import com.example.socialmedia.dto.PostDto;
+import com.example.socialmedia.dto.ShopDto;
+import com.example.socialmedia.repository.PostRepository;
+import com.example.socialmedia.repository.ShopRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Keeps the in-memory shop and post indexes in line with the database.
+ *
+ * Writes on this node reach the indexes once their transaction commits, so a rolled-back write
+ * never shows up in search results. Every node also re-reads the shops changed and the posts
+ * created since its last catch-up (by updated_date and created_date, looking back far enough to
+ * cover commits that landed late), and now and then drops indexed entries whose rows are gone, so
+ * writes made on other nodes converge.
+ */
+@Service
+@Slf4j
+public class IndexSyncService {
+
+    private final ShopRepository shopRepository;
+    private final PostRepository postRepository;
+    private final ShopGeoIndex geoIndex;
+    private final ShopSearchIndex shopSearchIndex;
+    private final PostSearchIndex postSearchIndex;
+    private final Duration lookback;
+    private final int batchSize;
+    private final ScheduledThreadPoolExecutor scheduler;
+    // Only the scheduler thread reads and writes it
+    private Instant lastCatchUp = Instant.now();
+
+    private final Counter shopsCaughtUp;
+    private final Counter postsCaughtUp;
+    private final Counter removedMissing;
+
+    @Autowired
+    public IndexSyncService(ShopRepository shopRepository, PostRepository postRepository, ShopGeoIndex geoIndex,
+                            ShopSearchIndex shopSearchIndex, PostSearchIndex postSearchIndex,
+                            MeterRegistry meterRegistry,
+                            @Value("${index.sync.interval-ms:30000}") long intervalMillis,
+                            @Value("${index.sync.lookback-ms:60000}") long lookbackMillis,
+                            @Value("${index.sync.reconcile-interval-ms:600000}") long reconcileIntervalMillis,
+                            @Value("${index.sync.batch-size:1000}") int batchSize) {
+        this.shopRepository = shopRepository;
+        this.postRepository = postRepository;
+        this.geoIndex = geoIndex;
+        this.shopSearchIndex = shopSearchIndex;
+        this.postSearchIndex = postSearchIndex;
+        this.lookback = Duration.ofMillis(lookbackMillis);
+        this.batchSize = batchSize;
+        this.scheduler = new ScheduledThreadPoolExecutor(1, new CustomizableThreadFactory("index-sync-"));
+        this.scheduler.scheduleWithFixedDelay(this::catchUp, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        this.scheduler.scheduleWithFixedDelay(this::reconcile, reconcileIntervalMillis, reconcileIntervalMillis,
+                TimeUnit.MILLISECONDS);
+
+        this.shopsCaughtUp = Counter.builder("index.sync.shops")
+                .description("Shops re-read into the in-memory indexes by the catch-up")
+                .register(meterRegistry);
+        this.postsCaughtUp = Counter.builder("index.sync.posts")
+                .description("Posts re-read into the search index by the catch-up")
+                .register(meterRegistry);
+        this.removedMissing = Counter.builder("index.sync.removed")
+                .description("Index entries dropped because their row was deleted on another node")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Index a created or changed shop once the current transaction commits.
+     */
+    public void shopSaved(ShopDto shop) {
+        afterCommit(() -> {
+            geoIndex.put(shop);
+            shopSearchIndex.put(shop);
+        });
+    }
+
+    /**
+     * Drop a deleted shop from the indexes once the current transaction commits.
+     */
+    public void shopDeleted(Long shopId) {
+        afterCommit(() -> {
+            geoIndex.remove(shopId);
+            shopSearchIndex.remove(shopId);
+            // Posts go with the shop (cascade)
+            postSearchIndex.removeShop(shopId);
+        });
+    }
+
+    /**
+     * Index a new post once the current transaction commits.
+     */
+    public void postSaved(PostDto post) {
+        afterCommit(() -> postSearchIndex.add(post));
+    }
+
+    /**
+     * Drop a deleted post from the search index once the current transaction commits.
+     */
+    public void postDeleted(Long postId) {
+        afterCommit(() -> postSearchIndex.remove(postId));
+    }
+
+    /**
+     * Re-read everything changed since the last catch-up, minus the lookback.
+     */
+    public void catchUp() {
+        Instant started = Instant.now();
+        Instant since = lastCatchUp.minus(lookback);
+        try {
+            long lastId = 0;
+            List<ShopDto> page;
+            do {
+                page = shopRepository.findUpdatedSince(since, lastId, PageRequest.of(0, batchSize));
+                for (ShopDto shop : page) {
+                    geoIndex.put(shop);
+                    shopSearchIndex.put(shop);
+                    lastId = shop.getId();
+                }
+                shopsCaughtUp.increment(page.size());
+            } while (page.size() == batchSize);
+            // Posts are never edited, so their creation time is enough
+            lastId = 0;
+            List<PostDto> posts;
+            do {
+                posts = postRepository.findCreatedSince(since, lastId, PageRequest.of(0, batchSize));
+                for (PostDto post : posts) {
+                    postSearchIndex.add(post);
+                    lastId = post.getId();
+                }
+                postsCaughtUp.increment(posts.size());
+            } while (posts.size() == batchSize);
+            lastCatchUp = started;
+        } catch (Exception e) {
+            // The next run starts from the same point
+            log.warn("Index catch-up failed", e);
+        }
+    }
+
+    /**
+     * Drop indexed entries whose rows no longer exist.
+     */
+    public void reconcile() {
+        try {
+            removeMissing(geoIndex.getShopIds(), shopRepository::findExistingIds, geoIndex::remove);
+            removeMissing(shopSearchIndex.getShopIds(), shopRepository::findExistingIds, shopSearchIndex::remove);
+            removeMissing(postSearchIndex.getPostIds(), postRepository::findExistingIds, postSearchIndex::remove);
+        } catch (Exception e) {
+            log.warn("Index reconcile failed", e);
+        }
+    }
+
+    private void removeMissing(List<Long> indexed, Function<List<Long>, List<Long>> findExisting, Consumer<Long> remove) {
+        for (int from = 0; from < indexed.size(); from += batchSize) {
+            List<Long> chunk = indexed.subList(from, Math.min(from + batchSize, indexed.size()));
+            Set<Long> existing = new HashSet<>(findExisting.apply(chunk));
+            for (Long id : chunk) {
+                if (!existing.contains(id)) {
+                    remove.accept(id);
+                    removedMissing.increment();
+                }
+            }
+        }
+    }
+
+    // Indexes only reflect committed writes
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        scheduler.shutdown();
+        scheduler.awaitTermination(10, TimeUnit.SECONDS);
+    }
+}
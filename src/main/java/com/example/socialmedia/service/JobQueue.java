@@ -0,0 +1,428 @@
+package com.example.socialmedia.service;
+
+import com.example.socialmedia.model.BackgroundJob;
+import com.example.socialmedia.repository.BackgroundJobRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Durable background job queue on the jobs table.
+ *
+ * A poller claims due jobs for the free worker threads: it picks candidate ids and moves each to
+ * RUNNING with a conditional update that only succeeds while the job is still claimable, so two
+ * nodes never run the same job. On Postgres the candidates are selected FOR UPDATE SKIP LOCKED,
+ * letting concurrent pollers pick disjoint rows instead of racing for the same ones. A claim is a
+ * lease: a node that dies leaves its jobs to be reclaimed once the lease runs out, and handlers
+ * extend it whenever they save a checkpoint. Failed runs are retried with exponential backoff.
+ *
+ * Handlers register by job type; jobs enqueued inside a transaction become visible with it.
+ * Polling starts once the application is ready, after every handler has registered. A job whose
+ * type has no handler on this node, e.g. one enqueued by a newer version during a rolling deploy,
+ * is put back without using up an attempt.
+ */
+@Service
+@Slf4j
+public class JobQueue {
+
+    private static final String CLAIMABLE = "((status = 'QUEUED' AND run_at <= ?) OR (status = 'RUNNING' AND locked_until < ?))";
+    private static final String SELECT_DUE_SQL = "SELECT id FROM jobs WHERE " + CLAIMABLE + " ORDER BY run_at, id LIMIT ?";
+    private static final String CLAIM_SQL = "UPDATE jobs SET status = 'RUNNING', locked_by = ?, locked_until = ?, " +
+            "attempts = attempts + 1 WHERE id = ? AND " + CLAIMABLE;
+    private static final String LOAD_SQL = "SELECT type, payload, attempts, max_attempts, checkpoint FROM jobs WHERE id = ?";
+    private static final String CHECKPOINT_SQL = "UPDATE jobs SET checkpoint = ?, locked_until = ? " +
+            "WHERE id = ? AND status = 'RUNNING' AND locked_by = ?";
+    private static final String COMPLETE_SQL = "UPDATE jobs SET status = 'COMPLETED', finished_date = ?, " +
+            "locked_by = NULL, locked_until = NULL WHERE id = ? AND status = 'RUNNING' AND locked_by = ?";
+    private static final String RETRY_SQL = "UPDATE jobs SET status = 'QUEUED', run_at = ?, last_error = ?, " +
+            "locked_by = NULL, locked_until = NULL WHERE id = ? AND status = 'RUNNING' AND locked_by = ?";
+    private static final String RELEASE_SQL = "UPDATE jobs SET status = 'QUEUED', run_at = ?, attempts = attempts - 1, " +
+            "locked_by = NULL, locked_until = NULL WHERE id = ? AND status = 'RUNNING' AND locked_by = ?";
+    private static final String FAIL_SQL = "UPDATE jobs SET status = 'FAILED', finished_date = ?, last_error = ?, " +
+            "locked_by = NULL, locked_until = NULL WHERE id = ? AND status = 'RUNNING' AND locked_by = ?";
+    private static final String STATS_SQL = "SELECT COUNT(*), MIN(run_at) FROM jobs WHERE status = 'QUEUED' AND run_at <= ?";
+    private static final String PURGE_SQL = "DELETE FROM jobs WHERE status = 'COMPLETED' AND finished_date < ?";
+
+    private static final int MAX_ERROR_LENGTH = 2000;
+
+    /**
+     * Runs one job. Throwing schedules a retry, or fails the job after its last attempt.
+     */
+    @FunctionalInterface
+    public interface Handler {
+        void run(Context context) throws Exception;
+    }
+
+    private final BackgroundJobRepository jobRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final Map<String, Handler> handlers = new ConcurrentHashMap<>();
+    private final String workerId = UUID.randomUUID().toString();
+
+    private final int defaultMaxAttempts;
+    private final Duration lease;
+    private final Duration baseBackoff;
+    private final Duration maxBackoff;
+    private final Duration retention;
+    private final long pollIntervalMillis;
+    private final Semaphore freeWorkers;
+    private final ScheduledThreadPoolExecutor poller;
+    private final ExecutorService workers;
+    private final AtomicBoolean pollScheduled = new AtomicBoolean();
+    private volatile boolean started;
+    private volatile boolean skipLocked;
+
+    private final AtomicLong depth = new AtomicLong();
+    private final AtomicLong lagMillis = new AtomicLong();
+    private final Counter completed;
+    private final Counter retried;
+    private final Counter failed;
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public JobQueue(BackgroundJobRepository jobRepository, JdbcTemplate jdbcTemplate,
+                    TransactionTemplate transactionTemplate, ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                    @Value("${jobs.worker-threads:4}") int workerThreads,
+                    @Value("${jobs.poll-interval-ms:1000}") long pollIntervalMillis,
+                    @Value("${jobs.max-attempts:5}") int defaultMaxAttempts,
+                    @Value("${jobs.lease-seconds:300}") long leaseSeconds,
+                    @Value("${jobs.backoff.base-ms:5000}") long baseBackoffMillis,
+                    @Value("${jobs.backoff.max-ms:600000}") long maxBackoffMillis,
+                    @Value("${jobs.retention-hours:24}") long retentionHours) {
+        this.jobRepository = jobRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.defaultMaxAttempts = defaultMaxAttempts;
+        this.lease = Duration.ofSeconds(leaseSeconds);
+        this.baseBackoff = Duration.ofMillis(baseBackoffMillis);
+        this.maxBackoff = Duration.ofMillis(maxBackoffMillis);
+        this.retention = Duration.ofHours(retentionHours);
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.freeWorkers = new Semaphore(workerThreads);
+        this.workers = Executors.newFixedThreadPool(workerThreads, new CustomizableThreadFactory("job-worker-"));
+        this.poller = new ScheduledThreadPoolExecutor(1, new CustomizableThreadFactory("job-poller-"));
+
+        Gauge.builder("jobs.queue.depth", depth, AtomicLong::get)
+                .description("Jobs due and waiting for a worker")
+                .register(meterRegistry);
+        Gauge.builder("jobs.queue.lag", lagMillis, AtomicLong::get)
+                .description("How long the oldest due job has been waiting")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+        this.completed = Counter.builder("jobs.completed")
+                .description("Jobs that ran to completion")
+                .register(meterRegistry);
+        this.retried = Counter.builder("jobs.retried")
+                .description("Job runs that failed and were scheduled again")
+                .register(meterRegistry);
+        this.failed = Counter.builder("jobs.failed")
+                .description("Jobs that failed on their last attempt")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void detectDatabase() {
+        String product = jdbcTemplate.execute((ConnectionCallback<String>) c -> c.getMetaData().getDatabaseProductName());
+        skipLocked = "PostgreSQL".equalsIgnoreCase(product);
+        log.info("Job queue on {}: claiming with {}", product, skipLocked ? "FOR UPDATE SKIP LOCKED" : "conditional updates");
+    }
+
+    // Services register their handlers while the context starts; claiming before that would run
+    // jobs into a missing handler
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        started = true;
+        poller.scheduleWithFixedDelay(this::wakeUp, 0, pollIntervalMillis, TimeUnit.MILLISECONDS);
+        poller.scheduleWithFixedDelay(this::purge, 1, 60, TimeUnit.MINUTES);
+        log.info("Job queue started with handlers for {}", handlers.keySet());
+    }
+
+    public void register(String type, Handler handler) {
+        if (handlers.putIfAbsent(type, handler) != null) {
+            throw new IllegalStateException("A handler is already registered for job type " + type);
+        }
+    }
+
+    /**
+     * Queue a job. Inside a transaction the job commits, and becomes runnable, with it.
+     *
+     * @param payload arguments for the handler, stored as JSON; may be null
+     */
+    public BackgroundJob enqueue(String type, Object payload) {
+        BackgroundJob job = jobRepository.save(BackgroundJob.builder()
+                .type(type)
+                .payload(payload != null ? toJson(payload) : null)
+                .maxAttempts(defaultMaxAttempts)
+                .runAt(Instant.now())
+                .createdDate(Instant.now())
+                .build());
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    wakeUp();
+                }
+            });
+        } else {
+            wakeUp();
+        }
+        return job;
+    }
+
+    public Optional<BackgroundJob> getJob(Long id) {
+        return jobRepository.findById(id);
+    }
+
+    private void wakeUp() {
+        // Many wake-ups in a row collapse into one pending poll
+        if (started && pollScheduled.compareAndSet(false, true)) {
+            try {
+                poller.execute(this::poll);
+            } catch (Exception e) {
+                pollScheduled.set(false);
+            }
+        }
+    }
+
+    private void poll() {
+        pollScheduled.set(false);
+        try {
+            refreshStats();
+            int free = freeWorkers.availablePermits();
+            if (free == 0) {
+                return;
+            }
+            List<Long> claimed = claim(free);
+            for (Long id : claimed) {
+                freeWorkers.acquireUninterruptibly();
+                try {
+                    workers.execute(() -> {
+                        try {
+                            run(id);
+                        } finally {
+                            freeWorkers.release();
+                            wakeUp();
+                        }
+                    });
+                } catch (Exception e) {
+                    // Shutting down; the lease runs out and another node picks the job up
+                    freeWorkers.release();
+                }
+            }
+        } catch (Exception e) {
+            log.error("Job poll failed; retrying on the next interval", e);
+        }
+    }
+
+    private List<Long> claim(int limit) {
+        List<Long> claimed = transactionTemplate.execute(status -> {
+            Timestamp now = Timestamp.from(Instant.now());
+            Timestamp leaseEnd = Timestamp.from(Instant.now().plus(lease));
+            List<Long> candidates = jdbcTemplate.queryForList(SELECT_DUE_SQL + (skipLocked ? " FOR UPDATE SKIP LOCKED" : ""),
+                    Long.class, now, now, limit);
+            List<Long> mine = new ArrayList<>();
+            for (Long id : candidates) {
+                // Loses to another node that claimed the job after it was selected
+                if (jdbcTemplate.update(CLAIM_SQL, workerId, leaseEnd, id, now, now) == 1) {
+                    mine.add(id);
+                }
+            }
+            return mine;
+        });
+        return claimed != null ? claimed : List.of();
+    }
+
+    private void run(Long id) {
+        Context context = jdbcTemplate.queryForObject(LOAD_SQL, (rs, row) -> new Context(id,
+                rs.getString("type"), rs.getString("payload"), rs.getInt("attempts"), rs.getInt("max_attempts"),
+                rs.getString("checkpoint")), id);
+        Handler handler = handlers.get(context.type);
+        if (handler == null) {
+            // Not the job's fault: leave it, attempt refunded, for a node that can run it
+            Instant retryAt = Instant.now().plus(baseBackoff);
+            if (jdbcTemplate.update(RELEASE_SQL, Timestamp.from(retryAt), id, workerId) == 1) {
+                log.warn("No handler registered for job {} ({}), putting it back until {}", id, context.type, retryAt);
+            }
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            handler.run(context);
+            if (jdbcTemplate.update(COMPLETE_SQL, Timestamp.from(Instant.now()), id, workerId) == 1) {
+                completed.increment();
+            } else {
+                leaseLost(id, context);
+            }
+        } catch (Exception e) {
+            String error = truncate(e.toString());
+            if (context.attempt < context.maxAttempts) {
+                Instant retryAt = Instant.now().plus(backoff(context.attempt));
+                if (jdbcTemplate.update(RETRY_SQL, Timestamp.from(retryAt), error, id, workerId) == 1) {
+                    retried.increment();
+                    log.warn("Job {} ({}) failed on attempt {}, retrying at {}: {}", id, context.type, context.attempt, retryAt, error);
+                } else {
+                    leaseLost(id, context);
+                }
+            } else if (jdbcTemplate.update(FAIL_SQL, Timestamp.from(Instant.now()), error, id, workerId) == 1) {
+                failed.increment();
+                log.error("Job {} ({}) failed after {} attempts", id, context.type, context.attempt, e);
+            } else {
+                leaseLost(id, context);
+            }
+        } finally {
+            Timer.builder("jobs.duration")
+                    .description("Wall time of one job run")
+                    .tag("type", context.type)
+                    .register(meterRegistry)
+                    .record(Duration.ofNanos(System.nanoTime() - start));
+        }
+    }
+
+    // The lease ran out and another node took the job over; its run decides the outcome
+    private static void leaseLost(Long id, Context context) {
+        log.warn("Job {} ({}) attempt {} finished after its lease was taken over", id, context.type, context.attempt);
+    }
+
+    // Doubles per attempt up to the cap, with jitter so jobs failing together do not retry together
+    private Duration backoff(int attempt) {
+        long millis = baseBackoff.toMillis() << Math.min(attempt - 1, 20);
+        millis = Math.min(millis, maxBackoff.toMillis());
+        return Duration.ofMillis(millis / 2 + ThreadLocalRandom.current().nextLong(millis / 2 + 1));
+    }
+
+    private void refreshStats() {
+        Instant now = Instant.now();
+        jdbcTemplate.query(STATS_SQL, rs -> {
+            depth.set(rs.getLong(1));
+            Timestamp oldest = rs.getTimestamp(2);
+            lagMillis.set(oldest != null ? Math.max(0, now.toEpochMilli() - oldest.getTime()) : 0);
+        }, Timestamp.from(now));
+    }
+
+    private void purge() {
+        try {
+            int purged = jdbcTemplate.update(PURGE_SQL, Timestamp.from(Instant.now().minus(retention)));
+            if (purged > 0) {
+                log.info("Purged {} completed jobs", purged);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to purge completed jobs: {}", e.getMessage());
+        }
+    }
+
+    private String toJson(Object payload) {
+        try {
+            return objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Cannot serialize job payload", e);
+        }
+    }
+
+    private static String truncate(String error) {
+        return error.length() <= MAX_ERROR_LENGTH ? error : error.substring(0, MAX_ERROR_LENGTH);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        poller.shutdown();
+        workers.shutdown();
+        workers.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * A claimed job as seen by its handler.
+     */
+    public final class Context {
+        private final Long id;
+        private final String type;
+        private final String payload;
+        private final int attempt;
+        private final int maxAttempts;
+        private volatile String checkpoint;
+
+        private Context(Long id, String type, String payload, int attempt, int maxAttempts, String checkpoint) {
+            this.id = id;
+            this.type = type;
+            this.payload = payload;
+            this.attempt = attempt;
+            this.maxAttempts = maxAttempts;
+            this.checkpoint = checkpoint;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public int getAttempt() {
+            return attempt;
+        }
+
+        /**
+         * The payload read back into the type it was enqueued as.
+         */
+        public <T> T getPayload(Class<T> type) {
+            try {
+                return objectMapper.readValue(payload, type);
+            } catch (JsonProcessingException e) {
+                throw new IllegalArgumentException("Cannot read payload of job " + id, e);
+            }
+        }
+
+        /**
+         * The last checkpoint saved by this or an earlier attempt, or null.
+         */
+        public String getCheckpoint() {
+            return checkpoint;
+        }
+
+        /**
+         * Save progress and extend the lease. Called inside the transaction doing the work it
+         * records, the two commit together. Fails once the lease was lost to another node, which
+         * rolls that transaction back.
+         */
+        public void checkpoint(String value) {
+            if (jdbcTemplate.update(CHECKPOINT_SQL, value, Timestamp.from(Instant.now().plus(lease)), id, workerId) == 0) {
+                throw new IllegalStateException("Job " + id + " is no longer held by this worker");
+            }
+            checkpoint = value;
+        }
+    }
+}
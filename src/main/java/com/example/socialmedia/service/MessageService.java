@@ -1,52 +1,128 @@
 package com.example.socialmedia.service;
 
+import com.example.socialmedia.dto.CursorPage;
+import com.example.socialmedia.exception.BadRequestException;
+import com.example.socialmedia.exception.ResourceNotFoundException;
 import com.example.socialmedia.model.Message;
-import com.example.socialmedia.model.Shop;
-import com.example.socialmedia.model.User;
 import com.example.socialmedia.repository.MessageRepository;
 import com.example.socialmedia.repository.ShopRepository;
-import com.example.socialmedia.repository.UserRepository;
+import com.example.socialmedia.util.KeysetCursor;
+import com.example.socialmedia.util.KeysetPagination;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 public class MessageService {
 
     private final MessageRepository messageRepository;
-    private final UserRepository userRepository;
     private final ShopRepository shopRepository;
+    private final MessageWriteBuffer writeBuffer;
+    private final int maxKnownShops;
+    private final long knownShopTtlMs;
+    // Shops confirmed to exist, with when that stops being trusted, so chat messages to them need no
+    // shops lookup. The TTL bounds how long a shop deleted through another node keeps receiving messages.
+    private final Map<Long, Long> knownShops = new ConcurrentHashMap<>();
 
     @Autowired
-    public MessageService(MessageRepository messageRepository, UserRepository userRepository, ShopRepository shopRepository) {
+    public MessageService(MessageRepository messageRepository, ShopRepository shopRepository,
+                          MessageWriteBuffer writeBuffer,
+                          @Value("${chat.known-shops.max-entries:10000}") int maxKnownShops,
+                          @Value("${chat.known-shops.ttl-ms:300000}") long knownShopTtlMs) {
         this.messageRepository = messageRepository;
-        this.userRepository = userRepository;
         this.shopRepository = shopRepository;
+        this.writeBuffer = writeBuffer;
+        this.maxKnownShops = maxKnownShops;
+        this.knownShopTtlMs = knownShopTtlMs;
     }
 
-    public List<Message> getMessagesByShop(Long shopId) {
-        return messageRepository.findByShopIdOrderBySentAtAsc(shopId);
+    /**
+     * A page of a room's visible messages, newest first.
+     */
+    public CursorPage<Message> getMessagesByShop(Long shopId, String cursor, int size) {
+        int pageSize = KeysetPagination.clamp(size);
+        List<Message> rows;
+        if (KeysetPagination.isFirstPage(cursor)) {
+            rows = messageRepository.findByShopIdAndStatusOrderBySentAtDescIdDesc(shopId, Message.MessageStatus.VISIBLE,
+                    KeysetPagination.limit(pageSize));
+        } else {
+            KeysetCursor after = KeysetCursor.decode(cursor);
+            rows = messageRepository.findPageBefore(shopId, Message.MessageStatus.VISIBLE, after.getLocalDateTimeKey(),
+                    after.getStringId(), KeysetPagination.limit(pageSize));
+        }
+        return KeysetPagination.toPage(rows, pageSize, message -> KeysetCursor.encode(message.getSentAt(), message.getId()));
     }
 
-    public Message sendMessage(Long userId, Long shopId, Message message) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-        Shop shop = shopRepository.findById(shopId)
-                .orElseThrow(() -> new RuntimeException("Shop not found"));
+    /**
+     * The visible messages of a room sent after the given one, oldest first, for a client that
+     * reconnects after seeing it. When more are missing than fit a page, nextCursor is the id to
+     * pass as the next sinceId.
+     */
+    public CursorPage<Message> getMessagesSince(Long shopId, String sinceId, int size) {
+        writeBuffer.awaitWritten(sinceId);
+        Message since = messageRepository.findById(sinceId)
+                .orElseThrow(() -> new ResourceNotFoundException("Message not found with id: " + sinceId));
+        if (!shopId.equals(since.getShopId())) {
+            throw new BadRequestException("Message " + sinceId + " is not in the chat of shop " + shopId);
+        }
+        int pageSize = KeysetPagination.clamp(size);
+        List<Message> rows = messageRepository.findPageAfter(shopId, Message.MessageStatus.VISIBLE, since.getSentAt(),
+                since.getId(), KeysetPagination.limit(pageSize));
+        return KeysetPagination.toPage(rows, pageSize, Message::getId);
+    }
 
-        message.setSenderId(user.getId());
-        message.setSenderUsername(user.getUsername());
-        message.setShopId(shop.getId());
-        return messageRepository.save(message);
+    /**
+     * Send as a sender already authenticated, such as a STOMP session's user or the caller of a
+     * REST request. Once the shop is known this makes no relational queries.
+     */
+    public Message sendMessage(Long senderId, String senderUsername, Long shopId, Message message) {
+        requireShop(shopId);
+        message.setSenderId(senderId);
+        message.setSenderUsername(senderUsername);
+        message.setShopId(shopId);
+        return writeBuffer.write(message);
+    }
+
+    /**
+     * Forget a deleted shop.
+     */
+    public void removeShop(Long shopId) {
+        knownShops.remove(shopId);
+    }
+
+    private void requireShop(Long shopId) {
+        long now = System.currentTimeMillis();
+        Long expiresAt = knownShops.get(shopId);
+        if (expiresAt != null && expiresAt > now) {
+            return;
+        }
+        if (!shopRepository.existsById(shopId)) {
+            knownShops.remove(shopId);
+            throw new RuntimeException("Shop not found");
+        }
+        if (expiresAt == null && knownShops.size() >= maxKnownShops) {
+            // Evict an arbitrary entry; it is looked up again on its next message
+            Iterator<Long> it = knownShops.keySet().iterator();
+            if (it.hasNext()) {
+                knownShops.remove(it.next());
+            }
+        }
+        knownShops.put(shopId, now + knownShopTtlMs);
     }
     
     public void deleteMessage(String messageId) {
         // In a real app, check if the user requesting delete is the shop admin
+        writeBuffer.awaitWritten(messageId);
         messageRepository.deleteById(messageId);
     }
     
     public Message hideMessage(String messageId) {
+        writeBuffer.awaitWritten(messageId);
         Message message = messageRepository.findById(messageId)
                 .orElseThrow(() -> new RuntimeException("Message not found"));
         message.setStatus(Message.MessageStatus.HIDDEN);
@@ -0,0 +1,228 @@
+package com.example.socialmedia.service;
+
+import com.example.socialmedia.model.Message;
+import com.example.socialmedia.repository.MessageRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Persists chat messages, either before they are broadcast (write-through) or after
+ * (write-behind).
+ *
+ * In write-behind mode a message gets its ObjectId and timestamp in memory and is returned at
+ * once, so the broadcast does not wait for Mongo. A single flusher thread writes queued messages
+ * with one insertMany per batch, when a batch fills up or every flush interval. The queue is
+ * bounded: when Mongo falls behind, senders wait up to the offer timeout for room and are then
+ * turned away, instead of memory growing. A failed batch is retried as idempotent upserts; if
+ * that keeps failing the batch is dropped. Messages still queued at shutdown are flushed.
+ *
+ * The price is durability: a crash loses the messages not yet flushed, and for up to a flush
+ * interval the history endpoints do not show a message that was already broadcast.
+ */
+@Service
+@Slf4j
+public class MessageWriteBuffer {
+
+    private static final int MAX_RETRIES = 3;
+    private static final long RETRY_BACKOFF_MS = 200;
+    private static final long AWAIT_WRITTEN_TIMEOUT_MS = 10_000;
+
+    private final MessageRepository messageRepository;
+    private final boolean writeBehind;
+    private final int batchSize;
+    private final long offerTimeoutMillis;
+    private final ArrayBlockingQueue<Message> queue;
+    // Queued messages by id, completed once written, for callers that need a message in Mongo
+    private final ConcurrentHashMap<String, CompletableFuture<Void>> pending = new ConcurrentHashMap<>();
+    private final ScheduledThreadPoolExecutor flusher;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private volatile boolean accepting = true;
+
+    private final Counter written;
+    private final Counter rejected;
+    private final Counter dropped;
+    private final Timer batchTimer;
+
+    @Autowired
+    public MessageWriteBuffer(MessageRepository messageRepository, MeterRegistry meterRegistry,
+                              @Value("${chat.persistence.write-behind:true}") boolean writeBehind,
+                              @Value("${chat.persistence.batch-size:500}") int batchSize,
+                              @Value("${chat.persistence.flush-interval-ms:50}") long flushIntervalMillis,
+                              @Value("${chat.persistence.queue-capacity:10000}") int queueCapacity,
+                              @Value("${chat.persistence.offer-timeout-ms:1000}") long offerTimeoutMillis) {
+        this.messageRepository = messageRepository;
+        this.writeBehind = writeBehind;
+        this.batchSize = batchSize;
+        this.offerTimeoutMillis = offerTimeoutMillis;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.flusher = new ScheduledThreadPoolExecutor(1, new CustomizableThreadFactory("chat-writer-"));
+        if (writeBehind) {
+            this.flusher.scheduleWithFixedDelay(this::wakeUp, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+
+        Gauge.builder("chat.persist.queue", queue, ArrayBlockingQueue::size)
+                .description("Chat messages broadcast but not yet written to Mongo")
+                .register(meterRegistry);
+        this.written = Counter.builder("chat.persist.written")
+                .description("Chat messages written to Mongo")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("chat.persist.rejected")
+                .description("Chat messages turned away because the write queue stayed full")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("chat.persist.dropped")
+                .description("Chat messages lost after their batch failed every retry")
+                .register(meterRegistry);
+        this.batchTimer = Timer.builder("chat.persist.batch")
+                .description("Time to write one batch of chat messages")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Persist a message, or queue it in write-behind mode. Either way the returned message has
+     * its id and sentAt set.
+     */
+    public Message write(Message message) {
+        if (message.getSentAt() == null) {
+            message.setSentAt(LocalDateTime.now());
+        }
+        if (message.getStatus() == null) {
+            message.setStatus(Message.MessageStatus.VISIBLE);
+        }
+        if (!writeBehind) {
+            return messageRepository.save(message);
+        }
+
+        if (!accepting) {
+            throw new IllegalStateException("Chat is shutting down");
+        }
+        message.setId(new ObjectId().toHexString());
+        pending.put(message.getId(), new CompletableFuture<>());
+        boolean queued;
+        try {
+            queued = queue.offer(message, offerTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            queued = false;
+        }
+        if (!queued) {
+            pending.remove(message.getId());
+            rejected.increment();
+            throw new IllegalStateException("Chat is busy, try again later");
+        }
+        if (queue.size() >= batchSize) {
+            wakeUp();
+        }
+        return message;
+    }
+
+    /**
+     * Wait until a message queued by this node is in Mongo. Returns at once for any other id.
+     */
+    public void awaitWritten(String messageId) {
+        CompletableFuture<Void> write = pending.get(messageId);
+        if (write == null) {
+            return;
+        }
+        try {
+            write.get(AWAIT_WRITTEN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for message " + messageId);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IllegalStateException("Message " + messageId + " could not be saved");
+        }
+    }
+
+    private void wakeUp() {
+        // Many full batches in a row collapse into one pending drain
+        if (flushScheduled.compareAndSet(false, true)) {
+            try {
+                flusher.execute(this::drain);
+            } catch (Exception e) {
+                flushScheduled.set(false);
+            }
+        }
+    }
+
+    private void drain() {
+        flushScheduled.set(false);
+        List<Message> batch = new ArrayList<>(batchSize);
+        while (queue.drainTo(batch, batchSize) > 0) {
+            batchTimer.record(() -> flush(batch));
+            batch.clear();
+        }
+    }
+
+    private void flush(List<Message> batch) {
+        Exception failure = null;
+        for (int attempt = 0; attempt <= MAX_RETRIES; attempt++) {
+            try {
+                if (attempt == 0) {
+                    messageRepository.insert(batch);
+                } else {
+                    // Part of the batch may be in already; upserts by id make the retry safe
+                    Thread.sleep(RETRY_BACKOFF_MS * attempt * attempt);
+                    messageRepository.saveAll(batch);
+                }
+                failure = null;
+                break;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = e;
+                break;
+            } catch (Exception e) {
+                failure = e;
+                log.warn("Writing {} chat messages failed on attempt {}: {}", batch.size(), attempt + 1, e.getMessage());
+            }
+        }
+
+        if (failure == null) {
+            written.increment(batch.size());
+        } else {
+            dropped.increment(batch.size());
+            log.error("Dropped {} chat messages after {} attempts", batch.size(), MAX_RETRIES + 1, failure);
+        }
+        for (Message message : batch) {
+            CompletableFuture<Void> write = pending.remove(message.getId());
+            if (write == null) {
+                continue;
+            }
+            if (failure == null) {
+                write.complete(null);
+            } else {
+                write.completeExceptionally(failure);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        accepting = false;
+        flusher.shutdown();
+        flusher.awaitTermination(10, TimeUnit.SECONDS);
+        // The flusher has stopped; write what is left from this thread
+        drain();
+        log.info("Chat writer stopped");
+    }
+}
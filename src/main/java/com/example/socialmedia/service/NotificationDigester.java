@@ -0,0 +1,116 @@
+package com.example.socialmedia.service;
+
+import com.example.socialmedia.model.Notification;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces notifications that share a (user, type, shop) key into digest entries.
+ *
+ * The first notification for a key opens a window and is held. Everything arriving for the same
+ * key before the window closes is folded in, and when it closes exactly one delivery is made with
+ * the latest message and the number of notifications merged, so a burst yields a single entry.
+ * The next notification opens a new window. Every notification is therefore delayed by up to the
+ * window. A null user id keys shop-wide broadcasts.
+ */
+@Service
+@Slf4j
+public class NotificationDigester {
+
+    private final long windowMillis;
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final ConcurrentHashMap<DigestKey, PendingDigest> pending = new ConcurrentHashMap<>();
+
+    @Autowired
+    public NotificationDigester(@Value("${notification.digest.window-ms:10000}") long windowMillis) {
+        this.windowMillis = windowMillis;
+        this.scheduler = new ScheduledThreadPoolExecutor(1, new CustomizableThreadFactory("notification-digest-"));
+    }
+
+    public boolean isEnabled() {
+        return windowMillis > 0;
+    }
+
+    /**
+     * Fold a notification into the open digest for its key. Inside a transaction the notification
+     * only joins the digest after commit, so rolled-back work never produces one.
+     */
+    public void submit(Long userId, Notification.NotificationType type, Long shopId, String message, Delivery delivery) {
+        DigestKey key = new DigestKey(userId, type, shopId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(key, message, delivery);
+                }
+            });
+        } else {
+            enqueue(key, message, delivery);
+        }
+    }
+
+    private void enqueue(DigestKey key, String message, Delivery delivery) {
+        pending.compute(key, (k, existing) -> {
+            PendingDigest digest = existing;
+            if (digest == null) {
+                digest = new PendingDigest(delivery);
+                scheduler.schedule(() -> flush(k), windowMillis, TimeUnit.MILLISECONDS);
+            }
+            digest.count++;
+            digest.latestMessage = message;
+            return digest;
+        });
+    }
+
+    private void flush(DigestKey key) {
+        // Removed before delivering: a notification arriving meanwhile opens the next window
+        PendingDigest digest = pending.remove(key);
+        if (digest != null) {
+            deliver(key, digest.delivery, digest.latestMessage, digest.count);
+        }
+    }
+
+    private void deliver(DigestKey key, Delivery delivery, String message, int count) {
+        try {
+            delivery.deliver(message, count);
+        } catch (Exception e) {
+            log.error("Failed to deliver notification digest {} ({} merged)", key, count, e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Deliver what open windows have merged so far instead of waiting them out
+        scheduler.shutdownNow();
+        pending.keySet().forEach(this::flush);
+    }
+
+    @FunctionalInterface
+    public interface Delivery {
+        void deliver(String latestMessage, int count);
+    }
+
+    private record DigestKey(Long userId, Notification.NotificationType type, Long shopId) {
+    }
+
+    // An open window: the notifications merged into its one delivery
+    private static class PendingDigest {
+        private final Delivery delivery;
+        private int count;
+        private String latestMessage;
+
+        PendingDigest(Delivery delivery) {
+            this.delivery = delivery;
+        }
+    }
+}
@@ -0,0 +1,456 @@
+package com.example.socialmedia.service;
+
+import com.example.socialmedia.config.WebSocketConfig;
+import com.example.socialmedia.dto.BroadcastProgress;
+import com.example.socialmedia.dto.NotificationDto;
+import com.example.socialmedia.model.BackgroundJob;
+import com.example.socialmedia.model.Notification;
+import com.example.socialmedia.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.AuditorAware;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Background fan-out pipeline for broadcast notifications.
+ *
+ * Broadcasts to every user run as jobs on the {@link JobQueue}, so they survive restarts and are
+ * spread over the app nodes. Those stored once in broadcast_notifications only need pushes, so the
+ * job writes a single outbox fan-out row for every online user. Other types page through user ids
+ * (keyset on id), writing one JDBC batch of notification rows per page in the same transaction as
+ * the job's checkpoint, so a retried job resumes after the last page written instead of notifying
+ * twice. Shop posts go to an explicit recipient list (the shop's followers) in the same page-sized
+ * batches on an in-memory coordinator thread, one transaction per page.
+ *
+ * Whichever node runs the job, the sessions of its recipients are spread over all nodes, so pushes
+ * are never sent from here: each page writes a fan-out row to the {@link WebSocketOutbox} in its
+ * transaction, and every node sends it to the sessions it holds once the page commits.
+ */
+@Service
+@Slf4j
+public class NotificationFanoutService {
+
+    public static final String BROADCAST_JOB = "BROADCAST";
+
+    private static final String INSERT_SQL = "INSERT INTO notifications " +
+            "(user_id, message, type, is_read, shop_id, digest_count, created_by, created_date, updated_by, updated_date) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    // A page covers every user id in (first, last], so the unread counters can be bumped by range.
+    // New state rows start from the user's existing unread rows, as in UserNotificationStateRepository
+    private static final String ENSURE_STATE_SQL = "INSERT INTO user_notification_state " +
+            "(user_id, broadcast_read_watermark, unread_count) " +
+            "SELECT u.id, 0, (SELECT COUNT(*) FROM notifications n WHERE n.user_id = u.id AND n.is_read = false) " +
+            "FROM users u WHERE u.id > ? AND u.id <= ? AND NOT EXISTS " +
+            "(SELECT 1 FROM user_notification_state s WHERE s.user_id = u.id)";
+    private static final String INCREMENT_UNREAD_SQL = "UPDATE user_notification_state " +
+            "SET unread_count = unread_count + 1 WHERE user_id > ? AND user_id <= ?";
+
+    // Per-user variants for explicit recipient lists, which are not contiguous id ranges
+    private static final String ENSURE_USER_STATE_SQL = "INSERT INTO user_notification_state " +
+            "(user_id, broadcast_read_watermark, unread_count) " +
+            "SELECT ?, 0, (SELECT COUNT(*) FROM notifications n WHERE n.user_id = ? AND n.is_read = false) " +
+            "WHERE NOT EXISTS (SELECT 1 FROM user_notification_state s WHERE s.user_id = ?)";
+    private static final String INCREMENT_USER_UNREAD_SQL = "UPDATE user_notification_state " +
+            "SET unread_count = unread_count + 1 WHERE user_id = ?";
+
+    private static final int MAX_TRACKED_JOBS = 100;
+
+    private final UserRepository userRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final AuditorAware<String> auditorProvider;
+    private final WebSocketOutbox outbox;
+    private final JobQueue jobQueue;
+    private final TransactionTemplate transactionTemplate;
+
+    private final int pageSize;
+    private final ThreadPoolExecutor coordinator;
+
+    private final Map<String, BroadcastJob> jobs = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, false) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, BroadcastJob> eldest) {
+                    // Forget the oldest finished job; queued and running ones stay tracked
+                    if (size() > MAX_TRACKED_JOBS) {
+                        Iterator<BroadcastJob> it = values().iterator();
+                        while (it.hasNext()) {
+                            if (it.next().finishedAt != null) {
+                                it.remove();
+                                break;
+                            }
+                        }
+                    }
+                    return false;
+                }
+            });
+    private final AtomicInteger activeJobs = new AtomicInteger();
+
+    private final Counter rowsInserted;
+    private final Counter jobsFailed;
+    private final Timer jobTimer;
+
+    @Autowired
+    public NotificationFanoutService(UserRepository userRepository, JdbcTemplate jdbcTemplate,
+                                     AuditorAware<String> auditorProvider, WebSocketOutbox outbox,
+                                     JobQueue jobQueue, TransactionTemplate transactionTemplate,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${notification.fanout.page-size:1000}") int pageSize,
+                                     @Value("${notification.fanout.max-queued-jobs:100}") int maxQueuedJobs) {
+        this.userRepository = userRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.auditorProvider = auditorProvider;
+        this.outbox = outbox;
+        this.jobQueue = jobQueue;
+        this.transactionTemplate = transactionTemplate;
+        this.pageSize = pageSize;
+
+        this.coordinator = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(maxQueuedJobs), new CustomizableThreadFactory("notification-fanout-"));
+
+        this.rowsInserted = Counter.builder("notifications.fanout.rows")
+                .description("Notification rows inserted by broadcast fan-out")
+                .register(meterRegistry);
+        this.jobsFailed = Counter.builder("notifications.fanout.failures")
+                .description("Broadcast fan-out jobs that failed")
+                .register(meterRegistry);
+        this.jobTimer = Timer.builder("notifications.fanout.duration")
+                .description("Wall time of a complete broadcast fan-out job")
+                .register(meterRegistry);
+        Gauge.builder("notifications.fanout.active", activeJobs, AtomicInteger::get)
+                .description("Broadcast fan-out jobs currently running")
+                .register(meterRegistry);
+        Gauge.builder("notifications.fanout.queued", coordinator, e -> e.getQueue().size())
+                .description("Broadcast fan-out jobs waiting to start")
+                .register(meterRegistry);
+        jobQueue.register(BROADCAST_JOB, this::runQueued);
+    }
+
+    /**
+     * Queue a broadcast to every user and return immediately. The job id is the id of its row in
+     * the jobs table.
+     *
+     * @param broadcastId id of the stored broadcast row, or null to write one notification row per user
+     */
+    public BroadcastProgress submit(String message, Notification.NotificationType type, Long broadcastId) {
+        BackgroundJob queued = jobQueue.enqueue(BROADCAST_JOB,
+                new BroadcastRequest(message, type, broadcastId, currentAuditor()));
+        return BroadcastProgress.builder()
+                .jobId(String.valueOf(queued.getId()))
+                .type(type)
+                .status(queued.getStatus().name())
+                .build();
+    }
+
+    /**
+     * Queue a notification about a shop for the given users, one row each.
+     *
+     * @param userIds     recipients; the array is read, never modified
+     * @param digestCount number of notifications merged into this one by the digest window
+     */
+    public BroadcastProgress submitToUsers(String message, Notification.NotificationType type, Long shopId,
+                                           int digestCount, long[] userIds) {
+        return enqueue(new BroadcastJob(UUID.randomUUID().toString(), message, type, null,
+                shopId, digestCount, userIds, currentAuditor()));
+    }
+
+    // Capture the auditor on the calling thread; the worker threads have no security context
+    private String currentAuditor() {
+        return auditorProvider.getCurrentAuditor().orElse(null);
+    }
+
+    private BroadcastProgress enqueue(BroadcastJob job) {
+        jobs.put(job.id, job);
+
+        try {
+            coordinator.execute(() -> run(job, null));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            throw new IllegalStateException("Too many broadcasts in progress, try again later");
+        }
+        return job.snapshot();
+    }
+
+    /**
+     * Progress of a broadcast: live from memory when it runs or ran on this node, otherwise from
+     * its row in the jobs table.
+     */
+    public Optional<BroadcastProgress> getProgress(String jobId) {
+        BroadcastJob job = jobs.get(jobId);
+        if (job != null) {
+            return Optional.of(job.snapshot());
+        }
+        long id;
+        try {
+            id = Long.parseLong(jobId);
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+        return jobQueue.getJob(id)
+                .filter(row -> BROADCAST_JOB.equals(row.getType()))
+                .map(row -> BroadcastProgress.builder()
+                        .jobId(jobId)
+                        .status(row.getStatus().name())
+                        .recipients(row.getCheckpoint() != null ? Checkpoint.parse(row.getCheckpoint()).recipients() : 0)
+                        .finishedAt(row.getFinishedDate())
+                        .error(row.getLastError())
+                        .build());
+    }
+
+    private void runQueued(JobQueue.Context context) {
+        BroadcastRequest request = context.getPayload(BroadcastRequest.class);
+        BroadcastJob job = new BroadcastJob(String.valueOf(context.getId()), request.message(), request.type(),
+                request.broadcastId(), null, 1, null, request.createdBy());
+        jobs.put(job.id, job);
+        run(job, context);
+    }
+
+    /**
+     * @param queued the claimed job when running from the job queue, whose failures are rethrown
+     *               for it to retry; null for in-memory jobs
+     */
+    private void run(BroadcastJob job, JobQueue.Context queued) {
+        job.status = "RUNNING";
+        job.startedAt = Instant.now();
+        activeJobs.incrementAndGet();
+        long start = System.nanoTime();
+
+        try {
+            if (job.broadcastId != null) {
+                outbox.fanOut(WebSocketConfig.USER_NOTIFICATIONS_DESTINATION, frame(job), null);
+            } else if (job.userIds != null) {
+                insertForRecipients(job);
+            } else {
+                insertForAllUsers(job, queued);
+            }
+
+            job.status = "COMPLETED";
+            log.info("Broadcast {} delivered to {} users", job.id, job.recipients.get());
+        } catch (Exception e) {
+            job.status = "FAILED";
+            job.error = e.getMessage();
+            jobsFailed.increment();
+            if (queued != null) {
+                // The jobs table tells whether it is retried; progress is read from there meanwhile
+                jobs.remove(job.id);
+                throw e instanceof RuntimeException runtime ? runtime : new IllegalStateException(e);
+            }
+            log.error("Broadcast {} failed after {} users", job.id, job.recipients.get(), e);
+        } finally {
+            job.finishedAt = Instant.now();
+            activeJobs.decrementAndGet();
+            jobTimer.record(Duration.ofNanos(System.nanoTime() - start));
+        }
+    }
+
+    private void insertForRecipients(BroadcastJob job) {
+        Timestamp now = Timestamp.from(job.startedAt);
+        NotificationDto frame = frame(job);
+        for (int from = 0; from < job.userIds.length; from += pageSize) {
+            List<Long> userIds = Arrays.stream(job.userIds, from, Math.min(from + pageSize, job.userIds.length))
+                    .boxed()
+                    .toList();
+            // Before the insert and outside its transaction, as in insertForAllUsers: a new state row
+            // counts the user's unread rows present at that point
+            ensureUserState(userIds);
+            transactionTemplate.executeWithoutResult(status -> {
+                insertBatch(job, userIds, now);
+                jdbcTemplate.batchUpdate(INCREMENT_USER_UNREAD_SQL, userIds, userIds.size(),
+                        (ps, userId) -> ps.setLong(1, userId));
+                outbox.fanOut(WebSocketConfig.USER_NOTIFICATIONS_DESTINATION, frame, userIds);
+            });
+            rowsInserted.increment(userIds.size());
+            job.recipients.addAndGet(userIds.size());
+        }
+    }
+
+    private void ensureUserState(List<Long> userIds) {
+        try {
+            batchEnsureUserState(userIds);
+        } catch (DuplicateKeyException e) {
+            // A request thread created one of the rows meanwhile; the retry skips it
+            batchEnsureUserState(userIds);
+        }
+    }
+
+    private void batchEnsureUserState(List<Long> userIds) {
+        jdbcTemplate.batchUpdate(ENSURE_USER_STATE_SQL, userIds, userIds.size(), (ps, userId) -> {
+            ps.setLong(1, userId);
+            ps.setLong(2, userId);
+            ps.setLong(3, userId);
+        });
+    }
+
+    private void insertForAllUsers(BroadcastJob job, JobQueue.Context queued) {
+        Timestamp now = Timestamp.from(job.startedAt);
+        NotificationDto frame = frame(job);
+        Long lastId = 0L;
+        if (queued.getCheckpoint() != null) {
+            Checkpoint resumed = Checkpoint.parse(queued.getCheckpoint());
+            lastId = resumed.lastUserId();
+            job.recipients.set(resumed.recipients());
+        }
+        while (true) {
+            List<Long> userIds = userRepository.findIdsAfter(lastId, PageRequest.of(0, pageSize));
+            if (userIds.isEmpty()) {
+                break;
+            }
+
+            Long afterId = lastId;
+            Long pageLastId = userIds.get(userIds.size() - 1);
+            // Outside the page transaction: it may fail on a concurrent insert, which would abort
+            // the transaction on Postgres, and creating missing state rows twice is harmless
+            ensureState(afterId, pageLastId);
+            String checkpoint = new Checkpoint(pageLastId, job.recipients.get() + userIds.size()).format();
+            transactionTemplate.executeWithoutResult(status -> {
+                insertBatch(job, userIds, now);
+                jdbcTemplate.update(INCREMENT_UNREAD_SQL, afterId, pageLastId);
+                queued.checkpoint(checkpoint);
+                outbox.fanOut(WebSocketConfig.USER_NOTIFICATIONS_DESTINATION, frame, userIds);
+            });
+            rowsInserted.increment(userIds.size());
+            job.recipients.addAndGet(userIds.size());
+
+            lastId = pageLastId;
+            if (userIds.size() < pageSize) {
+                break;
+            }
+        }
+    }
+
+    private void ensureState(Long afterId, Long lastId) {
+        try {
+            jdbcTemplate.update(ENSURE_STATE_SQL, afterId, lastId);
+        } catch (DuplicateKeyException e) {
+            // A request thread created one of the rows meanwhile; the retry skips it
+            jdbcTemplate.update(ENSURE_STATE_SQL, afterId, lastId);
+        }
+    }
+
+    private void insertBatch(BroadcastJob job, List<Long> userIds, Timestamp now) {
+        String type = job.type.name();
+        jdbcTemplate.batchUpdate(INSERT_SQL, userIds, userIds.size(), (ps, userId) -> {
+            ps.setLong(1, userId);
+            ps.setString(2, job.message);
+            ps.setString(3, type);
+            ps.setBoolean(4, false);
+            ps.setObject(5, job.shopId, Types.BIGINT);
+            ps.setInt(6, job.digestCount);
+            ps.setString(7, job.createdBy);
+            ps.setTimestamp(8, now);
+            ps.setString(9, job.createdBy);
+            ps.setTimestamp(10, now);
+        });
+    }
+
+    // One frame for every recipient: they all read it from their own queue, so it names no user
+    private NotificationDto frame(BroadcastJob job) {
+        return NotificationDto.builder()
+                .id(job.broadcastId)
+                .message(job.message)
+                .type(job.type)
+                .broadcast(job.broadcastId != null)
+                .shopId(job.shopId)
+                .digestCount(job.digestCount)
+                .createdDate(job.startedAt)
+                .build();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        coordinator.shutdown();
+        coordinator.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    // Arguments of a queued broadcast, stored as the job payload
+    record BroadcastRequest(String message, Notification.NotificationType type, Long broadcastId, String createdBy) {
+    }
+
+    // Progress of a queued broadcast to every user: pages up to lastUserId are written
+    private record Checkpoint(long lastUserId, long recipients) {
+        static Checkpoint parse(String value) {
+            int colon = value.indexOf(':');
+            return new Checkpoint(Long.parseLong(value.substring(0, colon)), Long.parseLong(value.substring(colon + 1)));
+        }
+
+        String format() {
+            return lastUserId + ":" + recipients;
+        }
+    }
+
+    private static class BroadcastJob {
+        private final String id;
+        private final String message;
+        private final Notification.NotificationType type;
+        private final Long broadcastId;
+        private final Long shopId;
+        private final int digestCount;
+        private final long[] userIds;
+        private final String createdBy;
+        private final AtomicLong recipients = new AtomicLong();
+        private volatile String status = "QUEUED";
+        private volatile Instant startedAt;
+        private volatile Instant finishedAt;
+        private volatile String error;
+
+        BroadcastJob(String id, String message, Notification.NotificationType type, Long broadcastId,
+                     Long shopId, int digestCount, long[] userIds, String createdBy) {
+            this.id = id;
+            this.message = message;
+            this.type = type;
+            this.broadcastId = broadcastId;
+            this.shopId = shopId;
+            this.digestCount = digestCount;
+            this.userIds = userIds;
+            this.createdBy = createdBy;
+        }
+
+        BroadcastProgress snapshot() {
+            double throughput = 0;
+            if (startedAt != null) {
+                Instant end = finishedAt != null ? finishedAt : Instant.now();
+                long millis = Math.max(1, Duration.between(startedAt, end).toMillis());
+                throughput = recipients.get() * 1000.0 / millis;
+            }
+            return BroadcastProgress.builder()
+                    .jobId(id)
+                    .type(type)
+                    .status(status)
+                    .recipients(recipients.get())
+                    .throughputPerSecond(throughput)
+                    .startedAt(startedAt)
+                    .finishedAt(finishedAt)
+                    .error(error)
+                    .build();
+        }
+    }
+}
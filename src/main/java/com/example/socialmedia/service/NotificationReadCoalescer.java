@@ -0,0 +1,91 @@
+package com.example.socialmedia.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces bursts of mark-as-read calls from the same user.
+ *
+ * The first call for a user opens a batch that is flushed after a short window; calls arriving
+ * within the window add their ids (or raise the read-up-to timestamp) and share the same flush,
+ * so a client clearing its inbox item by item costs one or two UPDATE statements.
+ */
+@Service
+@Slf4j
+public class NotificationReadCoalescer {
+
+    private final NotificationService notificationService;
+    private final long windowMillis;
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final ConcurrentHashMap<Long, PendingReads> pending = new ConcurrentHashMap<>();
+
+    @Autowired
+    public NotificationReadCoalescer(NotificationService notificationService,
+                                     @Value("${notification.read.coalesce-window-ms:50}") long windowMillis,
+                                     @Value("${notification.read.flush-threads:2}") int flushThreads) {
+        this.notificationService = notificationService;
+        this.windowMillis = windowMillis;
+        this.scheduler = new ScheduledThreadPoolExecutor(flushThreads, new CustomizableThreadFactory("notification-read-"));
+    }
+
+    /**
+     * Queue ids and/or a read-up-to timestamp for the user. The returned future completes with the
+     * number of notifications the shared flush marked read.
+     */
+    public CompletableFuture<Integer> markAsRead(Long userId, Collection<Long> ids, Instant upTo) {
+        PendingReads batch = pending.compute(userId, (key, existing) -> {
+            PendingReads reads = existing;
+            if (reads == null) {
+                reads = new PendingReads();
+                scheduler.schedule(() -> flush(key), windowMillis, TimeUnit.MILLISECONDS);
+            }
+            if (ids != null) {
+                reads.ids.addAll(ids);
+            }
+            if (upTo != null && (reads.upTo == null || upTo.isAfter(reads.upTo))) {
+                reads.upTo = upTo;
+            }
+            return reads;
+        });
+        return batch.result;
+    }
+
+    private void flush(Long userId) {
+        PendingReads batch = pending.remove(userId);
+        if (batch == null) {
+            return;
+        }
+        try {
+            batch.result.complete(notificationService.markAsRead(userId, batch.ids, batch.upTo));
+        } catch (Exception e) {
+            log.error("Failed to mark notifications read for user {}", userId, e);
+            batch.result.completeExceptionally(e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // Delayed flushes still run on shutdown (executor default), so queued reads are not lost
+        scheduler.shutdown();
+        scheduler.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private static class PendingReads {
+        private final Set<Long> ids = new HashSet<>();
+        private Instant upTo;
+        private final CompletableFuture<Integer> result = new CompletableFuture<>();
+    }
+}
@@ -1,55 +1,413 @@
 package com.example.socialmedia.service;
 
+import com.example.socialmedia.config.WebSocketConfig;
+import com.example.socialmedia.dto.BroadcastProgress;
+import com.example.socialmedia.dto.CursorPage;
+import com.example.socialmedia.dto.NotificationDto;
+import com.example.socialmedia.exception.BadRequestException;
+import com.example.socialmedia.exception.ResourceNotFoundException;
+import com.example.socialmedia.model.BroadcastNotification;
+import com.example.socialmedia.model.BroadcastReadMarker;
 import com.example.socialmedia.model.Notification;
 import com.example.socialmedia.model.User;
+import com.example.socialmedia.model.UserNotificationState;
+import com.example.socialmedia.repository.BroadcastNotificationRepository;
+import com.example.socialmedia.repository.BroadcastReadMarkerRepository;
 import com.example.socialmedia.repository.NotificationRepository;
+import com.example.socialmedia.repository.UserNotificationStateRepository;
 import com.example.socialmedia.repository.UserRepository;
+import com.example.socialmedia.util.KeysetPagination;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service
 public class NotificationService {
 
+    // Inbox order: newest first; at equal timestamps broadcasts sort ahead of personal rows, then id descending
+    private static final Comparator<NotificationDto> INBOX_ORDER = Comparator
+            .comparing(NotificationDto::getCreatedDate, Comparator.nullsLast(Comparator.reverseOrder()))
+            .thenComparing(NotificationDto::isBroadcast, Comparator.reverseOrder())
+            .thenComparing(NotificationDto::getId, Comparator.reverseOrder());
+
     private final NotificationRepository notificationRepository;
     private final UserRepository userRepository;
-    private final SimpMessagingTemplate messagingTemplate;
+    private final BroadcastNotificationRepository broadcastRepository;
+    private final BroadcastReadMarkerRepository readMarkerRepository;
+    private final UserNotificationStateRepository stateRepository;
+    private final WebSocketOutbox outbox;
+    private final NotificationFanoutService fanoutService;
+    private final NotificationDigester digester;
+    private final ShopFollowerIndex followerIndex;
+    private final TransactionTemplate newTransactionTemplate;
+    private final Set<Notification.NotificationType> readTimeTypes;
+    private final int broadcastCountCap;
+    private final long broadcastCountTtlMillis;
+    private final int broadcastCountMaxEntries;
+
+    // Unread broadcast counts per user. An entry is reused until the user reads a broadcast, a
+    // broadcast is issued on this node (bumping the version), or it expires, which bounds how long
+    // broadcasts issued on other nodes stay out of the badge
+    private final ConcurrentHashMap<Long, CachedCount> unreadBroadcastCounts = new ConcurrentHashMap<>();
+    private final AtomicLong broadcastVersion = new AtomicLong();
 
     @Autowired
-    public NotificationService(NotificationRepository notificationRepository, UserRepository userRepository, SimpMessagingTemplate messagingTemplate) {
+    public NotificationService(NotificationRepository notificationRepository, UserRepository userRepository,
+                               BroadcastNotificationRepository broadcastRepository,
+                               BroadcastReadMarkerRepository readMarkerRepository,
+                               UserNotificationStateRepository stateRepository,
+                               WebSocketOutbox outbox, NotificationFanoutService fanoutService,
+                               NotificationDigester digester, ShopFollowerIndex followerIndex,
+                               TransactionTemplate transactionTemplate,
+                               @Value("${notification.broadcast.read-time-types:SYSTEM_UPDATE,SHOP_ANNOUNCEMENT}")
+                               Set<Notification.NotificationType> readTimeTypes,
+                               @Value("${notification.unread.broadcast-cap:100}") int broadcastCountCap,
+                               @Value("${notification.unread.broadcast-cache-ttl-ms:30000}") long broadcastCountTtlMillis,
+                               @Value("${notification.unread.broadcast-cache-max-entries:10000}") int broadcastCountMaxEntries) {
         this.notificationRepository = notificationRepository;
         this.userRepository = userRepository;
-        this.messagingTemplate = messagingTemplate;
+        this.broadcastRepository = broadcastRepository;
+        this.readMarkerRepository = readMarkerRepository;
+        this.stateRepository = stateRepository;
+        this.outbox = outbox;
+        this.fanoutService = fanoutService;
+        this.digester = digester;
+        this.followerIndex = followerIndex;
+        this.newTransactionTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.newTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.readTimeTypes = readTimeTypes.isEmpty()
+                ? EnumSet.noneOf(Notification.NotificationType.class) : EnumSet.copyOf(readTimeTypes);
+        this.broadcastCountCap = broadcastCountCap;
+        this.broadcastCountTtlMillis = broadcastCountTtlMillis;
+        this.broadcastCountMaxEntries = broadcastCountMaxEntries;
     }
 
-    public List<Notification> getUserNotifications(Long userId) {
-        return notificationRepository.findByUserIdOrderByCreatedDateDesc(userId);
+    /**
+     * Keyset-paged inbox ordered by (created_date, id) descending. Personal and broadcast
+     * notifications are each read up to one page past the cursor and merged.
+     */
+    public CursorPage<NotificationDto> getInbox(Long userId, String cursor, int size) {
+        int pageSize = KeysetPagination.clamp(size);
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new ResourceNotFoundException("User not found with id: " + userId));
+        Instant since = user.getCreatedDate() != null ? user.getCreatedDate() : Instant.EPOCH;
+        PageRequest limit = PageRequest.of(0, pageSize + 1);
+
+        List<NotificationDto> merged = new ArrayList<>();
+        List<BroadcastNotification> broadcasts;
+        if (cursor == null || cursor.isBlank()) {
+            merged.addAll(notificationRepository.findPage(userId, limit));
+            broadcasts = broadcastRepository.findPage(since, limit);
+        } else {
+            InboxCursor after = InboxCursor.decode(cursor);
+            // At the cursor's timestamp broadcasts precede personal rows, so the id bound depends on which side the cursor is
+            merged.addAll(notificationRepository.findPageBefore(userId, after.createdDate,
+                    after.broadcast ? Long.MAX_VALUE : after.id, limit));
+            broadcasts = after.broadcast
+                    ? broadcastRepository.findPageBefore(since, after.createdDate, after.id, limit)
+                    : broadcastRepository.findPageBefore(since, after.createdDate, Long.MIN_VALUE, limit);
+        }
+        merged.addAll(toBroadcastDtos(userId, broadcasts));
+        merged.sort(INBOX_ORDER);
+
+        if (merged.size() <= pageSize) {
+            return new CursorPage<>(merged, null);
+        }
+        List<NotificationDto> page = new ArrayList<>(merged.subList(0, pageSize));
+        NotificationDto last = page.get(page.size() - 1);
+        return new CursorPage<>(page, new InboxCursor(last.getCreatedDate(), last.isBroadcast(), last.getId()).encode());
+    }
+
+    /**
+     * Unread badge: the maintained personal counter plus unread broadcasts above the read watermark.
+     * The broadcast part is capped at {@code notification.unread.broadcast-cap} and cached per user,
+     * so polling the badge does not rescan the broadcasts.
+     */
+    public long getUnreadCount(Long userId) {
+        UserNotificationState state = stateRepository.findById(userId).orElse(null);
+        if (state == null) {
+            // First badge read for a user without a state row: creating it counts their unread rows once
+            ensureState(userId);
+            state = stateRepository.findById(userId)
+                    .orElseGet(() -> UserNotificationState.builder().userId(userId).build());
+        }
+        return state.getUnreadCount() + countUnreadBroadcasts(userId, state.getBroadcastReadWatermark());
+    }
+
+    private long countUnreadBroadcasts(Long userId, long watermark) {
+        long version = broadcastVersion.get();
+        long now = System.currentTimeMillis();
+        CachedCount cached = unreadBroadcastCounts.get(userId);
+        // A moved watermark changes the key, so read-all needs no explicit eviction
+        if (cached != null && cached.version() == version && cached.watermark() == watermark && cached.expiresAt() > now) {
+            return cached.count();
+        }
+
+        long count = broadcastRepository.findUnreadIds(userId, watermark, PageRequest.of(0, broadcastCountCap)).size();
+        if (unreadBroadcastCounts.size() >= broadcastCountMaxEntries && !unreadBroadcastCounts.containsKey(userId)) {
+            unreadBroadcastCounts.keySet().stream().findAny().ifPresent(unreadBroadcastCounts::remove);
+        }
+        unreadBroadcastCounts.put(userId, new CachedCount(version, watermark, count, now + broadcastCountTtlMillis));
+        return count;
+    }
+
+    private List<NotificationDto> toBroadcastDtos(Long userId, List<BroadcastNotification> broadcasts) {
+        if (broadcasts.isEmpty()) {
+            return List.of();
+        }
+        long watermark = getReadWatermark(userId);
+        Set<Long> readAbove = new HashSet<>(readMarkerRepository.findBroadcastIdsAbove(userId, watermark));
+        List<NotificationDto> result = new ArrayList<>(broadcasts.size());
+        for (BroadcastNotification broadcast : broadcasts) {
+            result.add(NotificationDto.builder()
+                    .id(broadcast.getId())
+                    .userId(userId)
+                    .message(broadcast.getMessage())
+                    .type(broadcast.getType())
+                    .read(broadcast.getId() <= watermark || readAbove.contains(broadcast.getId()))
+                    .broadcast(true)
+                    .shopId(broadcast.getShopId())
+                    .digestCount(broadcast.getDigestCount())
+                    .createdDate(broadcast.getCreatedDate())
+                    .build());
+        }
+        return result;
     }
 
+    @Transactional
     public void createNotificationForUser(User user, String message, Notification.NotificationType type) {
+        createNotificationForUser(user, message, type, null);
+    }
+
+    /**
+     * Notify a user about a shop. Notifications with the same (user, type, shop) within the digest
+     * window, starting at the first, are stored as one row carrying the latest message and a count,
+     * written when the window closes.
+     */
+    @Transactional
+    public void createNotificationForUser(User user, String message, Notification.NotificationType type, Long shopId) {
+        createNotificationForUser(user, message, type, shopId, true);
+    }
+
+    /**
+     * @param digest false for notifications that each carry their own news (a new reservation),
+     *               which are stored individually even when they come in bursts
+     */
+    @Transactional
+    public void createNotificationForUser(User user, String message, Notification.NotificationType type, Long shopId,
+                                          boolean digest) {
+        if (shopId == null || !digest || !digester.isEnabled()) {
+            saveAndPush(user, message, type, shopId, 1);
+            return;
+        }
+        Long userId = user.getId();
+        // Delivered after the caller commits, possibly still on its thread, so in a transaction of its own
+        digester.submit(userId, type, shopId, message, (latest, count) ->
+                newTransactionTemplate.executeWithoutResult(status ->
+                        saveAndPush(userRepository.getReferenceById(userId), latest, type, shopId, count)));
+    }
+
+    private void saveAndPush(User user, String message, Notification.NotificationType type, Long shopId, int digestCount) {
         Notification notification = new Notification();
         notification.setUser(user);
         notification.setMessage(message);
         notification.setType(type);
+        notification.setShopId(shopId);
+        notification.setDigestCount(digestCount);
         Notification savedNotification = notificationRepository.save(notification);
-        
-        // Push to WebSocket: /topic/user/{userId}/notifications
-        messagingTemplate.convertAndSend("/topic/user/" + user.getId() + "/notifications", savedNotification);
+        incrementUnread(user.getId(), 1);
+
+        // Push to the user's /user/queue/notifications when they are online; sent by the outbox after commit
+        outbox.sendToUser(user.getId(), WebSocketConfig.USER_NOTIFICATIONS_DESTINATION, NotificationDto.builder()
+                .id(savedNotification.getId())
+                .userId(user.getId())
+                .message(message)
+                .type(type)
+                .shopId(shopId)
+                .digestCount(digestCount)
+                .createdDate(savedNotification.getCreatedDate())
+                .build());
+    }
+
+    /**
+     * Queue a notification for every user. Broadcast types stored at read time cost a single row;
+     * the rest get per-user rows. Either way the WebSocket pushes happen in the background, so the
+     * caller returns in constant time regardless of user count.
+     */
+    public BroadcastProgress broadcastNotification(String message, Notification.NotificationType type) {
+        if (readTimeTypes.contains(type)) {
+            BroadcastNotification broadcast = broadcastRepository.save(BroadcastNotification.builder()
+                    .message(message)
+                    .type(type)
+                    .build());
+            broadcastVersion.incrementAndGet();
+            return fanoutService.submit(message, type, broadcast.getId());
+        }
+        return fanoutService.submit(message, type, null);
+    }
+
+    /**
+     * Notify the followers of a shop, one row each. A burst of the same type from the shop within
+     * the digest window, starting at the first, goes out once when the window closes, with the
+     * latest message and the number merged.
+     */
+    public void notifyShopFollowers(Long shopId, String message, Notification.NotificationType type) {
+        if (!digester.isEnabled()) {
+            deliverToFollowers(shopId, message, type, 1);
+            return;
+        }
+        digester.submit(null, type, shopId, message, (latest, count) -> deliverToFollowers(shopId, latest, type, count));
+    }
+
+    private void deliverToFollowers(Long shopId, String message, Notification.NotificationType type, int count) {
+        // Read the index at delivery time so follows made during the digest window are included
+        long[] followers = followerIndex.getFollowers(shopId);
+        if (followers.length > 0) {
+            fanoutService.submitToUsers(message, type, shopId, count, followers);
+        }
+    }
+
+    public Optional<BroadcastProgress> getBroadcastProgress(String jobId) {
+        return fanoutService.getProgress(jobId);
+    }
+
+    /**
+     * Mark the caller's notifications read in one statement per criterion: the given ids and/or
+     * everything created up to {@code upTo}. Broadcasts up to {@code upTo} are covered by moving
+     * the read watermark. Returns the number of personal rows that flipped to read.
+     */
+    @Transactional
+    public int markAsRead(Long userId, Collection<Long> ids, Instant upTo) {
+        int updated = 0;
+        if (ids != null && !ids.isEmpty()) {
+            updated += notificationRepository.markReadByIds(userId, ids);
+        }
+        if (upTo != null) {
+            updated += notificationRepository.markReadUpTo(userId, upTo);
+            broadcastRepository.findMaxIdUpTo(upTo).ifPresent(maxId -> advanceWatermark(userId, maxId));
+        }
+        if (updated > 0) {
+            stateRepository.decrementUnread(userId, updated);
+        }
+        return updated;
+    }
+
+    @Transactional
+    public void markBroadcastAsRead(Long userId, Long broadcastId) {
+        if (!broadcastRepository.existsById(broadcastId)) {
+            throw new ResourceNotFoundException("Broadcast notification not found with id: " + broadcastId);
+        }
+        if (broadcastId <= getReadWatermark(userId) || readMarkerRepository.existsByUserIdAndBroadcastId(userId, broadcastId)) {
+            return;
+        }
+        readMarkerRepository.save(BroadcastReadMarker.builder()
+                .userId(userId)
+                .broadcastId(broadcastId)
+                .build());
+        afterCommit(() -> unreadBroadcastCounts.remove(userId));
+    }
+
+    /**
+     * Mark every broadcast issued so far as read by advancing the user's watermark.
+     */
+    @Transactional
+    public void markAllBroadcastsAsRead(Long userId) {
+        broadcastRepository.findMaxId().ifPresent(latest -> advanceWatermark(userId, latest));
+    }
+
+    private void advanceWatermark(Long userId, long watermark) {
+        if (stateRepository.advanceWatermark(userId, watermark) == 0) {
+            ensureState(userId);
+            if (stateRepository.advanceWatermark(userId, watermark) == 0) {
+                return;
+            }
+        }
+        readMarkerRepository.deleteCoveredByWatermark(userId, watermark);
     }
 
-    public void broadcastNotification(String message, Notification.NotificationType type) {
-        List<User> allUsers = userRepository.findAll();
-        for (User user : allUsers) {
-            createNotificationForUser(user, message, type);
+    private void incrementUnread(Long userId, long delta) {
+        if (stateRepository.incrementUnread(userId, delta) == 0) {
+            ensureState(userId);
+            stateRepository.incrementUnread(userId, delta);
         }
     }
-    
-    public void markAsRead(Long notificationId) {
-        notificationRepository.findById(notificationId).ifPresent(notification -> {
-            notification.setRead(true);
-            notificationRepository.save(notification);
+
+    // Creates the state row in its own transaction; losing the race to a concurrent insert is fine
+    private void ensureState(Long userId) {
+        try {
+            newTransactionTemplate.executeWithoutResult(status -> stateRepository.insertIfMissing(userId));
+        } catch (DataIntegrityViolationException e) {
+            // Row was created concurrently
+        }
+    }
+
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
         });
     }
+
+    private long getReadWatermark(Long userId) {
+        return stateRepository.findById(userId)
+                .map(UserNotificationState::getBroadcastReadWatermark)
+                .orElse(0L);
+    }
+
+    private record CachedCount(long version, long watermark, long count, long expiresAt) {
+    }
+
+    private static class InboxCursor {
+        private final Instant createdDate;
+        private final boolean broadcast;
+        private final Long id;
+
+        InboxCursor(Instant createdDate, boolean broadcast, Long id) {
+            this.createdDate = createdDate;
+            this.broadcast = broadcast;
+            this.id = id;
+        }
+
+        String encode() {
+            String raw = createdDate.getEpochSecond() + ":" + createdDate.getNano() + ":" + (broadcast ? 1 : 0) + ":" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static InboxCursor decode(String cursor) {
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+                return new InboxCursor(Instant.ofEpochSecond(Long.parseLong(parts[0]), Long.parseLong(parts[1])),
+                        "1".equals(parts[2]), Long.parseLong(parts[3]));
+            } catch (RuntimeException e) {
+                throw new BadRequestException("Invalid cursor");
+            }
+        }
+    }
 }
@@ -0,0 +1,202 @@
+package com.example.socialmedia.service;
+
+import com.example.socialmedia.dto.PostDto;
+import com.example.socialmedia.model.Post;
+import com.example.socialmedia.repository.PostRepository;
+import com.example.socialmedia.util.TextTokenizer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory inverted index over post content, ranked with BM25.
+ *
+ * Each term maps to the posts containing it and its frequency in each; per-post metadata (shop,
+ * type, length) supports the filters and length normalization. Rebuilt from the posts table at
+ * startup and kept current by {@link IndexSyncService}.
+ */
+@Service
+@Slf4j
+public class PostSearchIndex {
+
+    public static final int DEFAULT_LIMIT = 20;
+    public static final int MAX_LIMIT = 100;
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    // Rough per-entry costs (object headers, boxed keys, map nodes) for the memory gauge
+    private static final long BYTES_PER_POSTING = 64;
+    private static final long BYTES_PER_DOCUMENT = 120;
+
+    private final PostRepository postRepository;
+    private final int loadPageSize;
+    // term -> post id -> term frequency
+    private final ConcurrentHashMap<String, Map<Long, Integer>> postings = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Document> documents = new ConcurrentHashMap<>();
+    private final AtomicLong totalLength = new AtomicLong();
+    private final AtomicLong postingCount = new AtomicLong();
+    private final AtomicLong termBytes = new AtomicLong();
+    private final Timer queryTimer;
+
+    @Autowired
+    public PostSearchIndex(PostRepository postRepository, MeterRegistry meterRegistry,
+                           @Value("${post.search.load-page-size:5000}") int loadPageSize) {
+        this.postRepository = postRepository;
+        this.loadPageSize = loadPageSize;
+
+        Gauge.builder("post.search.documents", documents, ConcurrentHashMap::size)
+                .description("Posts in the full-text index")
+                .register(meterRegistry);
+        Gauge.builder("post.search.terms", postings, ConcurrentHashMap::size)
+                .description("Distinct terms in the full-text index")
+                .register(meterRegistry);
+        Gauge.builder("post.search.memory.bytes", this, PostSearchIndex::estimatedBytes)
+                .description("Estimated heap used by the full-text index")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.queryTimer = Timer.builder("post.search.query")
+                .description("Post search query latency")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void load() {
+        long lastId = 0;
+        List<PostDto> page;
+        do {
+            page = postRepository.findDtosAfterId(lastId, PageRequest.of(0, loadPageSize));
+            for (PostDto post : page) {
+                add(post);
+                lastId = post.getId();
+            }
+        } while (page.size() == loadPageSize);
+        log.info("Loaded post search index: {} posts, {} terms", documents.size(), postings.size());
+    }
+
+    /**
+     * Index a post, replacing any earlier version of it.
+     */
+    public synchronized void add(PostDto post) {
+        remove(post.getId());
+        List<String> tokens = TextTokenizer.tokenize(post.getContent());
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (String token : tokens) {
+            frequencies.merge(token, 1, Integer::sum);
+        }
+        frequencies.forEach((term, frequency) -> postings.computeIfAbsent(term, t -> {
+            termBytes.addAndGet(40 + 2L * t.length());
+            return new ConcurrentHashMap<>();
+        }).put(post.getId(), frequency));
+        postingCount.addAndGet(frequencies.size());
+        totalLength.addAndGet(tokens.size());
+        documents.put(post.getId(), new Document(post.getShopId(), post.getType(), tokens.size(), frequencies.keySet()));
+    }
+
+    public synchronized void remove(Long postId) {
+        Document document = documents.remove(postId);
+        if (document == null) {
+            return;
+        }
+        for (String term : document.terms()) {
+            postings.computeIfPresent(term, (t, posts) -> {
+                posts.remove(postId);
+                if (!posts.isEmpty()) {
+                    return posts;
+                }
+                termBytes.addAndGet(-(40 + 2L * t.length()));
+                return null;
+            });
+        }
+        postingCount.addAndGet(-document.terms().size());
+        totalLength.addAndGet(-document.length());
+    }
+
+    public List<Long> getPostIds() {
+        return List.copyOf(documents.keySet());
+    }
+
+    /**
+     * Drop every post of a deleted shop.
+     */
+    public void removeShop(Long shopId) {
+        documents.forEach((postId, document) -> {
+            if (shopId.equals(document.shopId())) {
+                remove(postId);
+            }
+        });
+    }
+
+    /**
+     * Ids of the posts best matching the query, best first. Any query term may match; type and
+     * shopId, when given, restrict the posts considered.
+     */
+    public List<Long> search(String query, Post.PostType type, Long shopId, int limit) {
+        return queryTimer.record(() -> {
+            int docCount = documents.size();
+            if (docCount == 0) {
+                return List.<Long>of();
+            }
+            double averageLength = Math.max(1.0, (double) totalLength.get() / docCount);
+            Map<Long, Double> scores = new HashMap<>();
+            for (String term : new LinkedHashSet<>(TextTokenizer.tokenize(query))) {
+                Map<Long, Integer> posts = postings.get(term);
+                if (posts == null) {
+                    continue;
+                }
+                double idf = Math.log(1 + (docCount - posts.size() + 0.5) / (posts.size() + 0.5));
+                posts.forEach((postId, frequency) -> {
+                    Document document = documents.get(postId);
+                    if (document == null || !document.matches(type, shopId)) {
+                        return;
+                    }
+                    double norm = K1 * (1 - B + B * document.length() / averageLength);
+                    scores.merge(postId, idf * frequency * (K1 + 1) / (frequency + norm), Double::sum);
+                });
+            }
+            return topK(scores, Math.min(Math.max(limit, 1), MAX_LIMIT));
+        });
+    }
+
+    // Highest scores first, newer posts first on ties
+    private static List<Long> topK(Map<Long, Double> scores, int k) {
+        Comparator<Map.Entry<Long, Double>> order = Map.Entry.<Long, Double>comparingByValue().reversed()
+                .thenComparing(Map.Entry.<Long, Double>comparingByKey().reversed());
+        PriorityQueue<Map.Entry<Long, Double>> heap = new PriorityQueue<>(k + 1, order.reversed());
+        for (Map.Entry<Long, Double> entry : scores.entrySet()) {
+            heap.add(entry);
+            if (heap.size() > k) {
+                heap.poll();
+            }
+        }
+        List<Map.Entry<Long, Double>> best = new ArrayList<>(heap);
+        best.sort(order);
+        return best.stream().map(Map.Entry::getKey).toList();
+    }
+
+    private long estimatedBytes() {
+        return postingCount.get() * BYTES_PER_POSTING + documents.size() * BYTES_PER_DOCUMENT + termBytes.get();
+    }
+
+    private record Document(Long shopId, Post.PostType type, int length, Set<String> terms) {
+        boolean matches(Post.PostType wantedType, Long wantedShopId) {
+            return (wantedType == null || wantedType == type) && (wantedShopId == null || wantedShopId.equals(shopId));
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.example.socialmedia.service;
 
+import com.example.socialmedia.dto.CursorPage;
+import com.example.socialmedia.dto.PostDto;
 import com.example.socialmedia.model.Post;
 import com.example.socialmedia.model.Shop;
 import com.example.socialmedia.model.User;
@@ -7,10 +9,17 @@ import com.example.socialmedia.model.Notification;
 import com.example.socialmedia.repository.PostRepository;
 import com.example.socialmedia.repository.ShopRepository;
 import com.example.socialmedia.repository.UserRepository;
+import com.example.socialmedia.util.KeysetCursor;
+import com.example.socialmedia.util.KeysetPagination;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 public class PostService {
@@ -18,33 +27,81 @@ public class PostService {
     private final PostRepository postRepository;
     private final ShopRepository shopRepository;
     private final NotificationService notificationService;
+    private final HomeTimelineService homeTimelineService;
+    private final PostSearchIndex searchIndex;
+    private final IndexSyncService indexSync;
 
     @Autowired
-    public PostService(PostRepository postRepository, ShopRepository shopRepository, NotificationService notificationService) {
+    public PostService(PostRepository postRepository, ShopRepository shopRepository, NotificationService notificationService,
+                       HomeTimelineService homeTimelineService, PostSearchIndex searchIndex,
+                       IndexSyncService indexSync) {
         this.postRepository = postRepository;
         this.shopRepository = shopRepository;
         this.notificationService = notificationService;
+        this.homeTimelineService = homeTimelineService;
+        this.searchIndex = searchIndex;
+        this.indexSync = indexSync;
     }
 
-    public List<Post> getAllPosts() {
-        return postRepository.findAll();
+    @Transactional(readOnly = true)
+    public CursorPage<PostDto> getAllPosts(String cursor, int size) {
+        int pageSize = KeysetPagination.clamp(size);
+        List<PostDto> rows;
+        if (KeysetPagination.isFirstPage(cursor)) {
+            rows = postRepository.findPage(KeysetPagination.limit(pageSize));
+        } else {
+            KeysetCursor after = KeysetCursor.decode(cursor);
+            rows = postRepository.findPageBefore(after.getInstantKey(), after.getId(), KeysetPagination.limit(pageSize));
+        }
+        return KeysetPagination.toPage(rows, pageSize, post -> KeysetCursor.encode(post.getCreatedDate(), post.getId()));
     }
 
-    public List<Post> getPostsByShopId(Long shopId) {
-        return postRepository.findByShopId(shopId);
+    @Transactional(readOnly = true)
+    public CursorPage<PostDto> getPostsByShopId(Long shopId, String cursor, int size) {
+        int pageSize = KeysetPagination.clamp(size);
+        List<PostDto> rows;
+        if (KeysetPagination.isFirstPage(cursor)) {
+            rows = postRepository.findPageByShopId(shopId, KeysetPagination.limit(pageSize));
+        } else {
+            KeysetCursor after = KeysetCursor.decode(cursor);
+            rows = postRepository.findPageByShopIdBefore(shopId, after.getInstantKey(), after.getId(),
+                    KeysetPagination.limit(pageSize));
+        }
+        return KeysetPagination.toPage(rows, pageSize, post -> KeysetCursor.encode(post.getCreatedDate(), post.getId()));
+    }
+
+    /**
+     * Full-text search over post content, best match first, optionally only one type or shop.
+     */
+    @Transactional(readOnly = true)
+    public List<PostDto> searchPosts(String query, Post.PostType type, Long shopId, int limit) {
+        List<Long> ids = searchIndex.search(query, type, shopId, limit);
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, PostDto> byId = postRepository.findDtosByIdIn(ids).stream()
+                .collect(Collectors.toMap(PostDto::getId, Function.identity()));
+        return ids.stream()
+                .map(byId::get)
+                .filter(Objects::nonNull)
+                .toList();
     }
 
-    public Post createPost(Long shopId, Post post, String username) {
-        Shop shop = shopRepository.findById(shopId)
+    public PostDto createPost(Long shopId, Post post, String username) {
+        Shop shop = shopRepository.findWithOwnerById(shopId)
                 .orElseThrow(() -> new RuntimeException("Shop not found with id: " + shopId));
         
-        // Verify that the user creating the post is the owner of the shop
-        if (!shop.getOwner().getUsername().equals(username)) {
+        // Verify that the user creating the post is the owner of the shop. Shops of deleted users
+        // have no owner, so nobody can post for them
+        if (shop.getOwner() == null || !shop.getOwner().getUsername().equals(username)) {
             throw new RuntimeException("You are not authorized to post for this shop.");
         }
         
         post.setShop(shop);
         Post savedPost = postRepository.save(post);
+        homeTimelineService.onPostCreated(shop.getId(), savedPost.getId());
+        PostDto created = PostDto.from(savedPost);
+        indexSync.postSaved(created);
         
         // Trigger notification logic
         String message = "New post from " + shop.getName() + ": " + post.getContent();
@@ -56,13 +113,14 @@ public class PostService {
             message = "Upcoming Event at " + shop.getName() + ": " + post.getContent();
         }
         
-        // For simplicity, we notify ALL users. In a real app, we'd notify followers.
-        notificationService.broadcastNotification(message, type);
+        // Notify the shop's followers; bursts of posts from the same shop are merged into one digest
+        notificationService.notifyShopFollowers(shop.getId(), message, type);
         
-        return savedPost;
+        return created;
     }
 
     public void deletePost(Long postId) {
         postRepository.deleteById(postId);
+        indexSync.postDeleted(postId);
     }
 }
@@ -0,0 +1,560 @@
+package com.example.socialmedia.service;
+
+import com.example.socialmedia.dto.DayAvailabilityDto;
+import com.example.socialmedia.dto.SlotAvailabilityDto;
+import com.example.socialmedia.exception.BadRequestException;
+import com.example.socialmedia.model.ShopSlotCapacity;
+import com.example.socialmedia.repository.ShopSlotCapacityRepository;
+import com.example.socialmedia.repository.SlotOccupancyRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Reservation capacity per shop and time slot.
+ *
+ * The slot_occupancy table is the authority: a booking is a single conditional UPDATE that only
+ * succeeds while the slot has room, so concurrent bookings of one slot serialize on its row and
+ * can never overbook. Per (shop, day) the booked counts are also kept in memory, one packed
+ * (revision, guests) cell per five minutes of the day, to turn away full slots without a write.
+ * Cells only move to a higher revision, so commits applied out of order cannot roll a count back.
+ *
+ * Availability of a (shop, day) is built from those cells and the shop's rules and cached until
+ * a booking in that day commits or the rules change. Bookings and rule changes on other nodes only
+ * reach this node's memory through the database, so the occupancy, availability and rules caches
+ * all expire after the same TTL, and a slot that memory shows as full is re-read before a booking
+ * is turned away.
+ */
+@Service
+@Slf4j
+public class ReservationCapacityService {
+
+    public static final int SLOT_GRANULARITY_MINUTES = 5;
+    public static final int MAX_AVAILABILITY_DAYS = 62;
+    private static final int CELLS_PER_DAY = 24 * 60 / SLOT_GRANULARITY_MINUTES;
+    private static final int CHANGE_STRIPES = 64;
+
+    private final ShopSlotCapacityRepository capacityRepository;
+    private final SlotOccupancyRepository occupancyRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int maxCachedDays;
+    private final long cacheTtlMillis;
+    private final ConcurrentHashMap<Long, CachedRules> rules = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<ShopDay, DayOccupancy> days = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<ShopDay, CachedAvailability> availability = new ConcurrentHashMap<>();
+    // Committed occupancy changes per stripe of shops; a bulk load of days is dropped if its stripe moved meanwhile
+    private final AtomicLongArray changes = new AtomicLongArray(CHANGE_STRIPES);
+
+    private final Counter rejections;
+    private final Counter availabilityHits;
+    private final Counter availabilityMisses;
+
+    @Autowired
+    public ReservationCapacityService(ShopSlotCapacityRepository capacityRepository,
+                                      SlotOccupancyRepository occupancyRepository,
+                                      TransactionTemplate transactionTemplate, MeterRegistry meterRegistry,
+                                      @Value("${reservation.capacity.max-cached-days:5000}") int maxCachedDays,
+                                      @Value("${reservation.capacity.cache-ttl-ms:30000}") long cacheTtlMillis) {
+        this.capacityRepository = capacityRepository;
+        this.occupancyRepository = occupancyRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.maxCachedDays = maxCachedDays;
+        this.cacheTtlMillis = cacheTtlMillis;
+
+        Gauge.builder("reservation.capacity.days", days, ConcurrentHashMap::size)
+                .description("Shop days with slot occupancy held in memory")
+                .register(meterRegistry);
+        this.rejections = Counter.builder("reservation.capacity.rejections")
+                .description("Bookings turned away because the slot was full")
+                .register(meterRegistry);
+        this.availabilityHits = Counter.builder("reservation.availability.hits")
+                .description("Shop days of availability served from the cache")
+                .register(meterRegistry);
+        this.availabilityMisses = Counter.builder("reservation.availability.misses")
+                .description("Shop days of availability built from occupancy")
+                .register(meterRegistry);
+    }
+
+    /**
+     * A bookable slot and the guests it takes.
+     */
+    public record Slot(Long shopId, LocalDateTime start, int capacity) {
+    }
+
+    public List<ShopSlotCapacity> getCapacity(Long shopId) {
+        return rulesOf(shopId);
+    }
+
+    /**
+     * Replace a shop's capacity rules. Existing bookings are kept even where the new capacity is
+     * lower; the new limits apply to bookings made from now on.
+     */
+    @Transactional
+    public List<ShopSlotCapacity> setCapacity(Long shopId, List<ShopSlotCapacity> newRules) {
+        validate(newRules);
+        capacityRepository.deleteByShopId(shopId);
+        for (ShopSlotCapacity rule : newRules) {
+            rule.setId(null);
+            rule.setShopId(shopId);
+        }
+        List<ShopSlotCapacity> saved = capacityRepository.saveAll(newRules);
+        afterCommit(() -> rules.remove(shopId));
+        return saved;
+    }
+
+    @Transactional
+    public void removeShop(Long shopId) {
+        capacityRepository.deleteByShopId(shopId);
+        occupancyRepository.deleteByShopId(shopId);
+        afterCommit(() -> {
+            rules.remove(shopId);
+            days.keySet().removeIf(key -> key.shopId().equals(shopId));
+            availability.keySet().removeIf(key -> key.shopId().equals(shopId));
+        });
+    }
+
+    /**
+     * Free places per slot for each day from one date to another, both included. Slots that have
+     * already started are left out; shops without capacity rules have no slots.
+     */
+    public List<DayAvailabilityDto> getAvailability(Long shopId, LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) {
+            throw new BadRequestException("From date must not be after to date");
+        }
+        if (ChronoUnit.DAYS.between(from, to) >= MAX_AVAILABILITY_DAYS) {
+            throw new BadRequestException("At most " + MAX_AVAILABILITY_DAYS + " days can be requested at once");
+        }
+        List<ShopSlotCapacity> shopRules = rulesOf(shopId);
+        if (!shopRules.isEmpty()) {
+            preloadDays(shopId, from, to);
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<DayAvailabilityDto> result = new ArrayList<>();
+        for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(1)) {
+            List<SlotAvailabilityDto> slots = shopRules.isEmpty() ? List.of() : availabilityOf(shopId, date, shopRules);
+            result.add(new DayAvailabilityDto(date, slots.stream()
+                    .filter(slot -> slot.getStart().isAfter(now))
+                    .toList()));
+        }
+        return result;
+    }
+
+    /**
+     * The slot a reservation at this time falls into, or null when the shop has no capacity rules.
+     */
+    public Slot resolve(Long shopId, LocalDateTime time) {
+        List<ShopSlotCapacity> shopRules = rulesOf(shopId);
+        if (shopRules.isEmpty()) {
+            return null;
+        }
+        ShopSlotCapacity rule = ruleAt(shopRules, time);
+        if (rule == null) {
+            throw new BadRequestException("The shop takes no reservations at " + time);
+        }
+        return new Slot(shopId, slotStartOf(rule, time), rule.getCapacity());
+    }
+
+    /**
+     * Resolve the slot for a booking and make sure its occupancy row exists. Runs before the
+     * booking transaction, so a concurrent first booking of the same slot can at worst fail this
+     * short insert and never the booking itself. Returns null when the shop has no capacity rules.
+     */
+    public Slot prepare(Long shopId, LocalDateTime time, int guests) {
+        Slot slot = resolve(shopId, time);
+        if (slot == null) {
+            return null;
+        }
+        checkGuests(slot, guests);
+        DayOccupancy day = dayOf(shopId, slot.start().toLocalDate());
+        int index = cellIndex(slot.start());
+        long cell = day.cell(index);
+        if (booked(cell) + guests > slot.capacity()) {
+            // Memory may still hold a count that a cancellation on another node has since lowered
+            cell = reload(day, shopId, slot.start());
+            if (booked(cell) + guests > slot.capacity()) {
+                rejections.increment();
+                throw fullyBooked(slot);
+            }
+        }
+        if (revision(cell) == 0) {
+            try {
+                transactionTemplate.executeWithoutResult(status ->
+                        occupancyRepository.insertIfMissing(shopId, slot.start()));
+            } catch (DataIntegrityViolationException e) {
+                // Inserted by a concurrent booking
+            }
+        }
+        return slot;
+    }
+
+    /**
+     * Take guests out of the slot's remaining capacity, or fail if it has too little left. Must
+     * run inside the booking transaction, after {@link #prepare}; the slot is given back if that
+     * transaction rolls back.
+     */
+    public void reserve(Slot slot, int guests) {
+        checkGuests(slot, guests);
+        if (occupancyRepository.reserve(slot.shopId(), slot.start(), guests, slot.capacity()) == 0) {
+            rejections.increment();
+            // Memory let the booking through, so it missed bookings made on another node
+            ShopDay key = new ShopDay(slot.shopId(), slot.start().toLocalDate());
+            DayOccupancy day = days.get(key);
+            if (day != null) {
+                reload(day, slot.shopId(), slot.start());
+            }
+            availability.remove(key);
+            throw fullyBooked(slot);
+        }
+        publish(slot.shopId(), slot.start());
+    }
+
+    /**
+     * Book guests back into the slot they were released from. The booking keeps that slot even
+     * when the rules have changed since; its capacity is only checked while the current rules
+     * still have a slot starting there.
+     */
+    public void reserveAgain(Long shopId, LocalDateTime slotStart, int guests) {
+        ShopSlotCapacity rule = ruleAt(rulesOf(shopId), slotStart);
+        int capacity = rule != null && slotStartOf(rule, slotStart).equals(slotStart)
+                ? rule.getCapacity() : Integer.MAX_VALUE;
+        if (occupancyRepository.reserve(shopId, slotStart, guests, capacity) == 0) {
+            rejections.increment();
+            throw new BadRequestException("The slot at " + slotStart + " is fully booked");
+        }
+        publish(shopId, slotStart);
+    }
+
+    /**
+     * Give a booking's guests back to its slot. Must run inside the transaction cancelling it.
+     */
+    public void release(Long shopId, LocalDateTime slotStart, int guests) {
+        if (occupancyRepository.release(shopId, slotStart, guests) == 0) {
+            log.warn("Slot {} of shop {} held fewer than {} guests on release", slotStart, shopId, guests);
+            return;
+        }
+        publish(shopId, slotStart);
+    }
+
+    private static void checkGuests(Slot slot, int guests) {
+        if (guests > slot.capacity()) {
+            throw new BadRequestException("A slot takes at most " + slot.capacity() + " guests");
+        }
+    }
+
+    // The rule whose opening hours cover a time, or null
+    private static ShopSlotCapacity ruleAt(List<ShopSlotCapacity> shopRules, LocalDateTime time) {
+        LocalTime timeOfDay = time.toLocalTime();
+        for (ShopSlotCapacity rule : rulesFor(shopRules, time.getDayOfWeek())) {
+            if (!timeOfDay.isBefore(rule.getOpenTime()) && timeOfDay.isBefore(rule.getCloseTime())) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    private static LocalDateTime slotStartOf(ShopSlotCapacity rule, LocalDateTime time) {
+        long offset = Duration.between(rule.getOpenTime(), time.toLocalTime()).toMinutes();
+        LocalTime start = rule.getOpenTime().plusMinutes(offset / rule.getSlotMinutes() * rule.getSlotMinutes());
+        return time.toLocalDate().atTime(start);
+    }
+
+    // Copy a slot's committed count into memory and return its cell
+    private long reload(DayOccupancy day, Long shopId, LocalDateTime slotStart) {
+        int index = cellIndex(slotStart);
+        SlotOccupancyRepository.SlotState state = occupancyRepository.findState(shopId, slotStart);
+        if (state != null) {
+            day.apply(index, state.getBookedGuests(), state.getRevision());
+        }
+        return day.cell(index);
+    }
+
+    private static BadRequestException fullyBooked(Slot slot) {
+        return new BadRequestException("The slot at " + slot.start() + " is fully booked");
+    }
+
+    // Read the count the booking transaction just wrote (its row lock keeps it exact) and copy
+    // it into memory once the transaction commits
+    private void publish(Long shopId, LocalDateTime slotStart) {
+        SlotOccupancyRepository.SlotState state = occupancyRepository.findState(shopId, slotStart);
+        if (state == null) {
+            return;
+        }
+        ShopDay key = new ShopDay(shopId, slotStart.toLocalDate());
+        int index = cellIndex(slotStart);
+        int booked = state.getBookedGuests();
+        long revision = state.getRevision();
+        afterCommit(() -> {
+            changes.incrementAndGet(stripe(shopId));
+            // Waits for a concurrent load of the day, so the update is never lost behind it
+            days.computeIfPresent(key, (k, day) -> day.apply(index, booked, revision));
+            // Likewise waits for a concurrent build, which may have read the old count
+            availability.remove(key);
+        });
+    }
+
+    private List<SlotAvailabilityDto> availabilityOf(Long shopId, LocalDate date, List<ShopSlotCapacity> shopRules) {
+        ShopDay key = new ShopDay(shopId, date);
+        CachedAvailability cached = availability.get(key);
+        // Rules are reloaded as a new list when they change, so a different list means stale slots
+        if (cached != null && cached.isValid(shopRules, System.currentTimeMillis())) {
+            availabilityHits.increment();
+            return cached.slots();
+        }
+        evictIfFull(availability);
+        return availability.compute(key, (k, current) -> {
+            long now = System.currentTimeMillis();
+            if (current != null && current.isValid(shopRules, now)) {
+                return current;
+            }
+            availabilityMisses.increment();
+            return new CachedAvailability(shopRules, buildAvailability(date, shopRules, dayOf(shopId, date)),
+                    now + cacheTtlMillis);
+        }).slots();
+    }
+
+    private static List<SlotAvailabilityDto> buildAvailability(LocalDate date, List<ShopSlotCapacity> shopRules,
+                                                               DayOccupancy day) {
+        List<SlotAvailabilityDto> slots = new ArrayList<>();
+        for (ShopSlotCapacity rule : rulesFor(shopRules, date.getDayOfWeek())) {
+            int first = rule.getOpenTime().toSecondOfDay() / 60;
+            for (int minute = first; minute < 24 * 60; minute += rule.getSlotMinutes()) {
+                LocalTime start = LocalTime.ofSecondOfDay(minute * 60L);
+                if (!start.isBefore(rule.getCloseTime())) {
+                    break;
+                }
+                int booked = booked(day.cell(minute / SLOT_GRANULARITY_MINUTES));
+                slots.add(new SlotAvailabilityDto(date.atTime(start), rule.getCapacity(), booked,
+                        Math.max(0, rule.getCapacity() - booked)));
+            }
+        }
+        slots.sort((a, b) -> a.getStart().compareTo(b.getStart()));
+        return slots;
+    }
+
+    // Load the occupancy of every day in the range not yet in memory with one query
+    private void preloadDays(Long shopId, LocalDate from, LocalDate to) {
+        List<LocalDate> missing = new ArrayList<>();
+        for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(1)) {
+            if (!days.containsKey(new ShopDay(shopId, date)) && !availability.containsKey(new ShopDay(shopId, date))) {
+                missing.add(date);
+            }
+        }
+        if (missing.size() < 2) {
+            return;
+        }
+        int stripe = stripe(shopId);
+        long changesBefore = changes.get(stripe);
+        LocalDate first = missing.get(0);
+        LocalDate last = missing.get(missing.size() - 1);
+        Map<LocalDate, DayOccupancy> loaded = new HashMap<>();
+        long expiresAt = System.currentTimeMillis() + cacheTtlMillis;
+        for (LocalDate date : missing) {
+            loaded.put(date, new DayOccupancy(expiresAt));
+        }
+        for (SlotOccupancyRepository.SlotState state : occupancyRepository.findStates(shopId,
+                first.atStartOfDay(), last.plusDays(1).atStartOfDay())) {
+            DayOccupancy day = loaded.get(state.getSlotStart().toLocalDate());
+            if (day != null) {
+                day.apply(cellIndex(state.getSlotStart()), state.getBookedGuests(), state.getRevision());
+            }
+        }
+        Map<ShopDay, DayOccupancy> inserted = new HashMap<>();
+        loaded.forEach((date, day) -> {
+            ShopDay key = new ShopDay(shopId, date);
+            evictIfFull(days);
+            if (days.putIfAbsent(key, day) == null) {
+                inserted.put(key, day);
+            }
+        });
+        // A booking committed after the query may have skipped these days; they reload one by one
+        if (changes.get(stripe) != changesBefore) {
+            inserted.forEach(days::remove);
+        }
+    }
+
+    private DayOccupancy dayOf(Long shopId, LocalDate date) {
+        ShopDay key = new ShopDay(shopId, date);
+        DayOccupancy cached = days.get(key);
+        if (cached != null && !cached.isExpired(System.currentTimeMillis())) {
+            return cached;
+        }
+        if (cached != null) {
+            // Refresh in place: revisions only move forward, so a concurrent commit is never undone
+            DayOccupancy refreshed = days.computeIfPresent(key, (k, day) ->
+                    day.isExpired(System.currentTimeMillis()) ? load(shopId, date, day) : day);
+            if (refreshed != null) {
+                return refreshed;
+            }
+        }
+        evictIfFull(days);
+        return days.computeIfAbsent(key, k -> load(shopId, date, new DayOccupancy(0)));
+    }
+
+    private DayOccupancy load(Long shopId, LocalDate date, DayOccupancy day) {
+        long expiresAt = System.currentTimeMillis() + cacheTtlMillis;
+        LocalDateTime from = date.atStartOfDay();
+        for (SlotOccupancyRepository.SlotState state : occupancyRepository.findStates(shopId, from, from.plusDays(1))) {
+            day.apply(cellIndex(state.getSlotStart()), state.getBookedGuests(), state.getRevision());
+        }
+        day.expiresAt = expiresAt;
+        return day;
+    }
+
+    private void evictIfFull(ConcurrentHashMap<ShopDay, ?> cache) {
+        if (cache.size() >= maxCachedDays) {
+            // Evict an arbitrary day; it is rebuilt on its next read
+            Iterator<ShopDay> it = cache.keySet().iterator();
+            if (it.hasNext()) {
+                cache.remove(it.next());
+            }
+        }
+    }
+
+    private static int stripe(Long shopId) {
+        return Math.floorMod(shopId.hashCode(), CHANGE_STRIPES);
+    }
+
+    private List<ShopSlotCapacity> rulesOf(Long shopId) {
+        CachedRules cached = rules.get(shopId);
+        if (cached != null && !cached.isExpired(System.currentTimeMillis())) {
+            return cached.rules();
+        }
+        // Each load is a new list, which also invalidates availability built from the old one
+        return rules.compute(shopId, (k, current) -> current != null && !current.isExpired(System.currentTimeMillis())
+                ? current
+                : new CachedRules(capacityRepository.findByShopIdOrderByDayOfWeekAscOpenTimeAsc(shopId),
+                        System.currentTimeMillis() + cacheTtlMillis)).rules();
+    }
+
+    // Rules for one weekday replace the every-day rules on that day
+    private static List<ShopSlotCapacity> rulesFor(List<ShopSlotCapacity> shopRules, DayOfWeek day) {
+        boolean daySpecific = shopRules.stream().anyMatch(rule -> rule.getDayOfWeek() == day);
+        return shopRules.stream()
+                .filter(rule -> daySpecific ? rule.getDayOfWeek() == day : rule.getDayOfWeek() == null)
+                .toList();
+    }
+
+    private static void validate(List<ShopSlotCapacity> newRules) {
+        if (newRules == null) {
+            throw new BadRequestException("Capacity rules are required");
+        }
+        for (ShopSlotCapacity rule : newRules) {
+            if (rule.getOpenTime() == null || rule.getCloseTime() == null
+                    || rule.getSlotMinutes() == null || rule.getCapacity() == null) {
+                throw new BadRequestException("Open time, close time, slot minutes and capacity are required");
+            }
+            if (!rule.getOpenTime().isBefore(rule.getCloseTime())) {
+                throw new BadRequestException("Open time must be before close time");
+            }
+            if (rule.getSlotMinutes() < SLOT_GRANULARITY_MINUTES || rule.getSlotMinutes() % SLOT_GRANULARITY_MINUTES != 0) {
+                throw new BadRequestException("Slot minutes must be a positive multiple of " + SLOT_GRANULARITY_MINUTES);
+            }
+            if (rule.getOpenTime().getSecond() != 0 || rule.getOpenTime().getNano() != 0
+                    || rule.getOpenTime().getMinute() % SLOT_GRANULARITY_MINUTES != 0) {
+                throw new BadRequestException("Open time must fall on a multiple of " + SLOT_GRANULARITY_MINUTES + " minutes");
+            }
+            if (rule.getCapacity() < 1) {
+                throw new BadRequestException("Capacity must be at least 1");
+            }
+        }
+        for (int i = 0; i < newRules.size(); i++) {
+            for (int j = i + 1; j < newRules.size(); j++) {
+                ShopSlotCapacity a = newRules.get(i);
+                ShopSlotCapacity b = newRules.get(j);
+                if (a.getDayOfWeek() == b.getDayOfWeek()
+                        && a.getOpenTime().isBefore(b.getCloseTime()) && b.getOpenTime().isBefore(a.getCloseTime())) {
+                    throw new BadRequestException("Capacity rules for the same day must not overlap");
+                }
+            }
+        }
+    }
+
+    private static int cellIndex(LocalDateTime slotStart) {
+        return (slotStart.getHour() * 60 + slotStart.getMinute()) / SLOT_GRANULARITY_MINUTES;
+    }
+
+    private static int booked(long cell) {
+        return (int) cell;
+    }
+
+    private static long revision(long cell) {
+        return cell >>> 32;
+    }
+
+    private static void afterCommit(Runnable action) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private record ShopDay(Long shopId, LocalDate date) {
+    }
+
+    private record CachedRules(List<ShopSlotCapacity> rules, long expiresAt) {
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+
+    private record CachedAvailability(List<ShopSlotCapacity> rules, List<SlotAvailabilityDto> slots, long expiresAt) {
+        boolean isValid(List<ShopSlotCapacity> currentRules, long now) {
+            return rules == currentRules && now < expiresAt;
+        }
+    }
+
+    // Booked guests per five-minute cell, packed with the row revision they were read at
+    private static final class DayOccupancy {
+        private final AtomicLongArray cells = new AtomicLongArray(CELLS_PER_DAY);
+        private volatile long expiresAt;
+
+        DayOccupancy(long expiresAt) {
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+
+        long cell(int index) {
+            return cells.get(index);
+        }
+
+        DayOccupancy apply(int index, int booked, long revision) {
+            long packed = (revision << 32) | (booked & 0xFFFFFFFFL);
+            long current;
+            do {
+                current = cells.get(index);
+                if (revision(current) >= revision) {
+                    return this;
+                }
+            } while (!cells.compareAndSet(index, current, packed));
+            return this;
+        }
+    }
+}
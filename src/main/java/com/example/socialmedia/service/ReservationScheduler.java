@@ -0,0 +1,280 @@
+package com.example.socialmedia.service;
+
+import com.example.socialmedia.model.Notification;
+import com.example.socialmedia.model.Reservation;
+import com.example.socialmedia.repository.ReservationRepository;
+import com.example.socialmedia.util.TimingWheel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cancels reservations left unpaid past the hold period and sends reminders before the
+ * reservation time.
+ *
+ * Deadlines falling within the horizon are held in a {@link TimingWheel}. A refill every quarter
+ * horizon loads the next stretch from the reservations table, and at startup the same queries,
+ * stretched back to cover anything missed while down, rebuild the wheel. Firing re-checks the
+ * reservation with a conditional update, so duplicate timers, reservations paid or cancelled in
+ * the meantime and other instances firing the same deadline are all harmless.
+ */
+@Service
+@Slf4j
+public class ReservationScheduler {
+
+    private static final int WHEEL_SIZE = 64;
+    private static final int WHEEL_LEVELS = 4;
+
+    private final ReservationRepository reservationRepository;
+    private final ReservationCapacityService capacityService;
+    private final NotificationService notificationService;
+    private final TransactionTemplate transactionTemplate;
+    private final long holdMinutes;
+    // Largest first
+    private final List<Integer> reminderOffsets;
+    private final long horizonMs;
+    private final long tickMs;
+    private final TimingWheel<Task> wheel;
+    private final ScheduledThreadPoolExecutor ticker;
+    private final ExecutorService workers;
+    // Every deadline before this has been loaded into the wheel
+    private volatile long loadedUntilMs;
+
+    private final Counter expired;
+    private final Counter remindersSent;
+
+    @Autowired
+    public ReservationScheduler(ReservationRepository reservationRepository, ReservationCapacityService capacityService,
+                                NotificationService notificationService, TransactionTemplate transactionTemplate,
+                                MeterRegistry meterRegistry,
+                                @Value("${reservation.hold.unpaid-minutes:30}") long holdMinutes,
+                                @Value("${reservation.reminders.offsets-minutes:1440,60}") List<Integer> reminderOffsets,
+                                @Value("${reservation.scheduler.horizon-minutes:360}") long horizonMinutes,
+                                @Value("${reservation.scheduler.tick-ms:1000}") long tickMs,
+                                @Value("${reservation.scheduler.worker-threads:2}") int workerThreads) {
+        this.reservationRepository = reservationRepository;
+        this.capacityService = capacityService;
+        this.notificationService = notificationService;
+        this.transactionTemplate = transactionTemplate;
+        this.holdMinutes = holdMinutes;
+        this.reminderOffsets = reminderOffsets.stream()
+                .filter(offset -> offset > 0)
+                .distinct()
+                .sorted(Comparator.reverseOrder())
+                .toList();
+        this.horizonMs = TimeUnit.MINUTES.toMillis(horizonMinutes);
+        this.tickMs = tickMs;
+        this.wheel = new TimingWheel<>(tickMs, WHEEL_SIZE, WHEEL_LEVELS, System.currentTimeMillis());
+        this.ticker = new ScheduledThreadPoolExecutor(1, new CustomizableThreadFactory("reservation-scheduler-"));
+        this.workers = Executors.newFixedThreadPool(workerThreads, new CustomizableThreadFactory("reservation-timer-"));
+
+        Gauge.builder("reservation.scheduler.timers", wheel, TimingWheel::size)
+                .description("Reservation deadlines held in the timing wheel")
+                .register(meterRegistry);
+        this.expired = Counter.builder("reservation.expired")
+                .description("Reservations cancelled for not being paid within the hold period")
+                .register(meterRegistry);
+        this.remindersSent = Counter.builder("reservation.reminders.sent")
+                .description("Reservation reminders sent")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        long now = System.currentTimeMillis();
+        loadedUntilMs = now + horizonMs;
+        load(now, loadedUntilMs, true);
+        ticker.scheduleAtFixedRate(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+        long refillMs = Math.max(tickMs, horizonMs / 4);
+        ticker.scheduleWithFixedDelay(this::refill, refillMs, refillMs, TimeUnit.MILLISECONDS);
+        log.info("Reservation scheduler started with {} timers", wheel.size());
+    }
+
+    /**
+     * Schedule the deadlines of a reservation just created. Ones beyond the loaded stretch are
+     * left to the refill.
+     */
+    public void track(Long reservationId, LocalDateTime reservationTime, Instant createdDate) {
+        long until = loadedUntilMs;
+        if (holdMinutes > 0 && createdDate != null) {
+            long expiresAt = createdDate.toEpochMilli() + TimeUnit.MINUTES.toMillis(holdMinutes);
+            if (expiresAt < until) {
+                schedule(expiresAt, new Task(reservationId, null));
+            }
+        }
+        long time = toMillis(reservationTime);
+        for (int offset : reminderOffsets) {
+            long remindAt = time - TimeUnit.MINUTES.toMillis(offset);
+            if (remindAt >= System.currentTimeMillis() && remindAt < until) {
+                schedule(remindAt, new Task(reservationId, offset));
+            }
+        }
+    }
+
+    private void refill() {
+        try {
+            long from = loadedUntilMs;
+            long until = System.currentTimeMillis() + horizonMs;
+            if (until <= from) {
+                return;
+            }
+            // Published before querying: a reservation committed after the query started sees the
+            // new bound in track() and schedules itself
+            loadedUntilMs = until;
+            load(from, until, false);
+        } catch (Exception e) {
+            log.error("Failed to load reservation deadlines", e);
+        }
+    }
+
+    // Schedule the deadlines falling in [fromMs, untilMs). When recovering, deadlines already
+    // passed are included too: expiries fire at once, and of the reminders due only the latest is sent.
+    private void load(long fromMs, long untilMs, boolean recovering) {
+        long now = System.currentTimeMillis();
+        if (holdMinutes > 0) {
+            long holdMs = TimeUnit.MINUTES.toMillis(holdMinutes);
+            Instant createdFrom = recovering ? Instant.EPOCH : Instant.ofEpochMilli(fromMs - holdMs);
+            for (ReservationRepository.Deadline deadline : reservationRepository.findDeadlinesCreatedBetween(
+                    Reservation.ReservationStatus.PENDING, Reservation.PaymentStatus.UNPAID,
+                    createdFrom, Instant.ofEpochMilli(untilMs - holdMs))) {
+                schedule(deadline.getCreatedDate().toEpochMilli() + holdMs, new Task(deadline.getId(), null));
+            }
+        }
+        if (reminderOffsets.isEmpty()) {
+            return;
+        }
+        long maxOffsetMs = TimeUnit.MINUTES.toMillis(reminderOffsets.get(0));
+        long minOffsetMs = TimeUnit.MINUTES.toMillis(reminderOffsets.get(reminderOffsets.size() - 1));
+        LocalDateTime timeFrom = toLocalDateTime(recovering ? now : fromMs + minOffsetMs);
+        for (ReservationRepository.Deadline deadline : reservationRepository.findDeadlinesBetween(
+                Reservation.ReservationStatus.CANCELLED, timeFrom, toLocalDateTime(untilMs + maxOffsetMs))) {
+            long time = toMillis(deadline.getReservationTime());
+            Integer overdue = null;
+            for (int offset : reminderOffsets) {
+                if (deadline.getReminderOffsetSent() != null && deadline.getReminderOffsetSent() <= offset) {
+                    continue;
+                }
+                long remindAt = time - TimeUnit.MINUTES.toMillis(offset);
+                if (remindAt < fromMs) {
+                    overdue = recovering ? Integer.valueOf(offset) : null;
+                } else if (remindAt < untilMs) {
+                    schedule(remindAt, new Task(deadline.getId(), offset));
+                }
+            }
+            if (overdue != null) {
+                schedule(now, new Task(deadline.getId(), overdue));
+            }
+        }
+    }
+
+    private void schedule(long dueMs, Task task) {
+        boolean scheduled;
+        synchronized (wheel) {
+            scheduled = wheel.schedule(dueMs, task);
+        }
+        if (!scheduled) {
+            workers.execute(() -> fire(task));
+        }
+    }
+
+    private void tick() {
+        try {
+            List<Task> due;
+            synchronized (wheel) {
+                due = wheel.advance(System.currentTimeMillis());
+            }
+            for (Task task : due) {
+                workers.execute(() -> fire(task));
+            }
+        } catch (Exception e) {
+            // Keep ticking: an exception here would cancel the periodic task
+            log.error("Reservation scheduler tick failed", e);
+        }
+    }
+
+    private void fire(Task task) {
+        try {
+            if (task.reminderOffset() == null) {
+                expire(task.reservationId());
+            } else {
+                remind(task.reservationId(), task.reminderOffset());
+            }
+        } catch (Exception e) {
+            log.error("Reservation timer for {} failed", task.reservationId(), e);
+        }
+    }
+
+    private void expire(Long reservationId) {
+        transactionTemplate.executeWithoutResult(status -> {
+            Instant createdBefore = Instant.now().minus(holdMinutes, ChronoUnit.MINUTES);
+            if (reservationRepository.cancelIfUnpaid(reservationId, Reservation.ReservationStatus.PENDING,
+                    Reservation.PaymentStatus.UNPAID, Reservation.ReservationStatus.CANCELLED, createdBefore) == 0) {
+                return;
+            }
+            Reservation reservation = reservationRepository.findById(reservationId).orElseThrow();
+            Long shopId = reservation.getShop().getId();
+            if (reservation.getSlotStart() != null) {
+                capacityService.release(shopId, reservation.getSlotStart(), ReservationService.guestsOf(reservation));
+            }
+            notificationService.createNotificationForUser(reservation.getUser(),
+                    "Your reservation at " + reservation.getShop().getName() + " was cancelled because it was not paid within "
+                            + holdMinutes + " minutes",
+                    Notification.NotificationType.SYSTEM_UPDATE, shopId);
+            expired.increment();
+            log.info("Reservation {} cancelled: unpaid after {} minutes", reservationId, holdMinutes);
+        });
+    }
+
+    private void remind(Long reservationId, int offsetMinutes) {
+        transactionTemplate.executeWithoutResult(status -> {
+            if (reservationRepository.claimReminder(reservationId, offsetMinutes,
+                    Reservation.ReservationStatus.CANCELLED, LocalDateTime.now()) == 0) {
+                return;
+            }
+            Reservation reservation = reservationRepository.findById(reservationId).orElseThrow();
+            notificationService.createNotificationForUser(reservation.getUser(),
+                    "Reminder: your reservation at " + reservation.getShop().getName() + " is at "
+                            + reservation.getReservationTime(),
+                    Notification.NotificationType.UPCOMING_EVENT, reservation.getShop().getId());
+            remindersSent.increment();
+        });
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static LocalDateTime toLocalDateTime(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        ticker.shutdown();
+        workers.shutdown();
+        workers.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    // An expiry when reminderOffset is null, otherwise the reminder sent that many minutes ahead
+    private record Task(Long reservationId, Integer reminderOffset) {
+    }
+}
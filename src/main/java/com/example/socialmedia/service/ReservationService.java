@@ -1,6 +1,8 @@
 package com.example.socialmedia.service;
 
+import com.example.socialmedia.dto.CursorPage;
 import com.example.socialmedia.dto.PaymentRequest;
+import com.example.socialmedia.dto.ReservationDto;
 import com.example.socialmedia.exception.BadRequestException;
 import com.example.socialmedia.exception.ResourceNotFoundException;
 import com.example.socialmedia.model.*;
@@ -8,13 +10,28 @@ import com.example.socialmedia.repository.PaymentLogRepository;
 import com.example.socialmedia.repository.ReservationRepository;
 import com.example.socialmedia.repository.ShopRepository;
 import com.example.socialmedia.repository.UserRepository;
+import com.example.socialmedia.util.KeysetCursor;
+import com.example.socialmedia.util.KeysetPagination;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @Slf4j
@@ -25,34 +42,79 @@ public class ReservationService {
     private final ShopRepository shopRepository;
     private final PaymentLogRepository paymentLogRepository;
     private final NotificationService notificationService;
+    private final ReservationCapacityService capacityService;
+    private final ReservationScheduler scheduler;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final long paymentReplayTtlMs;
+    private final int maxRecentPayments;
+    // Recent transaction ids and their results; a retry is answered from here without touching the DB
+    private final ConcurrentHashMap<String, RecentPayment> recentPayments = new ConcurrentHashMap<>();
+    private final Counter paymentReplays;
 
     @Autowired
     public ReservationService(ReservationRepository reservationRepository, UserRepository userRepository, 
                               ShopRepository shopRepository, PaymentLogRepository paymentLogRepository,
-                              NotificationService notificationService) {
+                              NotificationService notificationService, ReservationCapacityService capacityService,
+                              ReservationScheduler scheduler, TransactionTemplate transactionTemplate,
+                              ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                              @Value("${payment.idempotency.ttl-ms:600000}") long paymentReplayTtlMs,
+                              @Value("${payment.idempotency.max-entries:10000}") int maxRecentPayments) {
         this.reservationRepository = reservationRepository;
         this.userRepository = userRepository;
         this.shopRepository = shopRepository;
         this.paymentLogRepository = paymentLogRepository;
         this.notificationService = notificationService;
+        this.capacityService = capacityService;
+        this.scheduler = scheduler;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.paymentReplayTtlMs = paymentReplayTtlMs;
+        this.maxRecentPayments = maxRecentPayments;
+
+        Gauge.builder("payment.idempotency.cached", recentPayments, ConcurrentHashMap::size)
+                .description("Recent payment transaction ids held in memory")
+                .register(meterRegistry);
+        this.paymentReplays = Counter.builder("payment.replays")
+                .description("Repeated payment requests answered with the original result")
+                .register(meterRegistry);
     }
 
-    public List<Reservation> getReservationsByUser(Long userId) {
-        return reservationRepository.findByUserId(userId);
+    @Transactional(readOnly = true)
+    public CursorPage<ReservationDto> getReservationsByUser(Long userId, String cursor, int size) {
+        int pageSize = KeysetPagination.clamp(size);
+        List<ReservationDto> rows;
+        if (KeysetPagination.isFirstPage(cursor)) {
+            rows = reservationRepository.findPageByUserId(userId, KeysetPagination.limit(pageSize));
+        } else {
+            KeysetCursor after = KeysetCursor.decode(cursor);
+            rows = reservationRepository.findPageByUserIdBefore(userId, after.getLocalDateTimeKey(), after.getId(),
+                    KeysetPagination.limit(pageSize));
+        }
+        return KeysetPagination.toPage(rows, pageSize, ReservationService::cursorOf);
     }
     
-    public List<Reservation> getReservationsByShop(Long shopId) {
-        return reservationRepository.findByShopId(shopId);
+    @Transactional(readOnly = true)
+    public CursorPage<ReservationDto> getReservationsByShop(Long shopId, String cursor, int size) {
+        int pageSize = KeysetPagination.clamp(size);
+        List<ReservationDto> rows;
+        if (KeysetPagination.isFirstPage(cursor)) {
+            rows = reservationRepository.findPageByShopId(shopId, KeysetPagination.limit(pageSize));
+        } else {
+            KeysetCursor after = KeysetCursor.decode(cursor);
+            rows = reservationRepository.findPageByShopIdBefore(shopId, after.getLocalDateTimeKey(), after.getId(),
+                    KeysetPagination.limit(pageSize));
+        }
+        return KeysetPagination.toPage(rows, pageSize, ReservationService::cursorOf);
     }
 
-    @Transactional
-    public Reservation createReservation(Long userId, Long shopId, Reservation reservation) {
+    private static String cursorOf(ReservationDto reservation) {
+        return KeysetCursor.encode(reservation.getReservationTime(), reservation.getId());
+    }
+
+    // Not @Transactional: the slot is prepared before the booking transaction starts
+    public ReservationDto createReservation(Long userId, Long shopId, Reservation reservation) {
         log.info("Creating reservation for user {} at shop {}", userId, shopId);
-        
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new ResourceNotFoundException("User not found with id: " + userId));
-        Shop shop = shopRepository.findById(shopId)
-                .orElseThrow(() -> new ResourceNotFoundException("Shop not found with id: " + shopId));
 
         if (reservation.getReservationTime() == null) {
             throw new BadRequestException("Reservation time is required");
@@ -62,50 +124,156 @@ public class ReservationService {
             throw new BadRequestException("Reservation time cannot be in the past");
         }
 
-        reservation.setUser(user);
-        reservation.setShop(shop);
-        // By default, status is PENDING and payment is UNPAID
-        Reservation savedReservation = reservationRepository.save(reservation);
+        int guests = guestsOf(reservation);
+        ReservationCapacityService.Slot slot = capacityService.prepare(shopId, reservation.getReservationTime(), guests);
 
-        // Notify Shop Owner
-        if (shop.getOwner() != null) {
-            notificationService.createNotificationForUser(shop.getOwner(), 
-                    "New reservation at " + shop.getName() + " by " + user.getUsername(), 
-                    Notification.NotificationType.SHOP_ANNOUNCEMENT);
-        }
-        
-        log.info("Reservation created with id: {}", savedReservation.getId());
-        return savedReservation;
+        ReservationDto created = transactionTemplate.execute(status -> {
+            User user = userRepository.findById(userId)
+                    .orElseThrow(() -> new ResourceNotFoundException("User not found with id: " + userId));
+            Shop shop = shopRepository.findWithOwnerById(shopId)
+                    .orElseThrow(() -> new ResourceNotFoundException("Shop not found with id: " + shopId));
+
+            if (slot != null) {
+                capacityService.reserve(slot, guests);
+            }
+
+            reservation.setUser(user);
+            reservation.setShop(shop);
+            reservation.setSlotStart(slot != null ? slot.start() : null);
+            // By default, status is PENDING and payment is UNPAID
+            Reservation savedReservation = reservationRepository.save(reservation);
+
+            // Notify Shop Owner
+            if (shop.getOwner() != null) {
+                notificationService.createNotificationForUser(shop.getOwner(), 
+                        "New reservation at " + shop.getName() + " by " + user.getUsername(), 
+                        Notification.NotificationType.SHOP_ANNOUNCEMENT, shop.getId(), false);
+            }
+
+            log.info("Reservation created with id: {}", savedReservation.getId());
+            return ReservationDto.from(savedReservation);
+        });
+        scheduler.track(created.getId(), created.getReservationTime(), created.getCreatedDate());
+        return created;
     }
     
     @Transactional
-    public Reservation updateStatus(Long id, Reservation.ReservationStatus status) {
+    public ReservationDto updateStatus(Long id, Reservation.ReservationStatus status) {
         log.info("Updating reservation {} status to {}", id, status);
         
         Reservation reservation = reservationRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Reservation not found with id: " + id));
         
         Reservation.ReservationStatus oldStatus = reservation.getStatus();
+        if (reservation.getSlotStart() != null && holdsSlot(oldStatus) != holdsSlot(status)) {
+            Long shopId = reservation.getShop().getId();
+            if (holdsSlot(status)) {
+                capacityService.reserveAgain(shopId, reservation.getSlotStart(), guestsOf(reservation));
+            } else {
+                capacityService.release(shopId, reservation.getSlotStart(), guestsOf(reservation));
+            }
+        }
         reservation.setStatus(status);
         Reservation savedReservation = reservationRepository.save(reservation);
         
         // Notify User
         notificationService.createNotificationForUser(reservation.getUser(),
                 "Your reservation at " + reservation.getShop().getName() + " has been " + status,
-                Notification.NotificationType.SYSTEM_UPDATE);
+                Notification.NotificationType.SYSTEM_UPDATE, reservation.getShop().getId());
                 
         log.info("Reservation {} status updated from {} to {}", id, oldStatus, status);
-        return savedReservation;
+        return ReservationDto.from(savedReservation);
     }
-    
+
+    /**
+     * Delete every reservation of a user being deleted, giving back the slots they held.
+     */
     @Transactional
-    public Reservation processPayment(Long id, PaymentRequest paymentRequest) {
+    public void removeUser(Long userId) {
+        List<Reservation> reservations = reservationRepository.findByUserId(userId);
+        for (Reservation reservation : reservations) {
+            if (reservation.getSlotStart() != null && holdsSlot(reservation.getStatus())) {
+                capacityService.release(reservation.getShop().getId(), reservation.getSlotStart(), guestsOf(reservation));
+            }
+        }
+        reservationRepository.deleteAllInBatch(reservations);
+    }
+
+    /**
+     * Record a payment, at most once per transaction id. A repeated request for the same
+     * transaction, whether a gateway retry or a double submit, gets the original result back and
+     * writes nothing; a concurrent repeat waits for the first one to finish. The result is stored
+     * with the payment log, so a repeat after a restart still gets the reservation as it was then.
+     * A repeat with a different amount is refused.
+     */
+    public ReservationDto processPayment(Long id, PaymentRequest paymentRequest) {
+        String transactionId = paymentRequest.getTransactionId();
+        if (transactionId == null || transactionId.isBlank()) {
+            throw new BadRequestException("Transaction id is required");
+        }
+
+        RecentPayment mine = new RecentPayment(id, paymentRequest.getAmount(), new CompletableFuture<>(),
+                System.currentTimeMillis() + paymentReplayTtlMs);
+        RecentPayment recent = recentPayments.get(transactionId);
+        while (recent == null || recent.isExpired()) {
+            if (recent == null) {
+                evictRecentPaymentsIfFull();
+                recent = recentPayments.putIfAbsent(transactionId, mine);
+            } else {
+                recent = recentPayments.replace(transactionId, recent, mine) ? null : recentPayments.get(transactionId);
+            }
+            if (recent == null) {
+                return recordPayment(id, paymentRequest, mine);
+            }
+        }
+
+        if (!recent.reservationId().equals(id)) {
+            throw new BadRequestException("Transaction " + transactionId + " belongs to another reservation");
+        }
+        checkSameAmount(transactionId, recent.amount(), paymentRequest.getAmount());
+        log.info("Replaying payment {} for reservation {}", transactionId, id);
+        paymentReplays.increment();
+        try {
+            return recent.result().join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    private ReservationDto recordPayment(Long id, PaymentRequest paymentRequest, RecentPayment entry) {
+        try {
+            ReservationDto result;
+            try {
+                result = transactionTemplate.execute(status -> applyPayment(id, paymentRequest));
+            } catch (DataIntegrityViolationException e) {
+                // Another instance logged the same transaction first
+                result = transactionTemplate.execute(status -> replayPayment(id, paymentRequest, paymentLogRepository
+                        .findByTransactionId(paymentRequest.getTransactionId())
+                        .orElseThrow(() -> e)));
+            }
+            entry.result().complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            // Failed attempts are not remembered, so the request can be retried
+            recentPayments.remove(paymentRequest.getTransactionId(), entry);
+            entry.result().completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private ReservationDto applyPayment(Long id, PaymentRequest paymentRequest) {
         log.info("Processing payment for reservation {}: {}", id, paymentRequest.getTransactionId());
-        
+
+        // Known from an earlier run, or from before a restart
+        PaymentLog earlier = paymentLogRepository.findByTransactionId(paymentRequest.getTransactionId()).orElse(null);
+        if (earlier != null) {
+            return replayPayment(id, paymentRequest, earlier);
+        }
+
         Reservation reservation = reservationRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Reservation not found with id: " + id));
         
-        // Save Payment Log
+        // Save Payment Log; flushed now so a duplicate transaction fails before the reservation changes
         PaymentLog logEntry = PaymentLog.builder()
                 .reservationId(id)
                 .transactionId(paymentRequest.getTransactionId())
@@ -116,7 +284,7 @@ public class ReservationService {
                 .status(paymentRequest.getStatus())
                 .build();
         
-        paymentLogRepository.save(logEntry);
+        paymentLogRepository.saveAndFlush(logEntry);
         
         // Update Reservation Status if success
         if ("SUCCESS".equalsIgnoreCase(paymentRequest.getStatus())) {
@@ -129,6 +297,82 @@ public class ReservationService {
             log.warn("Payment failed for reservation {}: {}", id, paymentRequest.getStatus());
         }
 
-        return reservationRepository.save(reservation);
+        ReservationDto result = ReservationDto.from(reservationRepository.save(reservation));
+        // Written with the log at commit
+        logEntry.setResultPayload(toJson(result));
+        return result;
+    }
+
+    private ReservationDto replayPayment(Long id, PaymentRequest paymentRequest, PaymentLog earlier) {
+        if (!id.equals(earlier.getReservationId())) {
+            throw new BadRequestException("Transaction " + earlier.getTransactionId() + " belongs to another reservation");
+        }
+        checkSameAmount(earlier.getTransactionId(), earlier.getAmount(), paymentRequest.getAmount());
+        log.info("Payment {} for reservation {} was already processed", earlier.getTransactionId(), id);
+        paymentReplays.increment();
+        if (earlier.getResultPayload() != null) {
+            return fromJson(earlier.getResultPayload());
+        }
+        // Logged before results were stored: the closest answer is the reservation as it is now
+        return reservationRepository.findById(id)
+                .map(ReservationDto::from)
+                .orElseThrow(() -> new ResourceNotFoundException("Reservation not found with id: " + id));
+    }
+
+    private static void checkSameAmount(String transactionId, Double original, Double repeated) {
+        if (!Objects.equals(original, repeated)) {
+            throw new BadRequestException("Transaction " + transactionId + " was already processed with amount " + original);
+        }
+    }
+
+    private String toJson(ReservationDto result) {
+        try {
+            return objectMapper.writeValueAsString(result);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize payment result", e);
+        }
+    }
+
+    private ReservationDto fromJson(String payload) {
+        try {
+            return objectMapper.readValue(payload, ReservationDto.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot read stored payment result", e);
+        }
+    }
+
+    private void evictRecentPaymentsIfFull() {
+        if (recentPayments.size() < maxRecentPayments) {
+            return;
+        }
+        recentPayments.values().removeIf(RecentPayment::isExpired);
+        if (recentPayments.size() >= maxRecentPayments) {
+            // Evict an arbitrary entry; a late retry of it is still caught by the unique transaction id
+            Iterator<String> it = recentPayments.keySet().iterator();
+            if (it.hasNext()) {
+                recentPayments.remove(it.next());
+            }
+        }
+    }
+
+    private static boolean holdsSlot(Reservation.ReservationStatus status) {
+        return status != Reservation.ReservationStatus.CANCELLED;
+    }
+
+    static int guestsOf(Reservation reservation) {
+        if (reservation.getNumberOfGuests() == null) {
+            return 1;
+        }
+        if (reservation.getNumberOfGuests() < 1) {
+            throw new BadRequestException("Number of guests must be at least 1");
+        }
+        return reservation.getNumberOfGuests();
+    }
+
+    private record RecentPayment(Long reservationId, Double amount, CompletableFuture<ReservationDto> result,
+                                 long expiresAt) {
+        boolean isExpired() {
+            return System.currentTimeMillis() >= expiresAt;
+        }
     }
 }
@@ -1,35 +1,75 @@
 package com.example.socialmedia.service;
 
+import com.example.socialmedia.dto.CursorPage;
+import com.example.socialmedia.dto.ReviewDto;
+import com.example.socialmedia.exception.BadRequestException;
+import com.example.socialmedia.model.BackgroundJob;
 import com.example.socialmedia.model.Review;
 import com.example.socialmedia.model.Shop;
 import com.example.socialmedia.model.User;
 import com.example.socialmedia.repository.ReviewRepository;
 import com.example.socialmedia.repository.ShopRepository;
 import com.example.socialmedia.repository.UserRepository;
+import com.example.socialmedia.util.KeysetCursor;
+import com.example.socialmedia.util.KeysetPagination;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.List;
 
 @Service
+@Slf4j
 public class ReviewService {
 
+    public static final String REPAIR_RATINGS_JOB = "REPAIR_RATINGS";
+
     private final ReviewRepository reviewRepository;
     private final UserRepository userRepository;
     private final ShopRepository shopRepository;
+    private final ShopGeoIndex geoIndex;
+    private final TransactionTemplate transactionTemplate;
+    private final JobQueue jobQueue;
+    private final int repairBatchSize;
 
     @Autowired
-    public ReviewService(ReviewRepository reviewRepository, UserRepository userRepository, ShopRepository shopRepository) {
+    public ReviewService(ReviewRepository reviewRepository, UserRepository userRepository, ShopRepository shopRepository,
+                         ShopGeoIndex geoIndex, TransactionTemplate transactionTemplate, JobQueue jobQueue,
+                         @Value("${shop.ratings.repair-batch-size:1000}") int repairBatchSize) {
         this.reviewRepository = reviewRepository;
         this.userRepository = userRepository;
         this.shopRepository = shopRepository;
+        this.geoIndex = geoIndex;
+        this.transactionTemplate = transactionTemplate;
+        this.jobQueue = jobQueue;
+        this.repairBatchSize = repairBatchSize;
+        jobQueue.register(REPAIR_RATINGS_JOB, this::repairRatingAggregates);
     }
 
-    public List<Review> getReviewsByShop(Long shopId) {
-        return reviewRepository.findByShopId(shopId);
+    @Transactional(readOnly = true)
+    public CursorPage<ReviewDto> getReviewsByShop(Long shopId, String cursor, int size) {
+        int pageSize = KeysetPagination.clamp(size);
+        List<ReviewDto> rows;
+        if (KeysetPagination.isFirstPage(cursor)) {
+            rows = reviewRepository.findPageByShopId(shopId, KeysetPagination.limit(pageSize));
+        } else {
+            KeysetCursor after = KeysetCursor.decode(cursor);
+            rows = reviewRepository.findPageByShopIdBefore(shopId, after.getInstantKey(), after.getId(),
+                    KeysetPagination.limit(pageSize));
+        }
+        return KeysetPagination.toPage(rows, pageSize, review -> KeysetCursor.encode(review.getCreatedDate(), review.getId()));
     }
 
-    public Review addReview(Long userId, Long shopId, Review review) {
+    @Transactional
+    public ReviewDto addReview(Long userId, Long shopId, Review review) {
+        if (review.getRating() == null) {
+            throw new BadRequestException("Rating is required");
+        }
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new RuntimeException("User not found"));
         Shop shop = shopRepository.findById(shopId)
@@ -40,19 +80,70 @@ public class ReviewService {
         
         Review savedReview = reviewRepository.save(review);
         
-        // Update shop rating
-        updateShopRating(shop);
+        // Update shop rating: O(1) and safe against concurrent reviews. Shops whose aggregates
+        // were never set get them computed from all their reviews, this one included; under the
+        // row lock a concurrent first review has either committed its recompute, so the
+        // increment applies, or not started one
+        if (shopRepository.addRating(shopId, review.getRating()) == 0) {
+            shopRepository.lockById(shopId);
+            if (shopRepository.addRating(shopId, review.getRating()) == 0) {
+                shopRepository.recomputeRatings(List.of(shopId));
+            }
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                shopRepository.findDtoById(shopId).ifPresent(geoIndex::put);
+            }
+        });
         
-        return savedReview;
+        return ReviewDto.from(savedReview);
+    }
+
+    /**
+     * Queue a recompute of every shop's rating aggregates from its reviews.
+     */
+    public BackgroundJob queueRatingRepair() {
+        return jobQueue.enqueue(REPAIR_RATINGS_JOB, null);
     }
-    
-    private void updateShopRating(Shop shop) {
-        List<Review> reviews = reviewRepository.findByShopId(shop.getId());
-        double average = reviews.stream()
-                .mapToInt(Review::getRating)
-                .average()
-                .orElse(0.0);
-        shop.setRating(average);
-        shopRepository.save(shop);
+
+    /**
+     * Delete every review of a user being deleted and recompute the ratings of the shops reviewed.
+     */
+    @Transactional
+    public void removeUser(Long userId) {
+        List<Long> shopIds = reviewRepository.findShopIdsByUserId(userId);
+        reviewRepository.deleteAllByUserId(userId);
+        if (!shopIds.isEmpty()) {
+            shopRepository.recomputeRatings(shopIds);
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                shopIds.forEach(shopId -> shopRepository.findDtoById(shopId).ifPresent(geoIndex::put));
+            }
+        });
+    }
+
+    // One id range per transaction, committed together with the checkpoint so a retry resumes after it
+    private void repairRatingAggregates(JobQueue.Context job) {
+        Long maxId = shopRepository.findMaxId();
+        if (maxId == null) {
+            return;
+        }
+        long startId = job.getCheckpoint() != null ? Long.parseLong(job.getCheckpoint()) : 0;
+        int updated = 0;
+        for (long fromId = startId; fromId < maxId; fromId += repairBatchSize) {
+            long from = fromId;
+            Integer count = transactionTemplate.execute(status -> {
+                int shops = shopRepository.recomputeRatings(from, from + repairBatchSize);
+                job.checkpoint(String.valueOf(from + repairBatchSize));
+                return shops;
+            });
+            updated += count != null ? count : 0;
+        }
+        // Ratings in the geospatial index are snapshots; reload them
+        geoIndex.load();
+        log.info("Repaired rating aggregates of {} shops", updated);
     }
 }
@@ -0,0 +1,180 @@
+package com.example.socialmedia.service;
+
+import com.example.socialmedia.dto.ShopClusterDto;
+import com.example.socialmedia.dto.ShopDto;
+import com.example.socialmedia.exception.BadRequestException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Server-side map clustering of shops.
+ *
+ * Each zoom level z cuts the map into square tiles of 360 / 2^z degrees, so every tile splits
+ * into four at the next level. A tile is divided into a fixed grid of cluster cells and the shops
+ * in each cell are merged into one cluster. Clusters are computed per tile from
+ * {@link ShopGeoIndex} and cached; a shop change drops the cached tiles containing its old and new
+ * position at every zoom level.
+ */
+@Service
+public class ShopClusterService {
+
+    public static final int MAX_ZOOM = 20;
+    public static final int MAX_TILES_PER_REQUEST = 256;
+
+    private final ShopGeoIndex geoIndex;
+    private final int gridSize;
+    private final int maxCachedTiles;
+    private final ConcurrentHashMap<TileKey, List<ShopClusterDto>> tiles = new ConcurrentHashMap<>();
+
+    private final Counter tileHits;
+    private final Counter tileMisses;
+
+    @Autowired
+    public ShopClusterService(ShopGeoIndex geoIndex, MeterRegistry meterRegistry,
+                              @Value("${shop.clusters.grid-size:8}") int gridSize,
+                              @Value("${shop.clusters.cache-max-tiles:10000}") int maxCachedTiles) {
+        this.geoIndex = geoIndex;
+        this.gridSize = gridSize;
+        this.maxCachedTiles = maxCachedTiles;
+        geoIndex.onChange(this::invalidate);
+
+        Gauge.builder("shop.clusters.tiles", tiles, ConcurrentHashMap::size)
+                .description("Cluster tiles cached in memory")
+                .register(meterRegistry);
+        this.tileHits = Counter.builder("shop.clusters.tile.hits")
+                .description("Cluster tiles served from the cache")
+                .register(meterRegistry);
+        this.tileMisses = Counter.builder("shop.clusters.tile.misses")
+                .description("Cluster tiles computed from the geospatial index")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Clusters of every tile overlapping the box at the zoom level. A box with minLng greater
+     * than maxLng crosses the antimeridian.
+     */
+    public List<ShopClusterDto> getClusters(double minLat, double minLng, double maxLat, double maxLng, int zoom) {
+        int yMin = tileY(zoom, minLat);
+        int yMax = tileY(zoom, maxLat);
+        int xMin = tileX(zoom, minLng);
+        int xMax = tileX(zoom, maxLng);
+        int tilesPerRow = 1 << zoom;
+        int xCount = xMin <= xMax ? xMax - xMin + 1 : tilesPerRow - xMin + xMax + 1;
+        if ((long) xCount * (yMax - yMin + 1) > MAX_TILES_PER_REQUEST) {
+            throw new BadRequestException("Bounding box spans too many tiles at zoom " + zoom);
+        }
+
+        List<ShopClusterDto> clusters = new ArrayList<>();
+        for (int y = yMin; y <= yMax; y++) {
+            for (int i = 0; i < xCount; i++) {
+                clusters.addAll(getTile(new TileKey(zoom, (xMin + i) % tilesPerRow, y)));
+            }
+        }
+        return clusters;
+    }
+
+    private List<ShopClusterDto> getTile(TileKey key) {
+        List<ShopClusterDto> cached = tiles.get(key);
+        if (cached != null) {
+            tileHits.increment();
+            return cached;
+        }
+        if (tiles.size() >= maxCachedTiles) {
+            // Evict an arbitrary tile; it is recomputed on its next read
+            Iterator<TileKey> it = tiles.keySet().iterator();
+            if (it.hasNext()) {
+                tiles.remove(it.next());
+            }
+        }
+        // Computing under the key's lock means an invalidation of this tile waits for it to finish
+        return tiles.computeIfAbsent(key, k -> {
+            tileMisses.increment();
+            return computeTile(k);
+        });
+    }
+
+    private List<ShopClusterDto> computeTile(TileKey key) {
+        double tileDegrees = tileDegrees(key.zoom());
+        double minLng = -180 + key.x() * tileDegrees;
+        double minLat = -90 + key.y() * tileDegrees;
+        // The last column and row also take shops on the far edge of the map
+        double maxLng = key.x() == (1 << key.zoom()) - 1 ? Double.POSITIVE_INFINITY : minLng + tileDegrees;
+        double maxLat = key.y() == tileRows(key.zoom()) - 1 ? Double.POSITIVE_INFINITY : minLat + tileDegrees;
+        double cellDegrees = tileDegrees / gridSize;
+
+        Map<Integer, ClusterBuilder> builders = new HashMap<>();
+        for (ShopDto shop : geoIndex.findInBox(minLat, minLng, maxLat, maxLng)) {
+            int cx = Math.min(gridSize - 1, (int) ((shop.getLongitude() - minLng) / cellDegrees));
+            int cy = Math.min(gridSize - 1, (int) ((shop.getLatitude() - minLat) / cellDegrees));
+            builders.computeIfAbsent(cy * gridSize + cx, cell -> new ClusterBuilder()).add(shop);
+        }
+        return builders.values().stream()
+                .map(ClusterBuilder::build)
+                .toList();
+    }
+
+    private void invalidate(ShopDto previous, ShopDto current) {
+        for (ShopDto shop : new ShopDto[]{previous, current}) {
+            if (shop == null) {
+                continue;
+            }
+            for (int zoom = 0; zoom <= MAX_ZOOM; zoom++) {
+                tiles.remove(new TileKey(zoom, tileX(zoom, shop.getLongitude()), tileY(zoom, shop.getLatitude())));
+            }
+        }
+    }
+
+    private static double tileDegrees(int zoom) {
+        return 360.0 / (1 << zoom);
+    }
+
+    private static int tileRows(int zoom) {
+        return (int) Math.ceil(180 / tileDegrees(zoom));
+    }
+
+    private static int tileX(int zoom, double lng) {
+        return Math.min((1 << zoom) - 1, Math.max(0, (int) Math.floor((lng + 180) / tileDegrees(zoom))));
+    }
+
+    private static int tileY(int zoom, double lat) {
+        return Math.min(tileRows(zoom) - 1, Math.max(0, (int) Math.floor((lat + 90) / tileDegrees(zoom))));
+    }
+
+    private record TileKey(int zoom, int x, int y) {
+    }
+
+    private static final class ClusterBuilder {
+        private int count;
+        private double latSum;
+        private double lngSum;
+        private ShopDto top;
+
+        void add(ShopDto shop) {
+            count++;
+            latSum += shop.getLatitude();
+            lngSum += shop.getLongitude();
+            if (top == null || rating(shop) > rating(top) || (rating(shop) == rating(top) && shop.getId() < top.getId())) {
+                top = shop;
+            }
+        }
+
+        ShopClusterDto build() {
+            return new ShopClusterDto(count, latSum / count, lngSum / count, top);
+        }
+
+        private static double rating(ShopDto shop) {
+            return shop.getRating() != null ? shop.getRating() : -1;
+        }
+    }
+}
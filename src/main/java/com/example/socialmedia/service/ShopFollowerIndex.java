@@ -0,0 +1,130 @@
+package com.example.socialmedia.service;
+
+import com.example.socialmedia.repository.ShopFollowRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache from shop id to the ids of its followers, read from shop_follows by shop.
+ *
+ * Each shop maps to a sorted long[] (8 bytes per edge, no boxing). Arrays are copy-on-write:
+ * updates replace the array under the map's per-key lock, so readers can iterate the array they
+ * got without locking. {@link FollowService} applies this node's follows after commit; follows
+ * made on other nodes show up once the entry expires and is read again, after at most the TTL.
+ */
+@Service
+@Slf4j
+public class ShopFollowerIndex {
+
+    private static final long[] EMPTY = new long[0];
+
+    private final ShopFollowRepository followRepository;
+    private final long ttlMillis;
+    private final int maxShops;
+    private final ConcurrentHashMap<Long, CachedFollowers> followersByShop = new ConcurrentHashMap<>();
+
+    private final Counter loads;
+
+    @Autowired
+    public ShopFollowerIndex(ShopFollowRepository followRepository, MeterRegistry meterRegistry,
+                             @Value("${shop.followers.cache-ttl-ms:30000}") long ttlMillis,
+                             @Value("${shop.followers.cache-max-shops:10000}") int maxShops) {
+        this.followRepository = followRepository;
+        this.ttlMillis = ttlMillis;
+        this.maxShops = maxShops;
+        Gauge.builder("shop.followers.cached", followersByShop, ConcurrentHashMap::size)
+                .description("Shops whose followers are cached in memory")
+                .register(meterRegistry);
+        this.loads = Counter.builder("shop.followers.loads")
+                .description("Follower lists read from the database")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Follower ids of the shop in ascending order. The array is shared and must not be modified.
+     */
+    public long[] getFollowers(Long shopId) {
+        CachedFollowers cached = followersByShop.get(shopId);
+        if (cached != null && !cached.isExpired(System.currentTimeMillis())) {
+            return cached.followers();
+        }
+        if (cached == null) {
+            evictIfFull();
+        }
+        // Loaded under the key's lock, so a follow applied meanwhile waits and lands on the new array
+        return followersByShop.compute(shopId, (id, current) ->
+                current != null && !current.isExpired(System.currentTimeMillis()) ? current : load(shopId))
+                .followers();
+    }
+
+    public int getFollowerCount(Long shopId) {
+        return getFollowers(shopId).length;
+    }
+
+    public void add(Long shopId, long userId) {
+        followersByShop.computeIfPresent(shopId, (id, cached) -> {
+            long[] current = cached.followers();
+            int pos = Arrays.binarySearch(current, userId);
+            if (pos >= 0) {
+                return cached;
+            }
+            int insertAt = -pos - 1;
+            long[] updated = new long[current.length + 1];
+            System.arraycopy(current, 0, updated, 0, insertAt);
+            updated[insertAt] = userId;
+            System.arraycopy(current, insertAt, updated, insertAt + 1, current.length - insertAt);
+            return new CachedFollowers(updated, cached.expiresAt());
+        });
+    }
+
+    public void remove(Long shopId, long userId) {
+        followersByShop.computeIfPresent(shopId, (id, cached) -> {
+            long[] current = cached.followers();
+            int pos = Arrays.binarySearch(current, userId);
+            if (pos < 0) {
+                return cached;
+            }
+            long[] updated = new long[current.length - 1];
+            System.arraycopy(current, 0, updated, 0, pos);
+            System.arraycopy(current, pos + 1, updated, pos, current.length - pos - 1);
+            return new CachedFollowers(updated, cached.expiresAt());
+        });
+    }
+
+    public void removeShop(Long shopId) {
+        followersByShop.remove(shopId);
+    }
+
+    private CachedFollowers load(Long shopId) {
+        loads.increment();
+        long[] followers = followRepository.findUserIdsByShopId(shopId).stream()
+                .mapToLong(Long::longValue)
+                .toArray();
+        return new CachedFollowers(followers, System.currentTimeMillis() + ttlMillis);
+    }
+
+    private void evictIfFull() {
+        if (followersByShop.size() >= maxShops) {
+            // Evict an arbitrary shop; it is read again on its next lookup
+            Iterator<Long> it = followersByShop.keySet().iterator();
+            if (it.hasNext()) {
+                followersByShop.remove(it.next());
+            }
+        }
+    }
+
+    private record CachedFollowers(long[] followers, long expiresAt) {
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+}
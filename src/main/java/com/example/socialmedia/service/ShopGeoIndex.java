@@ -0,0 +1,339 @@
+package com.example.socialmedia.service;
+
+import com.example.socialmedia.dto.NearbyShopDto;
+import com.example.socialmedia.dto.ShopDto;
+import com.example.socialmedia.repository.ShopRepository;
+import com.example.socialmedia.util.GeoUtil;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+
+/**
+ * In-memory grid index over shop coordinates.
+ *
+ * The globe is cut into square cells of a fixed number of degrees; each cell holds the shops
+ * inside it. A radius query visits only the cells overlapping the circle's bounding box and
+ * computes exact distances for the shops found there. Nearest-k queries grow square rings of
+ * cells outward from the query point until no unvisited cell can hold a closer shop. Built from
+ * the shops table at startup and kept current by IndexSyncService; shops without coordinates
+ * are not indexed.
+ */
+@Service
+@Slf4j
+public class ShopGeoIndex {
+
+    public static final int DEFAULT_LIMIT = 50;
+    public static final int MAX_LIMIT = 500;
+
+    private final ShopRepository shopRepository;
+    private final double cellDegrees;
+    private final int loadPageSize;
+    private final int rows;
+    private final int cols;
+    private final ConcurrentHashMap<Long, ShopDto> shops = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Map<Long, ShopDto>> cells = new ConcurrentHashMap<>();
+    private final List<BiConsumer<ShopDto, ShopDto>> changeListeners = new CopyOnWriteArrayList<>();
+
+    @Autowired
+    public ShopGeoIndex(ShopRepository shopRepository, MeterRegistry meterRegistry,
+                        @Value("${shop.geo.cell-degrees:0.05}") double cellDegrees,
+                        @Value("${shop.geo.load-page-size:5000}") int loadPageSize) {
+        this.shopRepository = shopRepository;
+        this.cellDegrees = cellDegrees;
+        this.loadPageSize = loadPageSize;
+        this.rows = (int) Math.ceil(180 / cellDegrees);
+        this.cols = (int) Math.ceil(360 / cellDegrees);
+
+        Gauge.builder("shop.geo.indexed", shops, ConcurrentHashMap::size)
+                .description("Shops held in the in-memory geospatial index")
+                .register(meterRegistry);
+        Gauge.builder("shop.geo.cells", cells, ConcurrentHashMap::size)
+                .description("Non-empty cells of the in-memory geospatial index")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void load() {
+        long lastId = 0;
+        List<ShopDto> page;
+        do {
+            page = shopRepository.findLocatedAfter(lastId, PageRequest.of(0, loadPageSize));
+            for (ShopDto shop : page) {
+                put(shop);
+                lastId = shop.getId();
+            }
+        } while (page.size() == loadPageSize);
+        log.info("Loaded geospatial index: {} shops in {} cells", shops.size(), cells.size());
+    }
+
+    /**
+     * Register a callback run after every change with the shop's previous and current entry;
+     * either may be null.
+     */
+    public void onChange(BiConsumer<ShopDto, ShopDto> listener) {
+        changeListeners.add(listener);
+    }
+
+    /**
+     * Add or move a shop. A shop whose coordinates were cleared is removed.
+     */
+    public void put(ShopDto shop) {
+        if (shop.getLatitude() == null || shop.getLongitude() == null) {
+            remove(shop.getId());
+            return;
+        }
+        ShopDto[] replaced = new ShopDto[1];
+        // Per-shop lock of the map serializes moves of the same shop between cells
+        shops.compute(shop.getId(), (id, previous) -> {
+            if (previous != null) {
+                removeFromCell(cellOf(previous.getLatitude(), previous.getLongitude()), id);
+            }
+            cells.compute(cellOf(shop.getLatitude(), shop.getLongitude()), (key, cell) -> {
+                Map<Long, ShopDto> members = cell != null ? cell : new ConcurrentHashMap<>();
+                members.put(id, shop);
+                return members;
+            });
+            replaced[0] = previous;
+            return shop;
+        });
+        changeListeners.forEach(listener -> listener.accept(replaced[0], shop));
+    }
+
+    public void remove(Long shopId) {
+        ShopDto[] removed = new ShopDto[1];
+        shops.computeIfPresent(shopId, (id, previous) -> {
+            removeFromCell(cellOf(previous.getLatitude(), previous.getLongitude()), id);
+            removed[0] = previous;
+            return null;
+        });
+        if (removed[0] != null) {
+            changeListeners.forEach(listener -> listener.accept(removed[0], null));
+        }
+    }
+
+    public int size() {
+        return shops.size();
+    }
+
+    public List<Long> getShopIds() {
+        return List.copyOf(shops.keySet());
+    }
+
+    /**
+     * Shops within the radius of the point, nearest first.
+     */
+    public List<ShopDto> findNearby(double lat, double lng, double radiusKm, int limit) {
+        List<Located> found = new ArrayList<>();
+        for (ShopDto shop : candidates(lat, lng, radiusKm)) {
+            double distance = GeoUtil.distanceKm(lat, lng, shop.getLatitude(), shop.getLongitude());
+            if (distance <= radiusKm) {
+                found.add(new Located(shop, distance));
+            }
+        }
+        return found.stream()
+                .sorted(Comparator.comparingDouble(Located::distanceKm))
+                .limit(Math.min(Math.max(limit, 1), MAX_LIMIT))
+                .map(Located::shop)
+                .toList();
+    }
+
+    /**
+     * Shops inside the box, in no particular order. The box must not cross the antimeridian.
+     */
+    public List<ShopDto> findInBox(double minLat, double minLng, double maxLat, double maxLng) {
+        int rowMin = row(minLat);
+        int rowMax = row(maxLat);
+        int colMin = Math.max(0, col(minLng));
+        int colMax = Math.min(cols - 1, col(maxLng));
+        List<ShopDto> result = new ArrayList<>();
+        if ((long) (rowMax - rowMin + 1) * (colMax - colMin + 1) >= shops.size()) {
+            for (ShopDto shop : shops.values()) {
+                if (inBox(shop, minLat, minLng, maxLat, maxLng)) {
+                    result.add(shop);
+                }
+            }
+            return result;
+        }
+        for (int r = rowMin; r <= rowMax; r++) {
+            for (int c = colMin; c <= colMax; c++) {
+                Map<Long, ShopDto> cell = cells.get(key(r, c));
+                if (cell == null) {
+                    continue;
+                }
+                for (ShopDto shop : cell.values()) {
+                    if (inBox(shop, minLat, minLng, maxLat, maxLng)) {
+                        result.add(shop);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private static boolean inBox(ShopDto shop, double minLat, double minLng, double maxLat, double maxLng) {
+        return shop.getLatitude() >= minLat && shop.getLatitude() < maxLat
+                && shop.getLongitude() >= minLng && shop.getLongitude() < maxLng;
+    }
+
+    /**
+     * The k shops closest to the point, nearest first, optionally only those rated at least
+     * minRating. Shops failing the filter are skipped during the search, so they never crowd out
+     * qualifying shops further away.
+     */
+    public List<NearbyShopDto> findNearest(double lat, double lng, int k, Double minRating) {
+        int limit = Math.min(Math.max(k, 1), MAX_LIMIT);
+        // Max-heap on distance: the root is the worst of the best k found so far
+        PriorityQueue<Located> best = new PriorityQueue<>(limit + 1,
+                Comparator.comparingDouble(Located::distanceKm).reversed());
+        int centerRow = row(lat);
+        int centerCol = col(lng);
+        long visited = 0;
+
+        for (int ring = 0; ; ring++) {
+            if (2 * ring + 1 >= cols || visited > shops.size()) {
+                // The rings wrapped around the globe or cost more than a full pass
+                best.clear();
+                for (ShopDto shop : shops.values()) {
+                    offer(best, limit, shop, lat, lng, minRating);
+                }
+                break;
+            }
+            for (int dr = -ring; dr <= ring; dr++) {
+                int r = centerRow + dr;
+                if (r < 0 || r >= rows) {
+                    continue;
+                }
+                if (Math.abs(dr) == ring) {
+                    for (int dc = -ring; dc <= ring; dc++) {
+                        visitCell(best, limit, r, centerCol + dc, lat, lng, minRating);
+                    }
+                    visited += 2L * ring + 1;
+                } else {
+                    visitCell(best, limit, r, centerCol - ring, lat, lng, minRating);
+                    visitCell(best, limit, r, centerCol + ring, lat, lng, minRating);
+                    visited += 2;
+                }
+            }
+            if (best.size() == limit && best.peek().distanceKm() <= unvisitedBoundKm(lat, lng, centerRow, centerCol, ring)) {
+                break;
+            }
+        }
+
+        List<Located> sorted = new ArrayList<>(best);
+        sorted.sort(Comparator.comparingDouble(Located::distanceKm));
+        return sorted.stream()
+                .map(located -> new NearbyShopDto(located.shop(), located.distanceKm()))
+                .toList();
+    }
+
+    private void visitCell(PriorityQueue<Located> best, int limit, int row, int unwrappedCol,
+                           double lat, double lng, Double minRating) {
+        Map<Long, ShopDto> cell = cells.get(key(row, Math.floorMod(unwrappedCol, cols)));
+        if (cell != null) {
+            for (ShopDto shop : cell.values()) {
+                offer(best, limit, shop, lat, lng, minRating);
+            }
+        }
+    }
+
+    private void offer(PriorityQueue<Located> best, int limit, ShopDto shop, double lat, double lng, Double minRating) {
+        if (minRating != null && (shop.getRating() == null || shop.getRating() < minRating)) {
+            return;
+        }
+        double distance = GeoUtil.distanceKm(lat, lng, shop.getLatitude(), shop.getLongitude());
+        if (best.size() < limit) {
+            best.add(new Located(shop, distance));
+        } else if (distance < best.peek().distanceKm()) {
+            best.poll();
+            best.add(new Located(shop, distance));
+        }
+    }
+
+    /**
+     * Lower bound on the distance from the point to any shop outside the block of cells within
+     * the given ring of the center cell.
+     */
+    private double unvisitedBoundKm(double lat, double lng, int centerRow, int centerCol, int ring) {
+        double top = (centerRow + ring + 1) * cellDegrees - 90;
+        double bottom = (centerRow - ring) * cellDegrees - 90;
+        double latGap = Math.min(top >= 90 ? Double.MAX_VALUE : top - lat,
+                bottom <= -90 ? Double.MAX_VALUE : lat - bottom);
+        double latBound = Math.toRadians(latGap) * GeoUtil.EARTH_RADIUS_KM;
+
+        double right = (centerCol + ring + 1) * cellDegrees - 180;
+        double left = (centerCol - ring) * cellDegrees - 180;
+        double lngGap = Math.min(right - lng, lng - left);
+        // Distance to the nearest meridian bounding the block; no useful bound past 90 degrees
+        double lngBound = lngGap >= 90 ? 0
+                : Math.asin(Math.cos(Math.toRadians(lat)) * Math.sin(Math.toRadians(lngGap))) * GeoUtil.EARTH_RADIUS_KM;
+        return Math.min(latBound, lngBound);
+    }
+
+    // Shops in the cells overlapping the bounding box of the circle
+    private Collection<ShopDto> candidates(double lat, double lng, double radiusKm) {
+        double latSpan = GeoUtil.latitudeSpan(radiusKm);
+        double lngSpan = GeoUtil.longitudeSpan(radiusKm, lat);
+        int rowMin = row(lat - latSpan);
+        int rowMax = row(lat + latSpan);
+        int colCount = lngSpan >= 180 ? cols : Math.min(cols, col(lng + lngSpan) - col(lng - lngSpan) + 1);
+        if ((long) (rowMax - rowMin + 1) * colCount >= shops.size()) {
+            // Visiting the cells would cost more than checking every shop
+            return shops.values();
+        }
+
+        int colStart = lngSpan >= 180 ? 0 : col(lng - lngSpan);
+        List<ShopDto> result = new ArrayList<>();
+        for (int r = rowMin; r <= rowMax; r++) {
+            for (int i = 0; i < colCount; i++) {
+                // Columns wrap around the antimeridian
+                Map<Long, ShopDto> cell = cells.get(key(r, Math.floorMod(colStart + i, cols)));
+                if (cell != null) {
+                    result.addAll(cell.values());
+                }
+            }
+        }
+        return result;
+    }
+
+    private void removeFromCell(long key, Long shopId) {
+        cells.computeIfPresent(key, (k, members) -> {
+            members.remove(shopId);
+            return members.isEmpty() ? null : members;
+        });
+    }
+
+    private long cellOf(double lat, double lng) {
+        return key(row(lat), Math.floorMod(col(lng), cols));
+    }
+
+    private long key(int row, int col) {
+        return (long) row * cols + col;
+    }
+
+    private int row(double lat) {
+        return Math.min(rows - 1, Math.max(0, (int) Math.floor((lat + 90) / cellDegrees)));
+    }
+
+    // Unwrapped column: may fall outside [0, cols) for longitudes past the antimeridian
+    private int col(double lng) {
+        return (int) Math.floor((lng + 180) / cellDegrees);
+    }
+
+    private record Located(ShopDto shop, double distanceKm) {
+    }
+}
@@ -0,0 +1,350 @@
+package com.example.socialmedia.service;
+
+import com.example.socialmedia.dto.ShopDto;
+import com.example.socialmedia.repository.ShopRepository;
+import com.example.socialmedia.util.TextTokenizer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory search index over shop name, address and description for autocomplete.
+ *
+ * Terms are kept in a sorted set, so a prefix is a range scan, and in a trigram index used to find
+ * substring matches and terms within a small edit distance of a misspelled query term. Every query
+ * term must match (a whole term, a prefix, a substring or a near miss) for a shop to be returned;
+ * shops are ranked by match quality weighted by the field matched, name first. Built from the
+ * shops table at startup and kept current by IndexSyncService.
+ */
+@Service
+@Slf4j
+public class ShopSearchIndex {
+
+    public static final int DEFAULT_LIMIT = 20;
+    public static final int MAX_LIMIT = 100;
+
+    private static final int FIELD_NAME = 1;
+    private static final int FIELD_ADDRESS = 2;
+    private static final int FIELD_DESCRIPTION = 4;
+    // Bounds the work a very short prefix can cause
+    private static final int MAX_PREFIX_TERMS = 500;
+
+    private final ShopRepository shopRepository;
+    private final int loadPageSize;
+    // term -> shop id -> bit mask of the fields containing the term
+    private final ConcurrentHashMap<String, Map<Long, Integer>> postings = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<String> terms = new ConcurrentSkipListSet<>();
+    // Trigram postings split by term length, so near-miss lookups only touch terms of a similar length
+    private final ConcurrentHashMap<GramKey, Set<String>> termsByTrigram = new ConcurrentHashMap<>();
+    private final AtomicInteger maxTermLength = new AtomicInteger();
+    private final ConcurrentHashMap<Long, Map<String, Integer>> termsByShop = new ConcurrentHashMap<>();
+    private final Timer queryTimer;
+
+    @Autowired
+    public ShopSearchIndex(ShopRepository shopRepository, MeterRegistry meterRegistry,
+                           @Value("${shop.search.load-page-size:5000}") int loadPageSize) {
+        this.shopRepository = shopRepository;
+        this.loadPageSize = loadPageSize;
+
+        Gauge.builder("shop.search.terms", terms, Set::size)
+                .description("Distinct terms in the shop search index")
+                .register(meterRegistry);
+        this.queryTimer = Timer.builder("shop.search.query")
+                .description("Shop search query latency")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void load() {
+        long lastId = 0;
+        List<ShopDto> page;
+        do {
+            page = shopRepository.findPageAfterId(lastId, PageRequest.of(0, loadPageSize));
+            for (ShopDto shop : page) {
+                put(shop);
+                lastId = shop.getId();
+            }
+        } while (page.size() == loadPageSize);
+        log.info("Loaded shop search index: {} shops, {} terms", termsByShop.size(), terms.size());
+    }
+
+    /**
+     * Index a new shop or re-index a changed one.
+     */
+    public synchronized void put(ShopDto shop) {
+        remove(shop.getId());
+        Map<String, Integer> fields = new HashMap<>();
+        addTerms(fields, shop.getName(), FIELD_NAME);
+        addTerms(fields, shop.getAddress(), FIELD_ADDRESS);
+        addTerms(fields, shop.getDescription(), FIELD_DESCRIPTION);
+        fields.forEach((term, mask) -> {
+            postings.computeIfAbsent(term, t -> {
+                terms.add(t);
+                maxTermLength.accumulateAndGet(t.length(), Math::max);
+                for (String gram : trigrams(t)) {
+                    termsByTrigram.computeIfAbsent(new GramKey(gram, t.length()), g -> ConcurrentHashMap.newKeySet()).add(t);
+                }
+                return new ConcurrentHashMap<>();
+            }).put(shop.getId(), mask);
+        });
+        termsByShop.put(shop.getId(), fields);
+    }
+
+    public synchronized void remove(Long shopId) {
+        Map<String, Integer> fields = termsByShop.remove(shopId);
+        if (fields == null) {
+            return;
+        }
+        for (String term : fields.keySet()) {
+            postings.computeIfPresent(term, (t, shops) -> {
+                shops.remove(shopId);
+                if (!shops.isEmpty()) {
+                    return shops;
+                }
+                terms.remove(t);
+                for (String gram : trigrams(t)) {
+                    termsByTrigram.computeIfPresent(new GramKey(gram, t.length()), (g, grams) -> {
+                        grams.remove(t);
+                        return grams.isEmpty() ? null : grams;
+                    });
+                }
+                return null;
+            });
+        }
+    }
+
+    public List<Long> getShopIds() {
+        return List.copyOf(termsByShop.keySet());
+    }
+
+    /**
+     * Ids of the best-matching shops, best first.
+     */
+    public List<Long> search(String query, int limit) {
+        return queryTimer.record(() -> {
+            List<Map<String, Double>> matchedPerToken = new ArrayList<>();
+            for (String token : TextTokenizer.tokenize(query)) {
+                matchedPerToken.add(matchTerms(token));
+            }
+            // Most selective query term first, so later terms only score shops still in the running
+            matchedPerToken.sort(Comparator.comparingLong(this::postingCount));
+
+            Map<Long, Double> scores = null;
+            for (Map<String, Double> matched : matchedPerToken) {
+                scores = score(matched, scores);
+                if (scores.isEmpty()) {
+                    break;
+                }
+            }
+            if (scores == null) {
+                return List.<Long>of();
+            }
+            return topK(scores, Math.min(Math.max(limit, 1), MAX_LIMIT));
+        });
+    }
+
+    // Highest scores first, ties by id; a bounded heap avoids sorting every match
+    private static List<Long> topK(Map<Long, Double> scores, int k) {
+        Comparator<Map.Entry<Long, Double>> order = Map.Entry.<Long, Double>comparingByValue().reversed()
+                .thenComparing(Map.Entry.comparingByKey());
+        PriorityQueue<Map.Entry<Long, Double>> heap = new PriorityQueue<>(k + 1, order.reversed());
+        for (Map.Entry<Long, Double> entry : scores.entrySet()) {
+            heap.add(entry);
+            if (heap.size() > k) {
+                heap.poll();
+            }
+        }
+        List<Map.Entry<Long, Double>> best = new ArrayList<>(heap);
+        best.sort(order);
+        return best.stream().map(Map.Entry::getKey).toList();
+    }
+
+    /**
+     * Add the best score of each shop for one query term's matched terms. With earlier scores,
+     * only shops present in them are kept: every query term has to match.
+     */
+    private Map<Long, Double> score(Map<String, Double> matched, Map<Long, Double> earlier) {
+        Map<Long, Double> scores = new HashMap<>();
+        if (earlier != null && (long) earlier.size() * matched.size() < postingCount(matched)) {
+            // Fewer lookups than walking the postings
+            earlier.forEach((shopId, score) -> {
+                double best = 0;
+                for (Map.Entry<String, Double> term : matched.entrySet()) {
+                    Integer mask = postings.getOrDefault(term.getKey(), Map.of()).get(shopId);
+                    if (mask != null) {
+                        best = Math.max(best, term.getValue() * fieldWeight(mask));
+                    }
+                }
+                if (best > 0) {
+                    scores.put(shopId, score + best);
+                }
+            });
+            return scores;
+        }
+        matched.forEach((term, quality) -> postings.getOrDefault(term, Map.of()).forEach((shopId, mask) -> {
+            if (earlier == null || earlier.containsKey(shopId)) {
+                scores.merge(shopId, quality * fieldWeight(mask), Math::max);
+            }
+        }));
+        if (earlier != null) {
+            scores.replaceAll((shopId, score) -> score + earlier.get(shopId));
+        }
+        return scores;
+    }
+
+    private long postingCount(Map<String, Double> matched) {
+        long count = 0;
+        for (String term : matched.keySet()) {
+            count += postings.getOrDefault(term, Map.of()).size();
+        }
+        return count;
+    }
+
+    // Indexed terms matching one query term, with the match quality
+    private Map<String, Double> matchTerms(String token) {
+        Map<String, Double> matched = new HashMap<>();
+        if (postings.containsKey(token)) {
+            matched.put(token, 1.0);
+        }
+        int expanded = 0;
+        for (String term : terms.subSet(token, false, token + Character.MAX_VALUE, false)) {
+            if (++expanded > MAX_PREFIX_TERMS) {
+                break;
+            }
+            matched.put(term, 0.8);
+        }
+        if (token.length() < 3) {
+            return matched;
+        }
+
+        int maxEdits = token.length() >= 8 ? 2 : token.length() >= 4 ? 1 : 0;
+        List<String> grams = trigrams(token);
+        List<String> innerGrams = grams.stream().filter(gram -> gram.indexOf('$') < 0).toList();
+
+        // Substrings: a containing term holds every inner trigram, so probing the rarest one per
+        // term length finds them all
+        for (int length = token.length() + 1; length <= maxTermLength.get(); length++) {
+            for (String term : rarest(innerGrams, length, 1)) {
+                if (!matched.containsKey(term) && term.contains(token)) {
+                    matched.put(term, 0.6);
+                }
+            }
+        }
+        if (maxEdits == 0) {
+            return matched;
+        }
+
+        // Near misses: one edit changes at most four trigrams (a transposition, "pziza" for
+        // "pizza"), and a term sharing minShared of them shares one of any (size - minShared + 1),
+        // so only the rarest ones are probed
+        int minShared = Math.max(1, grams.size() - 4 * maxEdits);
+        Set<String> queryGrams = new HashSet<>(grams);
+        for (int length = token.length() - maxEdits; length <= token.length() + maxEdits; length++) {
+            for (String term : rarest(grams, length, grams.size() - minShared + 1)) {
+                if (!matched.containsKey(term) && sharedTrigrams(term, queryGrams) >= minShared) {
+                    int edits = editDistance(token, term, maxEdits);
+                    if (edits <= maxEdits) {
+                        matched.put(term, 0.5 - 0.1 * edits);
+                    }
+                }
+            }
+        }
+        return matched;
+    }
+
+    // Terms of the given length containing any of the n rarest grams at that length
+    private Set<String> rarest(List<String> grams, int length, int n) {
+        List<Set<String>> buckets = new ArrayList<>();
+        for (String gram : grams) {
+            buckets.add(termsByTrigram.getOrDefault(new GramKey(gram, length), Set.of()));
+        }
+        buckets.sort(Comparator.comparingInt(Set::size));
+        Set<String> candidates = new HashSet<>();
+        for (Set<String> bucket : buckets.subList(0, Math.min(n, buckets.size()))) {
+            candidates.addAll(bucket);
+        }
+        return candidates;
+    }
+
+    private static int sharedTrigrams(String term, Set<String> queryGrams) {
+        int shared = 0;
+        for (String gram : trigrams(term)) {
+            if (queryGrams.contains(gram)) {
+                shared++;
+            }
+        }
+        return shared;
+    }
+
+    private static double fieldWeight(int mask) {
+        if ((mask & FIELD_NAME) != 0) {
+            return 3.0;
+        }
+        return (mask & FIELD_ADDRESS) != 0 ? 1.5 : 1.0;
+    }
+
+    private static void addTerms(Map<String, Integer> fields, String text, int field) {
+        for (String term : TextTokenizer.tokenize(text)) {
+            fields.merge(term, field, (a, b) -> a | b);
+        }
+    }
+
+    // Trigrams of the term padded with boundary markers, so short terms and word edges count too
+    private static List<String> trigrams(String term) {
+        String padded = "$" + term + "$";
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            grams.add(padded.substring(i, i + 3));
+        }
+        return new ArrayList<>(grams);
+    }
+
+    private record GramKey(String gram, int length) {
+    }
+
+    /**
+     * Damerau-Levenshtein (optimal string alignment) distance, giving up once it exceeds max.
+     */
+    static int editDistance(String a, String b, int max) {
+        int[][] d = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) {
+            d[i][0] = i;
+        }
+        for (int j = 0; j <= b.length(); j++) {
+            d[0][j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            int rowMin = Integer.MAX_VALUE;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                d[i][j] = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1), d[i - 1][j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    d[i][j] = Math.min(d[i][j], d[i - 2][j - 2] + 1);
+                }
+                rowMin = Math.min(rowMin, d[i][j]);
+            }
+            if (rowMin > max) {
+                return max + 1;
+            }
+        }
+        return d[a.length()][b.length()];
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.socialmedia.service;
+
+import com.example.socialmedia.security.StompAuthChannelInterceptor;
+import com.example.socialmedia.security.UserDetailsImpl;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks which users currently hold at least one authenticated STOMP session.
+ *
+ * Fed by the broker's connect and disconnect events, so a session that drops without sending
+ * DISCONNECT is still removed. Notification delivery consults it to skip users with no session.
+ * Sessions get their user from the JWT in the CONNECT frame ({@link StompAuthChannelInterceptor});
+ * anonymous sessions are not tracked and receive no user pushes.
+ */
+@Service
+@Slf4j
+public class UserPresenceRegistry {
+
+    private final ConcurrentHashMap<Long, Presence> online = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Long> sessionUsers = new ConcurrentHashMap<>();
+
+    @Autowired
+    public UserPresenceRegistry(MeterRegistry meterRegistry) {
+        Gauge.builder("websocket.presence.users", online, ConcurrentHashMap::size)
+                .description("Users with at least one open WebSocket session")
+                .register(meterRegistry);
+        Gauge.builder("websocket.presence.sessions", sessionUsers, ConcurrentHashMap::size)
+                .description("Open authenticated WebSocket sessions")
+                .register(meterRegistry);
+    }
+
+    @EventListener
+    public void onConnected(SessionConnectedEvent event) {
+        UserDetailsImpl user = StompAuthChannelInterceptor.getUser(event.getUser());
+        String sessionId = (String) event.getMessage().getHeaders().get("simpSessionId");
+        if (user == null || sessionId == null) {
+            return;
+        }
+        sessionUsers.put(sessionId, user.getId());
+        online.compute(user.getId(), (id, presence) -> {
+            Presence current = presence != null ? presence : new Presence(user.getUsername());
+            current.sessionIds.add(sessionId);
+            return current;
+        });
+        log.debug("User {} connected (session {})", user.getId(), sessionId);
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        Long userId = sessionUsers.remove(event.getSessionId());
+        if (userId == null) {
+            return;
+        }
+        online.computeIfPresent(userId, (id, presence) -> {
+            presence.sessionIds.remove(event.getSessionId());
+            return presence.sessionIds.isEmpty() ? null : presence;
+        });
+        log.debug("User {} disconnected (session {})", userId, event.getSessionId());
+    }
+
+    /**
+     * Principal name used for the user's STOMP user destinations, or null when the user is offline.
+     */
+    public String getSessionUsername(Long userId) {
+        Presence presence = online.get(userId);
+        return presence != null ? presence.username : null;
+    }
+
+    public Set<Long> getOnlineUserIds() {
+        return Set.copyOf(online.keySet());
+    }
+
+    private static class Presence {
+        private final String username;
+        private final Set<String> sessionIds = new HashSet<>();
+
+        Presence(String username) {
+            this.username = username;
+        }
+    }
+}
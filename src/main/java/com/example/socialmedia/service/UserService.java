@@ -1,29 +1,73 @@
 package com.example.socialmedia.service;
 
 import com.example.socialmedia.dto.ChangePasswordRequest;
+import com.example.socialmedia.dto.CursorPage;
+import com.example.socialmedia.model.BackgroundJob;
 import com.example.socialmedia.model.User;
 import com.example.socialmedia.repository.UserRepository;
+import com.example.socialmedia.util.KeysetCursor;
+import com.example.socialmedia.util.KeysetPagination;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.List;
 import java.util.Optional;
 
 @Service
+@Slf4j
 public class UserService {
 
+    public static final String DELETE_USER_JOB = "DELETE_USER";
+
+    private static final String DELETE_NOTIFICATIONS_SQL = "DELETE FROM notifications WHERE id IN " +
+            "(SELECT id FROM notifications WHERE user_id = ? ORDER BY id LIMIT ?)";
+    private static final String DELETE_NOTIFICATION_STATE_SQL = "DELETE FROM user_notification_state WHERE user_id = ?";
+    private static final String DELETE_READ_MARKERS_SQL = "DELETE FROM broadcast_read_markers WHERE user_id = ?";
+    // Shops outlive their owner; every Shop.getOwner() caller must handle the NULL this leaves
+    private static final String RELEASE_SHOPS_SQL = "UPDATE shops SET owner_id = NULL WHERE owner_id = ?";
+
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final FollowService followService;
+    private final ReviewService reviewService;
+    private final ReservationService reservationService;
+    private final JobQueue jobQueue;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int deleteBatchSize;
 
     @Autowired
-    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder) {
+    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder, FollowService followService,
+                       ReviewService reviewService, ReservationService reservationService, JobQueue jobQueue,
+                       JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                       @Value("${user.delete.batch-size:1000}") int deleteBatchSize) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
+        this.followService = followService;
+        this.reviewService = reviewService;
+        this.reservationService = reservationService;
+        this.jobQueue = jobQueue;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.deleteBatchSize = deleteBatchSize;
+        jobQueue.register(DELETE_USER_JOB, this::deleteUser);
     }
 
-    public List<User> getAllUsers() {
-        return userRepository.findAll();
+    public CursorPage<User> getAllUsers(String cursor, int size) {
+        int pageSize = KeysetPagination.clamp(size);
+        List<User> rows;
+        if (KeysetPagination.isFirstPage(cursor)) {
+            rows = userRepository.findPage(KeysetPagination.limit(pageSize));
+        } else {
+            KeysetCursor after = KeysetCursor.decode(cursor);
+            rows = userRepository.findPageAfter(after.getKey(), after.getId(), KeysetPagination.limit(pageSize));
+        }
+        return KeysetPagination.toPage(rows, pageSize, user -> KeysetCursor.encode(user.getUsername(), user.getId()));
     }
 
     public Optional<User> getUserById(Long id) {
@@ -59,7 +103,47 @@ public class UserService {
         userRepository.save(user);
     }
 
-    public void deleteUser(Long id) {
-        userRepository.deleteById(id);
+    /**
+     * Queue the deletion of a user together with everything that references them.
+     */
+    public BackgroundJob queueDeleteUser(Long id) {
+        if (!userRepository.existsById(id)) {
+            throw new RuntimeException("User not found with id: " + id);
+        }
+        return jobQueue.enqueue(DELETE_USER_JOB, id);
+    }
+
+    // Each step runs in its own transaction together with the checkpoint counting the steps done, so
+    // a retry skips them. Notifications, which grow without bound per user, are deleted first in
+    // batches; rerunning those deletes is harmless.
+    private void deleteUser(JobQueue.Context job) {
+        Long id = job.getPayload(Long.class);
+        int done = job.getCheckpoint() != null ? Integer.parseInt(job.getCheckpoint()) : 0;
+        List<Runnable> steps = List.of(
+                () -> followService.removeUser(id),
+                () -> {
+                    jdbcTemplate.update(DELETE_NOTIFICATION_STATE_SQL, id);
+                    jdbcTemplate.update(DELETE_READ_MARKERS_SQL, id);
+                },
+                () -> reviewService.removeUser(id),
+                () -> reservationService.removeUser(id),
+                () -> jdbcTemplate.update(RELEASE_SHOPS_SQL, id),
+                () -> userRepository.deleteById(id));
+
+        if (done == 0) {
+            int deleted;
+            do {
+                deleted = jdbcTemplate.update(DELETE_NOTIFICATIONS_SQL, id, deleteBatchSize);
+            } while (deleted == deleteBatchSize);
+        }
+        for (int step = done; step < steps.size(); step++) {
+            Runnable action = steps.get(step);
+            String checkpoint = String.valueOf(step + 1);
+            transactionTemplate.executeWithoutResult(status -> {
+                action.run();
+                job.checkpoint(checkpoint);
+            });
+        }
+        log.info("Deleted user {}", id);
     }
 }
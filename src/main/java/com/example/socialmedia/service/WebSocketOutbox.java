@@ -0,0 +1,332 @@
+package com.example.socialmedia.service;
+
+import com.example.socialmedia.config.WebSocketConfig;
+import com.example.socialmedia.model.OutboxEntry;
+import com.example.socialmedia.repository.OutboxEntryRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.UUID;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Transactional outbox for WebSocket pushes.
+ *
+ * Inside a transaction a push is stored as a websocket_outbox row instead of being sent, so the
+ * broker call no longer holds the connection open and a rollback discards the push with the data.
+ * After commit a single dispatcher thread sends pending rows in id order, a batch at a time, and
+ * deletes them. A periodic sweep picks up rows whose wake-up was missed.
+ *
+ * The simple broker only reaches sessions connected to its own node, so a push for a session held
+ * here is tagged with this node and only this node sends and deletes it. A push for users this
+ * node does not hold, or for every online user, is written as a fan-out row with no node: every
+ * node reads the fan-out rows of the last lookback window, sends each one once to the matching
+ * sessions it holds, and leaves the row for the others. Ids are not committed in order, hence the
+ * window rather than a high-water id. Fan-out rows, and node rows whose node crashed, are deleted
+ * once older than the max age. Frames for a user with no open session on any node are dropped;
+ * the data itself is already in the database.
+ */
+@Service
+@Slf4j
+public class WebSocketOutbox {
+
+    private final OutboxEntryRepository outboxRepository;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ObjectMapper objectMapper;
+    private final UserPresenceRegistry presenceRegistry;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final Duration maxAge;
+    private final Duration fanoutLookback;
+    private final Instant startedAt = Instant.now();
+    // Per process: sessions do not survive a restart, so neither does the claim on their frames
+    private final String nodeId = UUID.randomUUID().toString();
+    private final ScheduledThreadPoolExecutor dispatcher;
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    // Fan-out rows inside the lookback window already sent here; only the dispatcher thread uses it
+    private final Set<Long> fanoutSent = new HashSet<>();
+
+    private final Counter framesSent;
+    private final Counter sendFailures;
+    private final Counter skippedOffline;
+    private final Timer batchTimer;
+
+    @Autowired
+    public WebSocketOutbox(OutboxEntryRepository outboxRepository, SimpMessagingTemplate messagingTemplate,
+                           ObjectMapper objectMapper, UserPresenceRegistry presenceRegistry,
+                           MeterRegistry meterRegistry, TransactionTemplate transactionTemplate,
+                           @Value("${notification.outbox.batch-size:200}") int batchSize,
+                           @Value("${notification.outbox.poll-interval-ms:5000}") long pollIntervalMillis,
+                           @Value("${notification.outbox.max-age-ms:600000}") long maxAgeMillis,
+                           @Value("${notification.outbox.fanout-poll-interval-ms:1000}") long fanoutPollMillis,
+                           @Value("${notification.outbox.fanout-lookback-ms:30000}") long fanoutLookbackMillis) {
+        this.outboxRepository = outboxRepository;
+        this.messagingTemplate = messagingTemplate;
+        this.objectMapper = objectMapper;
+        this.presenceRegistry = presenceRegistry;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.maxAge = Duration.ofMillis(maxAgeMillis);
+        this.fanoutLookback = Duration.ofMillis(fanoutLookbackMillis);
+        if (fanoutLookbackMillis >= maxAgeMillis) {
+            throw new IllegalArgumentException("notification.outbox.fanout-lookback-ms must be below max-age-ms");
+        }
+        this.dispatcher = new ScheduledThreadPoolExecutor(1, new CustomizableThreadFactory("websocket-outbox-"));
+        this.dispatcher.scheduleWithFixedDelay(this::wakeUp, pollIntervalMillis, pollIntervalMillis, TimeUnit.MILLISECONDS);
+        // Other nodes' fan-out rows do not wake this node up, so they are polled for more often
+        this.dispatcher.scheduleWithFixedDelay(this::wakeUp, fanoutPollMillis, fanoutPollMillis, TimeUnit.MILLISECONDS);
+        this.dispatcher.scheduleWithFixedDelay(this::purge, maxAgeMillis, maxAgeMillis, TimeUnit.MILLISECONDS);
+
+        this.framesSent = Counter.builder("websocket.outbox.sent")
+                .description("Frames sent from the WebSocket outbox")
+                .register(meterRegistry);
+        this.sendFailures = Counter.builder("websocket.outbox.failures")
+                .description("Outbox frames the broker rejected")
+                .register(meterRegistry);
+        this.skippedOffline = Counter.builder("notifications.push.skipped")
+                .description("Pushes skipped because the user had no open WebSocket session")
+                .register(meterRegistry);
+        this.batchTimer = Timer.builder("websocket.outbox.batch")
+                .description("Time to send and delete one outbox batch")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Push a frame to a destination. Inside a transaction the frame is recorded and sent after
+     * commit; otherwise it is sent right away.
+     */
+    public void send(String destination, Object payload) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            messagingTemplate.convertAndSend(destination, payload);
+            return;
+        }
+
+        record(destination, null, payload);
+    }
+
+    /**
+     * Push a frame to a user destination (e.g. /queue/notifications) of every session the user
+     * has open. A user with no session on this node may hold one on another node, so the frame
+     * goes out as a fan-out row for that user.
+     */
+    public void sendToUser(Long userId, String destination, Object payload) {
+        String username = presenceRegistry.getSessionUsername(userId);
+        if (username == null) {
+            fanOut(destination, payload, List.of(userId));
+            return;
+        }
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            messagingTemplate.convertAndSendToUser(username, destination, payload);
+            if (WebSocketConfig.USER_NOTIFICATIONS_DESTINATION.equals(destination)) {
+                messagingTemplate.convertAndSend(WebSocketConfig.legacyNotificationsTopic(userId), payload);
+            }
+            return;
+        }
+        record(destination, userId, payload);
+    }
+
+    /**
+     * Push a frame to a user destination of the given users on whichever nodes hold their
+     * sessions. The row is written in the caller's transaction, if any, and sent by every node
+     * after commit.
+     *
+     * @param userIds users to reach, or null for every user with an open session
+     */
+    public void fanOut(String destination, Object payload, Collection<Long> userIds) {
+        outboxRepository.save(OutboxEntry.builder()
+                .destination(destination)
+                .recipients(userIds != null
+                        ? userIds.stream().map(String::valueOf).collect(Collectors.joining(","))
+                        : null)
+                .payload(toJson(payload))
+                .createdDate(Instant.now())
+                .build());
+        wakeUpAfterCommit();
+    }
+
+    private void record(String destination, Long userId, Object payload) {
+        outboxRepository.save(OutboxEntry.builder()
+                .nodeId(nodeId)
+                .destination(destination)
+                .userId(userId)
+                .payload(toJson(payload))
+                .createdDate(Instant.now())
+                .build());
+        wakeUpAfterCommit();
+    }
+
+    private void wakeUpAfterCommit() {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            wakeUp();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                wakeUp();
+            }
+        });
+    }
+
+    private void wakeUp() {
+        // Many commits in a row collapse into one pending drain
+        if (drainScheduled.compareAndSet(false, true)) {
+            try {
+                dispatcher.execute(this::drain);
+            } catch (Exception e) {
+                drainScheduled.set(false);
+            }
+        }
+    }
+
+    private void drain() {
+        drainScheduled.set(false);
+        try {
+            List<OutboxEntry> batch;
+            do {
+                batch = outboxRepository.findBatch(nodeId, PageRequest.of(0, batchSize));
+                if (!batch.isEmpty()) {
+                    List<OutboxEntry> current = batch;
+                    batchTimer.record(() -> dispatch(current));
+                }
+            } while (batch.size() == batchSize);
+            drainFanout();
+        } catch (Exception e) {
+            log.error("WebSocket outbox dispatch failed; remaining rows are retried on the next sweep", e);
+        }
+    }
+
+    private void dispatch(List<OutboxEntry> batch) {
+        for (OutboxEntry entry : batch) {
+            if (entry.getUserId() == null) {
+                sendFrame(entry, entry.getDestination());
+                continue;
+            }
+            String username = presenceRegistry.getSessionUsername(entry.getUserId());
+            if (username == null) {
+                skippedOffline.increment();
+                continue;
+            }
+            sendToSessions(entry, entry.getUserId(), username);
+        }
+        outboxRepository.deleteAllByIdInBatch(batch.stream().map(OutboxEntry::getId).toList());
+    }
+
+    private void drainFanout() {
+        // Rows older than this node were for sessions it did not hold yet
+        Instant windowStart = Instant.now().minus(fanoutLookback);
+        Instant since = windowStart.isAfter(startedAt) ? windowStart : startedAt;
+        List<Long> ids = outboxRepository.findFanoutIdsSince(since);
+        // Rows that left the window are never returned again
+        fanoutSent.retainAll(new HashSet<>(ids));
+        List<Long> pending = new ArrayList<>();
+        for (Long id : ids) {
+            if (!fanoutSent.contains(id)) {
+                pending.add(id);
+            }
+        }
+        for (int from = 0; from < pending.size(); from += batchSize) {
+            List<OutboxEntry> batch = new ArrayList<>(outboxRepository.findAllById(
+                    pending.subList(from, Math.min(from + batchSize, pending.size()))));
+            batch.sort((a, b) -> Long.compare(a.getId(), b.getId()));
+            batchTimer.record(() -> {
+                for (OutboxEntry entry : batch) {
+                    deliverFanout(entry);
+                    fanoutSent.add(entry.getId());
+                }
+            });
+        }
+    }
+
+    private void deliverFanout(OutboxEntry entry) {
+        Collection<Long> userIds = entry.getRecipients() != null
+                ? Arrays.stream(entry.getRecipients().split(",")).map(Long::valueOf).toList()
+                : presenceRegistry.getOnlineUserIds();
+        for (Long userId : userIds) {
+            // Users held by other nodes are theirs to reach
+            String username = presenceRegistry.getSessionUsername(userId);
+            if (username != null) {
+                sendToSessions(entry, userId, username);
+            }
+        }
+    }
+
+    private void sendToSessions(OutboxEntry entry, Long userId, String username) {
+        sendFrame(entry, messagingTemplate.getUserDestinationPrefix() + username + entry.getDestination());
+        // Deprecated alias for clients still on the per-user topic
+        if (WebSocketConfig.USER_NOTIFICATIONS_DESTINATION.equals(entry.getDestination())) {
+            sendFrame(entry, WebSocketConfig.legacyNotificationsTopic(userId));
+        }
+    }
+
+    private void sendFrame(OutboxEntry entry, String destination) {
+        try {
+            SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+            accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+            accessor.setLeaveMutable(true);
+            messagingTemplate.send(destination, MessageBuilder.createMessage(
+                    entry.getPayload().getBytes(StandardCharsets.UTF_8), accessor.getMessageHeaders()));
+            framesSent.increment();
+        } catch (Exception e) {
+            // The data is committed; a lost frame only delays the client until its next fetch
+            sendFailures.increment();
+            log.warn("Failed to push outbox message {} to {}: {}", entry.getId(), destination, e.getMessage());
+        }
+    }
+
+    private void purge() {
+        try {
+            Integer purged = transactionTemplate.execute(status ->
+                    outboxRepository.deleteCreatedBefore(Instant.now().minus(maxAge)));
+            if (purged != null && purged > 0) {
+                log.info("Deleted {} expired outbox rows", purged);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to purge the WebSocket outbox: {}", e.getMessage());
+        }
+    }
+
+    private String toJson(Object payload) {
+        try {
+            return objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Cannot serialize WebSocket payload", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        dispatcher.shutdown();
+        dispatcher.awaitTermination(10, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.socialmedia.util;
+
+/**
+ * Great-circle distance helpers for shop coordinates (degrees, kilometres).
+ */
+public final class GeoUtil {
+
+    public static final double EARTH_RADIUS_KM = 6371.0;
+
+    private GeoUtil() {
+    }
+
+    /**
+     * Haversine distance between two points, in kilometres.
+     */
+    public static double distanceKm(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1.0, Math.sqrt(a)));
+    }
+
+    /**
+     * Degrees of latitude spanned by a distance; the same in every direction.
+     */
+    public static double latitudeSpan(double distanceKm) {
+        return Math.toDegrees(distanceKm / EARTH_RADIUS_KM);
+    }
+
+    /**
+     * Degrees of longitude spanned by a distance at the given latitude, or 360 when the circle
+     * reaches a pole.
+     */
+    public static double longitudeSpan(double distanceKm, double lat) {
+        double maxLat = Math.abs(lat) + latitudeSpan(distanceKm);
+        if (maxLat >= 90) {
+            return 360;
+        }
+        return Math.min(360, latitudeSpan(distanceKm) / Math.cos(Math.toRadians(maxLat)));
+    }
+}
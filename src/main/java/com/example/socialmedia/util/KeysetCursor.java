@@ -0,0 +1,95 @@
+package com.example.socialmedia.util;
+
+import com.example.socialmedia.exception.BadRequestException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Opaque keyset cursor: the (sort key, id) of the last row of a page, base64url encoded.
+ * The next page starts strictly after that position, so deep pages cost the same as the first.
+ */
+public final class KeysetCursor {
+
+    private final String key;
+    private final String id;
+
+    private KeysetCursor(String key, String id) {
+        this.key = key;
+        this.id = id;
+    }
+
+    public static String encode(Instant key, long id) {
+        return encode(key.toString(), id);
+    }
+
+    public static String encode(LocalDateTime key, long id) {
+        return encode(key.toString(), id);
+    }
+
+    public static String encode(long id) {
+        return encode("", id);
+    }
+
+    public static String encode(String key, long id) {
+        return encode(key, String.valueOf(id));
+    }
+
+    /**
+     * For documents with string ids, such as Mongo ObjectIds; the id must not contain ':'.
+     */
+    public static String encode(LocalDateTime key, String id) {
+        return encode(key.toString(), id);
+    }
+
+    private static String encode(String key, String id) {
+        // id first: it never contains the separator, the key may
+        String raw = id + ":" + key;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static KeysetCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(':');
+            return new KeysetCursor(raw.substring(separator + 1), raw.substring(0, separator));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new BadRequestException("Invalid cursor");
+        }
+    }
+
+    public long getId() {
+        try {
+            return Long.parseLong(id);
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("Invalid cursor");
+        }
+    }
+
+    public String getStringId() {
+        return id;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public Instant getInstantKey() {
+        try {
+            return Instant.parse(key);
+        } catch (DateTimeParseException e) {
+            throw new BadRequestException("Invalid cursor");
+        }
+    }
+
+    public LocalDateTime getLocalDateTimeKey() {
+        try {
+            return LocalDateTime.parse(key);
+        } catch (DateTimeParseException e) {
+            throw new BadRequestException("Invalid cursor");
+        }
+    }
+}
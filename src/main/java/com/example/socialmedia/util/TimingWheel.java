@@ -0,0 +1,134 @@
+package com.example.socialmedia.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel.
+ *
+ * Time advances in ticks of tickMs. Level 0 has one bucket per tick; each higher level has one
+ * bucket per full turn of the level below, so with wheelSize buckets and L levels timers up to
+ * wheelSize^L ticks ahead are held, and later ones wait in an overflow list. Scheduling drops the
+ * timer into a single bucket; when a lower level completes a turn, the matching bucket of the
+ * level above is spread back over the levels below. Both are O(1) per timer, independent of how
+ * many timers are held.
+ *
+ * Not thread-safe on its own; callers synchronize.
+ */
+public class TimingWheel<T> {
+
+    private final long tickMs;
+    private final int wheelSize;
+    private final ArrayDeque<Timer<T>>[][] buckets;
+    private final ArrayDeque<Timer<T>> overflow = new ArrayDeque<>();
+    private final long span;
+    // Next tick to process: everything due before it has been returned
+    private long currentTick;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long tickMs, int wheelSize, int levels, long startMs) {
+        this.tickMs = tickMs;
+        this.wheelSize = wheelSize;
+        this.buckets = new ArrayDeque[levels][wheelSize];
+        long ticks = 1;
+        for (int level = 0; level < levels; level++) {
+            for (int i = 0; i < wheelSize; i++) {
+                buckets[level][i] = new ArrayDeque<>();
+            }
+            ticks = Math.multiplyExact(ticks, wheelSize);
+        }
+        this.span = ticks;
+        this.currentTick = startMs / tickMs;
+    }
+
+    /**
+     * Schedule a value for the given time. Returns false, without scheduling it, if that time has
+     * already been passed; the caller should act on it right away.
+     */
+    public boolean schedule(long dueMs, T value) {
+        // Rounded up, so a timer never fires before its time
+        Timer<T> timer = new Timer<>(Math.floorDiv(dueMs + tickMs - 1, tickMs), value);
+        if (timer.tick < currentTick) {
+            return false;
+        }
+        place(timer);
+        size++;
+        return true;
+    }
+
+    /**
+     * Move time forward to nowMs and return every value that has come due, in due order per tick.
+     */
+    public List<T> advance(long nowMs) {
+        List<T> due = new ArrayList<>();
+        long nowTick = nowMs / tickMs;
+        while (currentTick <= nowTick) {
+            cascade(currentTick);
+            ArrayDeque<Timer<T>> bucket = buckets[0][(int) (currentTick % wheelSize)];
+            for (Timer<T> timer; (timer = bucket.poll()) != null; ) {
+                due.add(timer.value);
+            }
+            currentTick++;
+        }
+        size -= due.size();
+        return due;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Level i holds timers that share every digit above i with the current tick, in base wheelSize
+    private void place(Timer<T> timer) {
+        long due = timer.tick;
+        long now = currentTick;
+        for (int level = 0; level < buckets.length; level++) {
+            due /= wheelSize;
+            now /= wheelSize;
+            if (due == now) {
+                long digit = level == 0 ? timer.tick : timer.tick / pow(level);
+                buckets[level][(int) (digit % wheelSize)].add(timer);
+                return;
+            }
+        }
+        overflow.add(timer);
+    }
+
+    // On entering a new turn of a level, spread the bucket for that turn over the levels below,
+    // highest level first so its timers can trickle all the way down
+    private void cascade(long tick) {
+        if (tick % span == 0) {
+            redistribute(overflow);
+        }
+        for (int level = buckets.length - 1; level >= 1; level--) {
+            long levelTicks = pow(level);
+            if (tick % levelTicks == 0) {
+                redistribute(buckets[level][(int) ((tick / levelTicks) % wheelSize)]);
+            }
+        }
+    }
+
+    private void redistribute(ArrayDeque<Timer<T>> bucket) {
+        if (bucket.isEmpty()) {
+            return;
+        }
+        List<Timer<T>> timers = new ArrayList<>(bucket);
+        bucket.clear();
+        for (Timer<T> timer : timers) {
+            place(timer);
+        }
+    }
+
+    private long pow(int level) {
+        long ticks = 1;
+        for (int i = 0; i < level; i++) {
+            ticks *= wheelSize;
+        }
+        return ticks;
+    }
+
+    private record Timer<T>(long tick, T value) {
+    }
+}
@@ -0,0 +1,21 @@
+-- Rating aggregates kept on the shop row and updated with each review
+
+ALTER TABLE shops ADD COLUMN rating_sum BIGINT;
+ALTER TABLE shops ADD COLUMN rating_count BIGINT;
+ALTER TABLE shops ADD COLUMN one_star_count BIGINT;
+ALTER TABLE shops ADD COLUMN two_star_count BIGINT;
+ALTER TABLE shops ADD COLUMN three_star_count BIGINT;
+ALTER TABLE shops ADD COLUMN four_star_count BIGINT;
+ALTER TABLE shops ADD COLUMN five_star_count BIGINT;
+
+-- Same as ShopRepository.RECOMPUTE_RATINGS. Shops left NULL would also be recomputed on their
+-- next review; doing it here keeps the counts right for shops nobody reviews again.
+UPDATE shops s SET
+    rating_sum = (SELECT COALESCE(SUM(r.rating), 0) FROM reviews r WHERE r.shop_id = s.id),
+    rating_count = (SELECT COUNT(*) FROM reviews r WHERE r.shop_id = s.id),
+    one_star_count = (SELECT COUNT(*) FROM reviews r WHERE r.shop_id = s.id AND r.rating = 1),
+    two_star_count = (SELECT COUNT(*) FROM reviews r WHERE r.shop_id = s.id AND r.rating = 2),
+    three_star_count = (SELECT COUNT(*) FROM reviews r WHERE r.shop_id = s.id AND r.rating = 3),
+    four_star_count = (SELECT COUNT(*) FROM reviews r WHERE r.shop_id = s.id AND r.rating = 4),
+    five_star_count = (SELECT COUNT(*) FROM reviews r WHERE r.shop_id = s.id AND r.rating = 5),
+    rating = (SELECT AVG(r.rating) FROM reviews r WHERE r.shop_id = s.id);
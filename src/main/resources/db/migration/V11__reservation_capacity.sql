@@ -0,0 +1,30 @@
+-- Slot capacity per shop and occupancy per slot
+
+CREATE TABLE shop_slot_capacities (
+    id           BIGSERIAL NOT NULL,
+    shop_id      BIGINT NOT NULL,
+    day_of_week  VARCHAR(255) CHECK (day_of_week IN
+                     ('MONDAY', 'TUESDAY', 'WEDNESDAY', 'THURSDAY', 'FRIDAY', 'SATURDAY', 'SUNDAY')),
+    open_time    TIME(6) NOT NULL,
+    close_time   TIME(6) NOT NULL,
+    slot_minutes INTEGER NOT NULL,
+    capacity     INTEGER NOT NULL,
+    PRIMARY KEY (id)
+);
+
+CREATE INDEX idx_shop_slot_capacities_shop ON shop_slot_capacities (shop_id);
+
+CREATE TABLE slot_occupancy (
+    id            BIGSERIAL NOT NULL,
+    shop_id       BIGINT NOT NULL,
+    slot_start    TIMESTAMP(6) NOT NULL,
+    booked_guests INTEGER NOT NULL,
+    revision      BIGINT NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT uk_slot_occupancy_shop_slot UNIQUE (shop_id, slot_start),
+    CHECK (booked_guests >= 0)
+);
+
+-- Existing reservations keep a NULL slot: they were made without capacity limits and hold no
+-- place in slot_occupancy
+ALTER TABLE reservations ADD COLUMN slot_start TIMESTAMP(6);
@@ -0,0 +1,12 @@
+-- At most one payment log per external transaction id
+
+-- Logs written before the id was required get a placeholder that cannot match a gateway id
+UPDATE payment_logs SET transaction_id = 'legacy-' || id WHERE transaction_id IS NULL;
+
+-- Repeats of a transaction are kept for the audit trail under a suffixed id; lookups by the
+-- original id find the first log, which is the one a replay should return
+UPDATE payment_logs p SET transaction_id = LEFT(p.transaction_id, 200) || '#dup-' || p.id
+WHERE EXISTS (SELECT 1 FROM payment_logs q WHERE q.transaction_id = p.transaction_id AND q.id < p.id);
+
+ALTER TABLE payment_logs ALTER COLUMN transaction_id SET NOT NULL;
+ALTER TABLE payment_logs ADD CONSTRAINT uk_payment_logs_transaction UNIQUE (transaction_id);
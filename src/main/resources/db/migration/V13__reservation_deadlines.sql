@@ -0,0 +1,6 @@
+-- Payment hold expiry and reminders, recovered from these indexes after a restart
+
+ALTER TABLE reservations ADD COLUMN reminder_offset_sent INTEGER;
+
+CREATE INDEX idx_reservations_hold ON reservations (status, payment_status, created_date);
+CREATE INDEX idx_reservations_time ON reservations (reservation_time);
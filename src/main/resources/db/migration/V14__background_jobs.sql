@@ -0,0 +1,20 @@
+-- Durable job queue (JobQueue)
+
+CREATE TABLE jobs (
+    id            BIGSERIAL NOT NULL,
+    type          VARCHAR(255) NOT NULL,
+    payload       TEXT,
+    status        VARCHAR(255) NOT NULL CHECK (status IN ('QUEUED', 'RUNNING', 'COMPLETED', 'FAILED')),
+    attempts      INTEGER NOT NULL,
+    max_attempts  INTEGER NOT NULL,
+    run_at        TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+    locked_by     VARCHAR(255),
+    locked_until  TIMESTAMP(6) WITH TIME ZONE,
+    checkpoint    TEXT,
+    last_error    TEXT,
+    created_date  TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+    finished_date TIMESTAMP(6) WITH TIME ZONE,
+    PRIMARY KEY (id)
+);
+
+CREATE INDEX idx_jobs_status_run_at ON jobs (status, run_at, id);
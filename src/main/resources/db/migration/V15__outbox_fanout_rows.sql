@@ -0,0 +1,4 @@
+-- Outbox rows without a node, sent by every node to the sessions it holds
+
+ALTER TABLE websocket_outbox ALTER COLUMN node_id DROP NOT NULL;
+ALTER TABLE websocket_outbox ADD COLUMN recipients TEXT;
@@ -0,0 +1,3 @@
+-- Lets each node find the shops changed since its last index catch-up
+
+CREATE INDEX idx_shops_updated ON shops (updated_date);
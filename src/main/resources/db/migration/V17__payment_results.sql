@@ -0,0 +1,4 @@
+-- Result first returned for each payment transaction, returned again to repeats of it.
+-- Logs from before this column replay the reservation's current state.
+
+ALTER TABLE payment_logs ADD COLUMN result_payload TEXT;
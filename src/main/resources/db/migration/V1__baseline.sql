@@ -0,0 +1,109 @@
+-- Schema as it stood before migrations were introduced. Databases created from it earlier are
+-- baselined at this version (spring.flyway.baseline-on-migrate) and start from V2.
+
+CREATE TABLE users (
+    id            BIGSERIAL NOT NULL,
+    username      VARCHAR(255),
+    email         VARCHAR(255),
+    password      VARCHAR(255),
+    phone_number  VARCHAR(255),
+    profile_image VARCHAR(255),
+    role          VARCHAR(255) CHECK (role IN ('USER', 'SHOP_ADMIN', 'ADMIN')),
+    created_date  TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+    updated_date  TIMESTAMP(6) WITH TIME ZONE,
+    created_by    VARCHAR(255),
+    updated_by    VARCHAR(255),
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE shops (
+    id           BIGSERIAL NOT NULL,
+    name         VARCHAR(255),
+    description  TEXT,
+    address      VARCHAR(255),
+    latitude     FLOAT(53),
+    longitude    FLOAT(53),
+    rating       FLOAT(53),
+    owner_id     BIGINT UNIQUE,
+    created_date TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+    updated_date TIMESTAMP(6) WITH TIME ZONE,
+    created_by   VARCHAR(255),
+    updated_by   VARCHAR(255),
+    PRIMARY KEY (id),
+    CONSTRAINT fk_shops_owner FOREIGN KEY (owner_id) REFERENCES users
+);
+
+CREATE TABLE posts (
+    id           BIGSERIAL NOT NULL,
+    shop_id      BIGINT NOT NULL,
+    content      TEXT,
+    type         VARCHAR(255) CHECK (type IN ('GENERAL', 'EVENT', 'PROMOTION')),
+    created_date TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+    updated_date TIMESTAMP(6) WITH TIME ZONE,
+    created_by   VARCHAR(255),
+    updated_by   VARCHAR(255),
+    PRIMARY KEY (id),
+    CONSTRAINT fk_posts_shop FOREIGN KEY (shop_id) REFERENCES shops
+);
+
+CREATE TABLE reviews (
+    id           BIGSERIAL NOT NULL,
+    user_id      BIGINT NOT NULL,
+    shop_id      BIGINT NOT NULL,
+    rating       INTEGER CHECK (rating <= 5 AND rating >= 1),
+    comment      TEXT,
+    created_date TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+    updated_date TIMESTAMP(6) WITH TIME ZONE,
+    created_by   VARCHAR(255),
+    updated_by   VARCHAR(255),
+    PRIMARY KEY (id),
+    CONSTRAINT fk_reviews_user FOREIGN KEY (user_id) REFERENCES users,
+    CONSTRAINT fk_reviews_shop FOREIGN KEY (shop_id) REFERENCES shops
+);
+
+CREATE TABLE reservations (
+    id               BIGSERIAL NOT NULL,
+    user_id          BIGINT NOT NULL,
+    shop_id          BIGINT NOT NULL,
+    reservation_time TIMESTAMP(6),
+    number_of_guests INTEGER,
+    status           VARCHAR(255) CHECK (status IN ('PENDING', 'CONFIRMED', 'CANCELLED')),
+    payment_status   VARCHAR(255) CHECK (payment_status IN ('UNPAID', 'PAID', 'REFUNDED')),
+    created_date     TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+    updated_date     TIMESTAMP(6) WITH TIME ZONE,
+    created_by       VARCHAR(255),
+    updated_by       VARCHAR(255),
+    PRIMARY KEY (id),
+    CONSTRAINT fk_reservations_user FOREIGN KEY (user_id) REFERENCES users,
+    CONSTRAINT fk_reservations_shop FOREIGN KEY (shop_id) REFERENCES shops
+);
+
+CREATE TABLE notifications (
+    id           BIGSERIAL NOT NULL,
+    user_id      BIGINT NOT NULL,
+    message      VARCHAR(255),
+    type         VARCHAR(255) CHECK (type IN ('SHOP_ANNOUNCEMENT', 'SYSTEM_UPDATE', 'UPCOMING_EVENT')),
+    is_read      BOOLEAN NOT NULL,
+    created_date TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+    updated_date TIMESTAMP(6) WITH TIME ZONE,
+    created_by   VARCHAR(255),
+    updated_by   VARCHAR(255),
+    PRIMARY KEY (id),
+    CONSTRAINT fk_notifications_user FOREIGN KEY (user_id) REFERENCES users
+);
+
+CREATE TABLE payment_logs (
+    id               BIGSERIAL NOT NULL,
+    reservation_id   BIGINT,
+    transaction_id   VARCHAR(255),
+    amount           FLOAT(53),
+    payment_method   VARCHAR(255),
+    status           VARCHAR(255),
+    request_payload  TEXT,
+    response_payload TEXT,
+    created_date     TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+    updated_date     TIMESTAMP(6) WITH TIME ZONE,
+    created_by       VARCHAR(255),
+    updated_by       VARCHAR(255),
+    PRIMARY KEY (id)
+);
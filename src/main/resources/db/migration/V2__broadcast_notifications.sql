@@ -0,0 +1,29 @@
+-- Broadcasts stored once and merged into each user's list at read time
+
+CREATE TABLE broadcast_notifications (
+    id           BIGSERIAL NOT NULL,
+    message      VARCHAR(255),
+    type         VARCHAR(255) CHECK (type IN ('SHOP_ANNOUNCEMENT', 'SYSTEM_UPDATE', 'UPCOMING_EVENT')),
+    created_date TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+    updated_date TIMESTAMP(6) WITH TIME ZONE,
+    created_by   VARCHAR(255),
+    updated_by   VARCHAR(255),
+    PRIMARY KEY (id)
+);
+
+CREATE INDEX idx_broadcast_created_date ON broadcast_notifications (created_date);
+
+CREATE TABLE broadcast_read_markers (
+    id           BIGSERIAL NOT NULL,
+    user_id      BIGINT NOT NULL,
+    broadcast_id BIGINT NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT uk_broadcast_read_user_broadcast UNIQUE (user_id, broadcast_id)
+);
+
+-- Rows are created on a user's first read-all, so existing users need no backfill
+CREATE TABLE user_notification_state (
+    user_id                  BIGINT NOT NULL,
+    broadcast_read_watermark BIGINT NOT NULL,
+    PRIMARY KEY (user_id)
+);
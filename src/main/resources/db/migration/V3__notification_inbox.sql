@@ -0,0 +1,12 @@
+-- Cursor-paged inbox and the counter behind the unread badge
+
+CREATE INDEX idx_notifications_user_created ON notifications (user_id, created_date, id);
+
+-- Users without a state row are seeded from their unread rows on first use; the ones that
+-- already have a row are seeded here the same way
+ALTER TABLE user_notification_state ADD COLUMN unread_count BIGINT;
+
+UPDATE user_notification_state s
+SET unread_count = (SELECT COUNT(*) FROM notifications n WHERE n.user_id = s.user_id AND n.is_read = false);
+
+ALTER TABLE user_notification_state ALTER COLUMN unread_count SET NOT NULL;
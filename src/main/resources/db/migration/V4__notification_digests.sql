@@ -0,0 +1,7 @@
+-- Bursts of shop notifications merged into one digest entry
+
+ALTER TABLE notifications ADD COLUMN shop_id BIGINT;
+ALTER TABLE notifications ADD COLUMN digest_count INTEGER;
+
+ALTER TABLE broadcast_notifications ADD COLUMN shop_id BIGINT;
+ALTER TABLE broadcast_notifications ADD COLUMN digest_count INTEGER;
@@ -0,0 +1,12 @@
+-- Pushes made inside a transaction, sent after commit by the node that holds the session
+
+CREATE TABLE websocket_outbox (
+    id           BIGSERIAL NOT NULL,
+    destination  VARCHAR(255) NOT NULL,
+    node_id      VARCHAR(255) NOT NULL,
+    payload      TEXT NOT NULL,
+    created_date TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+    PRIMARY KEY (id)
+);
+
+CREATE INDEX idx_websocket_outbox_node ON websocket_outbox (node_id, id);
@@ -0,0 +1,3 @@
+-- Outbox rows addressed to one user's session rather than a broker topic
+
+ALTER TABLE websocket_outbox ADD COLUMN user_id BIGINT;
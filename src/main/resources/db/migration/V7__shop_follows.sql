@@ -0,0 +1,12 @@
+-- Followers of a shop, looked up by shop when a new post is announced
+
+CREATE TABLE shop_follows (
+    id           BIGSERIAL NOT NULL,
+    user_id      BIGINT NOT NULL,
+    shop_id      BIGINT NOT NULL,
+    created_date TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT uk_shop_follows_user_shop UNIQUE (user_id, shop_id)
+);
+
+CREATE INDEX idx_shop_follows_shop ON shop_follows (shop_id);
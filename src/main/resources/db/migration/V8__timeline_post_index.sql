@@ -0,0 +1,3 @@
+-- Posts of the followed shops, read when a home timeline is rebuilt
+
+CREATE INDEX idx_posts_shop_id ON posts (shop_id, id);
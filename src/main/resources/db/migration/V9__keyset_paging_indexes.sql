@@ -0,0 +1,9 @@
+-- Indexes behind the keyset-paged listings: each ends in id, the cursor's tie-breaker
+
+CREATE INDEX idx_posts_created ON posts (created_date, id);
+CREATE INDEX idx_posts_shop_created ON posts (shop_id, created_date, id);
+CREATE INDEX idx_reviews_shop_created ON reviews (shop_id, created_date, id);
+CREATE INDEX idx_reservations_shop_time ON reservations (shop_id, reservation_time, id);
+CREATE INDEX idx_reservations_user_time ON reservations (user_id, reservation_time, id);
+CREATE INDEX idx_shops_name ON shops (name, id);
+CREATE INDEX idx_users_username ON users (username, id);
@@ -2,19 +2,27 @@ package com.example.socialmedia;
 
 import com.example.socialmedia.model.Message;
 import com.example.socialmedia.repository.MessageRepository;
+import com.example.socialmedia.service.MessageWriteBuffer;
+import com.example.socialmedia.util.KeysetPagination;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
 import org.testcontainers.containers.MongoDBContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SpringBootTest
 @Testcontainers
@@ -26,6 +34,9 @@ class MessageIntegrationTest {
     @Autowired
     MessageRepository messageRepository;
 
+    @Autowired
+    MessageWriteBuffer messageWriteBuffer;
+
     @DynamicPropertySource
     static void setProperties(DynamicPropertyRegistry registry) {
         registry.add("spring.data.mongodb.uri", mongoDBContainer::getReplicaSetUrl);
@@ -43,9 +54,79 @@ class MessageIntegrationTest {
         messageRepository.save(message);
         
         // Then
-        List<Message> messages = messageRepository.findByShopIdOrderBySentAtAsc(1L);
+        List<Message> messages = roomMessages(1L);
         assertEquals(1, messages.size());
         assertEquals("Hello MongoDB Test", messages.get(0).getContent());
         assertNotNull(messages.get(0).getId());
     }
+
+    @Test
+    void testWriteBehindMessagesReadableAfterAwaitWritten() {
+        // Given
+        List<Message> written = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            written.add(messageWriteBuffer.write(message(2L, "Queued " + i)));
+        }
+
+        // When
+        for (Message message : written) {
+            messageWriteBuffer.awaitWritten(message.getId());
+        }
+
+        // Then
+        List<Message> messages = roomMessages(2L);
+        assertEquals(50, messages.size());
+        assertEquals(written.stream().map(Message::getId).collect(Collectors.toSet()),
+                messages.stream().map(Message::getId).collect(Collectors.toSet()));
+    }
+
+    @Test
+    void testFullWriteQueueRejectsAfterOfferTimeout() throws InterruptedException {
+        // Given: room for two messages and a flusher that does not run before shutdown
+        MessageWriteBuffer buffer = new MessageWriteBuffer(messageRepository, new SimpleMeterRegistry(),
+                true, 500, 3_600_000, 2, 100);
+        buffer.write(message(3L, "First"));
+        buffer.write(message(3L, "Second"));
+
+        // When
+        long start = System.nanoTime();
+        assertThrows(IllegalStateException.class, () -> buffer.write(message(3L, "Third")));
+
+        // Then
+        assertTrue(System.nanoTime() - start >= 100_000_000L);
+        assertEquals(0, roomMessages(3L).size());
+        buffer.shutdown();
+    }
+
+    @Test
+    void testShutdownDrainsQueuedMessages() throws InterruptedException {
+        // Given
+        MessageWriteBuffer buffer = new MessageWriteBuffer(messageRepository, new SimpleMeterRegistry(),
+                true, 500, 3_600_000, 100, 100);
+        for (int i = 0; i < 10; i++) {
+            buffer.write(message(4L, "Pending " + i));
+        }
+        assertEquals(0, roomMessages(4L).size());
+
+        // When
+        buffer.shutdown();
+
+        // Then
+        assertEquals(10, roomMessages(4L).size());
+        assertThrows(IllegalStateException.class, () -> buffer.write(message(4L, "Too late")));
+    }
+
+    // The room's history through the keyset query the API pages with
+    private List<Message> roomMessages(Long shopId) {
+        return messageRepository.findByShopIdAndStatusOrderBySentAtDescIdDesc(shopId, Message.MessageStatus.VISIBLE,
+                PageRequest.of(0, KeysetPagination.MAX_PAGE_SIZE));
+    }
+
+    private static Message message(Long shopId, String content) {
+        Message message = new Message();
+        message.setShopId(shopId);
+        message.setSenderId(1L);
+        message.setContent(content);
+        return message;
+    }
 }
@@ -0,0 +1,49 @@
+package com.example.socialmedia;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Runs the Flyway migrations on an empty PostgreSQL and starts the app on the result with
+// ddl-auto=validate, as production does: a missing or mismatched migration fails the context
+@SpringBootTest(properties = {"logging.level.com.example.socialmedia.aspect=INFO",
+        "logging.level.org.hibernate.SQL=WARN", "spring.data.mongodb.auto-index-creation=false"})
+@ActiveProfiles("prod")
+@Testcontainers(disabledWithoutDocker = true)
+class SchemaMigrationIntegrationTest {
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Autowired
+    Flyway flyway;
+
+    @DynamicPropertySource
+    static void setProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @Test
+    void migrationsProduceTheSchemaTheEntitiesExpect() {
+        // Given: the context started, so Hibernate validated every entity against the migrated schema
+
+        // When
+        int pending = flyway.info().pending().length;
+
+        // Then
+        assertEquals(0, pending);
+        assertTrue(flyway.info().applied().length > 0);
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.socialmedia.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class StompAuthChannelInterceptorTest {
+
+    private static final UserDetailsImpl ALICE = new UserDetailsImpl(1L, "alice", "alice@example.com", "secret", List.of());
+
+    private final StompAuthChannelInterceptor interceptor =
+            new StompAuthChannelInterceptor(mock(JwtUtils.class), mock(UserDetailsServiceImpl.class));
+
+    @Test
+    void sendFromAnAuthenticatedSessionIsPassedOn() {
+        // Given
+        Message<byte[]> frame = frame(StompCommand.SEND, "/app/chat/7/sendMessage", ALICE);
+
+        // Then
+        assertSame(frame, interceptor.preSend(frame, mock(MessageChannel.class)));
+    }
+
+    @Test
+    void sendFromAnAnonymousSessionIsRefused() {
+        // Given
+        Message<byte[]> frame = frame(StompCommand.SEND, "/app/chat/7/sendMessage", null);
+
+        // Then
+        assertThrows(MessageDeliveryException.class, () -> interceptor.preSend(frame, mock(MessageChannel.class)));
+    }
+
+    @Test
+    void legacyNotificationTopicIsReadableByItsUserOnly() {
+        // Given
+        Message<byte[]> own = frame(StompCommand.SUBSCRIBE, "/topic/user/1/notifications", ALICE);
+        Message<byte[]> other = frame(StompCommand.SUBSCRIBE, "/topic/user/2/notifications", ALICE);
+        Message<byte[]> anonymous = frame(StompCommand.SUBSCRIBE, "/topic/user/1/notifications", null);
+
+        // Then
+        assertSame(own, interceptor.preSend(own, mock(MessageChannel.class)));
+        assertThrows(MessageDeliveryException.class, () -> interceptor.preSend(other, mock(MessageChannel.class)));
+        assertThrows(MessageDeliveryException.class, () -> interceptor.preSend(anonymous, mock(MessageChannel.class)));
+    }
+
+    @Test
+    void otherTopicsAreOpenToSubscribe() {
+        // Given
+        Message<byte[]> frame = frame(StompCommand.SUBSCRIBE, "/topic/shop/7", null);
+
+        // Then
+        assertSame(frame, interceptor.preSend(frame, mock(MessageChannel.class)));
+    }
+
+    private static Message<byte[]> frame(StompCommand command, String destination, UserDetailsImpl user) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(command);
+        accessor.setSessionId("s1");
+        accessor.setDestination(destination);
+        if (user != null) {
+            accessor.setUser(new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities()));
+        }
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.socialmedia.service;
+
+import com.example.socialmedia.dto.CursorPage;
+import com.example.socialmedia.dto.PostDto;
+import com.example.socialmedia.dto.ReservationDto;
+import com.example.socialmedia.dto.ReviewDto;
+import com.example.socialmedia.dto.ShopDto;
+import com.example.socialmedia.model.Post;
+import com.example.socialmedia.model.Reservation;
+import com.example.socialmedia.model.Review;
+import com.example.socialmedia.model.Shop;
+import com.example.socialmedia.model.User;
+import com.example.socialmedia.repository.PostRepository;
+import com.example.socialmedia.repository.ReservationRepository;
+import com.example.socialmedia.repository.ReviewRepository;
+import com.example.socialmedia.repository.ShopRepository;
+import com.example.socialmedia.repository.UserRepository;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Statements are counted per thread, so background workers do not disturb the counts
+@SpringBootTest(properties = {"logging.level.com.example.socialmedia.aspect=INFO", "spring.jpa.show-sql=false",
+        "logging.level.org.hibernate.SQL=WARN",
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+                + "com.example.socialmedia.service.DtoProjectionTest$StatementCounter"})
+class DtoProjectionTest {
+
+    @Autowired
+    ReviewService reviewService;
+
+    @Autowired
+    PostService postService;
+
+    @Autowired
+    ReservationService reservationService;
+
+    @Autowired
+    ShopRepository shopRepository;
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    ReviewRepository reviewRepository;
+
+    @Autowired
+    PostRepository postRepository;
+
+    @Autowired
+    ReservationRepository reservationRepository;
+
+    @Test
+    void reviewPageIsOneQueryWithTheReviewerNames() {
+        // Given
+        Shop shop = shop(user());
+        Set<String> reviewers = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            User reviewer = user();
+            reviewers.add(reviewer.getUsername());
+            Review review = new Review();
+            review.setUser(reviewer);
+            review.setShop(shop);
+            review.setRating(i + 1);
+            reviewRepository.save(review);
+        }
+
+        // When
+        CursorPage<ReviewDto> page = counted(1, () -> reviewService.getReviewsByShop(shop.getId(), null, 10));
+
+        // Then
+        assertEquals(reviewers, page.getItems().stream().map(ReviewDto::getUsername).collect(Collectors.toSet()));
+        assertTrue(page.getItems().stream().allMatch(review -> shop.getId().equals(review.getShopId())));
+    }
+
+    @Test
+    void postPageIsOneQueryWithTheShopName() {
+        // Given
+        Shop shop = shop(user());
+        for (int i = 0; i < 3; i++) {
+            postRepository.save(Post.builder().shop(shop).content("Post " + i).build());
+        }
+
+        // When
+        CursorPage<PostDto> page = counted(1, () -> postService.getPostsByShopId(shop.getId(), null, 10));
+
+        // Then
+        assertEquals(3, page.getItems().size());
+        assertTrue(page.getItems().stream().allMatch(post -> shop.getName().equals(post.getShopName())));
+    }
+
+    @Test
+    void reservationPageIsOneQueryWithUserAndShopNames() {
+        // Given: reservations of one user at shops of different owners
+        User guest = user();
+        for (int i = 0; i < 3; i++) {
+            reservationRepository.save(Reservation.builder()
+                    .user(guest)
+                    .shop(shop(user()))
+                    .reservationTime(LocalDateTime.now().plusDays(i + 1))
+                    .numberOfGuests(2)
+                    .build());
+        }
+
+        // When
+        CursorPage<ReservationDto> page = counted(1, () -> reservationService.getReservationsByUser(guest.getId(), null, 10));
+
+        // Then
+        assertEquals(3, page.getItems().size());
+        for (ReservationDto reservation : page.getItems()) {
+            assertEquals(guest.getUsername(), reservation.getUsername());
+            assertEquals("Shop of " + reservation.getShopId(), reservation.getShopName());
+        }
+    }
+
+    @Test
+    void shopWithoutOwnerIsStillProjected() {
+        // Given
+        Shop ownerless = shop(null);
+
+        // When
+        ShopDto shop = counted(1, () -> shopRepository.findDtoById(ownerless.getId()).orElseThrow());
+
+        // Then
+        assertEquals(ownerless.getName(), shop.getName());
+        assertNull(shop.getOwnerId());
+    }
+
+    private static <T> T counted(int expectedStatements, Supplier<T> read) {
+        StatementCounter.reset();
+        T result = read.get();
+        assertEquals(expectedStatements, StatementCounter.count());
+        return result;
+    }
+
+    private Shop shop(User owner) {
+        Shop shop = new Shop();
+        shop.setName("Projected Shop");
+        shop.setOwner(owner);
+        shop = shopRepository.save(shop);
+        shop.setName("Shop of " + shop.getId());
+        return shopRepository.save(shop);
+    }
+
+    private User user() {
+        String name = "projected-" + UUID.randomUUID();
+        User user = new User();
+        user.setUsername(name);
+        user.setEmail(name + "@example.com");
+        user.setPassword("secret");
+        return userRepository.save(user);
+    }
+
+    public static class StatementCounter implements StatementInspector {
+
+        private static final ThreadLocal<int[]> COUNT = ThreadLocal.withInitial(() -> new int[1]);
+
+        static void reset() {
+            COUNT.get()[0] = 0;
+        }
+
+        static int count() {
+            return COUNT.get()[0];
+        }
+
+        @Override
+        public String inspect(String sql) {
+            COUNT.get()[0]++;
+            return sql;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.socialmedia.service;
+
+import com.example.socialmedia.dto.CursorPage;
+import com.example.socialmedia.dto.PostDto;
+import com.example.socialmedia.repository.PostRepository;
+import com.example.socialmedia.repository.ShopFollowRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class HomeTimelineServiceTest {
+
+    private static final Long SHOP_ID = 7L;
+
+    private final PostRepository postRepository = mock(PostRepository.class);
+    private final ShopFollowRepository followRepository = mock(ShopFollowRepository.class);
+    private final ShopFollowerIndex followerIndex = mock(ShopFollowerIndex.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    // Post ids of the followed shop, as the posts table holds them
+    private final List<Long> posts = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        when(followRepository.findShopIdsByUserId(anyLong())).thenReturn(List.of(SHOP_ID));
+        when(followerIndex.getFollowers(SHOP_ID)).thenReturn(new long[]{1L, 2L});
+        when(postRepository.findIdsByShopIds(anyCollection(), any(Pageable.class)))
+                .thenAnswer(call -> newestBefore(Long.MAX_VALUE, call.getArgument(1)));
+        when(postRepository.findIdsByShopIdsBefore(anyCollection(), anyLong(), any(Pageable.class)))
+                .thenAnswer(call -> newestBefore(call.getArgument(1), call.getArgument(2)));
+        when(postRepository.findDtosByIdIn(anyCollection())).thenAnswer(call -> {
+            Collection<Long> ids = call.getArgument(0);
+            return ids.stream()
+                    .filter(posts::contains)
+                    .map(id -> PostDto.builder().id(id).shopId(SHOP_ID).content("Post " + id).build())
+                    .toList();
+        });
+    }
+
+    @Test
+    void pagesRunFromTheTimelineIntoTheDatabase() {
+        // Given: more posts than the timeline holds
+        HomeTimelineService service = service(3, 100, 60_000);
+        for (long id = 1; id <= 8; id++) {
+            posts.add(id);
+        }
+
+        // Then
+        assertEquals(List.of(8L, 7L, 6L, 5L, 4L, 3L, 2L, 1L), walk(service, 1L, 2));
+        assertEquals(1, rebuilds());
+        assertTrue(meterRegistry.counter("home.timeline.fallbacks").count() > 0);
+    }
+
+    @Test
+    void completeTimelineNeedsNoDatabaseFallback() {
+        // Given
+        HomeTimelineService service = service(10, 100, 60_000);
+        posts.addAll(List.of(1L, 2L, 3L));
+
+        // Then
+        assertEquals(List.of(3L, 2L, 1L), walk(service, 1L, 2));
+        verify(postRepository, never()).findIdsByShopIdsBefore(anyCollection(), anyLong(), any(Pageable.class));
+    }
+
+    @Test
+    void newPostsArePushedInIdOrder() {
+        // Given
+        HomeTimelineService service = service(10, 100, 60_000);
+        posts.addAll(List.of(1L, 2L));
+        service.getHomeFeed(1L, null, 10);
+
+        // When: two concurrent creates arrive out of order
+        posts.addAll(List.of(3L, 4L));
+        service.onPostCreated(SHOP_ID, 4L);
+        service.onPostCreated(SHOP_ID, 3L);
+        service.onPostCreated(SHOP_ID, 4L);
+
+        // Then: served from memory without a rebuild
+        assertEquals(List.of(4L, 3L, 2L, 1L), walk(service, 1L, 10));
+        assertEquals(1, rebuilds());
+    }
+
+    @Test
+    void deletedPostsAreSkipped() {
+        // Given
+        HomeTimelineService service = service(10, 100, 60_000);
+        posts.addAll(List.of(1L, 2L, 3L));
+        service.getHomeFeed(1L, null, 10);
+
+        // When
+        posts.remove(2L);
+
+        // Then
+        assertEquals(List.of(3L, 1L), walk(service, 1L, 10));
+    }
+
+    @Test
+    void invalidatedTimelineIsRebuilt() {
+        // Given
+        HomeTimelineService service = service(10, 100, 60_000);
+        posts.add(1L);
+        service.getHomeFeed(1L, null, 10);
+
+        // When: a post this node never saw, then a follow change
+        posts.add(2L);
+        service.invalidate(1L);
+
+        // Then
+        assertEquals(List.of(2L, 1L), walk(service, 1L, 10));
+        assertEquals(2, rebuilds());
+    }
+
+    @Test
+    void expiredTimelineIsRebuilt() throws InterruptedException {
+        // Given
+        HomeTimelineService service = service(10, 100, 1);
+        posts.add(1L);
+        service.getHomeFeed(1L, null, 10);
+
+        // When: a post created on another node
+        posts.add(2L);
+        Thread.sleep(5);
+
+        // Then
+        assertEquals(List.of(2L, 1L), walk(service, 1L, 10));
+        assertEquals(2, rebuilds());
+    }
+
+    @Test
+    void leastRecentlyReadTimelineIsEvicted() {
+        // Given: room for two users
+        HomeTimelineService service = service(10, 2, 60_000);
+        posts.add(1L);
+        service.getHomeFeed(1L, null, 10);
+        service.getHomeFeed(2L, null, 10);
+        service.getHomeFeed(1L, null, 10);
+
+        // When
+        service.getHomeFeed(3L, null, 10);
+
+        // Then: user 2 was read least recently and is rebuilt, user 1 is not
+        assertEquals(3, rebuilds());
+        service.getHomeFeed(1L, null, 10);
+        assertEquals(3, rebuilds());
+        service.getHomeFeed(2L, null, 10);
+        assertEquals(4, rebuilds());
+    }
+
+    private HomeTimelineService service(int capacity, int maxUsers, long ttlMillis) {
+        return new HomeTimelineService(postRepository, followRepository, followerIndex, meterRegistry,
+                capacity, maxUsers, ttlMillis);
+    }
+
+    // Every page from the first, following the cursors
+    private static List<Long> walk(HomeTimelineService service, Long userId, int size) {
+        List<Long> ids = new ArrayList<>();
+        String cursor = null;
+        do {
+            CursorPage<PostDto> page = service.getHomeFeed(userId, cursor, size);
+            page.getItems().forEach(post -> ids.add(post.getId()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return ids;
+    }
+
+    private List<Long> newestBefore(long beforeId, Pageable pageable) {
+        return posts.stream()
+                .filter(id -> id < beforeId)
+                .sorted(Comparator.reverseOrder())
+                .limit(pageable.getPageSize())
+                .toList();
+    }
+
+    private double rebuilds() {
+        return meterRegistry.counter("home.timeline.rebuilds").count();
+    }
+}
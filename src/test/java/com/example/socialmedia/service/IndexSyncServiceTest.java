@@ -0,0 +1,172 @@
+package com.example.socialmedia.service;
+
+import com.example.socialmedia.dto.NearbyShopDto;
+import com.example.socialmedia.dto.ShopDto;
+import com.example.socialmedia.model.Post;
+import com.example.socialmedia.model.Shop;
+import com.example.socialmedia.repository.PostRepository;
+import com.example.socialmedia.repository.ShopRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// The scheduled runs are pushed out of the way; each test runs the catch-up itself
+@SpringBootTest(properties = {"logging.level.com.example.socialmedia.aspect=INFO", "spring.jpa.show-sql=false",
+        "logging.level.org.hibernate.SQL=WARN", "index.sync.interval-ms=3600000",
+        "index.sync.reconcile-interval-ms=3600000", "index.sync.batch-size=2"})
+class IndexSyncServiceTest {
+
+    @Autowired
+    IndexSyncService indexSync;
+
+    @Autowired
+    ShopGeoIndex geoIndex;
+
+    @Autowired
+    ShopSearchIndex shopSearchIndex;
+
+    @Autowired
+    PostSearchIndex postSearchIndex;
+
+    @Autowired
+    ShopRepository shopRepository;
+
+    @Autowired
+    PostRepository postRepository;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Test
+    void shopsSavedOnAnotherNodeAreIndexedByTheCatchUp() {
+        // Given: shops written to the database without going through this node's indexes
+        Shop first = shopRepository.save(shop("Sync First", 41.101, 12.101));
+        Shop second = shopRepository.save(shop("Sync Second", 41.102, 12.102));
+        Shop third = shopRepository.save(shop("Sync Third", 41.103, 12.103));
+        assertNull(nearest(41.101, 12.101, first.getId()));
+
+        // When
+        indexSync.catchUp();
+
+        // Then: every page of changes is read
+        assertNotNull(nearest(41.101, 12.101, first.getId()));
+        assertNotNull(nearest(41.102, 12.102, second.getId()));
+        assertNotNull(nearest(41.103, 12.103, third.getId()));
+    }
+
+    @Test
+    void ratingChangedOnAnotherNodeIsPickedUp() {
+        // Given: an indexed shop with one 4-star review, last touched long ago
+        Shop shop = shopRepository.save(shop("Sync Rated", 42.2, 13.2));
+        jdbcTemplate.update("UPDATE shops SET rating = 4, rating_sum = 4, rating_count = 1, one_star_count = 0, " +
+                "two_star_count = 0, three_star_count = 0, four_star_count = 1, five_star_count = 0, updated_date = ? " +
+                "WHERE id = ?", Timestamp.from(Instant.now().minusSeconds(3600)), shop.getId());
+        geoIndex.put(shopRepository.findDtoById(shop.getId()).orElseThrow());
+
+        // When: another node folds in a 5-star review
+        transactionTemplate.executeWithoutResult(status -> shopRepository.addRating(shop.getId(), 5));
+        indexSync.catchUp();
+
+        // Then
+        assertEquals(4.5, nearest(42.2, 13.2, shop.getId()).getShop().getRating(), 1e-9);
+    }
+
+    @Test
+    void shopsDeletedOnAnotherNodeAreDroppedByTheReconcile() {
+        // Given
+        Shop kept = shopRepository.save(shop("Sync Kept", 43.3, 14.3));
+        Shop deleted = shopRepository.save(shop("Sync Deleted", 43.31, 14.31));
+        indexSync.catchUp();
+        assertNotNull(nearest(43.31, 14.31, deleted.getId()));
+
+        // When
+        shopRepository.deleteById(deleted.getId());
+        indexSync.reconcile();
+
+        // Then
+        assertNull(nearest(43.31, 14.31, deleted.getId()));
+        assertNotNull(nearest(43.3, 14.3, kept.getId()));
+    }
+
+    @Test
+    void shopSearchFollowsRenamesAndDeletesOnAnotherNode() {
+        // Given
+        Shop shop = shopRepository.save(shop("Quokkaberry Deli", null, null));
+        indexSync.catchUp();
+        assertEquals(List.of(shop.getId()), shopSearchIndex.search("quokkaberry", 10));
+
+        // When: renamed, then deleted
+        shop.setName("Wombatfig Deli");
+        shopRepository.save(shop);
+        indexSync.catchUp();
+
+        // Then
+        assertEquals(List.of(), shopSearchIndex.search("quokkaberry", 10));
+        assertEquals(List.of(shop.getId()), shopSearchIndex.search("wombatfig", 10));
+        shopRepository.deleteById(shop.getId());
+        indexSync.reconcile();
+        assertEquals(List.of(), shopSearchIndex.search("wombatfig", 10));
+    }
+
+    @Test
+    void postsWrittenOnAnotherNodeReachTheSearchIndex() {
+        // Given
+        Shop shop = shopRepository.save(shop("Sync Post Shop", null, null));
+        Post kept = postRepository.save(Post.builder().shop(shop).content("Platypus pancakes today").build());
+        Post deleted = postRepository.save(Post.builder().shop(shop).content("Platypus waffles tomorrow").build());
+
+        // When
+        indexSync.catchUp();
+
+        // Then
+        assertEquals(Set.of(kept.getId(), deleted.getId()),
+                Set.copyOf(postSearchIndex.search("platypus", null, null, 10)));
+        postRepository.deleteById(deleted.getId());
+        indexSync.reconcile();
+        assertEquals(List.of(kept.getId()), postSearchIndex.search("platypus", null, null, 10));
+    }
+
+    @Test
+    void rolledBackSaveIsNotIndexed() {
+        // Given
+        ShopDto shop = new ShopDto(-1L, "Sync Rolled Back", null, null, 44.4, 15.4, null, null, Instant.now());
+
+        // When
+        transactionTemplate.executeWithoutResult(status -> {
+            indexSync.shopSaved(shop);
+            status.setRollbackOnly();
+        });
+
+        // Then
+        assertNull(nearest(44.4, 15.4, -1L));
+        assertEquals(List.of(), shopSearchIndex.search("rolled", 10));
+    }
+
+    private NearbyShopDto nearest(double lat, double lng, Long shopId) {
+        List<NearbyShopDto> shops = geoIndex.findNearest(lat, lng, 5, null);
+        return shops.stream()
+                .filter(nearby -> nearby.getShop().getId().equals(shopId))
+                .findFirst()
+                .orElse(null);
+    }
+
+    private static Shop shop(String name, Double lat, Double lng) {
+        Shop shop = new Shop();
+        shop.setName(name);
+        shop.setLatitude(lat);
+        shop.setLongitude(lng);
+        return shop;
+    }
+}
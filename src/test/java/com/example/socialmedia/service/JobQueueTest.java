@@ -0,0 +1,188 @@
+package com.example.socialmedia.service;
+
+import com.example.socialmedia.model.BackgroundJob;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {"logging.level.com.example.socialmedia.aspect=INFO", "spring.jpa.show-sql=false",
+        "logging.level.org.hibernate.SQL=WARN", "jobs.poll-interval-ms=50", "jobs.max-attempts=3",
+        "jobs.backoff.base-ms=20", "jobs.backoff.max-ms=100"})
+class JobQueueTest {
+
+    @Autowired
+    JobQueue jobQueue;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Test
+    void failedRunsAreRetriedUntilTheyComplete() {
+        // Given
+        AtomicInteger runs = new AtomicInteger();
+        jobQueue.register("test.retry", context -> {
+            if (runs.incrementAndGet() < 3) {
+                throw new IllegalStateException("attempt " + context.getAttempt() + " failed");
+            }
+        });
+
+        // When
+        BackgroundJob job = jobQueue.enqueue("test.retry", null);
+
+        // Then
+        BackgroundJob done = await(job.getId(), j -> j.getStatus() == BackgroundJob.Status.COMPLETED);
+        assertEquals(3, done.getAttempts());
+        assertEquals(3, runs.get());
+        assertTrue(done.getLastError().contains("attempt 2 failed"));
+        assertNull(done.getLockedBy());
+    }
+
+    @Test
+    void jobFailsAfterItsLastAttempt() {
+        // Given
+        double failedBefore = count("jobs.failed");
+        jobQueue.register("test.fail", context -> {
+            throw new IllegalStateException("always");
+        });
+
+        // When
+        BackgroundJob job = jobQueue.enqueue("test.fail", null);
+
+        // Then
+        BackgroundJob done = await(job.getId(), j -> j.getStatus() == BackgroundJob.Status.FAILED);
+        assertEquals(3, done.getAttempts());
+        assertNotNull(done.getFinishedDate());
+        assertEquals(failedBefore + 1, count("jobs.failed"));
+    }
+
+    @Test
+    void retryResumesFromTheLastCheckpoint() {
+        // Given
+        List<String> seen = new CopyOnWriteArrayList<>();
+        jobQueue.register("test.checkpoint", context -> {
+            seen.add(String.valueOf(context.getCheckpoint()));
+            if (context.getCheckpoint() == null) {
+                context.checkpoint("page-2");
+                throw new IllegalStateException("crashed after page 1");
+            }
+            assertEquals("page-2", context.getCheckpoint());
+        });
+
+        // When
+        BackgroundJob job = jobQueue.enqueue("test.checkpoint", null);
+
+        // Then
+        BackgroundJob done = await(job.getId(), j -> j.getStatus() == BackgroundJob.Status.COMPLETED);
+        assertEquals(List.of("null", "page-2"), seen);
+        assertEquals("page-2", done.getCheckpoint());
+        assertEquals(2, done.getAttempts());
+    }
+
+    @Test
+    void expiredLeaseIsReclaimed() {
+        // Given: a job claimed by a node that died with one attempt used
+        AtomicInteger runs = new AtomicInteger();
+        jobQueue.register("test.lease", context -> runs.incrementAndGet());
+        Timestamp past = Timestamp.from(Instant.now().minusSeconds(60));
+        jdbcTemplate.update("INSERT INTO jobs (type, status, attempts, max_attempts, run_at, locked_by, locked_until, " +
+                "checkpoint, created_date) VALUES ('test.lease', 'RUNNING', 1, 3, ?, 'dead-node', ?, 'half-way', ?)",
+                past, past, past);
+        Long id = jdbcTemplate.queryForObject("SELECT id FROM jobs WHERE type = 'test.lease'", Long.class);
+
+        // When / Then
+        BackgroundJob done = await(id, j -> j.getStatus() == BackgroundJob.Status.COMPLETED);
+        assertEquals(2, done.getAttempts());
+        assertEquals(1, runs.get());
+        assertEquals("half-way", done.getCheckpoint());
+    }
+
+    @Test
+    void liveLeaseIsNotReclaimed() throws InterruptedException {
+        // Given: a job another node is still working on
+        AtomicInteger runs = new AtomicInteger();
+        jobQueue.register("test.live-lease", context -> runs.incrementAndGet());
+        Timestamp now = Timestamp.from(Instant.now());
+        Timestamp leaseEnd = Timestamp.from(Instant.now().plusSeconds(300));
+        jdbcTemplate.update("INSERT INTO jobs (type, status, attempts, max_attempts, run_at, locked_by, locked_until, " +
+                "created_date) VALUES ('test.live-lease', 'RUNNING', 1, 3, ?, 'other-node', ?, ?)", now, leaseEnd, now);
+
+        // When
+        Thread.sleep(500);
+
+        // Then
+        assertEquals(0, runs.get());
+        assertEquals("other-node", jdbcTemplate.queryForObject(
+                "SELECT locked_by FROM jobs WHERE type = 'test.live-lease'", String.class));
+    }
+
+    @Test
+    void lostLeaseIsNotCountedAsCompleted() {
+        // Given: another node takes the job over while this one runs it
+        double completedBefore = count("jobs.completed");
+        jobQueue.register("test.lost-lease", context -> jdbcTemplate.update(
+                "UPDATE jobs SET locked_by = 'other-node' WHERE id = ?", context.getId()));
+
+        // When
+        BackgroundJob job = jobQueue.enqueue("test.lost-lease", null);
+
+        // Then
+        BackgroundJob taken = await(job.getId(), j -> "other-node".equals(j.getLockedBy()));
+        assertEquals(BackgroundJob.Status.RUNNING, taken.getStatus());
+        assertEquals(completedBefore, count("jobs.completed"));
+    }
+
+    @Test
+    void missingHandlerDoesNotUseAnAttempt() throws InterruptedException {
+        // Given: a job type this node cannot run yet, claimed and put back many times over
+        BackgroundJob job = jobQueue.enqueue("test.unregistered", null);
+        Thread.sleep(500);
+        BackgroundJob waiting = jobQueue.getJob(job.getId()).orElseThrow();
+        assertNotEquals(BackgroundJob.Status.FAILED, waiting.getStatus());
+        // At most the claim in flight counts
+        assertTrue(waiting.getAttempts() <= 1);
+
+        // When
+        jobQueue.register("test.unregistered", context -> { });
+
+        // Then
+        BackgroundJob done = await(job.getId(), j -> j.getStatus() == BackgroundJob.Status.COMPLETED);
+        assertEquals(1, done.getAttempts());
+    }
+
+    private BackgroundJob await(Long id, Predicate<BackgroundJob> condition) {
+        long deadline = System.currentTimeMillis() + 10_000;
+        BackgroundJob job = null;
+        while (System.currentTimeMillis() < deadline) {
+            job = jobQueue.getJob(id).orElseThrow();
+            if (condition.test(job)) {
+                return job;
+            }
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        fail("Job " + id + " never reached the expected state: " + job);
+        return job;
+    }
+
+    private double count(String counter) {
+        return meterRegistry.get(counter).counter().count();
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.socialmedia.service;
+
+import com.example.socialmedia.model.Message;
+import com.example.socialmedia.repository.MessageRepository;
+import com.example.socialmedia.repository.ShopRepository;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class MessageServiceTest {
+
+    private final ShopRepository shopRepository = mock(ShopRepository.class);
+    private final MessageWriteBuffer writeBuffer = mock(MessageWriteBuffer.class);
+
+    @Test
+    void knownShopIsNotLookedUpAgainWithinTheTtl() {
+        // Given
+        MessageService messageService = service(60_000);
+        when(shopRepository.existsById(7L)).thenReturn(true);
+
+        // When
+        messageService.sendMessage(1L, "alice", 7L, message());
+        messageService.sendMessage(1L, "alice", 7L, message());
+
+        // Then
+        verify(shopRepository, times(1)).existsById(7L);
+        verify(writeBuffer, times(2)).write(any());
+    }
+
+    @Test
+    void shopDeletedElsewhereIsRefusedOnceTheTtlRunsOut() throws InterruptedException {
+        // Given
+        MessageService messageService = service(1);
+        when(shopRepository.existsById(7L)).thenReturn(true, false);
+        messageService.sendMessage(1L, "alice", 7L, message());
+        Thread.sleep(5);
+
+        // When
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> messageService.sendMessage(1L, "alice", 7L, message()));
+
+        // Then
+        assertEquals("Shop not found", e.getMessage());
+        verify(writeBuffer, times(1)).write(any());
+    }
+
+    @Test
+    void senderIsTakenAsGiven() {
+        // Given
+        MessageService messageService = service(60_000);
+        when(shopRepository.existsById(7L)).thenReturn(true);
+        Message message = message();
+
+        // When
+        messageService.sendMessage(1L, "alice", 7L, message);
+
+        // Then
+        assertEquals(1L, message.getSenderId());
+        assertEquals("alice", message.getSenderUsername());
+        assertEquals(7L, message.getShopId());
+    }
+
+    private MessageService service(long knownShopTtlMs) {
+        return new MessageService(mock(MessageRepository.class), shopRepository, writeBuffer, 100, knownShopTtlMs);
+    }
+
+    private static Message message() {
+        Message message = new Message();
+        message.setContent("Hello");
+        return message;
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.socialmedia.service;
+
+import com.example.socialmedia.model.Notification;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NotificationDigesterTest {
+
+    private static final Notification.NotificationType TYPE = Notification.NotificationType.SHOP_ANNOUNCEMENT;
+
+    private final NotificationDigester digester = new NotificationDigester(200);
+    private final List<String> delivered = new CopyOnWriteArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        digester.shutdown();
+    }
+
+    @Test
+    void burstIsDeliveredAsExactlyOneEntry() throws InterruptedException {
+        // When
+        submit(1L, 10L, "first");
+        submit(1L, 10L, "second");
+        submit(1L, 10L, "third");
+
+        // Then: nothing before the window closes, then one delivery with the latest message
+        assertEquals(List.of(), delivered);
+        Thread.sleep(500);
+        assertEquals(List.of("1/10: third x3"), delivered);
+    }
+
+    @Test
+    void loneNotificationIsDeliveredOnceAfterTheWindow() throws InterruptedException {
+        // When
+        submit(1L, 10L, "only");
+        Thread.sleep(500);
+
+        // Then
+        assertEquals(List.of("1/10: only x1"), delivered);
+    }
+
+    @Test
+    void notificationAfterTheWindowStartsANewEntry() throws InterruptedException {
+        // Given
+        submit(1L, 10L, "morning");
+        Thread.sleep(500);
+
+        // When
+        submit(1L, 10L, "evening");
+        Thread.sleep(500);
+
+        // Then
+        assertEquals(List.of("1/10: morning x1", "1/10: evening x1"), delivered);
+    }
+
+    @Test
+    void keysAreDigestedSeparately() throws InterruptedException {
+        // When
+        submit(1L, 10L, "a");
+        submit(2L, 10L, "b");
+        submit(1L, 11L, "c");
+        submit(1L, 10L, "d");
+        Thread.sleep(500);
+
+        // Then
+        assertEquals(3, delivered.size());
+        assertTrue(delivered.containsAll(List.of("1/10: d x2", "2/10: b x1", "1/11: c x1")));
+    }
+
+    @Test
+    void shutdownDeliversOpenWindows() {
+        // Given
+        submit(1L, 10L, "first");
+        submit(1L, 10L, "second");
+
+        // When
+        digester.shutdown();
+
+        // Then
+        assertEquals(List.of("1/10: second x2"), delivered);
+    }
+
+    private void submit(Long userId, Long shopId, String message) {
+        digester.submit(userId, TYPE, shopId, message,
+                (latest, count) -> delivered.add(userId + "/" + shopId + ": " + latest + " x" + count));
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.socialmedia.service;
+
+import com.example.socialmedia.dto.BroadcastProgress;
+import com.example.socialmedia.model.Notification;
+import com.example.socialmedia.model.User;
+import com.example.socialmedia.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Pages of two users, so every broadcast spans several pages
+@SpringBootTest(properties = {"logging.level.com.example.socialmedia.aspect=INFO", "spring.jpa.show-sql=false",
+        "logging.level.org.hibernate.SQL=WARN", "notification.fanout.page-size=2", "jobs.poll-interval-ms=50"})
+class NotificationFanoutServiceTest {
+
+    @Autowired
+    NotificationFanoutService fanoutService;
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Test
+    void broadcastReachesEveryUserOnce() {
+        // Given
+        List<Long> userIds = users(5);
+        String message = "Maintenance tonight " + UUID.randomUUID();
+
+        // When
+        BroadcastProgress queued = fanoutService.submit(message, Notification.NotificationType.UPCOMING_EVENT, null);
+
+        // Then: one row per user, each counted as unread
+        BroadcastProgress done = await(queued.getJobId());
+        long users = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users", Long.class);
+        assertEquals(users, done.getRecipients());
+        assertEquals(users, rows(message));
+        for (Long userId : userIds) {
+            assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM notifications WHERE user_id = ? AND message = ?",
+                    Integer.class, userId, message));
+            assertEquals(1, unread(userId));
+        }
+    }
+
+    @Test
+    void recipientListGetsOneRowEachWithTheShopAndDigestCount() {
+        // Given
+        List<Long> userIds = users(3);
+        String message = "New post " + UUID.randomUUID();
+
+        // When
+        BroadcastProgress queued = fanoutService.submitToUsers(message, Notification.NotificationType.SHOP_ANNOUNCEMENT,
+                42L, 3, userIds.stream().mapToLong(Long::longValue).toArray());
+
+        // Then
+        BroadcastProgress done = await(queued.getJobId());
+        assertEquals(3, done.getRecipients());
+        assertEquals(3, rows(message));
+        assertEquals(List.of(42L), jdbcTemplate.queryForList(
+                "SELECT DISTINCT shop_id FROM notifications WHERE message = ?", Long.class, message));
+        assertEquals(List.of(3), jdbcTemplate.queryForList(
+                "SELECT DISTINCT digest_count FROM notifications WHERE message = ?", Integer.class, message));
+        userIds.forEach(userId -> assertEquals(1, unread(userId)));
+    }
+
+    @Test
+    void unknownJobHasNoProgress() {
+        assertTrue(fanoutService.getProgress("no-such-job").isEmpty());
+    }
+
+    private BroadcastProgress await(String jobId) {
+        long deadline = System.currentTimeMillis() + 10_000;
+        BroadcastProgress progress = null;
+        while (System.currentTimeMillis() < deadline) {
+            progress = fanoutService.getProgress(jobId).orElse(null);
+            if (progress != null && "COMPLETED".equals(progress.getStatus())) {
+                return progress;
+            }
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        fail("Broadcast " + jobId + " never completed: " + progress);
+        return progress;
+    }
+
+    private long rows(String message) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM notifications WHERE message = ?", Long.class, message);
+    }
+
+    private long unread(Long userId) {
+        return jdbcTemplate.queryForObject("SELECT unread_count FROM user_notification_state WHERE user_id = ?",
+                Long.class, userId);
+    }
+
+    private List<Long> users(int count) {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String name = "fanout-" + UUID.randomUUID();
+            User user = new User();
+            user.setUsername(name);
+            user.setEmail(name + "@example.com");
+            user.setPassword("secret");
+            ids.add(userRepository.save(user).getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.socialmedia.service;
+
+import com.example.socialmedia.dto.CursorPage;
+import com.example.socialmedia.dto.NotificationDto;
+import com.example.socialmedia.model.BroadcastNotification;
+import com.example.socialmedia.model.Notification;
+import com.example.socialmedia.model.User;
+import com.example.socialmedia.repository.BroadcastNotificationRepository;
+import com.example.socialmedia.repository.NotificationRepository;
+import com.example.socialmedia.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Rows are dated in 2100 so broadcasts issued by other tests stay out of these inboxes
+@SpringBootTest(properties = {"logging.level.com.example.socialmedia.aspect=INFO", "spring.jpa.show-sql=false",
+        "logging.level.org.hibernate.SQL=WARN"})
+class NotificationInboxTest {
+
+    private static final Instant JOINED = Instant.parse("2100-01-01T00:00:00Z");
+
+    @Autowired
+    NotificationService notificationService;
+
+    @Autowired
+    NotificationRepository notificationRepository;
+
+    @Autowired
+    BroadcastNotificationRepository broadcastRepository;
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    private final List<Long> broadcastIds = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        broadcastIds.forEach(broadcastRepository::deleteById);
+    }
+
+    @Test
+    void pagesWalkTheInboxOnceInOrder() {
+        // Given: personal rows and broadcasts, with ties on the timestamp within and across the two
+        User user = user();
+        String early = personal(user, "early", 1);
+        String tiedA = personal(user, "tied a", 4);
+        String tiedB = personal(user, "tied b", 4);
+        String latest = personal(user, "latest", 6);
+        String broadcastEarly = broadcast("broadcast early", 2);
+        String broadcastTied = broadcast("broadcast tied", 4);
+        broadcast("before joining", -1);
+
+        // When
+        List<String> walked = walk(user.getId(), 2);
+
+        // Then: newest first; at equal times broadcasts first, then higher ids
+        assertEquals(List.of(latest, broadcastTied, tiedB, tiedA, broadcastEarly, early), walked);
+    }
+
+    @Test
+    void everyPageSizeGivesTheSameOrder() {
+        // Given
+        User user = user();
+        for (int i = 0; i < 7; i++) {
+            personal(user, "personal " + i, i % 3);
+            broadcast("broadcast " + i, i % 2);
+        }
+        List<String> all = messages(notificationService.getInbox(user.getId(), null, 100).getItems());
+        assertEquals(14, all.size());
+
+        // Then
+        for (int size = 1; size <= 5; size++) {
+            assertEquals(all, walk(user.getId(), size));
+        }
+    }
+
+    @Test
+    void newerNotificationsDoNotShiftLaterPages() {
+        // Given
+        User user = user();
+        for (int i = 1; i <= 4; i++) {
+            personal(user, "old " + i, i);
+        }
+        CursorPage<NotificationDto> first = notificationService.getInbox(user.getId(), null, 2);
+        assertEquals(List.of("old 4", "old 3"), messages(first.getItems()));
+
+        // When: a notification arrives between pages
+        personal(user, "new", 10);
+        CursorPage<NotificationDto> second = notificationService.getInbox(user.getId(), first.getNextCursor(), 2);
+
+        // Then
+        assertEquals(List.of("old 2", "old 1"), messages(second.getItems()));
+        assertNull(second.getNextCursor());
+    }
+
+    @Test
+    void emptyInboxHasNoCursor() {
+        CursorPage<NotificationDto> page = notificationService.getInbox(user().getId(), null, 10);
+
+        assertTrue(page.getItems().isEmpty());
+        assertNull(page.getNextCursor());
+    }
+
+    // Every page from the first, following the cursors
+    private List<String> walk(Long userId, int size) {
+        List<String> walked = new ArrayList<>();
+        String cursor = null;
+        do {
+            CursorPage<NotificationDto> page = notificationService.getInbox(userId, cursor, size);
+            assertTrue(page.getItems().size() <= size);
+            walked.addAll(messages(page.getItems()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return walked;
+    }
+
+    private static List<String> messages(List<NotificationDto> items) {
+        return items.stream().map(NotificationDto::getMessage).toList();
+    }
+
+    private User user() {
+        String name = "inbox-" + UUID.randomUUID();
+        User user = new User();
+        user.setUsername(name);
+        user.setEmail(name + "@example.com");
+        user.setPassword("secret");
+        user = userRepository.save(user);
+        jdbcTemplate.update("UPDATE users SET created_date = ? WHERE id = ?", Timestamp.from(JOINED), user.getId());
+        return user;
+    }
+
+    private String personal(User user, String message, int minutes) {
+        Notification notification = new Notification();
+        notification.setUser(user);
+        notification.setMessage(message);
+        notification.setType(Notification.NotificationType.SYSTEM_UPDATE);
+        Long id = notificationRepository.save(notification).getId();
+        jdbcTemplate.update("UPDATE notifications SET created_date = ? WHERE id = ?", at(minutes), id);
+        return message;
+    }
+
+    private String broadcast(String message, int minutes) {
+        Long id = broadcastRepository.save(BroadcastNotification.builder()
+                .message(message)
+                .type(Notification.NotificationType.SYSTEM_UPDATE)
+                .build()).getId();
+        broadcastIds.add(id);
+        jdbcTemplate.update("UPDATE broadcast_notifications SET created_date = ? WHERE id = ?", at(minutes), id);
+        return message;
+    }
+
+    private static Timestamp at(int minutes) {
+        return Timestamp.from(JOINED.plusSeconds(60L * minutes));
+    }
+}
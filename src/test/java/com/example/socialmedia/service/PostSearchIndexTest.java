@@ -0,0 +1,87 @@
+package com.example.socialmedia.service;
+
+import com.example.socialmedia.dto.PostDto;
+import com.example.socialmedia.model.Post;
+import com.example.socialmedia.repository.PostRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+class PostSearchIndexTest {
+
+    private PostSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new PostSearchIndex(mock(PostRepository.class), new SimpleMeterRegistry(), 100);
+        index.add(post(1L, 10L, Post.PostType.GENERAL, "Fresh bread every morning"));
+        index.add(post(2L, 10L, Post.PostType.PROMOTION, "Bread sale: two bread loaves for one"));
+        index.add(post(3L, 20L, Post.PostType.EVENT, "Live jazz night with bread and wine tasting and cheese and olives"));
+        index.add(post(4L, 20L, Post.PostType.GENERAL, "Jazz brunch this Sunday"));
+        index.add(post(5L, 30L, Post.PostType.GENERAL, "Closed for holidays"));
+    }
+
+    @Test
+    void termFrequencyAndLengthDecideTheOrder() {
+        // Post 2 repeats the term; post 3 mentions it once in a long text
+        assertEquals(List.of(2L, 1L, 3L), index.search("bread", null, null, 10));
+    }
+
+    @Test
+    void rarerTermsWeighMore() {
+        // "wine" appears in one post, "bread" in three
+        assertEquals(3L, index.search("bread wine", null, null, 10).get(0));
+    }
+
+    @Test
+    void anyTermMayMatch() {
+        assertEquals(List.of(1L, 2L, 3L, 4L), index.search("jazz bread", null, null, 10).stream().sorted().toList());
+    }
+
+    @Test
+    void queryIsNormalizedLikeTheContent() {
+        assertEquals(List.of(4L), index.search("BRUNCH!", null, null, 10));
+    }
+
+    @Test
+    void filtersRestrictTheMatches() {
+        assertEquals(List.of(4L, 3L), index.search("jazz", null, 20L, 10));
+        assertEquals(List.of(4L), index.search("jazz", Post.PostType.GENERAL, null, 10));
+        assertEquals(List.of(), index.search("jazz", Post.PostType.PROMOTION, 20L, 10));
+    }
+
+    @Test
+    void limitKeepsTheBestMatches() {
+        assertEquals(List.of(2L), index.search("bread", null, null, 1));
+    }
+
+    @Test
+    void editedPostIsMatchedByItsNewContentOnly() {
+        // When
+        index.add(post(5L, 30L, Post.PostType.GENERAL, "Reopening with fresh croissants"));
+
+        // Then
+        assertEquals(List.of(), index.search("holidays", null, null, 10));
+        assertEquals(List.of(5L), index.search("croissants", null, null, 10));
+    }
+
+    @Test
+    void removedPostsAndShopsAreNotMatched() {
+        // When
+        index.remove(1L);
+        index.removeShop(20L);
+
+        // Then
+        assertEquals(List.of(2L), index.search("bread jazz", null, null, 10));
+        assertEquals(List.of(2L, 5L), index.getPostIds().stream().sorted().toList());
+    }
+
+    private static PostDto post(Long id, Long shopId, Post.PostType type, String content) {
+        return PostDto.builder().id(id).shopId(shopId).type(type).content(content).build();
+    }
+}
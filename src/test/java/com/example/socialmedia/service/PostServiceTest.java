@@ -0,0 +1,40 @@
+package com.example.socialmedia.service;
+
+import com.example.socialmedia.model.Post;
+import com.example.socialmedia.model.Shop;
+import com.example.socialmedia.repository.PostRepository;
+import com.example.socialmedia.repository.ShopRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class PostServiceTest {
+
+    private final PostRepository postRepository = mock(PostRepository.class);
+    private final ShopRepository shopRepository = mock(ShopRepository.class);
+    private final PostService postService = new PostService(postRepository, shopRepository,
+            mock(NotificationService.class), mock(HomeTimelineService.class), mock(PostSearchIndex.class),
+            mock(IndexSyncService.class));
+
+    @Test
+    void postingForAShopWhoseOwnerWasDeletedIsRejected() {
+        // Given: the owner's account was deleted, leaving the shop without one
+        Shop shop = new Shop();
+        shop.setId(7L);
+        shop.setName("Orphaned");
+        when(shopRepository.findWithOwnerById(7L)).thenReturn(Optional.of(shop));
+
+        // When
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> postService.createPost(7L, Post.builder().content("Hello").build(), "someone"));
+
+        // Then
+        assertEquals("You are not authorized to post for this shop.", e.getMessage());
+        verify(postRepository, never()).save(any());
+    }
+}
@@ -0,0 +1,295 @@
+package com.example.socialmedia.service;
+
+import com.example.socialmedia.dto.DayAvailabilityDto;
+import com.example.socialmedia.dto.SlotAvailabilityDto;
+import com.example.socialmedia.exception.BadRequestException;
+import com.example.socialmedia.model.ShopSlotCapacity;
+import com.example.socialmedia.repository.ShopSlotCapacityRepository;
+import com.example.socialmedia.repository.SlotOccupancyRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {"logging.level.com.example.socialmedia.aspect=INFO", "spring.jpa.show-sql=false",
+        "logging.level.org.hibernate.SQL=WARN"})
+class ReservationCapacityServiceTest {
+
+    // Occupancy rows only carry the shop id, so every test books for a shop of its own
+    private static final AtomicLong SHOP_IDS = new AtomicLong(900_000);
+
+    @Autowired
+    ReservationCapacityService capacityService;
+
+    @Autowired
+    SlotOccupancyRepository occupancyRepository;
+
+    @Autowired
+    ShopSlotCapacityRepository capacityRepository;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    private final LocalDateTime slotTime = LocalDate.now().plusDays(7).atTime(10, 30);
+
+    @Test
+    void concurrentBookingsNeverExceedCapacity() throws Exception {
+        // Given
+        Long shopId = SHOP_IDS.incrementAndGet();
+        capacityService.setCapacity(shopId, rules(10, 12, 4));
+        ExecutorService pool = Executors.newFixedThreadPool(12);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> bookings = new ArrayList<>();
+
+        // When
+        for (int i = 0; i < 12; i++) {
+            bookings.add(pool.submit(() -> {
+                start.await();
+                return book(shopId, slotTime, 1);
+            }));
+        }
+        start.countDown();
+        int booked = 0;
+        for (Future<Boolean> booking : bookings) {
+            if (booking.get(30, TimeUnit.SECONDS)) {
+                booked++;
+            }
+        }
+        pool.shutdown();
+
+        // Then
+        assertEquals(4, booked);
+        assertEquals(4, bookedGuests(shopId, slotTime));
+    }
+
+    @Test
+    void bookingTooManyGuestsIsRejected() {
+        // Given
+        Long shopId = SHOP_IDS.incrementAndGet();
+        capacityService.setCapacity(shopId, rules(10, 12, 3));
+        assertTrue(book(shopId, slotTime, 2));
+
+        // When / Then
+        assertFalse(book(shopId, slotTime, 2));
+        assertThrows(BadRequestException.class, () -> capacityService.prepare(shopId, slotTime, 4));
+        assertEquals(2, bookedGuests(shopId, slotTime));
+    }
+
+    @Test
+    void reserveAgainKeepsRecordedSlotAfterRulesChange() {
+        // Given
+        Long shopId = SHOP_IDS.incrementAndGet();
+        capacityService.setCapacity(shopId, rules(10, 12, 2));
+        assertTrue(book(shopId, slotTime, 2));
+        LocalDateTime slotStart = slotTime;
+        transactionTemplate.executeWithoutResult(status -> capacityService.release(shopId, slotStart, 2));
+        capacityService.setCapacity(shopId, rules(14, 16, 2));
+
+        // When
+        transactionTemplate.executeWithoutResult(status -> capacityService.reserveAgain(shopId, slotStart, 2));
+
+        // Then
+        assertEquals(2, bookedGuests(shopId, slotStart));
+    }
+
+    @Test
+    void reserveAgainChecksCapacityWhileSlotExists() {
+        // Given
+        Long shopId = SHOP_IDS.incrementAndGet();
+        capacityService.setCapacity(shopId, rules(10, 12, 2));
+        assertTrue(book(shopId, slotTime, 2));
+        transactionTemplate.executeWithoutResult(status -> capacityService.release(shopId, slotTime, 2));
+        assertTrue(book(shopId, slotTime, 1));
+
+        // When / Then
+        assertThrows(BadRequestException.class, () -> transactionTemplate.executeWithoutResult(status ->
+                capacityService.reserveAgain(shopId, slotTime, 2)));
+        assertEquals(1, bookedGuests(shopId, slotTime));
+    }
+
+    @Test
+    void placesFreedOnAnotherNodeAreBookable() {
+        // Given: the slot is full in this node's memory
+        Long shopId = SHOP_IDS.incrementAndGet();
+        capacityService.setCapacity(shopId, rules(10, 12, 2));
+        assertTrue(book(shopId, slotTime, 2));
+        assertThrows(BadRequestException.class, () -> capacityService.prepare(shopId, slotTime, 1));
+
+        // When: another node cancels, writing only to the database
+        transactionTemplate.executeWithoutResult(status -> occupancyRepository.release(shopId, slotTime, 2));
+
+        // Then
+        assertTrue(book(shopId, slotTime, 2));
+        assertEquals(2, bookedGuests(shopId, slotTime));
+    }
+
+    @Test
+    void bookingsOnAnotherNodeAreNotOverbooked() {
+        // Given: this node has seen the slot empty
+        Long shopId = SHOP_IDS.incrementAndGet();
+        capacityService.setCapacity(shopId, rules(10, 12, 2));
+        assertTrue(book(shopId, slotTime, 1));
+        transactionTemplate.executeWithoutResult(status -> capacityService.release(shopId, slotTime, 1));
+
+        // When: another node fills it, writing only to the database
+        transactionTemplate.executeWithoutResult(status -> occupancyRepository.reserve(shopId, slotTime, 2, 2));
+
+        // Then: the stale memory lets the booking reach the database, which turns it away
+        assertFalse(book(shopId, slotTime, 1));
+        assertThrows(BadRequestException.class, () -> capacityService.prepare(shopId, slotTime, 1));
+        assertEquals(2, bookedGuests(shopId, slotTime));
+    }
+
+    @Test
+    void rulesChangedOnAnotherNodeApplyOnceTheTtlPasses() throws InterruptedException {
+        // Given: a second node that has read the shop's rules
+        Long shopId = SHOP_IDS.incrementAndGet();
+        capacityService.setCapacity(shopId, rules(10, 12, 2));
+        ReservationCapacityService otherNode = new ReservationCapacityService(capacityRepository, occupancyRepository,
+                transactionTemplate, new SimpleMeterRegistry(), 5000, 300);
+        assertEquals(2, otherNode.resolve(shopId, slotTime).capacity());
+
+        // When: the rules change through this node
+        capacityService.setCapacity(shopId, rules(10, 12, 5));
+
+        // Then
+        assertEquals(2, otherNode.resolve(shopId, slotTime).capacity());
+        Thread.sleep(400);
+        assertEquals(5, otherNode.resolve(shopId, slotTime).capacity());
+        assertEquals(5, otherNode.getAvailability(shopId, slotTime.toLocalDate(), slotTime.toLocalDate())
+                .get(0).getSlots().get(0).getCapacity());
+    }
+
+    @Test
+    void cachedAvailabilityFollowsCommittedBookingsAndReleases() {
+        // Given: availability read once, so the day is cached
+        Long shopId = SHOP_IDS.incrementAndGet();
+        capacityService.setCapacity(shopId, rules(10, 12, 4));
+        assertEquals(4, slotAt(shopId, slotTime).getAvailable());
+        double hits = meterRegistry.counter("reservation.availability.hits").count();
+        assertEquals(4, slotAt(shopId, slotTime).getAvailable());
+        assertEquals(hits + 1, meterRegistry.counter("reservation.availability.hits").count());
+
+        // When / Then
+        assertTrue(book(shopId, slotTime, 3));
+        assertEquals(1, slotAt(shopId, slotTime).getAvailable());
+        transactionTemplate.executeWithoutResult(status -> capacityService.release(shopId, slotTime, 2));
+        SlotAvailabilityDto slot = slotAt(shopId, slotTime);
+        assertEquals(1, slot.getBooked());
+        assertEquals(3, slot.getAvailable());
+    }
+
+    @Test
+    void rolledBackBookingLeavesAvailabilityAlone() {
+        // Given
+        Long shopId = SHOP_IDS.incrementAndGet();
+        capacityService.setCapacity(shopId, rules(10, 12, 4));
+        assertEquals(4, slotAt(shopId, slotTime).getAvailable());
+
+        // When
+        ReservationCapacityService.Slot slot = capacityService.prepare(shopId, slotTime, 2);
+        transactionTemplate.executeWithoutResult(status -> {
+            capacityService.reserve(slot, 2);
+            status.setRollbackOnly();
+        });
+
+        // Then
+        assertEquals(4, slotAt(shopId, slotTime).getAvailable());
+    }
+
+    @Test
+    void changedRulesRebuildCachedAvailability() {
+        // Given
+        Long shopId = SHOP_IDS.incrementAndGet();
+        capacityService.setCapacity(shopId, rules(10, 12, 4));
+        assertTrue(book(shopId, slotTime, 1));
+        assertEquals(4, slotAt(shopId, slotTime).getCapacity());
+
+        // When
+        capacityService.setCapacity(shopId, rules(10, 12, 6));
+
+        // Then: the new capacity, with the booking still counted
+        SlotAvailabilityDto slot = slotAt(shopId, slotTime);
+        assertEquals(6, slot.getCapacity());
+        assertEquals(5, slot.getAvailable());
+    }
+
+    @Test
+    void bookingsShowInEveryDayOfARange() {
+        // Given: two days of a week with bookings, read as one range
+        Long shopId = SHOP_IDS.incrementAndGet();
+        capacityService.setCapacity(shopId, rules(10, 12, 4));
+        LocalDateTime nextDay = slotTime.plusDays(1);
+        assertTrue(book(shopId, slotTime, 1));
+        assertTrue(book(shopId, nextDay, 2));
+
+        // When
+        List<DayAvailabilityDto> days = capacityService.getAvailability(shopId, slotTime.toLocalDate(),
+                slotTime.toLocalDate().plusDays(6));
+
+        // Then
+        assertEquals(7, days.size());
+        assertEquals(3, slotOf(days.get(0), slotTime).getAvailable());
+        assertEquals(2, slotOf(days.get(1), nextDay).getAvailable());
+        assertEquals(4, days.get(2).getSlots().get(0).getAvailable());
+
+        // And a later booking in the range reaches the cached day
+        assertTrue(book(shopId, nextDay, 2));
+        assertEquals(0, slotAt(shopId, nextDay).getAvailable());
+    }
+
+    private SlotAvailabilityDto slotAt(Long shopId, LocalDateTime time) {
+        return slotOf(capacityService.getAvailability(shopId, time.toLocalDate(), time.toLocalDate()).get(0), time);
+    }
+
+    private static SlotAvailabilityDto slotOf(DayAvailabilityDto day, LocalDateTime time) {
+        return day.getSlots().stream()
+                .filter(slot -> slot.getStart().equals(time))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private boolean book(Long shopId, LocalDateTime time, int guests) {
+        try {
+            ReservationCapacityService.Slot slot = capacityService.prepare(shopId, time, guests);
+            transactionTemplate.executeWithoutResult(status -> capacityService.reserve(slot, guests));
+            return true;
+        } catch (BadRequestException e) {
+            return false;
+        }
+    }
+
+    private int bookedGuests(Long shopId, LocalDateTime slotStart) {
+        return occupancyRepository.findState(shopId, slotStart).getBookedGuests();
+    }
+
+    private static List<ShopSlotCapacity> rules(int openHour, int closeHour, int capacity) {
+        List<ShopSlotCapacity> rules = new ArrayList<>();
+        rules.add(ShopSlotCapacity.builder()
+                .openTime(LocalTime.of(openHour, 0))
+                .closeTime(LocalTime.of(closeHour, 0))
+                .slotMinutes(30)
+                .capacity(capacity)
+                .build());
+        return rules;
+    }
+}
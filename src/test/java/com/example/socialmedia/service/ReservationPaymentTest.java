@@ -0,0 +1,104 @@
+package com.example.socialmedia.service;
+
+import com.example.socialmedia.dto.PaymentRequest;
+import com.example.socialmedia.dto.ReservationDto;
+import com.example.socialmedia.exception.BadRequestException;
+import com.example.socialmedia.model.Reservation;
+import com.example.socialmedia.model.Shop;
+import com.example.socialmedia.model.User;
+import com.example.socialmedia.repository.ReservationRepository;
+import com.example.socialmedia.repository.ShopRepository;
+import com.example.socialmedia.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Remembered results expire at once, so repeats are answered from the payment log
+@SpringBootTest(properties = {"logging.level.com.example.socialmedia.aspect=INFO", "spring.jpa.show-sql=false",
+        "logging.level.org.hibernate.SQL=WARN", "payment.idempotency.ttl-ms=1"})
+class ReservationPaymentTest {
+
+    @Autowired
+    ReservationService reservationService;
+
+    @Autowired
+    ReservationRepository reservationRepository;
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    ShopRepository shopRepository;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Test
+    void repeatGetsTheOriginalResultAfterTheReservationChanged() throws InterruptedException {
+        // Given: a paid reservation that was cancelled afterwards
+        Long reservationId = reservation();
+        PaymentRequest payment = payment(25.0);
+        ReservationDto original = reservationService.processPayment(reservationId, payment);
+        assertEquals(Reservation.PaymentStatus.PAID, original.getPaymentStatus());
+        jdbcTemplate.update("UPDATE reservations SET status = 'CANCELLED' WHERE id = ?", reservationId);
+        Thread.sleep(5);
+
+        // When
+        ReservationDto replayed = reservationService.processPayment(reservationId, payment);
+
+        // Then
+        assertEquals(original, replayed);
+        assertEquals(Reservation.ReservationStatus.PENDING, replayed.getStatus());
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM payment_logs WHERE transaction_id = ?",
+                Integer.class, payment.getTransactionId()));
+    }
+
+    @Test
+    void repeatWithAnotherAmountIsRefused() throws InterruptedException {
+        // Given
+        Long reservationId = reservation();
+        PaymentRequest payment = payment(25.0);
+        reservationService.processPayment(reservationId, payment);
+        Thread.sleep(5);
+
+        // When
+        PaymentRequest changed = payment(30.0);
+        changed.setTransactionId(payment.getTransactionId());
+
+        // Then
+        assertThrows(BadRequestException.class, () -> reservationService.processPayment(reservationId, changed));
+    }
+
+    private Long reservation() {
+        String name = "payer-" + UUID.randomUUID();
+        User user = new User();
+        user.setUsername(name);
+        user.setEmail(name + "@example.com");
+        user.setPassword("secret");
+        user = userRepository.save(user);
+        Shop shop = new Shop();
+        shop.setName("Payment Shop");
+        shop = shopRepository.save(shop);
+        return reservationRepository.save(Reservation.builder()
+                .user(user)
+                .shop(shop)
+                .reservationTime(LocalDateTime.now().plusDays(3))
+                .numberOfGuests(2)
+                .build()).getId();
+    }
+
+    private static PaymentRequest payment(double amount) {
+        PaymentRequest payment = new PaymentRequest();
+        payment.setTransactionId("txn-" + UUID.randomUUID());
+        payment.setPaymentMethod("CARD");
+        payment.setAmount(amount);
+        payment.setStatus("SUCCESS");
+        return payment;
+    }
+}
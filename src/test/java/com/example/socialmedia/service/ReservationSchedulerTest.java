@@ -0,0 +1,145 @@
+package com.example.socialmedia.service;
+
+import com.example.socialmedia.model.Reservation;
+import com.example.socialmedia.model.Shop;
+import com.example.socialmedia.model.User;
+import com.example.socialmedia.repository.ReservationRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ReservationSchedulerTest {
+
+    private static final long HOLD_MINUTES = 1;
+
+    private ReservationRepository reservationRepository;
+    private NotificationService notificationService;
+    private ReservationScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        reservationRepository = mock(ReservationRepository.class);
+        notificationService = mock(NotificationService.class);
+        // Each claim succeeds once, as the conditional updates do against the database
+        when(reservationRepository.claimReminder(anyLong(), anyInt(), any(), any())).thenReturn(1);
+        when(reservationRepository.cancelIfUnpaid(anyLong(), any(), any(), any(), any())).thenReturn(1);
+        when(reservationRepository.findById(anyLong())).thenAnswer(invocation -> Optional.of(reservation(invocation.getArgument(0))));
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        scheduler.shutdown();
+    }
+
+    @Test
+    void expiryAndEachReminderFireExactlyOnce() {
+        // Given
+        scheduler = newScheduler(List.of(2, 1));
+        scheduler.start();
+        long now = System.currentTimeMillis();
+
+        // When: the hold of 1 runs out, and reservations 2 and 3 reach their 2 and 1 minute reminders
+        scheduler.track(1L, LocalDateTime.now().plusDays(1), Instant.ofEpochMilli(now - 60_000 + 200));
+        scheduler.track(2L, LocalDateTime.now().plusMinutes(2).plusNanos(300_000_000), Instant.now());
+        scheduler.track(3L, LocalDateTime.now().plusMinutes(1).plusNanos(300_000_000), Instant.now());
+
+        // Then
+        verify(reservationRepository, timeout(2000)).cancelIfUnpaid(eq(1L), any(), any(), any(), any());
+        verify(reservationRepository, timeout(2000)).claimReminder(eq(2L), eq(2), any(), any());
+        verify(reservationRepository, timeout(2000)).claimReminder(eq(3L), eq(1), any(), any());
+        verify(reservationRepository, after(500).times(1)).cancelIfUnpaid(anyLong(), any(), any(), any(), any());
+        verify(reservationRepository, times(2)).claimReminder(anyLong(), anyInt(), any(), any());
+        verify(notificationService, times(3)).createNotificationForUser(any(User.class), any(), any(), any());
+    }
+
+    @Test
+    void recoverySendsOnlyTheLatestOverdueReminder() {
+        // Given: both reminders of a reservation half a minute away and an expired hold were missed while down
+        scheduler = newScheduler(List.of(1440, 60));
+        when(reservationRepository.findDeadlinesBetween(any(), any(), any()))
+                .thenReturn(List.of(deadline(5L, LocalDateTime.now().plusSeconds(30), Instant.now(), null)));
+        when(reservationRepository.findDeadlinesCreatedBetween(any(), any(), any(), any()))
+                .thenReturn(List.of(deadline(6L, LocalDateTime.now().plusDays(2), Instant.now().minusSeconds(3600), null)));
+
+        // When
+        scheduler.start();
+
+        // Then
+        verify(reservationRepository, timeout(2000)).claimReminder(eq(5L), eq(60), any(), any());
+        verify(reservationRepository, timeout(2000)).cancelIfUnpaid(eq(6L), any(), any(), any(), any());
+        verify(reservationRepository, after(500).never()).claimReminder(eq(5L), eq(1440), any(), any());
+        verify(reservationRepository, times(1)).claimReminder(anyLong(), anyInt(), any(), any());
+    }
+
+    @Test
+    void recoverySkipsRemindersAlreadySent() {
+        // Given: the 60 minute reminder went out before the restart
+        scheduler = newScheduler(List.of(1440, 60));
+        when(reservationRepository.findDeadlinesBetween(any(), any(), any()))
+                .thenReturn(List.of(deadline(7L, LocalDateTime.now().plusSeconds(30), Instant.now(), 60)));
+
+        // When
+        scheduler.start();
+
+        // Then
+        verify(reservationRepository, after(500).never()).claimReminder(anyLong(), anyInt(), any(), any());
+    }
+
+    private ReservationScheduler newScheduler(List<Integer> reminderOffsets) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+        return new ReservationScheduler(reservationRepository, mock(ReservationCapacityService.class),
+                notificationService, transactionTemplate, new SimpleMeterRegistry(),
+                HOLD_MINUTES, reminderOffsets, 360, 20, 2);
+    }
+
+    private static Reservation reservation(Long id) {
+        Shop shop = new Shop();
+        shop.setId(100L);
+        shop.setName("Shop");
+        return Reservation.builder()
+                .id(id)
+                .user(new User())
+                .shop(shop)
+                .reservationTime(LocalDateTime.now().plusDays(1))
+                .build();
+    }
+
+    private static ReservationRepository.Deadline deadline(Long id, LocalDateTime reservationTime, Instant createdDate,
+                                                           Integer reminderOffsetSent) {
+        return new ReservationRepository.Deadline() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public LocalDateTime getReservationTime() {
+                return reservationTime;
+            }
+
+            @Override
+            public Instant getCreatedDate() {
+                return createdDate;
+            }
+
+            @Override
+            public Integer getReminderOffsetSent() {
+                return reminderOffsetSent;
+            }
+        };
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.socialmedia.service;
+
+import com.example.socialmedia.model.Review;
+import com.example.socialmedia.model.Shop;
+import com.example.socialmedia.model.User;
+import com.example.socialmedia.repository.ShopRepository;
+import com.example.socialmedia.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {"logging.level.com.example.socialmedia.aspect=INFO", "spring.jpa.show-sql=false",
+        "logging.level.org.hibernate.SQL=WARN"})
+class ReviewServiceTest {
+
+    private static final int REVIEWS = 40;
+
+    @Autowired
+    ReviewService reviewService;
+
+    @Autowired
+    ShopRepository shopRepository;
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Test
+    void concurrentReviewsOfANewShopAreAllCounted() throws Exception {
+        // Given: a shop whose aggregates were never set, and one reviewer per review
+        Long shopId = shopRepository.save(shop()).getId();
+        List<Long> userIds = new ArrayList<>();
+        for (int i = 0; i < REVIEWS; i++) {
+            userIds.add(user().getId());
+        }
+
+        // When: every review is submitted at once
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> submitted = new ArrayList<>();
+        for (int i = 0; i < REVIEWS; i++) {
+            Long userId = userIds.get(i);
+            int rating = i % 5 + 1;
+            submitted.add(executor.submit(() -> {
+                start.await();
+                return reviewService.addReview(userId, shopId, review(rating));
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : submitted) {
+            future.get();
+        }
+        executor.shutdown();
+
+        // Then: the aggregates match the reviews stored
+        Map<String, Object> shop = jdbcTemplate.queryForMap("SELECT rating, rating_sum, rating_count, one_star_count, " +
+                "five_star_count FROM shops WHERE id = ?", shopId);
+        assertEquals((long) REVIEWS, ((Number) shop.get("RATING_COUNT")).longValue());
+        assertEquals(REVIEWS / 5 * 15L, ((Number) shop.get("RATING_SUM")).longValue());
+        assertEquals(REVIEWS / 5L, ((Number) shop.get("ONE_STAR_COUNT")).longValue());
+        assertEquals(REVIEWS / 5L, ((Number) shop.get("FIVE_STAR_COUNT")).longValue());
+        assertEquals(3.0, ((Number) shop.get("RATING")).doubleValue(), 1e-9);
+    }
+
+    @Test
+    void reviewOfAShopWithoutAggregatesCountsTheEarlierReviews() {
+        // Given: a review stored before the aggregates existed
+        Long shopId = shopRepository.save(shop()).getId();
+        jdbcTemplate.update("INSERT INTO reviews (user_id, shop_id, rating, created_date) VALUES (?, ?, 2, CURRENT_TIMESTAMP)",
+                user().getId(), shopId);
+
+        // When
+        reviewService.addReview(user().getId(), shopId, review(4));
+
+        // Then
+        Map<String, Object> shop = jdbcTemplate.queryForMap("SELECT rating, rating_count FROM shops WHERE id = ?", shopId);
+        assertEquals(2L, ((Number) shop.get("RATING_COUNT")).longValue());
+        assertEquals(3.0, ((Number) shop.get("RATING")).doubleValue(), 1e-9);
+    }
+
+    @Test
+    void ratingIsRequired() {
+        Long shopId = shopRepository.save(shop()).getId();
+        Long userId = user().getId();
+
+        assertThrows(RuntimeException.class, () -> reviewService.addReview(userId, shopId, review(null)));
+    }
+
+    private static Shop shop() {
+        Shop shop = new Shop();
+        shop.setName("Reviewed Shop");
+        return shop;
+    }
+
+    private User user() {
+        String name = "reviewer-" + UUID.randomUUID();
+        User user = new User();
+        user.setUsername(name);
+        user.setEmail(name + "@example.com");
+        user.setPassword("secret");
+        return userRepository.save(user);
+    }
+
+    private static Review review(Integer rating) {
+        Review review = new Review();
+        review.setRating(rating);
+        return review;
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.socialmedia.service;
+
+import com.example.socialmedia.dto.ShopClusterDto;
+import com.example.socialmedia.dto.ShopDto;
+import com.example.socialmedia.exception.BadRequestException;
+import com.example.socialmedia.repository.ShopRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class ShopClusterServiceTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ShopGeoIndex geoIndex = new ShopGeoIndex(mock(ShopRepository.class), meterRegistry, 1.0, 100);
+    private final ShopClusterService clusterService = new ShopClusterService(geoIndex, meterRegistry, 8, 100);
+
+    @Test
+    void repeatedViewportIsServedFromCachedTiles() {
+        // Given
+        geoIndex.put(shop(1L, 45.1, 9.1, 4.0));
+        clusters(10);
+
+        // When
+        List<ShopClusterDto> again = clusters(10);
+
+        // Then
+        assertEquals(1, total(again));
+        assertTrue(meterRegistry.counter("shop.clusters.tile.hits").count() > 0);
+    }
+
+    @Test
+    void addedShopShowsUpAtEveryZoom() {
+        // Given: tiles cached at several zoom levels
+        geoIndex.put(shop(1L, 45.1, 9.1, 3.0));
+        for (int zoom = 2; zoom <= 12; zoom += 5) {
+            assertEquals(1, total(clusters(zoom)));
+        }
+
+        // When
+        geoIndex.put(shop(2L, 45.1001, 9.1001, 5.0));
+
+        // Then
+        for (int zoom = 2; zoom <= 12; zoom += 5) {
+            List<ShopClusterDto> clusters = clusters(zoom);
+            assertEquals(2, total(clusters));
+            assertEquals(2L, clusters.stream()
+                    .filter(cluster -> cluster.getCount() == 2)
+                    .findFirst()
+                    .map(cluster -> cluster.getTopShop().getId())
+                    .orElseThrow());
+        }
+    }
+
+    @Test
+    void movedShopLeavesItsOldTile() {
+        // Given
+        geoIndex.put(shop(1L, 45.1, 9.1, 4.0));
+        assertEquals(1, total(clusters(12)));
+
+        // When: moved well outside the viewport
+        geoIndex.put(shop(1L, -30.0, 120.0, 4.0));
+
+        // Then
+        assertEquals(0, total(clusters(12)));
+        assertEquals(1, total(clusterService.getClusters(-30.5, 119.5, -29.5, 120.5, 8)));
+    }
+
+    @Test
+    void removedShopLeavesItsTile() {
+        // Given
+        geoIndex.put(shop(1L, 45.1, 9.1, 4.0));
+        assertEquals(1, total(clusters(12)));
+
+        // When
+        geoIndex.remove(1L);
+
+        // Then
+        assertEquals(0, total(clusters(12)));
+    }
+
+    @Test
+    void viewportAcrossTheAntimeridianTakesBothSides() {
+        // Given
+        geoIndex.put(shop(1L, 0.0, 179.5, 4.0));
+        geoIndex.put(shop(2L, 0.0, -179.5, 4.0));
+        geoIndex.put(shop(3L, 0.0, 0.0, 4.0));
+
+        // Then
+        assertEquals(2, total(clusterService.getClusters(-1, 179, 1, -179, 6)));
+    }
+
+    @Test
+    void viewportSpanningTooManyTilesIsRejected() {
+        assertThrows(BadRequestException.class, () -> clusterService.getClusters(-80, -170, 80, 170, 10));
+    }
+
+    // A small viewport around the first shop
+    private List<ShopClusterDto> clusters(int zoom) {
+        return clusterService.getClusters(45.0, 9.0, 45.2, 9.2, zoom);
+    }
+
+    private static int total(List<ShopClusterDto> clusters) {
+        return clusters.stream().mapToInt(ShopClusterDto::getCount).sum();
+    }
+
+    private static ShopDto shop(Long id, double lat, double lng, Double rating) {
+        return ShopDto.builder().id(id).name("Shop " + id).latitude(lat).longitude(lng).rating(rating).build();
+    }
+}
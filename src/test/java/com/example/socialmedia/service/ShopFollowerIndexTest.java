@@ -0,0 +1,59 @@
+package com.example.socialmedia.service;
+
+import com.example.socialmedia.repository.ShopFollowRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.mockito.Mockito.*;
+
+class ShopFollowerIndexTest {
+
+    private final ShopFollowRepository followRepository = mock(ShopFollowRepository.class);
+
+    @Test
+    void followersAreReadOnceAndKeptInStepWithThisNode() {
+        // Given
+        when(followRepository.findUserIdsByShopId(10L)).thenReturn(List.of(1L, 4L));
+        ShopFollowerIndex index = new ShopFollowerIndex(followRepository, new SimpleMeterRegistry(), 60_000, 100);
+
+        // When
+        assertArrayEquals(new long[]{1, 4}, index.getFollowers(10L));
+        index.add(10L, 2L);
+        index.remove(10L, 4L);
+
+        // Then
+        assertArrayEquals(new long[]{1, 2}, index.getFollowers(10L));
+        verify(followRepository, times(1)).findUserIdsByShopId(10L);
+    }
+
+    @Test
+    void followsMadeOnAnotherNodeShowUpAfterTheTtl() throws InterruptedException {
+        // Given
+        when(followRepository.findUserIdsByShopId(10L)).thenReturn(List.of(1L), List.of(1L, 3L));
+        ShopFollowerIndex index = new ShopFollowerIndex(followRepository, new SimpleMeterRegistry(), 100, 100);
+        assertArrayEquals(new long[]{1}, index.getFollowers(10L));
+
+        // When: user 3 follows through another node, which writes only to the database
+        Thread.sleep(150);
+
+        // Then
+        assertArrayEquals(new long[]{1, 3}, index.getFollowers(10L));
+    }
+
+    @Test
+    void deletedShopIsReadAgain() {
+        // Given
+        when(followRepository.findUserIdsByShopId(10L)).thenReturn(List.of(1L), List.of());
+        ShopFollowerIndex index = new ShopFollowerIndex(followRepository, new SimpleMeterRegistry(), 60_000, 100);
+        index.getFollowers(10L);
+
+        // When
+        index.removeShop(10L);
+
+        // Then
+        assertArrayEquals(new long[0], index.getFollowers(10L));
+    }
+}
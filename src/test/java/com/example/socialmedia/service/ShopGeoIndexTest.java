@@ -0,0 +1,118 @@
+package com.example.socialmedia.service;
+
+import com.example.socialmedia.dto.NearbyShopDto;
+import com.example.socialmedia.dto.ShopDto;
+import com.example.socialmedia.repository.ShopRepository;
+import com.example.socialmedia.util.GeoUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class ShopGeoIndexTest {
+
+    // One-degree cells, so a few shops spread over many rings
+    private final ShopGeoIndex index = new ShopGeoIndex(mock(ShopRepository.class), new SimpleMeterRegistry(), 1.0, 100);
+
+    @Test
+    void nearestAreFoundSeveralRingsOut() {
+        // Given: nothing in the query cell, the closest shops several cells away
+        index.put(shop(1L, 10.0, 15.5, 4.0));
+        index.put(shop(2L, 10.0, 17.5, 4.0));
+        index.put(shop(3L, 14.5, 10.0, 4.0));
+        index.put(shop(4L, 40.0, 40.0, 4.0));
+
+        // When
+        List<NearbyShopDto> nearest = index.findNearest(10.5, 10.5, 3, null);
+
+        // Then
+        assertEquals(List.of(3L, 1L, 2L), ids(nearest));
+        assertEquals(GeoUtil.distanceKm(10.5, 10.5, 14.5, 10.0), nearest.get(0).getDistanceKm(), 1e-9);
+    }
+
+    @Test
+    void nearestReachAcrossTheAntimeridian() {
+        // Given: the closest shop is just past 180 degrees, a farther one on the same side as the query
+        index.put(shop(1L, 0.0, -179.8, 4.0));
+        index.put(shop(2L, 0.0, 177.0, 4.0));
+
+        // When
+        List<NearbyShopDto> nearest = index.findNearest(0.0, 179.8, 2, null);
+
+        // Then
+        assertEquals(List.of(1L, 2L), ids(nearest));
+        assertEquals(GeoUtil.distanceKm(0.0, 179.8, 0.0, -179.8), nearest.get(0).getDistanceKm(), 1e-9);
+    }
+
+    @Test
+    void shopsBelowTheMinimumRatingDoNotCrowdOutFartherOnes() {
+        // Given
+        index.put(shop(1L, 0.0, 0.1, 2.0));
+        index.put(shop(2L, 0.0, 0.2, null));
+        index.put(shop(3L, 0.0, 5.0, 4.5));
+
+        // When
+        List<NearbyShopDto> nearest = index.findNearest(0.0, 0.0, 1, 4.0);
+
+        // Then
+        assertEquals(List.of(3L), ids(nearest));
+    }
+
+    @Test
+    void nearestMatchesAFullScan() {
+        // Given
+        Random random = new Random(42);
+        List<ShopDto> all = new ArrayList<>();
+        for (long id = 1; id <= 300; id++) {
+            ShopDto shop = shop(id, random.nextDouble() * 160 - 80, random.nextDouble() * 360 - 180, 4.0);
+            all.add(shop);
+            index.put(shop);
+        }
+
+        for (int query = 0; query < 50; query++) {
+            double lat = random.nextDouble() * 160 - 80;
+            double lng = random.nextDouble() * 360 - 180;
+
+            // When
+            List<NearbyShopDto> nearest = index.findNearest(lat, lng, 5, null);
+
+            // Then
+            List<Long> expected = all.stream()
+                    .sorted(Comparator.comparingDouble(shop ->
+                            GeoUtil.distanceKm(lat, lng, shop.getLatitude(), shop.getLongitude())))
+                    .limit(5)
+                    .map(ShopDto::getId)
+                    .toList();
+            assertEquals(expected, ids(nearest));
+        }
+    }
+
+    @Test
+    void movedAndRemovedShopsLeaveTheirOldCell() {
+        // Given
+        index.put(shop(1L, 0.0, 0.0, 4.0));
+        index.put(shop(2L, 0.0, 3.0, 4.0));
+
+        // When
+        index.put(shop(1L, 0.0, 10.0, 4.0));
+        index.remove(2L);
+
+        // Then
+        assertEquals(List.of(1L), ids(index.findNearest(0.0, 0.0, 5, null)));
+        assertTrue(index.findNearby(0.0, 0.0, 500, 10).isEmpty());
+    }
+
+    private static List<Long> ids(List<NearbyShopDto> nearest) {
+        return nearest.stream().map(nearby -> nearby.getShop().getId()).toList();
+    }
+
+    private static ShopDto shop(Long id, double lat, double lng, Double rating) {
+        return ShopDto.builder().id(id).name("Shop " + id).latitude(lat).longitude(lng).rating(rating).build();
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.socialmedia.service;
+
+import com.example.socialmedia.dto.ShopDto;
+import com.example.socialmedia.repository.ShopRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class ShopSearchIndexTest {
+
+    private ShopSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new ShopSearchIndex(mock(ShopRepository.class), new SimpleMeterRegistry(), 100);
+        index.put(shop(1L, "Pizzeria Roma", "Via Appia 1", "Wood-fired pizza"));
+        index.put(shop(2L, "Pizza Milano", "Corso Como 5", "Thin crust"));
+        index.put(shop(3L, "Morning Coffee", "Main Street 10", "Espresso and pastries"));
+        index.put(shop(4L, "Corner Bakery", "Market Square 2", "Bread and coffee"));
+    }
+
+    @Test
+    void prefixMatchesLongerTerms() {
+        assertEquals(List.of(1L, 2L), index.search("pizz", 10));
+    }
+
+    @Test
+    void substringMatchesInsideTerms() {
+        assertEquals(List.of(1L), index.search("zzer", 10));
+    }
+
+    @Test
+    void substitutionWithinOneEditMatches() {
+        assertEquals(List.of(3L, 4L), index.search("coffie", 10));
+    }
+
+    @Test
+    void transpositionCountsAsOneEdit() {
+        // A swap of adjacent letters changes up to four trigrams
+        assertEquals(List.of(2L, 1L), index.search("pziza", 10));
+        assertEquals(List.of(3L, 4L), index.search("cofefe", 10));
+    }
+
+    @Test
+    void everyQueryTermMustMatch() {
+        assertEquals(List.of(1L), index.search("pizza roma", 10));
+        assertEquals(List.of(2L), index.search("milano pizza", 10));
+        assertTrue(index.search("pizza bread", 10).isEmpty());
+    }
+
+    @Test
+    void nameMatchesRankAboveOtherFields() {
+        // Shop 3 has coffee in its name, shop 4 only in its description
+        assertEquals(List.of(3L, 4L), index.search("coffee", 10));
+        // Shop 2 is named pizza; shop 1 only mentions it in its description
+        assertEquals(2L, index.search("pizza", 10).get(0));
+    }
+
+    @Test
+    void removedShopsAreNotReturned() {
+        index.remove(1L);
+
+        assertTrue(index.search("roma", 10).isEmpty());
+        assertEquals(List.of(2L), index.search("pizz", 10));
+    }
+
+    @Test
+    void editDistanceCountsTranspositionsOnce() {
+        assertEquals(1, ShopSearchIndex.editDistance("pziza", "pizza", 2));
+        assertEquals(1, ShopSearchIndex.editDistance("coffie", "coffee", 2));
+        assertEquals(1, ShopSearchIndex.editDistance("cofefe", "coffee", 2));
+        // Gives up past the maximum
+        assertEquals(2, ShopSearchIndex.editDistance("pizza", "bakery", 1));
+    }
+
+    private static ShopDto shop(Long id, String name, String address, String description) {
+        return ShopDto.builder()
+                .id(id)
+                .name(name)
+                .address(address)
+                .description(description)
+                .build();
+    }
+}
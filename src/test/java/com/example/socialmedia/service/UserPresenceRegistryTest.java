@@ -0,0 +1,78 @@
+package com.example.socialmedia.service;
+
+import com.example.socialmedia.security.JwtUtils;
+import com.example.socialmedia.security.StompAuthChannelInterceptor;
+import com.example.socialmedia.security.UserDetailsImpl;
+import com.example.socialmedia.security.UserDetailsServiceImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class UserPresenceRegistryTest {
+
+    private final JwtUtils jwtUtils = mock(JwtUtils.class);
+    private final UserDetailsServiceImpl userDetailsService = mock(UserDetailsServiceImpl.class);
+    private final StompAuthChannelInterceptor interceptor = new StompAuthChannelInterceptor(jwtUtils, userDetailsService);
+    private final UserPresenceRegistry registry = new UserPresenceRegistry(new SimpleMeterRegistry());
+
+    @Test
+    void sessionAuthenticatedAtConnectIsTrackedUntilItCloses() {
+        // Given
+        when(jwtUtils.validateJwtToken("token")).thenReturn(true);
+        when(jwtUtils.getUserNameFromJwtToken("token")).thenReturn("alice");
+        when(userDetailsService.loadUserByUsername("alice"))
+                .thenReturn(new UserDetailsImpl(1L, "alice", "alice@example.com", "secret", List.of()));
+
+        // When
+        connect("s1", "Bearer token");
+
+        // Then
+        assertEquals("alice", registry.getSessionUsername(1L));
+        assertEquals(Set.of(1L), registry.getOnlineUserIds());
+        registry.onDisconnect(new SessionDisconnectEvent(this, disconnectMessage("s1"), "s1", CloseStatus.NORMAL));
+        assertNull(registry.getSessionUsername(1L));
+    }
+
+    @Test
+    void anonymousSessionIsNotTracked() {
+        // When
+        connect("s2", null);
+
+        // Then
+        assertTrue(registry.getOnlineUserIds().isEmpty());
+        verifyNoInteractions(userDetailsService);
+    }
+
+    private void connect(String sessionId, String authorization) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+        accessor.setSessionId(sessionId);
+        if (authorization != null) {
+            accessor.addNativeHeader("Authorization", authorization);
+        }
+        accessor.setLeaveMutable(true);
+        Message<byte[]> message = MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+        Message<?> authenticated = interceptor.preSend(message, mock(MessageChannel.class));
+        StompHeaderAccessor connected = StompHeaderAccessor.wrap(authenticated);
+        registry.onConnected(new SessionConnectedEvent(this, MessageBuilder.createMessage(new byte[0],
+                connected.getMessageHeaders()), connected.getUser()));
+    }
+
+    private static Message<byte[]> disconnectMessage(String sessionId) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.DISCONNECT);
+        accessor.setSessionId(sessionId);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+}
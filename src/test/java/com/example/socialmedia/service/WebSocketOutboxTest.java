@@ -0,0 +1,128 @@
+package com.example.socialmedia.service;
+
+import com.example.socialmedia.repository.OutboxEntryRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest(properties = {"logging.level.com.example.socialmedia.aspect=INFO", "spring.jpa.show-sql=false",
+        "logging.level.org.hibernate.SQL=WARN"})
+class WebSocketOutboxTest {
+
+    private static final String DESTINATION = "/queue/notifications";
+
+    @Autowired
+    OutboxEntryRepository outboxRepository;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    private Node nodeA;
+    private Node nodeB;
+
+    @BeforeEach
+    void setUp() {
+        // Two app nodes on one database: A holds alice's session (user 1), B holds bob's (user 2)
+        nodeA = new Node(Map.of(1L, "alice"));
+        nodeB = new Node(Map.of(2L, "bob"));
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        nodeA.outbox.shutdown();
+        nodeB.outbox.shutdown();
+    }
+
+    @Test
+    void fanOutReachesSessionsOnEveryNodeOnce() {
+        // When: node A writes a frame for both users, as a broadcast job page does
+        transactionTemplate.executeWithoutResult(status ->
+                nodeA.outbox.fanOut(DESTINATION, Map.of("message", "sale"), List.of(1L, 2L)));
+
+        // Then
+        verify(nodeA.messaging, timeout(3000)).send(eq("/user/alice" + DESTINATION), any(Message.class));
+        verify(nodeB.messaging, timeout(3000)).send(eq("/user/bob" + DESTINATION), any(Message.class));
+        // One frame to the user queue and one to its deprecated topic alias
+        verify(nodeA.messaging, after(500).times(2)).send(anyString(), any(Message.class));
+        verify(nodeA.messaging, times(1)).send(eq("/topic/user/1/notifications"), any(Message.class));
+        verify(nodeB.messaging, times(2)).send(anyString(), any(Message.class));
+        verify(nodeB.messaging, times(1)).send(eq("/topic/user/2/notifications"), any(Message.class));
+    }
+
+    @Test
+    void otherDestinationsHaveNoTopicAlias() {
+        // When
+        nodeA.outbox.fanOut("/queue/updates", Map.of("message", "sale"), List.of(1L));
+
+        // Then
+        verify(nodeA.messaging, timeout(3000)).send(eq("/user/alice/queue/updates"), any(Message.class));
+        verify(nodeA.messaging, after(500).times(1)).send(anyString(), any(Message.class));
+    }
+
+    @Test
+    void fanOutWithoutRecipientsReachesEveryOnlineUser() {
+        // When
+        nodeB.outbox.fanOut(DESTINATION, Map.of("message", "maintenance"), null);
+
+        // Then
+        verify(nodeA.messaging, timeout(3000)).send(eq("/user/alice" + DESTINATION), any(Message.class));
+        verify(nodeB.messaging, timeout(3000)).send(eq("/user/bob" + DESTINATION), any(Message.class));
+    }
+
+    @Test
+    void pushForUserOnAnotherNodeIsSentByThatNode() {
+        // When: node A notifies bob inside a transaction
+        transactionTemplate.executeWithoutResult(status ->
+                nodeA.outbox.sendToUser(2L, DESTINATION, Map.of("message", "reply")));
+
+        // Then
+        verify(nodeB.messaging, timeout(3000)).send(eq("/user/bob" + DESTINATION), any(Message.class));
+        verify(nodeA.messaging, after(500).never()).send(anyString(), any(Message.class));
+    }
+
+    @Test
+    void rolledBackFanOutIsNeverSent() {
+        // When
+        transactionTemplate.executeWithoutResult(status -> {
+            nodeA.outbox.fanOut(DESTINATION, Map.of("message", "draft"), List.of(1L, 2L));
+            status.setRollbackOnly();
+        });
+
+        // Then
+        verify(nodeA.messaging, after(1500).never()).send(anyString(), any(Message.class));
+        verify(nodeB.messaging, never()).send(anyString(), any(Message.class));
+    }
+
+    private class Node {
+        private final SimpMessagingTemplate messaging = mock(SimpMessagingTemplate.class);
+        private final WebSocketOutbox outbox;
+
+        Node(Map<Long, String> sessions) {
+            UserPresenceRegistry presence = mock(UserPresenceRegistry.class);
+            when(presence.getOnlineUserIds()).thenReturn(Set.copyOf(sessions.keySet()));
+            when(presence.getSessionUsername(any())).thenAnswer(invocation -> sessions.get(invocation.<Long>getArgument(0)));
+            when(messaging.getUserDestinationPrefix()).thenReturn("/user/");
+            outbox = new WebSocketOutbox(outboxRepository, messaging, objectMapper, presence, new SimpleMeterRegistry(),
+                    transactionTemplate, 200, 5000, 600_000, 50, 30_000);
+        }
+    }
+}
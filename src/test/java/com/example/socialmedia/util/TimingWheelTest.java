@@ -0,0 +1,143 @@
+package com.example.socialmedia.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimingWheelTest {
+
+    private static final long LEVEL_1 = 64;
+    private static final long LEVEL_2 = 64 * 64;
+    private static final long SPAN = 64L * 64 * 64 * 64;
+
+    @Test
+    void timersAtLevelBoundariesFireOnTheirTick() {
+        // Given
+        TimingWheel<Long> wheel = new TimingWheel<>(1, 64, 4, 0);
+        long[] dues = {LEVEL_1 - 1, LEVEL_1, LEVEL_1 + 1, 2 * LEVEL_1, LEVEL_2 - 1, LEVEL_2, LEVEL_2 + 1,
+                LEVEL_2 + LEVEL_1, 64 * LEVEL_2, 64 * LEVEL_2 + 1};
+        for (long due : dues) {
+            assertTrue(wheel.schedule(due, due));
+        }
+
+        // When / Then
+        for (long due : dues) {
+            assertEquals(List.of(), wheel.advance(due - 1), "fired before " + due);
+            assertEquals(List.of(due), wheel.advance(due));
+        }
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void timerScheduledOnBoundaryFromBoundaryFires() {
+        // Given: time already sits on a level boundary
+        TimingWheel<Long> wheel = new TimingWheel<>(1, 64, 4, 0);
+        wheel.advance(LEVEL_2 - 1);
+
+        // When
+        assertTrue(wheel.schedule(2 * LEVEL_2, 2 * LEVEL_2));
+        assertTrue(wheel.schedule(LEVEL_2, LEVEL_2));
+
+        // Then
+        assertEquals(List.of(LEVEL_2), wheel.advance(LEVEL_2));
+        assertEquals(List.of(), wheel.advance(2 * LEVEL_2 - 1));
+        assertEquals(List.of(2 * LEVEL_2), wheel.advance(2 * LEVEL_2));
+    }
+
+    @Test
+    void pastDueTimeIsRejected() {
+        // Given
+        TimingWheel<String> wheel = new TimingWheel<>(10, 64, 4, 1000);
+        wheel.advance(2000);
+
+        // When / Then
+        assertFalse(wheel.schedule(999, "before start"));
+        assertFalse(wheel.schedule(2000, "already processed tick"));
+        assertTrue(wheel.schedule(2001, "next tick"));
+        assertEquals(1, wheel.size());
+    }
+
+    @Test
+    void dueTimeIsRoundedUpToTheNextTick() {
+        // Given
+        TimingWheel<String> wheel = new TimingWheel<>(10, 64, 4, 0);
+        wheel.schedule(15, "timer");
+
+        // When / Then
+        assertEquals(List.of(), wheel.advance(19));
+        assertEquals(List.of("timer"), wheel.advance(20));
+    }
+
+    @Test
+    void timersBeyondTheSpanWaitInOverflow() {
+        // Given
+        TimingWheel<Long> wheel = new TimingWheel<>(1, 64, 4, 0);
+        long[] dues = {SPAN - 1, SPAN, SPAN + 5, 2 * SPAN + LEVEL_2 + 3};
+        for (long due : dues) {
+            assertTrue(wheel.schedule(due, due));
+        }
+
+        // When / Then
+        for (long due : dues) {
+            assertEquals(List.of(), wheel.advance(due - 1), "fired before " + due);
+            assertEquals(List.of(due), wheel.advance(due));
+        }
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void advanceJumpingManyTicksReturnsEveryDueTimerInOrder() {
+        // Given
+        TimingWheel<Long> wheel = new TimingWheel<>(1, 64, 4, 0);
+        List<Long> expected = new ArrayList<>();
+        for (long due = 3; due < 3 * LEVEL_2; due += 97) {
+            wheel.schedule(due, due);
+            expected.add(due);
+        }
+        wheel.schedule(3 * LEVEL_2, 3 * LEVEL_2);
+
+        // When
+        List<Long> due = wheel.advance(3 * LEVEL_2 - 1);
+
+        // Then
+        assertEquals(expected, due);
+        assertEquals(1, wheel.size());
+        assertEquals(List.of(3 * LEVEL_2), wheel.advance(SPAN));
+    }
+
+    @Test
+    void everyTimerFiresExactlyOnceAtItsTime() {
+        // Given: a small wheel, so random times cross every level and the overflow
+        Random random = new Random(42);
+        TimingWheel<Integer> wheel = new TimingWheel<>(1, 4, 3, 0);
+        Map<Integer, Long> dueById = new HashMap<>();
+        long now = 0;
+        int nextId = 0;
+
+        // When
+        while (now < 2000) {
+            for (int i = random.nextInt(4); i > 0; i--) {
+                long due = now + 1 + random.nextInt(300);
+                assertTrue(wheel.schedule(due, nextId));
+                dueById.put(nextId++, due);
+            }
+            long previous = now;
+            now += 1 + random.nextInt(random.nextBoolean() ? 3 : 80);
+            for (int id : wheel.advance(now)) {
+                // Then
+                long due = dueById.remove(id);
+                assertTrue(due > previous && due <= now, "timer " + id + " due at " + due + " fired at " + now);
+            }
+        }
+        for (Map.Entry<Integer, Long> pending : dueById.entrySet()) {
+            assertTrue(pending.getValue() > now, "timer " + pending.getKey() + " never fired");
+        }
+        assertEquals(dueById.size(), wheel.size());
+    }
+}